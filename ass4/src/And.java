@@ -1,9 +1,6 @@
 // Nimrod Netzer 322394545
 
-import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 /**
  * A class to represent the logical AND operation between two expressions.
@@ -34,91 +31,113 @@ public class And extends BinaryExpression {
     }
 
     /**
-     * Evaluates the AND expression based on variable assignments.
+     * Returns the opcode of this expression in {@link ExpressionGraph}.
      *
-     * @param assignment A map of variable names to their boolean values.
-     * @return The result of evaluating the AND expression with the given assignments.
-     * @throws Exception If there's an error evaluating either sub-expression.
+     * @return The opcode AND.
      */
-    public Boolean evaluate(Map<String, Boolean> assignment) throws Exception {
-        try {
-            return expressionOne.evaluate(assignment) && expressionTwo.evaluate(assignment);
-        } catch (Exception e) {
-            throw new Exception("Error evaluating expression: " + e.getMessage());
-        }
-    }
-
-    /**
-     * Retrieves all unique variable names present in the AND expression.
-     *
-     * @return A list of unique variable names used in the expression.
-     */
-    public List<String> getVariables() {
-        return Stream.of(expressionOne.getVariables(), expressionTwo.getVariables())
-                .flatMap(List::stream)
-                .distinct()
-                .collect(Collectors.toList());
+    @Override
+    protected int getOpcode() {
+        return ExpressionGraph.AND;
     }
 
     /**
-     * Returns a string representation of the AND expression.
+     * Returns the operator written between the operands of the AND expression.
      *
-     * @return A string representing the AND expression in the format "(expressionOne & expressionTwo)".
+     * @return The string " & ".
      */
-    @Override
-    public String toString() {
-        return "(" + expressionOne.toString() + " & " + expressionTwo.toString() + ")";
+    protected String getOperator() {
+        return " & ";
     }
 
     /**
-     * Creates a new AND expression where occurrences of a variable are replaced with a given expression.
+     * Replaces several variables at once in a single pass. Every node instance is visited once,
+     * and sub-expressions without substituted variables are returned as they are.
      *
-     * @param var        The variable to be replaced.
-     * @param expression The expression to replace the variable with.
-     * @return A new AND expression with the variable replaced by the provided expression.
+     * @param substitution The expressions to replace the variables with, by variable name.
+     * @param assigned     The expressions substituted so far, by node instance.
+     * @return The AND of the substituted operands, or this expression if neither operand changed.
      */
-    public Expression assign(String var, Expression expression) {
-        return new And(expressionOne.assign(var, expression), expressionTwo.assign(var, expression));
+    public Expression assign(Map<String, Expression> substitution, Map<Expression, Expression> assigned) {
+        Expression cached = assigned.get(this);
+        if (cached != null) {
+            return cached;
+        }
+        Expression assignedOne = expressionOne.assign(substitution, assigned);
+        Expression assignedTwo = expressionTwo.assign(substitution, assigned);
+        Expression result = assignedOne == expressionOne && assignedTwo == expressionTwo ? this
+                : new And(assignedOne, assignedTwo);
+        assigned.put(this, result);
+        return result;
     }
 
     /**
      * Converts the AND expression to an equivalent expression using only NAND operations.
+     * Every node instance is converted once, so shared sub-expressions stay shared.
      *
+     * @param converted The expressions converted so far, by node instance.
      * @return An expression tree using only NAND operations equivalent to the original AND expression.
      */
-    public Expression nandify() {
-        Expression nandifyExpOne = expressionOne.nandify();
-        Expression nandifyExpTwo = expressionTwo.nandify();
-        return new Nand(
-                new Nand(nandifyExpOne, nandifyExpTwo),
-                new Nand(nandifyExpOne, nandifyExpTwo)
-        );
+    public Expression nandify(Map<Expression, Expression> converted) {
+        Expression cached = converted.get(this);
+        if (cached != null) {
+            return cached;
+        }
+        Expression nandifyExpOne = expressionOne.nandify(converted);
+        Expression nandifyExpTwo = expressionTwo.nandify(converted);
+        Expression nand = new Nand(nandifyExpOne, nandifyExpTwo);
+        Expression result = new Nand(nand, nand);
+        converted.put(this, result);
+        return result;
     }
 
     /**
      * Converts the AND expression to an equivalent expression using only NOR operations.
+     * Every node instance is converted once, so shared sub-expressions stay shared.
      *
+     * @param converted The expressions converted so far, by node instance.
      * @return An expression tree using only NOR operations equivalent to the original AND expression.
      */
     @Override
-    public Expression norify() {
-        Expression norifyExpOne = expressionOne.norify();
-        Expression norifyExpTwo = expressionTwo.norify();
-        return new Nor(
+    public Expression norify(Map<Expression, Expression> converted) {
+        Expression cached = converted.get(this);
+        if (cached != null) {
+            return cached;
+        }
+        Expression norifyExpOne = expressionOne.norify(converted);
+        Expression norifyExpTwo = expressionTwo.norify(converted);
+        Expression result = new Nor(
                 new Nor(norifyExpOne, norifyExpOne),
                 new Nor(norifyExpTwo, norifyExpTwo)
         );
+        converted.put(this, result);
+        return result;
     }
 
     /**
      * Simplifies the AND expression by applying logical simplification rules.
+     * Every node instance is simplified once, so shared sub-expressions are not simplified twice.
      *
+     * @param simplified The expressions simplified so far, by node instance.
      * @return A simplified version of the AND expression.
      */
-    public Expression simplify() {
-        Expression firstSimplifiedExp = expressionOne.simplify();
-        Expression secondSimplifiedExp = expressionTwo.simplify();
+    public Expression simplify(Map<Expression, Expression> simplified) {
+        Expression cached = simplified.get(this);
+        if (cached != null) {
+            return cached;
+        }
+        Expression result = simplify(expressionOne.simplify(simplified), expressionTwo.simplify(simplified));
+        simplified.put(this, result);
+        return result;
+    }
 
+    /**
+     * Applies the AND simplification rules to already simplified operands.
+     *
+     * @param firstSimplifiedExp  The simplified first operand.
+     * @param secondSimplifiedExp The simplified second operand.
+     * @return The simplified expression.
+     */
+    private Expression simplify(Expression firstSimplifiedExp, Expression secondSimplifiedExp) {
         // Apply simplification rules
         if (isEqual(firstSimplifiedExp, new Val(true))) {
             return secondSimplifiedExp; // x & true = x
@@ -1,12 +1,25 @@
 // Nimrod Netzer 322394545
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Abstract base class for expressions, implementing common methods and behaviors.
  */
 public abstract class BaseExpression implements Expression {
+    private static final int INITIAL_PAIRS = 16;
+    private VariableSet variableSet;
+    private int uses;
 
     /**
      * Helper method to check equality between two expressions.
+     * Expressions are compared structurally; for interned expressions this is a reference comparison.
      *
      * @param expOne The first expression to compare.
      * @param expTwo The second expression to compare.
@@ -15,4 +28,292 @@ public abstract class BaseExpression implements Expression {
     public boolean isEqual(Expression expOne, Expression expTwo) {
         return expOne.equals(expTwo);
     }
+
+    /**
+     * Compares the operands of two operation nodes of the same class and hash structurally, over an
+     * explicit stack of node pairs, so arbitrarily deep expressions are supported. Identical
+     * operands are matched by reference and operands with different hash codes are told apart at
+     * once, so only the parts that really differ or are equal but not shared are walked.
+     *
+     * @param one The first operation node.
+     * @param two The second operation node.
+     * @return true if the operands of both nodes are structurally equal.
+     */
+    protected static boolean equalOperands(BaseExpression one, BaseExpression two) {
+        Expression[] pairs = new Expression[INITIAL_PAIRS];
+        int size = pushOperands(one, two, pairs, 0);
+        while (size > 0) {
+            Expression left = pairs[--size];
+            Expression right = pairs[--size];
+            pairs[size] = null;
+            pairs[size + 1] = null;
+            if (left == right) {
+                continue;
+            }
+            if (left == null || right == null || left.getClass() != right.getClass()
+                    || left.hashCode() != right.hashCode()) {
+                return false;
+            }
+            if (left instanceof BaseExpression) {
+                if (size + 4 > pairs.length) {
+                    pairs = Arrays.copyOf(pairs, 2 * pairs.length);
+                }
+                size = pushOperands((BaseExpression) left, (BaseExpression) right, pairs, size);
+            } else if (!left.equals(right)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Pushes the matching operands of two nodes of the same class as pairs, the first operands last.
+     *
+     * @param one   The first node.
+     * @param two   The second node.
+     * @param pairs The stack of pairs, with room for two more pairs.
+     * @param size  The size of the stack.
+     * @return The new size of the stack.
+     */
+    private static int pushOperands(BaseExpression one, BaseExpression two, Expression[] pairs, int size) {
+        if (one instanceof BinaryExpression) {
+            pairs[size++] = ((BinaryExpression) two).getExpressionTwo();
+            pairs[size++] = ((BinaryExpression) one).getExpressionTwo();
+            pairs[size++] = ((BinaryExpression) two).getExpressionOne();
+            pairs[size++] = ((BinaryExpression) one).getExpressionOne();
+        } else if (one instanceof UnaryExpression) {
+            pairs[size++] = ((UnaryExpression) two).getExpression();
+            pairs[size++] = ((UnaryExpression) one).getExpression();
+        }
+        return size;
+    }
+
+    /**
+     * Evaluates the expression using the variable values provided in the assignment.
+     * The expression is walked by {@link SafeEvaluator}, over an explicit stack, so arbitrarily deep
+     * expressions are supported, and nodes used by more than one node are evaluated once per call.
+     * Operands are evaluated left to right, and AND, OR, NAND and NOR skip their second operand
+     * when the first one decides the result.
+     *
+     * @param assignment A map containing variable names and their boolean values.
+     * @return The result of evaluating the expression with the given assignment.
+     * @throws Exception If the expression contains a variable not in the assignment.
+     */
+    public Boolean evaluate(Map<String, Boolean> assignment) throws Exception {
+        SafeEvaluator.Result result = new SafeEvaluator.Result();
+        if (!SafeEvaluator.tryEvaluate(this, assignment, result)) {
+            throw new Exception("Variable '" + result.getMissingVariable() + "' is not assigned");
+        }
+        return result.getValue();
+    }
+
+    /**
+     * Records that a new node uses an operand, so evaluation knows which nodes to keep the value
+     * of. The count is not synchronized: a lost update only means a shared node is evaluated
+     * again, never a wrong value.
+     *
+     * @param operand The operand of the new node.
+     */
+    protected static void addUse(Expression operand) {
+        if (operand instanceof BaseExpression) {
+            BaseExpression node = (BaseExpression) operand;
+            if (node.uses < 2) {
+                node.uses++;
+            }
+        }
+    }
+
+    /**
+     * Checks whether more than one node built so far uses this expression as an operand.
+     *
+     * @return true if the expression is shared.
+     */
+    protected boolean isShared() {
+        return uses > 1;
+    }
+
+    /**
+     * Returns the opcode of this expression in {@link ExpressionGraph}.
+     *
+     * @return The opcode.
+     */
+    protected abstract int getOpcode();
+
+    /**
+     * Returns the variables of the expression, computed on the first call and kept for good, since
+     * the operands of an expression never change.
+     *
+     * @return The variable set of the expression.
+     */
+    public VariableSet getVariableSet() {
+        VariableSet set = variableSet;
+        if (set == null) {
+            fillVariableSets();
+            set = variableSet;
+        }
+        return set;
+    }
+
+    /**
+     * Computes the variable set of this node and of every operand below it that has none yet,
+     * bottom-up over an explicit stack, so each node is computed once, after its operands, and
+     * arbitrarily deep expressions are supported.
+     */
+    private void fillVariableSets() {
+        Deque<BaseExpression> stack = new ArrayDeque<>();
+        stack.push(this);
+        while (!stack.isEmpty()) {
+            BaseExpression node = stack.peek();
+            if (node.variableSet != null) {
+                stack.pop();
+                continue;
+            }
+            int pending = stack.size();
+            if (node instanceof BinaryExpression) {
+                pushUnfilled(((BinaryExpression) node).getExpressionTwo(), stack);
+                pushUnfilled(((BinaryExpression) node).getExpressionOne(), stack);
+            } else if (node instanceof UnaryExpression) {
+                pushUnfilled(((UnaryExpression) node).getExpression(), stack);
+            }
+            if (stack.size() == pending) {
+                stack.pop();
+                node.variableSet = node.computeVariableSet();
+            }
+        }
+    }
+
+    /**
+     * Pushes an operand whose variable set is not computed yet.
+     *
+     * @param operand The operand.
+     * @param stack   The nodes waiting for their variable sets.
+     */
+    private static void pushUnfilled(Expression operand, Deque<BaseExpression> stack) {
+        if (operand instanceof BaseExpression && ((BaseExpression) operand).variableSet == null) {
+            stack.push((BaseExpression) operand);
+        }
+    }
+
+    /**
+     * Returns the variables of the expression in sorted order, from the cached variable set.
+     *
+     * @return An unmodifiable sorted list of the variable names.
+     */
+    public List<String> getVariables() {
+        return getVariableSet().getNames();
+    }
+
+    /**
+     * Computes the variables of the expression from its operands, whose variable sets are
+     * already cached when it is called.
+     *
+     * @return The variable set of the expression.
+     */
+    protected abstract VariableSet computeVariableSet();
+
+    /**
+     * Returns a string representation of the expression, built by a single appendTo() pass.
+     *
+     * @return String representation of the expression.
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        try {
+            appendTo(builder);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // StringBuilder never throws
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Writes the string representation of the expression in a single pass, without building
+     * intermediate strings. The expression is walked with an explicit stack of the nodes and the
+     * text still to write, so arbitrarily deep expressions are supported.
+     *
+     * @param out The destination of the string representation.
+     * @throws IOException If writing to the destination fails.
+     */
+    public void appendTo(Appendable out) throws IOException {
+        Deque<Object> pending = new ArrayDeque<>();
+        pending.push(this);
+        while (!pending.isEmpty()) {
+            Object item = pending.pop();
+            if (item instanceof String) {
+                out.append((String) item);
+            } else if (item instanceof BinaryExpression) {
+                BinaryExpression binary = (BinaryExpression) item;
+                if (binary.getExpressionOne() == null || binary.getExpressionTwo() == null) {
+                    out.append("null exception");
+                    continue;
+                }
+                out.append('(');
+                pending.push(")");
+                pending.push(binary.getExpressionTwo());
+                pending.push(binary.getOperator());
+                pending.push(binary.getExpressionOne());
+            } else if (item instanceof UnaryExpression) {
+                out.append("~(");
+                pending.push(")");
+                pending.push(((UnaryExpression) item).getExpression());
+            } else {
+                ((Expression) item).appendTo(out);
+            }
+        }
+    }
+
+    /**
+     * Creates a new expression by replacing occurrences of the specified variable with the
+     * provided expression. This is a substitution of a single variable, so shared sub-expressions
+     * are substituted once and stay shared in the result.
+     *
+     * @param var        The variable to replace.
+     * @param expression The expression to replace with.
+     * @return The expression with the variable replaced, or this expression if it does not occur.
+     */
+    public Expression assign(String var, Expression expression) {
+        return assign(Map.of(var, expression));
+    }
+
+    /**
+     * Replaces several variables at once in a single pass over the expression.
+     * Shared sub-expressions are substituted once and stay shared in the result.
+     *
+     * @param substitution The expressions to replace the variables with, by variable name.
+     * @return The expression with the variables replaced, or this expression if none occurs.
+     */
+    public Expression assign(Map<String, Expression> substitution) {
+        return assign(substitution, new IdentityHashMap<>());
+    }
+
+    /**
+     * Converts the expression to an equivalent expression using only Nand operations.
+     * Shared sub-expressions are converted once and stay shared in the result.
+     *
+     * @return Equivalent expression using only Nand operations.
+     */
+    public Expression nandify() {
+        return nandify(new IdentityHashMap<>());
+    }
+
+    /**
+     * Converts the expression to an equivalent expression using only Nor operations.
+     * Shared sub-expressions are converted once and stay shared in the result.
+     *
+     * @return Equivalent expression using only Nor operations.
+     */
+    public Expression norify() {
+        return norify(new IdentityHashMap<>());
+    }
+
+    /**
+     * Simplifies the expression to its minimal form.
+     * Shared sub-expressions are simplified once.
+     *
+     * @return Simplified expression.
+     */
+    public Expression simplify() {
+        return simplify(new IdentityHashMap<>());
+    }
 }
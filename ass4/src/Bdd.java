@@ -0,0 +1,219 @@
+// Nimrod Netzer 322394545
+
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A handle to a reduced ordered binary decision diagram owned by a {@link BddManager}.
+ * BDDs are canonical, so equivalence, satisfiability and tautology checks take constant time.
+ * The underlying nodes stay alive for as long as the handle is reachable.
+ */
+public final class Bdd {
+    private final BddManager manager;
+    private final int node;
+
+    /**
+     * Constructs a handle. Use the methods of {@link BddManager} to create BDDs.
+     *
+     * @param manager The manager owning the node.
+     * @param node    The node index.
+     */
+    Bdd(BddManager manager, int node) {
+        this.manager = manager;
+        this.node = node;
+    }
+
+    /**
+     * Returns the conjunction of this BDD and another.
+     *
+     * @param other A BDD of the same manager.
+     * @return The BDD of (this &amp; other).
+     */
+    public Bdd and(Bdd other) {
+        return apply("AND", other);
+    }
+
+    /**
+     * Returns the disjunction of this BDD and another.
+     *
+     * @param other A BDD of the same manager.
+     * @return The BDD of (this | other).
+     */
+    public Bdd or(Bdd other) {
+        return apply("OR", other);
+    }
+
+    /**
+     * Returns the exclusive or of this BDD and another.
+     *
+     * @param other A BDD of the same manager.
+     * @return The BDD of (this ^ other).
+     */
+    public Bdd xor(Bdd other) {
+        return apply("XOR", other);
+    }
+
+    /**
+     * Returns the negation of this BDD.
+     *
+     * @return The BDD of ~(this).
+     */
+    public Bdd not() {
+        manager.collectIfNeeded();
+        return manager.handle(manager.not(node));
+    }
+
+    /**
+     * Restricts a variable to a constant, the BDD counterpart of assign(var, Val).
+     *
+     * @param variable The variable name.
+     * @param value    The constant value of the variable.
+     * @return The restricted BDD.
+     */
+    public Bdd restrict(String variable, boolean value) {
+        int level = manager.existingLevel(variable);
+        if (level == -1) {
+            return this;
+        }
+        manager.collectIfNeeded();
+        return manager.handle(manager.restrict(node, level, value, new HashMap<>()));
+    }
+
+    /**
+     * Checks if this BDD represents the same function as another BDD of the same manager.
+     *
+     * @param other The other BDD.
+     * @return True if the functions are equivalent.
+     */
+    public boolean isEquivalent(Bdd other) {
+        checkManager(other);
+        return node == other.node;
+    }
+
+    /**
+     * Checks if some assignment satisfies this BDD.
+     *
+     * @return True if the function is satisfiable.
+     */
+    public boolean isSatisfiable() {
+        return node != BddManager.FALSE;
+    }
+
+    /**
+     * Checks if every assignment satisfies this BDD.
+     *
+     * @return True if the function is a tautology.
+     */
+    public boolean isTautology() {
+        return node == BddManager.TRUE;
+    }
+
+    /**
+     * Counts the satisfying assignments over all the variables known to the manager.
+     *
+     * @return The number of satisfying assignments.
+     */
+    public BigInteger satCount() {
+        return manager.satCount(node);
+    }
+
+    /**
+     * Counts the satisfying assignments over the given distinct variables, which must include
+     * every variable this BDD depends on.
+     *
+     * @param variables The variables to count over.
+     * @return The number of satisfying assignments.
+     */
+    public BigInteger satCount(Collection<String> variables) {
+        int known = 0;
+        for (String variable : variables) {
+            if (manager.existingLevel(variable) != -1) {
+                known++;
+            }
+        }
+        int unused = manager.getVariables().size() - known;
+        int extra = variables.size() - known;
+        return manager.satCount(node).shiftRight(unused).shiftLeft(extra);
+    }
+
+    /**
+     * Returns one satisfying assignment. Variables missing from it may take any value.
+     *
+     * @return A satisfying assignment, or null if the BDD is not satisfiable.
+     */
+    public Map<String, Boolean> anySat() {
+        return isSatisfiable() ? manager.anySat(node) : null;
+    }
+
+    /**
+     * Converts this BDD back to an expression.
+     *
+     * @return An expression equivalent to this BDD.
+     */
+    public Expression toExpression() {
+        return manager.toExpression(node, new HashMap<>());
+    }
+
+    /**
+     * Returns the manager owning this BDD.
+     *
+     * @return The manager.
+     */
+    public BddManager getManager() {
+        return manager;
+    }
+
+    /**
+     * Checks if this BDD is equal to another object: the same node of the same manager.
+     *
+     * @param obj The object to compare with.
+     * @return True if the objects represent the same function in the same manager.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        Bdd other = (Bdd) obj;
+        return manager == other.manager && node == other.node;
+    }
+
+    /**
+     * Returns a hash code value for this BDD.
+     *
+     * @return A hash code value for this BDD.
+     */
+    @Override
+    public int hashCode() {
+        return 31 * System.identityHashCode(manager) + node;
+    }
+
+    /**
+     * Applies a binary operation to this BDD and another.
+     *
+     * @param type  The type of the operation, as returned by getType() of the expressions.
+     * @param other A BDD of the same manager.
+     * @return The resulting BDD.
+     */
+    private Bdd apply(String type, Bdd other) {
+        checkManager(other);
+        manager.collectIfNeeded();
+        return manager.handle(manager.apply(type, node, other.node));
+    }
+
+    /**
+     * Checks that another BDD belongs to the same manager.
+     *
+     * @param other The other BDD.
+     */
+    private void checkManager(Bdd other) {
+        if (other.manager != manager) {
+            throw new IllegalArgumentException("BDDs of different managers cannot be combined");
+        }
+    }
+}
@@ -0,0 +1,609 @@
+// Nimrod Netzer 322394545
+
+import java.lang.ref.Cleaner;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A manager of reduced ordered binary decision diagrams (ROBDDs).
+ * Nodes are stored in parallel int arrays and kept canonical by a unique table, so two BDDs of
+ * the same manager represent the same function exactly when they are the same node.
+ * Boolean operations go through a single ITE operation backed by a computed cache.
+ * Nodes that are no longer reachable from a live {@link Bdd} are reclaimed by a mark and sweep
+ * garbage collection, run between top-level operations.
+ * A manager is not thread-safe.
+ */
+public class BddManager {
+    /**
+     * The node index of the constant false.
+     */
+    static final int FALSE = 0;
+    /**
+     * The node index of the constant true.
+     */
+    static final int TRUE = 1;
+
+    private static final Cleaner CLEANER = Cleaner.create();
+    private static final int INITIAL_NODES = 1 << 12;
+    private static final int CACHE_SIZE = 1 << 16;
+    private static final int GC_THRESHOLD = 1 << 16;
+    private static final int HASH_PRIME_ONE = 12582917;
+    private static final int HASH_PRIME_TWO = 4256249;
+
+    private final Map<String, Integer> levels = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+    private final ConcurrentLinkedQueue<Integer> released = new ConcurrentLinkedQueue<>();
+
+    private int[] level;
+    private int[] low;
+    private int[] high;
+    private int[] refs;
+    private int[] next;
+    private int[] buckets;
+    private int nodeCount;
+    private int freeHead = -1;
+    private int liveNodes;
+    private int gcThreshold = GC_THRESHOLD;
+
+    private final int[] cacheF = new int[CACHE_SIZE];
+    private final int[] cacheG = new int[CACHE_SIZE];
+    private final int[] cacheH = new int[CACHE_SIZE];
+    private final int[] cacheResult = new int[CACHE_SIZE];
+
+    /**
+     * Constructs an empty manager. Variables are ordered by first use.
+     */
+    public BddManager() {
+        level = new int[INITIAL_NODES];
+        low = new int[INITIAL_NODES];
+        high = new int[INITIAL_NODES];
+        refs = new int[INITIAL_NODES];
+        next = new int[INITIAL_NODES];
+        buckets = new int[INITIAL_NODES];
+        Arrays.fill(buckets, -1);
+        Arrays.fill(cacheF, -1);
+        for (int terminal = FALSE; terminal <= TRUE; terminal++) {
+            level[terminal] = Integer.MAX_VALUE;
+            low[terminal] = terminal;
+            high[terminal] = terminal;
+            refs[terminal] = 1;
+        }
+        nodeCount = 2;
+        liveNodes = 2;
+    }
+
+    /**
+     * Constructs a manager with a fixed initial variable order.
+     * Good orders place related variables next to each other and can shrink BDDs exponentially.
+     *
+     * @param order The variable names, from the top of the diagram to the bottom.
+     */
+    public BddManager(List<String> order) {
+        this();
+        for (String name : order) {
+            levelOf(name);
+        }
+    }
+
+    /**
+     * Returns the constant BDD with the given value.
+     *
+     * @param value The boolean value.
+     * @return The constant BDD.
+     */
+    public Bdd constant(boolean value) {
+        return handle(value ? TRUE : FALSE);
+    }
+
+    /**
+     * Returns the BDD of a single variable.
+     *
+     * @param name The variable name.
+     * @return The BDD that is true exactly when the variable is true.
+     */
+    public Bdd variable(String name) {
+        collectIfNeeded();
+        return handle(mk(levelOf(name), FALSE, TRUE));
+    }
+
+    /**
+     * Converts an expression to a BDD. Shared sub-expressions are converted once.
+     *
+     * @param expression The expression to convert.
+     * @return The BDD of the expression.
+     */
+    public Bdd fromExpression(Expression expression) {
+        collectIfNeeded();
+        return handle(build(expression, new IdentityHashMap<>()));
+    }
+
+    /**
+     * Returns the variable names in the order of the diagram levels.
+     *
+     * @return The list of variable names.
+     */
+    public List<String> getVariables() {
+        return List.copyOf(names);
+    }
+
+    /**
+     * Runs a garbage collection, reclaiming every node that is not reachable from a live BDD.
+     *
+     * @return The number of live nodes after the collection, including the two terminals.
+     */
+    public int collect() {
+        drainReleased();
+        boolean[] marked = new boolean[nodeCount];
+        int[] stack = new int[nodeCount];
+        int top = 0;
+        for (int node = 0; node < nodeCount; node++) {
+            if (refs[node] > 0 && !marked[node]) {
+                marked[node] = true;
+                stack[top++] = node;
+                while (top > 0) {
+                    int current = stack[--top];
+                    if (current > TRUE) {
+                        for (int child : new int[] {low[current], high[current]}) {
+                            if (!marked[child]) {
+                                marked[child] = true;
+                                stack[top++] = child;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        Arrays.fill(buckets, -1);
+        freeHead = -1;
+        liveNodes = 2;
+        for (int node = nodeCount - 1; node > TRUE; node--) {
+            if (marked[node]) {
+                insert(node);
+                liveNodes++;
+            } else {
+                level[node] = -1;
+                next[node] = freeHead;
+                freeHead = node;
+            }
+        }
+        Arrays.fill(cacheF, -1);
+        return liveNodes;
+    }
+
+    /**
+     * Returns the number of nodes currently allocated, including unreachable ones not yet collected.
+     *
+     * @return The number of allocated nodes.
+     */
+    public int size() {
+        return liveNodes;
+    }
+
+    /**
+     * Computes if-then-else: the function that is g where f is true and h where f is false.
+     * Every binary operation is an instance of ITE.
+     *
+     * @param f The condition node.
+     * @param g The node used where f is true.
+     * @param h The node used where f is false.
+     * @return The resulting node.
+     */
+    int ite(int f, int g, int h) {
+        if (f == TRUE) {
+            return g;
+        }
+        if (f == FALSE) {
+            return h;
+        }
+        if (g == h) {
+            return g;
+        }
+        if (g == TRUE && h == FALSE) {
+            return f;
+        }
+        int slot = cacheSlot(f, g, h);
+        if (cacheF[slot] == f && cacheG[slot] == g && cacheH[slot] == h) {
+            return cacheResult[slot];
+        }
+        int top = Math.min(level[f], Math.min(level[g], level[h]));
+        int lowResult = ite(cofactor(f, top, false), cofactor(g, top, false), cofactor(h, top, false));
+        int highResult = ite(cofactor(f, top, true), cofactor(g, top, true), cofactor(h, top, true));
+        int result = mk(top, lowResult, highResult);
+        cacheF[slot] = f;
+        cacheG[slot] = g;
+        cacheH[slot] = h;
+        cacheResult[slot] = result;
+        return result;
+    }
+
+    /**
+     * Returns the negation of a node.
+     *
+     * @param f The node.
+     * @return The node of the negated function.
+     */
+    int not(int f) {
+        return ite(f, FALSE, TRUE);
+    }
+
+    /**
+     * Restricts a variable of a node to a constant.
+     *
+     * @param f        The node.
+     * @param variable The level of the variable.
+     * @param value    The constant value of the variable.
+     * @param memo     The results computed so far for this restriction.
+     * @return The node of the restricted function.
+     */
+    int restrict(int f, int variable, boolean value, Map<Integer, Integer> memo) {
+        if (level[f] > variable) {
+            return f;
+        }
+        if (level[f] == variable) {
+            return value ? high[f] : low[f];
+        }
+        Integer known = memo.get(f);
+        if (known != null) {
+            return known;
+        }
+        int result = mk(level[f], restrict(low[f], variable, value, memo), restrict(high[f], variable, value, memo));
+        memo.put(f, result);
+        return result;
+    }
+
+    /**
+     * Counts the satisfying assignments of a node over all the variables of the manager.
+     *
+     * @param f The node.
+     * @return The number of satisfying assignments.
+     */
+    BigInteger satCount(int f) {
+        return satCount(f, new HashMap<>()).shiftLeft(depth(f));
+    }
+
+    /**
+     * Finds one satisfying assignment of a node.
+     *
+     * @param f The node, which must not be FALSE.
+     * @return A map from the variables on the chosen path to their values.
+     */
+    Map<String, Boolean> anySat(int f) {
+        Map<String, Boolean> model = new HashMap<>();
+        int node = f;
+        while (node > TRUE) {
+            boolean value = low[node] == FALSE;
+            model.put(names.get(level[node]), value);
+            node = value ? high[node] : low[node];
+        }
+        return model;
+    }
+
+    /**
+     * Converts a node back to an expression by Shannon expansion on every node.
+     * Nodes shared in the diagram are shared in the resulting expression.
+     *
+     * @param f    The node.
+     * @param memo The expressions built so far.
+     * @return An expression equivalent to the node.
+     */
+    Expression toExpression(int f, Map<Integer, Expression> memo) {
+        if (f == TRUE || f == FALSE) {
+            return new Val(f == TRUE);
+        }
+        Expression known = memo.get(f);
+        if (known != null) {
+            return known;
+        }
+        Expression variable = new Var(names.get(level[f]));
+        Expression result;
+        if (low[f] == FALSE) {
+            result = high[f] == TRUE ? variable : new And(variable, toExpression(high[f], memo));
+        } else if (high[f] == FALSE) {
+            Expression negated = new Not(variable);
+            result = low[f] == TRUE ? negated : new And(negated, toExpression(low[f], memo));
+        } else if (low[f] == TRUE) {
+            result = new Or(new Not(variable), toExpression(high[f], memo));
+        } else if (high[f] == TRUE) {
+            result = new Or(variable, toExpression(low[f], memo));
+        } else {
+            result = new Or(new And(variable, toExpression(high[f], memo)),
+                    new And(new Not(variable), toExpression(low[f], memo)));
+        }
+        memo.put(f, result);
+        return result;
+    }
+
+    /**
+     * Returns the level of a variable, registering it at the bottom of the order if it is new.
+     *
+     * @param name The variable name.
+     * @return The level of the variable.
+     */
+    int levelOf(String name) {
+        Integer known = levels.get(name);
+        if (known != null) {
+            return known;
+        }
+        levels.put(name, names.size());
+        names.add(name);
+        return names.size() - 1;
+    }
+
+    /**
+     * Returns the level of a variable without registering it.
+     *
+     * @param name The variable name.
+     * @return The level of the variable, or -1 if it is unknown.
+     */
+    int existingLevel(String name) {
+        Integer known = levels.get(name);
+        return known == null ? -1 : known;
+    }
+
+    /**
+     * Wraps a node in a handle that keeps it alive until the handle is garbage collected.
+     *
+     * @param node The node.
+     * @return The BDD handle.
+     */
+    Bdd handle(int node) {
+        refs[node]++;
+        Bdd bdd = new Bdd(this, node);
+        CLEANER.register(bdd, () -> released.add(node));
+        return bdd;
+    }
+
+    /**
+     * Runs a garbage collection if the number of nodes has grown past the threshold.
+     * Only called between top-level operations, when every result in use is held by a handle.
+     */
+    void collectIfNeeded() {
+        if (liveNodes > gcThreshold) {
+            if (collect() > gcThreshold / 2) {
+                gcThreshold *= 2;
+            }
+        }
+    }
+
+    /**
+     * Builds the node of an expression, converting every operand before the node using it.
+     * The expression is walked with an explicit stack, so arbitrarily deep expressions are supported.
+     *
+     * @param expression The expression.
+     * @param memo       The nodes built so far, by expression instance.
+     * @return The node of the expression.
+     */
+    private int build(Expression expression, Map<Expression, Integer> memo) {
+        Deque<Expression> stack = new ArrayDeque<>();
+        stack.push(expression);
+        while (!stack.isEmpty()) {
+            Expression current = stack.peek();
+            if (memo.containsKey(current)) {
+                stack.pop();
+                continue;
+            }
+            int result;
+            switch (current.getType()) {
+                case "VAL":
+                    result = ((Val) current).getValue() ? TRUE : FALSE;
+                    break;
+                case "VAR":
+                    result = mk(levelOf(((Var) current).getVariable()), FALSE, TRUE);
+                    break;
+                case "NOT":
+                    Integer operand = memo.get(((Not) current).getExpression());
+                    if (operand == null) {
+                        stack.push(((Not) current).getExpression());
+                        continue;
+                    }
+                    result = not(operand);
+                    break;
+                default:
+                    BinaryExpression binary = (BinaryExpression) current;
+                    Integer one = memo.get(binary.getExpressionOne());
+                    Integer two = memo.get(binary.getExpressionTwo());
+                    if (one == null || two == null) {
+                        if (two == null) {
+                            stack.push(binary.getExpressionTwo());
+                        }
+                        if (one == null) {
+                            stack.push(binary.getExpressionOne());
+                        }
+                        continue;
+                    }
+                    result = apply(current.getType(), one, two);
+                    break;
+            }
+            stack.pop();
+            memo.put(current, result);
+        }
+        return memo.get(expression);
+    }
+
+    /**
+     * Applies a binary operation, given by its expression type, to two nodes.
+     *
+     * @param type The type of the operation, as returned by getType().
+     * @param one  The first operand.
+     * @param two  The second operand.
+     * @return The resulting node.
+     */
+    int apply(String type, int one, int two) {
+        switch (type) {
+            case "AND":
+                return ite(one, two, FALSE);
+            case "OR":
+                return ite(one, TRUE, two);
+            case "XOR":
+                return ite(one, not(two), two);
+            case "NAND":
+                return ite(one, not(two), TRUE);
+            case "NOR":
+                return ite(one, FALSE, not(two));
+            case "XNOR":
+                return ite(one, two, not(two));
+            default:
+                throw new IllegalArgumentException("Unknown expression type: " + type);
+        }
+    }
+
+    /**
+     * Returns the cofactor of a node with respect to the variable at the given level.
+     *
+     * @param f        The node.
+     * @param variable The level of the variable.
+     * @param value    The value of the variable.
+     * @return The cofactor node.
+     */
+    private int cofactor(int f, int variable, boolean value) {
+        if (level[f] != variable) {
+            return f;
+        }
+        return value ? high[f] : low[f];
+    }
+
+    /**
+     * Returns the unique node with the given level and children, creating it if needed.
+     *
+     * @param variable  The level of the variable.
+     * @param lowChild  The child where the variable is false.
+     * @param highChild The child where the variable is true.
+     * @return The node.
+     */
+    private int mk(int variable, int lowChild, int highChild) {
+        if (lowChild == highChild) {
+            return lowChild;
+        }
+        for (int node = buckets[bucket(variable, lowChild, highChild)]; node != -1; node = next[node]) {
+            if (level[node] == variable && low[node] == lowChild && high[node] == highChild) {
+                return node;
+            }
+        }
+        int node = allocate();
+        level[node] = variable;
+        low[node] = lowChild;
+        high[node] = highChild;
+        refs[node] = 0;
+        insert(node);
+        liveNodes++;
+        return node;
+    }
+
+    /**
+     * Takes a node from the free list, growing the arrays if there is none.
+     *
+     * @return The index of a free node.
+     */
+    private int allocate() {
+        if (freeHead != -1) {
+            int node = freeHead;
+            freeHead = next[node];
+            return node;
+        }
+        if (nodeCount == level.length) {
+            int capacity = level.length * 2;
+            level = Arrays.copyOf(level, capacity);
+            low = Arrays.copyOf(low, capacity);
+            high = Arrays.copyOf(high, capacity);
+            refs = Arrays.copyOf(refs, capacity);
+            next = Arrays.copyOf(next, capacity);
+            buckets = new int[capacity];
+            Arrays.fill(buckets, -1);
+            for (int node = TRUE + 1; node < nodeCount; node++) {
+                if (level[node] >= 0) {
+                    insert(node);
+                }
+            }
+        }
+        return nodeCount++;
+    }
+
+    /**
+     * Links a node into its unique table bucket.
+     *
+     * @param node The node.
+     */
+    private void insert(int node) {
+        int bucket = bucket(level[node], low[node], high[node]);
+        next[node] = buckets[bucket];
+        buckets[bucket] = node;
+    }
+
+    /**
+     * Returns the unique table bucket of a node triple.
+     *
+     * @param variable  The level of the variable.
+     * @param lowChild  The low child.
+     * @param highChild The high child.
+     * @return The bucket index.
+     */
+    private int bucket(int variable, int lowChild, int highChild) {
+        int hash = variable * HASH_PRIME_ONE + lowChild * HASH_PRIME_TWO + highChild;
+        return (hash ^ (hash >>> 16)) & (buckets.length - 1);
+    }
+
+    /**
+     * Returns the computed cache slot of an ITE triple.
+     *
+     * @param f The condition node.
+     * @param g The then node.
+     * @param h The else node.
+     * @return The cache slot.
+     */
+    private int cacheSlot(int f, int g, int h) {
+        int hash = f * HASH_PRIME_ONE + g * HASH_PRIME_TWO + h;
+        return (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+    }
+
+    /**
+     * Counts the satisfying assignments of a node over the variables from its level downwards.
+     *
+     * @param f    The node.
+     * @param memo The counts computed so far.
+     * @return The number of satisfying assignments.
+     */
+    private BigInteger satCount(int f, Map<Integer, BigInteger> memo) {
+        if (f == FALSE) {
+            return BigInteger.ZERO;
+        }
+        if (f == TRUE) {
+            return BigInteger.ONE;
+        }
+        BigInteger known = memo.get(f);
+        if (known != null) {
+            return known;
+        }
+        BigInteger lowCount = satCount(low[f], memo).shiftLeft(depth(low[f]) - level[f] - 1);
+        BigInteger highCount = satCount(high[f], memo).shiftLeft(depth(high[f]) - level[f] - 1);
+        BigInteger result = lowCount.add(highCount);
+        memo.put(f, result);
+        return result;
+    }
+
+    /**
+     * Returns the level of a node, counting the terminals as the level below every variable.
+     *
+     * @param f The node.
+     * @return The level of the node.
+     */
+    private int depth(int f) {
+        return f <= TRUE ? names.size() : level[f];
+    }
+
+    /**
+     * Releases the nodes of handles that were garbage collected.
+     */
+    private void drainReleased() {
+        for (Integer node = released.poll(); node != null; node = released.poll()) {
+            refs[node]--;
+        }
+    }
+}
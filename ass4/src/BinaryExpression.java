@@ -1,13 +1,16 @@
 // Nimrod Netzer 322394545
 
 import java.util.Map;
+import java.util.Objects;
 
 /**
  * Abstract class representing a binary expression.
+ * The operands are fixed at construction, so the cached hash and variable set never go stale.
  */
 public abstract class BinaryExpression extends BaseExpression {
-    private Expression expressionOne;
-    private Expression expressionTwo;
+    private final Expression expressionOne;
+    private final Expression expressionTwo;
+    private final int hash;
 
     /**
      * Constructs a binary expression with two sub-expressions.
@@ -18,6 +21,9 @@ public abstract class BinaryExpression extends BaseExpression {
     public BinaryExpression(Expression expressionOne, Expression expressionTwo) {
         this.expressionOne = expressionOne;
         this.expressionTwo = expressionTwo;
+        this.hash = computeHash();
+        addUse(expressionOne);
+        addUse(expressionTwo);
     }
 
     /**
@@ -39,21 +45,19 @@ public abstract class BinaryExpression extends BaseExpression {
     }
 
     /**
-     * Sets the first sub-expression.
+     * Returns the operator written between the operands, with its surrounding spaces.
      *
-     * @param expressionOne The new first sub-expression.
+     * @return The infix operator of the expression.
      */
-    public void setExpressionOne(Expression expressionOne) {
-        this.expressionOne = expressionOne;
-    }
+    protected abstract String getOperator();
 
     /**
-     * Sets the second sub-expression.
+     * Computes the variables of the expression as the union of the variables of both sub-expressions.
      *
-     * @param expressionTwo The new second sub-expression.
+     * @return The variable set of the expression.
      */
-    public void setExpressionTwo(Expression expressionTwo) {
-        this.expressionTwo = expressionTwo;
+    protected VariableSet computeVariableSet() {
+        return VariableSet.union(expressionOne.getVariableSet(), expressionTwo.getVariableSet());
     }
 
     /**
@@ -69,4 +73,47 @@ public abstract class BinaryExpression extends BaseExpression {
             throw new Exception("Error evaluating expression: " + e.getMessage());
         }
     }
+
+    /**
+     * Checks if this expression is structurally equal to another object: the same operation
+     * over equal sub-expressions. The cached hash codes are compared first, and identical
+     * sub-expressions are matched by reference, so comparing interned expressions is O(1). The
+     * sub-expressions are compared over an explicit stack, so deep expressions are supported.
+     *
+     * @param obj The object to compare with.
+     * @return True if the objects are structurally equal, false otherwise.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        BinaryExpression other = (BinaryExpression) obj;
+        return hash == other.hash && equalOperands(this, other);
+    }
+
+    /**
+     * Returns the hash code of this expression, computed once from the operation and the
+     * hash codes of the sub-expressions.
+     *
+     * @return A hash code value for this expression.
+     */
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * Computes the structural hash code of this expression.
+     *
+     * @return The structural hash code.
+     */
+    private int computeHash() {
+        int result = getType().hashCode();
+        result = 31 * result + Objects.hashCode(expressionOne);
+        return 31 * result + Objects.hashCode(expressionTwo);
+    }
 }
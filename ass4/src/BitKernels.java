@@ -0,0 +1,227 @@
+// Nimrod Netzer 322394545
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.management.ManagementFactory;
+
+/**
+ * The bitwise kernels of the bit-parallel evaluators: every logical operation applied to a range
+ * of words.
+ * When the JVM runs with --add-modules jdk.incubator.vector and its preferred LongVector species
+ * is wider than a word, the kernels run on VectorKernels, 256 or 512 bits per step on AVX2 or
+ * AVX-512 hardware. Otherwise they fall back to scalar loops: single counted loops over
+ * independent words with no branches, which HotSpot's superword pass may still vectorize.
+ * VectorKernels is looked up by name, and build.xml compiles it apart from the other sources, so
+ * compiling every other file without the incubator module builds the scalar loops alone.
+ * {@link #isVectorized()} and {@link #vectorBits()} report the backend chosen by the probe.
+ */
+public final class BitKernels {
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    private static final String VECTOR_KERNELS = "VectorKernels";
+    private static final String SUPERWORD_OPTION = "UseSuperWord";
+    private static final String VECTOR_SIZE_OPTION = "MaxVectorSize";
+    private static final MethodHandle VECTOR_NOT = vectorKernel("not",
+            MethodType.methodType(void.class, long[].class, int.class, long[].class, int.class, int.class));
+    private static final MethodHandle VECTOR_APPLY = vectorKernel("apply", MethodType.methodType(void.class,
+            int.class, long[].class, int.class, long[].class, int.class, long[].class, int.class, int.class));
+    private static final int VECTOR_BITS = probeVector();
+    private static final boolean VECTORIZED = VECTOR_BITS > Long.SIZE;
+
+    /**
+     * Private constructor, this class only has static methods.
+     */
+    private BitKernels() {
+    }
+
+    /**
+     * Checks whether the kernels run on the Vector API backend.
+     *
+     * @return true if the LongVector backend is in use, false for the scalar loops.
+     */
+    public static boolean isVectorized() {
+        return VECTORIZED;
+    }
+
+    /**
+     * Returns the number of bits a kernel processes per step of its main loop.
+     *
+     * @return The LongVector width in bits, or 64 for the scalar loops.
+     */
+    public static int vectorBits() {
+        return VECTORIZED ? VECTOR_BITS : Long.SIZE;
+    }
+
+    /**
+     * Returns the widest vector HotSpot's superword pass may use for the scalar loops.
+     * This is the MaxVectorSize option, an upper bound: the JIT picks the width per loop and may
+     * not vectorize a loop at all, so it is not the width the scalar kernels actually run at.
+     *
+     * @return The limit in bits, or 64 if loops are not vectorized or the JVM is not HotSpot.
+     */
+    public static int maxSuperWordBits() {
+        try {
+            HotSpotDiagnosticMXBean hotSpot = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+            if (hotSpot == null || !Boolean.parseBoolean(hotSpot.getVMOption(SUPERWORD_OPTION).getValue())) {
+                return Long.SIZE;
+            }
+            int bytes = Integer.parseInt(hotSpot.getVMOption(VECTOR_SIZE_OPTION).getValue());
+            return Math.max(Long.SIZE, bytes * Byte.SIZE);
+        } catch (RuntimeException | LinkageError e) {
+            return Long.SIZE;
+        }
+    }
+
+    /**
+     * Negates a range of words.
+     *
+     * @param in        The operand.
+     * @param inOffset  The first word of the operand.
+     * @param out       The destination, which may be the operand.
+     * @param outOffset The first word of the destination.
+     * @param length    The number of words.
+     */
+    public static void not(long[] in, int inOffset, long[] out, int outOffset, int length) {
+        if (VECTORIZED) {
+            try {
+                VECTOR_NOT.invokeExact(in, inOffset, out, outOffset, length);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new IllegalStateException(t);
+            }
+        } else {
+            scalarNot(in, inOffset, out, outOffset, length);
+        }
+    }
+
+    /**
+     * Negates a range of words one word per step.
+     *
+     * @param in        The operand.
+     * @param inOffset  The first word of the operand.
+     * @param out       The destination, which may be the operand.
+     * @param outOffset The first word of the destination.
+     * @param length    The number of words.
+     */
+    static void scalarNot(long[] in, int inOffset, long[] out, int outOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            out[outOffset + i] = ~in[inOffset + i];
+        }
+    }
+
+    /**
+     * Applies a binary operation to a range of words.
+     *
+     * @param op        The opcode of the operation, one of the binary {@link ExpressionGraph} opcodes.
+     * @param one       The first operand.
+     * @param oneOffset The first word of the first operand.
+     * @param two       The second operand.
+     * @param twoOffset The first word of the second operand.
+     * @param out       The destination, which may be one of the operands at the same offset.
+     * @param outOffset The first word of the destination.
+     * @param length    The number of words.
+     */
+    public static void apply(int op, long[] one, int oneOffset, long[] two, int twoOffset, long[] out,
+                             int outOffset, int length) {
+        if (VECTORIZED) {
+            try {
+                VECTOR_APPLY.invokeExact(op, one, oneOffset, two, twoOffset, out, outOffset, length);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new IllegalStateException(t);
+            }
+        } else {
+            scalarApply(op, one, oneOffset, two, twoOffset, out, outOffset, length);
+        }
+    }
+
+    /**
+     * Applies a binary operation to a range of words one word per step.
+     *
+     * @param op        The opcode of the operation, one of the binary {@link ExpressionGraph} opcodes.
+     * @param one       The first operand.
+     * @param oneOffset The first word of the first operand.
+     * @param two       The second operand.
+     * @param twoOffset The first word of the second operand.
+     * @param out       The destination, which may be one of the operands at the same offset.
+     * @param outOffset The first word of the destination.
+     * @param length    The number of words.
+     */
+    static void scalarApply(int op, long[] one, int oneOffset, long[] two, int twoOffset, long[] out,
+                            int outOffset, int length) {
+        switch (op) {
+            case ExpressionGraph.AND:
+                for (int i = 0; i < length; i++) {
+                    out[outOffset + i] = one[oneOffset + i] & two[twoOffset + i];
+                }
+                break;
+            case ExpressionGraph.OR:
+                for (int i = 0; i < length; i++) {
+                    out[outOffset + i] = one[oneOffset + i] | two[twoOffset + i];
+                }
+                break;
+            case ExpressionGraph.XOR:
+                for (int i = 0; i < length; i++) {
+                    out[outOffset + i] = one[oneOffset + i] ^ two[twoOffset + i];
+                }
+                break;
+            case ExpressionGraph.NAND:
+                for (int i = 0; i < length; i++) {
+                    out[outOffset + i] = ~(one[oneOffset + i] & two[twoOffset + i]);
+                }
+                break;
+            case ExpressionGraph.NOR:
+                for (int i = 0; i < length; i++) {
+                    out[outOffset + i] = ~(one[oneOffset + i] | two[twoOffset + i]);
+                }
+                break;
+            case ExpressionGraph.XNOR:
+                for (int i = 0; i < length; i++) {
+                    out[outOffset + i] = ~(one[oneOffset + i] ^ two[twoOffset + i]);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown opcode: " + op);
+        }
+    }
+
+    /**
+     * Probes the Vector API backend.
+     *
+     * @return The preferred LongVector width in bits, or 64 if the backend is not available.
+     */
+    private static int probeVector() {
+        MethodHandle bits = vectorKernel("vectorBits", MethodType.methodType(int.class));
+        if (bits == null || VECTOR_NOT == null || VECTOR_APPLY == null) {
+            return Long.SIZE;
+        }
+        try {
+            return (int) bits.invokeExact();
+        } catch (Throwable t) {
+            return Long.SIZE;
+        }
+    }
+
+    /**
+     * Looks up a kernel of VectorKernels. The incubator module must be in the boot layer, which
+     * takes --add-modules jdk.incubator.vector, before the class may be loaded, and the class is
+     * missing altogether when VectorKernels.java was not compiled.
+     *
+     * @param name The name of the kernel.
+     * @param type The type of the kernel.
+     * @return The kernel, or null if the backend is not available.
+     */
+    private static MethodHandle vectorKernel(String name, MethodType type) {
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+            return null;
+        }
+        try {
+            return MethodHandles.lookup().findStatic(Class.forName(VECTOR_KERNELS), name, type);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+// Nimrod Netzer 322394545
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evaluates expressions over bit-vectors, so that every bit position is a separate assignment.
+ * A single pass over the flattened graph of the expression evaluates 64 assignments per word,
+ * with every logical operation mapped to the matching bitwise operation.
+ */
+public final class BitParallelEvaluator {
+    /**
+     * The number of rows (assignments) held by a single word.
+     */
+    public static final int WORD_BITS = Long.SIZE;
+    static final int WORD_SHIFT = 6;
+    private static final int MAX_TABLE_VARIABLES = 36;
+    static final int TABLE_BLOCK_WORDS = 1024;
+
+    /**
+     * The bit patterns of the six lowest variables inside a truth table word.
+     * Bit r of PATTERNS[i] is bit i of the row number r.
+     */
+    private static final long[] PATTERNS = {
+            0xAAAAAAAAAAAAAAAAL, 0xCCCCCCCCCCCCCCCCL, 0xF0F0F0F0F0F0F0F0L,
+            0xFF00FF00FF00FF00L, 0xFFFF0000FFFF0000L, 0xFFFFFFFF00000000L
+    };
+
+    /**
+     * Private constructor, this class only has static methods.
+     */
+    private BitParallelEvaluator() {
+    }
+
+    /**
+     * Evaluates the expression for 64 assignments at once.
+     * Bit i of each variable's word is its value in the i-th assignment.
+     * The expression is evaluated over its flattened graph, one word per node, so shared
+     * sub-expressions are evaluated once and arbitrarily deep expressions are supported.
+     *
+     * @param expression The expression to evaluate.
+     * @param assignment A map from variable names to their 64 values.
+     * @return A word where bit i is the result of the i-th assignment.
+     * @throws Exception If the expression contains a variable not in the assignment.
+     */
+    public static long evaluate(Expression expression, Map<String, Long> assignment) throws Exception {
+        ExpressionGraph graph = ExpressionGraph.of(expression);
+        List<String> variables = graph.getVariables();
+        int root = graph.root(0);
+        long[] values = new long[root + 1];
+        for (int node = 0; node <= root; node++) {
+            int op = graph.op(node);
+            int left = graph.left(node);
+            switch (op) {
+                case ExpressionGraph.VAL:
+                    values[node] = left == 1 ? -1L : 0L;
+                    break;
+                case ExpressionGraph.VAR:
+                    Long value = assignment.get(variables.get(left));
+                    if (value == null) {
+                        throw new Exception("Variable '" + variables.get(left) + "' is not assigned");
+                    }
+                    values[node] = value;
+                    break;
+                case ExpressionGraph.NOT:
+                    values[node] = ~values[left];
+                    break;
+                default:
+                    values[node] = apply(op, values[left], values[graph.right(node)]);
+                    break;
+            }
+        }
+        return values[root];
+    }
+
+    /**
+     * Evaluates the expression for 64*k assignments at once.
+     * Every variable is bound to a bit-vector of k words, and all the vectors must have the same length.
+     * The words are evaluated by a {@link ColumnarEvaluator}, which runs the bit kernels over the
+     * flattened graph in cache-sized blocks with reused buffers.
+     *
+     * @param expression The expression to evaluate.
+     * @param assignment A map from variable names to their bit-vectors.
+     * @param words      The length k of every bit-vector.
+     * @return A bit-vector of k words where bit i is the result of the i-th assignment.
+     * @throws Exception If the expression contains a variable not in the assignment.
+     */
+    public static long[] evaluate(Expression expression, Map<String, long[]> assignment, int words)
+            throws Exception {
+        ColumnarEvaluator evaluator = ColumnarEvaluator.of(expression);
+        for (String variable : evaluator.getVariables()) {
+            long[] value = assignment.get(variable);
+            if (value != null && value.length != words) {
+                throw new IllegalArgumentException("Variable '" + variable + "' has " + value.length
+                        + " words instead of " + words);
+            }
+        }
+        return evaluator.evaluate(assignment, (long) words * WORD_BITS);
+    }
+
+    /**
+     * Computes the full truth table of the expression over its variables.
+     * Row r assigns bit i of r to the i-th variable of getVariables(), and the result of
+     * row r is bit (r % 64) of word (r / 64).
+     *
+     * @param expression The expression to tabulate.
+     * @return The truth table as a bit-vector of max(1, 2^n / 64) words.
+     * @throws Exception If evaluation encounters an error.
+     */
+    public static long[] truthTable(Expression expression) throws Exception {
+        return truthTable(expression, expression.getVariables());
+    }
+
+    /**
+     * Computes the full truth table of the expression over the given variable order.
+     *
+     * @param expression The expression to tabulate.
+     * @param variables  The variables, where the i-th variable is bit i of the row number.
+     * @return The truth table as a bit-vector of max(1, 2^n / 64) words.
+     * @throws Exception If the expression contains a variable not in the list.
+     */
+    public static long[] truthTable(Expression expression, List<String> variables) throws Exception {
+        long[] table = new long[tableWords(variables.size())];
+        ColumnarEvaluator evaluator = ColumnarEvaluator.of(expression);
+        for (int first = 0; first < table.length; first += TABLE_BLOCK_WORDS) {
+            int words = Math.min(TABLE_BLOCK_WORDS, table.length - first);
+            long[] block = evaluator.evaluate(tableColumns(variables, first, words), (long) words * WORD_BITS);
+            System.arraycopy(block, 0, table, first, words);
+        }
+        if (variables.size() < WORD_SHIFT) {
+            table[0] &= (1L << (1 << variables.size())) - 1;
+        }
+        return table;
+    }
+
+    /**
+     * Returns the number of words in the truth table of n variables.
+     *
+     * @param variables The number of variables n.
+     * @return The number of words.
+     */
+    static int tableWords(int variables) {
+        if (variables > MAX_TABLE_VARIABLES) {
+            throw new IllegalArgumentException("Too many variables for a truth table: " + variables);
+        }
+        return variables <= WORD_SHIFT ? 1 : 1 << (variables - WORD_SHIFT);
+    }
+
+    /**
+     * Builds the truth table columns of every variable for a range of table words.
+     *
+     * @param variables The variables, where the i-th variable is bit i of the row number.
+     * @param firstWord The first table word of the range.
+     * @param words     The number of words in the range.
+     * @return A map from every variable to its bit-vector over the range.
+     */
+    static Map<String, long[]> tableColumns(List<String> variables, long firstWord, int words) {
+        Map<String, long[]> columns = new HashMap<>();
+        for (int i = 0; i < variables.size(); i++) {
+            long[] column = new long[words];
+            if (i < WORD_SHIFT) {
+                fill(column, PATTERNS[i]);
+            } else {
+                for (int w = 0; w < words; w++) {
+                    column[w] = (((firstWord + w) >>> (i - WORD_SHIFT)) & 1) == 0 ? 0L : -1L;
+                }
+            }
+            columns.put(variables.get(i), column);
+        }
+        return columns;
+    }
+
+    /**
+     * Applies a binary operation to two words.
+     *
+     * @param op  The binary opcode.
+     * @param one The first operand.
+     * @param two The second operand.
+     * @return The result word.
+     */
+    private static long apply(int op, long one, long two) {
+        switch (op) {
+            case ExpressionGraph.AND:
+                return one & two;
+            case ExpressionGraph.OR:
+                return one | two;
+            case ExpressionGraph.XOR:
+                return one ^ two;
+            case ExpressionGraph.NAND:
+                return ~(one & two);
+            case ExpressionGraph.NOR:
+                return ~(one | two);
+            case ExpressionGraph.XNOR:
+                return ~(one ^ two);
+            default:
+                throw new IllegalArgumentException("Unknown opcode: " + op);
+        }
+    }
+
+    /**
+     * Fills a bit-vector with a constant word.
+     *
+     * @param vector The bit-vector to fill.
+     * @param word   The word to repeat.
+     * @return The filled bit-vector.
+     */
+    private static long[] fill(long[] vector, long word) {
+        Arrays.fill(vector, word);
+        return vector;
+    }
+}
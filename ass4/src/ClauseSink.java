@@ -0,0 +1,16 @@
+// Nimrod Netzer 322394545
+
+/**
+ * A destination for clauses in conjunctive normal form.
+ * Variables are positive integers and a literal is a variable or its negation, as in DIMACS.
+ */
+public interface ClauseSink {
+
+    /**
+     * Adds a clause, the disjunction of its literals.
+     * The sink must not keep the array, so callers may reuse it.
+     *
+     * @param literals The literals of the clause.
+     */
+    void addClause(int... literals);
+}
@@ -0,0 +1,297 @@
+// Nimrod Netzer 322394545
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evaluates an expression over a columnar dataset: one bit column per variable, where bit r of
+ * every column is the value of the variable in row r.
+ * Rows are processed in blocks of {@value #BLOCK_WORDS} words, running every node of the
+ * expression graph over the block with a bitwise loop before moving to the next block. Variables
+ * are read from their columns in place, and intermediate results are kept in block buffers that
+ * are reused as soon as their last reader runs (kernels work word by word, so a node may write
+ * over its own operand), so the working set stays in the cache no matter how many rows there are.
+ * Instances are immutable and safe to share between threads.
+ */
+public final class ColumnarEvaluator {
+    /**
+     * The number of words processed per node before moving to the next block.
+     */
+    public static final int BLOCK_WORDS = 512;
+    private static final int LEAF = -1;
+    private static final long[] ONES = new long[BLOCK_WORDS];
+    private static final long[] ZEROS = new long[BLOCK_WORDS];
+
+    static {
+        Arrays.fill(ONES, -1L);
+    }
+
+    private final ExpressionGraph graph;
+    private final int[] ops;
+    private final int[] lefts;
+    private final int[] rights;
+    private final int[] buffers;
+    private final int bufferCount;
+    private final int root;
+
+    /**
+     * Constructs an evaluator over a flattened graph, assigning block buffers to its nodes.
+     *
+     * @param graph The graph of the expression.
+     */
+    private ColumnarEvaluator(ExpressionGraph graph) {
+        this.graph = graph;
+        this.root = graph.root(0);
+        int size = root + 1;
+        this.ops = new int[size];
+        this.lefts = new int[size];
+        this.rights = new int[size];
+        int[] lastUse = new int[size];
+        for (int node = 0; node < size; node++) {
+            ops[node] = graph.op(node);
+            lefts[node] = graph.left(node);
+            rights[node] = graph.right(node);
+            if (ops[node] > ExpressionGraph.VAR) {
+                lastUse[lefts[node]] = node;
+                if (rights[node] != -1) {
+                    lastUse[rights[node]] = node;
+                }
+            }
+        }
+        this.buffers = new int[size];
+        int[] free = new int[size];
+        int freeCount = 0;
+        int count = 0;
+        for (int node = 0; node < size; node++) {
+            if (ops[node] <= ExpressionGraph.VAR) {
+                buffers[node] = LEAF;
+                continue;
+            }
+            freeCount = release(lefts[node], node, lastUse, free, freeCount);
+            if (rights[node] != -1 && rights[node] != lefts[node]) {
+                freeCount = release(rights[node], node, lastUse, free, freeCount);
+            }
+            buffers[node] = freeCount > 0 ? free[--freeCount] : count++;
+        }
+        this.bufferCount = count;
+    }
+
+    /**
+     * Prepares an expression for columnar evaluation.
+     *
+     * @param expression The expression to evaluate.
+     * @return The evaluator.
+     */
+    public static ColumnarEvaluator of(Expression expression) {
+        return new ColumnarEvaluator(ExpressionGraph.of(expression));
+    }
+
+    /**
+     * Evaluates an expression over long[] columns.
+     *
+     * @param expression The expression to evaluate.
+     * @param columns    A map from every variable to its column, with row r at bit (r % 64) of word (r / 64).
+     * @param rows       The number of rows.
+     * @return The result column, with the bits after the last row cleared.
+     * @throws Exception If the expression contains a variable without a column.
+     */
+    public static long[] evaluate(Expression expression, Map<String, long[]> columns, long rows) throws Exception {
+        return of(expression).evaluate(columns, rows);
+    }
+
+    /**
+     * Evaluates the expression over long[] columns.
+     *
+     * @param columns A map from every variable to its column, with row r at bit (r % 64) of word (r / 64).
+     *                Every column must have at least ceil(rows / 64) words.
+     * @param rows    The number of rows.
+     * @return The result column, with the bits after the last row cleared.
+     * @throws Exception If the expression contains a variable without a column.
+     */
+    public long[] evaluate(Map<String, long[]> columns, long rows) throws Exception {
+        int words = words(rows);
+        List<String> variables = graph.getVariables();
+        long[][] slots = new long[variables.size()][];
+        for (int slot = 0; slot < slots.length; slot++) {
+            String variable = variables.get(slot);
+            slots[slot] = columns.get(variable);
+            if (slots[slot] == null) {
+                throw new Exception("Variable '" + variable + "' is not assigned");
+            }
+            if (slots[slot].length < words) {
+                throw new IllegalArgumentException("Variable '" + variable + "' has " + slots[slot].length
+                        + " words instead of " + words);
+            }
+        }
+        long[] result = new long[words];
+        evaluate(slots, result, words);
+        int tail = (int) (rows & (BitParallelEvaluator.WORD_BITS - 1));
+        if (tail != 0) {
+            result[words - 1] &= (1L << tail) - 1;
+        }
+        return result;
+    }
+
+    /**
+     * Evaluates the expression over BitSet columns.
+     *
+     * @param columns A map from every variable to its column, with row r at bit r.
+     * @param rows    The number of rows.
+     * @return The result column.
+     * @throws Exception If the expression contains a variable without a column.
+     */
+    public BitSet evaluate(Map<String, BitSet> columns, int rows) throws Exception {
+        int words = words(rows);
+        List<String> variables = graph.getVariables();
+        long[][] slots = new long[variables.size()][];
+        for (int slot = 0; slot < slots.length; slot++) {
+            BitSet column = columns.get(variables.get(slot));
+            if (column == null) {
+                throw new Exception("Variable '" + variables.get(slot) + "' is not assigned");
+            }
+            long[] bits = column.toLongArray();
+            slots[slot] = bits.length >= words ? bits : Arrays.copyOf(bits, words);
+        }
+        long[] result = new long[words];
+        evaluate(slots, result, words);
+        BitSet bits = BitSet.valueOf(result);
+        bits.clear(rows, words * BitParallelEvaluator.WORD_BITS);
+        return bits;
+    }
+
+    /**
+     * Returns the variables of the expression.
+     *
+     * @return The variable names.
+     */
+    public List<String> getVariables() {
+        return graph.getVariables();
+    }
+
+    /**
+     * Returns the number of block buffers the evaluation needs for intermediate results.
+     *
+     * @return The number of buffers.
+     */
+    public int bufferCount() {
+        return bufferCount;
+    }
+
+    /**
+     * Evaluates all the blocks of the columns.
+     *
+     * @param slots  The column of every variable slot.
+     * @param result The destination column.
+     * @param words  The number of words to evaluate.
+     */
+    private void evaluate(long[][] slots, long[] result, int words) {
+        long[][] blocks = new long[bufferCount][BLOCK_WORDS];
+        for (int first = 0; first < words; first += BLOCK_WORDS) {
+            evaluateBlock(slots, first, blocks, result, first, Math.min(BLOCK_WORDS, words - first));
+        }
+    }
+
+    /**
+     * Evaluates every node over one block.
+     *
+     * @param slots      The column of every variable slot.
+     * @param slotOffset The first word of the block in the variable columns.
+     * @param blocks     The block buffers.
+     * @param out        The destination of the root.
+     * @param outOffset  The first word of the block in the destination.
+     * @param length     The number of words in the block.
+     */
+    private void evaluateBlock(long[][] slots, int slotOffset, long[][] blocks, long[] out, int outOffset,
+                               int length) {
+        for (int node = 0; node <= root; node++) {
+            int op = ops[node];
+            if (op <= ExpressionGraph.VAR && node != root) {
+                continue;
+            }
+            long[] destination = node == root ? out : blocks[buffers[node]];
+            int destinationOffset = node == root ? outOffset : 0;
+            if (op == ExpressionGraph.VAL) {
+                Arrays.fill(destination, destinationOffset, destinationOffset + length, lefts[node] == 1 ? -1L : 0L);
+            } else if (op == ExpressionGraph.VAR) {
+                System.arraycopy(slots[lefts[node]], slotOffset, destination, destinationOffset, length);
+            } else if (op == ExpressionGraph.NOT) {
+                int left = lefts[node];
+                BitKernels.not(operand(left, slots, blocks), offset(left, slotOffset), destination,
+                        destinationOffset, length);
+            } else {
+                int left = lefts[node];
+                int right = rights[node];
+                BitKernels.apply(op, operand(left, slots, blocks), offset(left, slotOffset),
+                        operand(right, slots, blocks), offset(right, slotOffset), destination, destinationOffset,
+                        length);
+            }
+        }
+    }
+
+    /**
+     * Returns the offset of the current block in the array of a node.
+     *
+     * @param node       The node.
+     * @param slotOffset The first word of the block in the variable columns.
+     * @return The offset of the block.
+     */
+    private int offset(int node, int slotOffset) {
+        return ops[node] == ExpressionGraph.VAR ? slotOffset : 0;
+    }
+
+    /**
+     * Returns the array holding the current block of a node: the column of a variable, a constant
+     * block, or the buffer of an inner node.
+     *
+     * @param node   The node.
+     * @param slots  The column of every variable slot.
+     * @param blocks The block buffers.
+     * @return The array of the node.
+     */
+    private long[] operand(int node, long[][] slots, long[][] blocks) {
+        switch (ops[node]) {
+            case ExpressionGraph.VAL:
+                return lefts[node] == 1 ? ONES : ZEROS;
+            case ExpressionGraph.VAR:
+                return slots[lefts[node]];
+            default:
+                return blocks[buffers[node]];
+        }
+    }
+
+    /**
+     * Returns a buffer to the free list when a node reads its operand for the last time.
+     *
+     * @param operand   The operand.
+     * @param node      The node reading it.
+     * @param lastUse   The last reader of every node.
+     * @param free      The free buffers.
+     * @param freeCount The number of free buffers.
+     * @return The new number of free buffers.
+     */
+    private int release(int operand, int node, int[] lastUse, int[] free, int freeCount) {
+        if (buffers[operand] != LEAF && lastUse[operand] == node) {
+            free[freeCount++] = buffers[operand];
+        }
+        return freeCount;
+    }
+
+    /**
+     * Returns the number of words holding a number of rows.
+     *
+     * @param rows The number of rows.
+     * @return ceil(rows / 64).
+     */
+    private static int words(long rows) {
+        if (rows < 0) {
+            throw new IllegalArgumentException("Negative row count: " + rows);
+        }
+        long words = (rows + BitParallelEvaluator.WORD_BITS - 1) >>> BitParallelEvaluator.WORD_SHIFT;
+        if (words > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many rows: " + rows);
+        }
+        return (int) words;
+    }
+}
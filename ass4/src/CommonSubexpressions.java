@@ -0,0 +1,177 @@
+// Nimrod Netzer 322394545
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Common-subexpression elimination: rewrites an expression so that every distinct
+ * sub-expression exists once, as a shared node of a DAG.
+ * Nodes are numbered by structure bottom-up over the flattened graph of the input: a node gets
+ * the number of an earlier node with the same operation over the same operand numbers, where the
+ * operands of the commutative operations (all the binary ones) are compared as an unordered pair,
+ * so (a &amp; b) and (b &amp; a) are one node. The first occurrence of every number is kept, with its
+ * operand order. Evaluators that walk the graph, such as {@link PreparedExpression} and
+ * {@link ColumnarEvaluator}, then evaluate every shared node once.
+ */
+public final class CommonSubexpressions {
+    private static final int ID_BITS = 30;
+    private static final int OP_SHIFT = 2 * ID_BITS;
+
+    /**
+     * Private constructor, this class only has static methods.
+     */
+    private CommonSubexpressions() {
+    }
+
+    /**
+     * Eliminates the common sub-expressions of an expression.
+     *
+     * @param expression The expression.
+     * @return The shared expression and the savings.
+     */
+    public static Result eliminate(Expression expression) {
+        ExpressionGraph graph = ExpressionGraph.of(expression);
+        int root = graph.root(0);
+        List<String> variables = graph.getVariables();
+        Map<Long, Integer> numbers = new HashMap<>();
+        int[] number = new int[root + 1];
+        Expression[] distinct = new Expression[root + 1];
+        long[] treeSize = new long[root + 1];
+        int count = 0;
+        for (int node = 0; node <= root; node++) {
+            int op = graph.op(node);
+            int left = graph.left(node);
+            int right = graph.right(node);
+            long key;
+            if (op == ExpressionGraph.VAL || op == ExpressionGraph.VAR) {
+                key = (long) op << OP_SHIFT | left;
+                treeSize[node] = 1;
+            } else if (op == ExpressionGraph.NOT) {
+                key = (long) op << OP_SHIFT | number[left];
+                treeSize[node] = saturatedSum(1, treeSize[left]);
+            } else {
+                int one = Math.min(number[left], number[right]);
+                int two = Math.max(number[left], number[right]);
+                key = (long) op << OP_SHIFT | (long) one << ID_BITS | two;
+                treeSize[node] = saturatedSum(1, saturatedSum(treeSize[left], treeSize[right]));
+            }
+            Integer known = numbers.get(key);
+            if (known != null) {
+                number[node] = known;
+                continue;
+            }
+            number[node] = count;
+            numbers.put(key, count);
+            switch (op) {
+                case ExpressionGraph.VAL:
+                    distinct[count] = new Val(left == 1);
+                    break;
+                case ExpressionGraph.VAR:
+                    distinct[count] = new Var(variables.get(left));
+                    break;
+                case ExpressionGraph.NOT:
+                    distinct[count] = new Not(distinct[number[left]]);
+                    break;
+                default:
+                    distinct[count] = ExpressionGraph.binary(op, distinct[number[left]], distinct[number[right]]);
+                    break;
+            }
+            count++;
+        }
+        return new Result(distinct[number[root]], treeSize[root], root + 1, count);
+    }
+
+    /**
+     * Adds two node counts, saturating instead of overflowing on DAGs with huge tree expansions.
+     *
+     * @param one The first count.
+     * @param two The second count.
+     * @return The sum, or Long.MAX_VALUE if it overflows.
+     */
+    private static long saturatedSum(long one, long two) {
+        long sum = one + two;
+        return sum < 0 ? Long.MAX_VALUE : sum;
+    }
+
+    /**
+     * The outcome of an elimination: the shared expression and the node counts before and after.
+     */
+    public static final class Result {
+        private final Expression expression;
+        private final long treeNodes;
+        private final int inputNodes;
+        private final int outputNodes;
+
+        /**
+         * Constructs a result.
+         *
+         * @param expression  The shared expression.
+         * @param treeNodes   The number of nodes of the input written out as a tree.
+         * @param inputNodes  The number of distinct node instances of the input.
+         * @param outputNodes The number of distinct nodes of the output.
+         */
+        private Result(Expression expression, long treeNodes, int inputNodes, int outputNodes) {
+            this.expression = expression;
+            this.treeNodes = treeNodes;
+            this.inputNodes = inputNodes;
+            this.outputNodes = outputNodes;
+        }
+
+        /**
+         * Returns the expression in which every distinct sub-expression is a single node.
+         *
+         * @return The shared expression.
+         */
+        public Expression getExpression() {
+            return expression;
+        }
+
+        /**
+         * Returns the size of the input as a tree, counting every occurrence of a shared node.
+         *
+         * @return The number of tree nodes, saturated at Long.MAX_VALUE.
+         */
+        public long getTreeNodes() {
+            return treeNodes;
+        }
+
+        /**
+         * Returns the number of node instances of the input.
+         *
+         * @return The number of input nodes.
+         */
+        public int getInputNodes() {
+            return inputNodes;
+        }
+
+        /**
+         * Returns the number of nodes of the output.
+         *
+         * @return The number of distinct sub-expressions.
+         */
+        public int getOutputNodes() {
+            return outputNodes;
+        }
+
+        /**
+         * Returns the number of node instances removed.
+         *
+         * @return The input nodes minus the output nodes.
+         */
+        public int getSavedNodes() {
+            return inputNodes - outputNodes;
+        }
+
+        /**
+         * Returns a one-line report of the savings.
+         *
+         * @return The node counts of the tree, the input and the output.
+         */
+        @Override
+        public String toString() {
+            return String.format("%d tree nodes, %d -> %d nodes (%d saved, %.1f%%)", treeNodes, inputNodes,
+                    outputNodes, getSavedNodes(), inputNodes == 0 ? 0.0 : 100.0 * getSavedNodes() / inputNodes);
+        }
+    }
+}
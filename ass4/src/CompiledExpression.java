@@ -0,0 +1,106 @@
+// Nimrod Netzer 322394545
+
+import java.lang.invoke.MethodHandle;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An expression compiled into a specialized evaluator over primitive boolean slots.
+ * Each variable of the source expression is given a fixed slot index, and evaluation
+ * runs a straight-line method handle chain without boxing or map lookups.
+ */
+public final class CompiledExpression {
+    private final MethodHandle evaluator;
+    private final List<String> variables;
+    private final Map<String, Integer> slots;
+
+    /**
+     * Constructs a compiled expression.
+     *
+     * @param evaluator A method handle of type (boolean[])boolean evaluating the expression.
+     * @param variables The variable names, where the index of each name is its slot.
+     * @param slots     A map from each variable name to its slot index.
+     */
+    CompiledExpression(MethodHandle evaluator, List<String> variables, Map<String, Integer> slots) {
+        this.evaluator = evaluator;
+        this.variables = variables;
+        this.slots = slots;
+    }
+
+    /**
+     * Evaluates the compiled expression over the given slot values.
+     *
+     * @param values The value of every variable, indexed by its slot.
+     * @return The result of the expression.
+     */
+    public boolean eval(boolean[] values) {
+        try {
+            return (boolean) evaluator.invokeExact(values);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    /**
+     * Evaluates the compiled expression using a map of variable assignments.
+     * This is a convenience method; hot paths should fill the slots once and call eval.
+     *
+     * @param assignment A map containing variable names and their boolean values.
+     * @return The result of the expression.
+     * @throws Exception If the expression contains a variable not in the assignment.
+     */
+    public Boolean evaluate(Map<String, Boolean> assignment) throws Exception {
+        return eval(toSlots(assignment));
+    }
+
+    /**
+     * Converts a map of variable assignments to slot values.
+     *
+     * @param assignment A map containing variable names and their boolean values.
+     * @return The slot values for this compiled expression.
+     * @throws Exception If a variable of the expression is not in the assignment.
+     */
+    public boolean[] toSlots(Map<String, Boolean> assignment) throws Exception {
+        boolean[] values = new boolean[variables.size()];
+        for (int i = 0; i < values.length; i++) {
+            Boolean value = assignment.get(variables.get(i));
+            if (value == null) {
+                throw new Exception("Variable '" + variables.get(i) + "' is not assigned");
+            }
+            values[i] = value;
+        }
+        return values;
+    }
+
+    /**
+     * Returns the slot index of a variable.
+     *
+     * @param variable The variable name.
+     * @return The slot index, or -1 if the variable is not part of the expression.
+     */
+    public int slotOf(String variable) {
+        Integer slot = slots.get(variable);
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * Returns the variable names in slot order.
+     *
+     * @return An unmodifiable list of variable names.
+     */
+    public List<String> getVariables() {
+        return variables;
+    }
+
+    /**
+     * Returns the underlying method handle of type (boolean[])boolean.
+     * Storing it in a static final field lets the JIT inline the whole chain into the caller.
+     *
+     * @return The evaluator method handle.
+     */
+    public MethodHandle getMethodHandle() {
+        return evaluator;
+    }
+}
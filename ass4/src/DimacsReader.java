@@ -0,0 +1,315 @@
+// Nimrod Netzer 322394545
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads DIMACS CNF files as a stream of clauses.
+ * The input is read through a fixed-size buffer and every clause is passed on as soon as its
+ * terminating 0 is read. Comment lines of the form "c var N name", as written by
+ * {@link DimacsWriter#write(List, Path)}, give names to variables; other variables are named
+ * "v" followed by their number.
+ */
+public class DimacsReader {
+    private static final int BUFFER_BYTES = 1 << 16;
+    private static final int INITIAL_CLAUSE = 16;
+    private static final String VARIABLE_COMMENT = "var ";
+
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+    private final Map<Integer, String> names = new HashMap<>();
+    private long line = 1;
+
+    /**
+     * Constructs a reader over a channel.
+     *
+     * @param channel The channel to read from; it is not closed by the reader.
+     */
+    public DimacsReader(ReadableByteChannel channel) {
+        this.channel = channel;
+        buffer.flip();
+    }
+
+    /**
+     * Reads a DIMACS file as an expression: the balanced AND of one balanced OR per clause,
+     * with negative literals as NOT of a variable. An empty clause is F and an empty CNF is T.
+     *
+     * @param file The file to read.
+     * @return The expression of the CNF.
+     * @throws IOException    If reading fails.
+     * @throws ParseException If the file is not valid DIMACS.
+     */
+    public static Expression read(Path file) throws IOException, ParseException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            DimacsReader reader = new DimacsReader(channel);
+            Map<Integer, Expression> variables = new HashMap<>();
+            Balancer conjunction = new Balancer(true);
+            reader.read(literals -> {
+                Balancer disjunction = new Balancer(false);
+                for (int literal : literals) {
+                    Expression variable = variables.computeIfAbsent(Math.abs(literal),
+                            v -> new Var(reader.nameOf(v)));
+                    disjunction.add(literal > 0 ? variable : new Not(variable));
+                }
+                conjunction.add(disjunction.result());
+            });
+            return conjunction.result();
+        }
+    }
+
+    /**
+     * Reads all the clauses and passes each of them to a sink.
+     *
+     * @param sink The destination of the clauses.
+     * @throws IOException    If reading fails.
+     * @throws ParseException If the input is not valid DIMACS; the message holds the line number.
+     */
+    public void read(ClauseSink sink) throws IOException, ParseException {
+        int[] clause = new int[INITIAL_CLAUSE];
+        int size = 0;
+        boolean header = false;
+        int c;
+        while ((c = next()) != -1) {
+            if (c == '\n') {
+                line++;
+            } else if (c == ' ' || c == '\t' || c == '\r') {
+                continue;
+            } else if (c == 'c') {
+                comment();
+            } else if (c == 'p') {
+                if (header) {
+                    throw error("Second problem line");
+                }
+                header = true;
+                skipLine();
+            } else if (c == '%') {
+                break;
+            } else if (c == '-' || (c >= '0' && c <= '9')) {
+                if (!header) {
+                    throw error("Clause before the problem line");
+                }
+                int literal = readInt(c);
+                if (literal == 0) {
+                    sink.addClause(Arrays.copyOf(clause, size));
+                    size = 0;
+                } else {
+                    if (size == clause.length) {
+                        clause = Arrays.copyOf(clause, size * 2);
+                    }
+                    clause[size++] = literal;
+                }
+            } else {
+                throw error("Unexpected character '" + (char) c + "'");
+            }
+        }
+        if (size > 0) {
+            throw error("Last clause is not terminated by 0");
+        }
+    }
+
+    /**
+     * Returns the name of a variable: the name given by a "c var" comment, or "v" and its number.
+     *
+     * @param variable The variable.
+     * @return The name of the variable.
+     */
+    public String nameOf(int variable) {
+        String name = names.get(variable);
+        return name == null ? "v" + variable : name;
+    }
+
+    /**
+     * Reads the rest of a comment line, recording the variable name if it is a "c var" comment.
+     *
+     * @throws IOException If reading fails.
+     */
+    private void comment() throws IOException {
+        StringBuilder text = new StringBuilder();
+        int c;
+        while ((c = next()) != -1 && c != '\n') {
+            text.append((char) c);
+        }
+        if (c == '\n') {
+            line++;
+        }
+        String comment = new String(text.toString().getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.UTF_8)
+                .trim();
+        if (comment.startsWith(VARIABLE_COMMENT)) {
+            String[] parts = comment.substring(VARIABLE_COMMENT.length()).trim().split("\\s+", 2);
+            if (parts.length == 2) {
+                try {
+                    names.put(Integer.parseInt(parts[0]), parts[1]);
+                } catch (NumberFormatException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Skips the rest of a line.
+     *
+     * @throws IOException If reading fails.
+     */
+    private void skipLine() throws IOException {
+        int c;
+        while ((c = next()) != -1 && c != '\n') {
+            continue;
+        }
+        if (c == '\n') {
+            line++;
+        }
+    }
+
+    /**
+     * Reads a decimal integer whose first character was already read.
+     *
+     * @param first The first character, a digit or '-'.
+     * @return The integer.
+     * @throws IOException    If reading fails.
+     * @throws ParseException If the characters are not an integer.
+     */
+    private int readInt(int first) throws IOException, ParseException {
+        boolean negative = first == '-';
+        long value = negative ? 0 : first - '0';
+        int digits = negative ? 0 : 1;
+        int c;
+        while ((c = peek()) >= '0' && c <= '9') {
+            next();
+            value = value * 10 + (c - '0');
+            digits++;
+            if (value > Integer.MAX_VALUE) {
+                throw error("Literal out of range");
+            }
+        }
+        if (digits == 0) {
+            throw error("'-' without a number");
+        }
+        return (int) (negative ? -value : value);
+    }
+
+    /**
+     * Returns the next byte without consuming it.
+     *
+     * @return The next byte, or -1 at the end of the input.
+     * @throws IOException If reading fails.
+     */
+    private int peek() throws IOException {
+        if (!buffer.hasRemaining() && !fill()) {
+            return -1;
+        }
+        return buffer.get(buffer.position()) & 0xFF;
+    }
+
+    /**
+     * Consumes the next byte.
+     *
+     * @return The next byte, or -1 at the end of the input.
+     * @throws IOException If reading fails.
+     */
+    private int next() throws IOException {
+        if (!buffer.hasRemaining() && !fill()) {
+            return -1;
+        }
+        return buffer.get() & 0xFF;
+    }
+
+    /**
+     * Refills the buffer from the channel.
+     *
+     * @return false at the end of the input.
+     * @throws IOException If reading fails.
+     */
+    private boolean fill() throws IOException {
+        buffer.clear();
+        int read;
+        do {
+            read = channel.read(buffer);
+        } while (read == 0);
+        buffer.flip();
+        return read > 0;
+    }
+
+    /**
+     * Creates a parse error for the current line.
+     *
+     * @param message The description of the error.
+     * @return The exception.
+     */
+    private ParseException error(String message) {
+        return new ParseException("Line " + line + ": " + message, 0);
+    }
+
+    /**
+     * Combines a stream of expressions into a balanced AND or OR tree, like a binary counter:
+     * a stack holds subtrees of 1, 2, 4, ... operands, and equal sized subtrees are merged.
+     */
+    private static final class Balancer {
+        private final boolean conjunction;
+        private final List<Expression> trees = new ArrayList<>();
+        private final List<Long> sizes = new ArrayList<>();
+
+        /**
+         * Constructs an empty balancer.
+         *
+         * @param conjunction true to combine with AND, false to combine with OR.
+         */
+        Balancer(boolean conjunction) {
+            this.conjunction = conjunction;
+        }
+
+        /**
+         * Adds an operand.
+         *
+         * @param expression The operand.
+         */
+        void add(Expression expression) {
+            Expression tree = expression;
+            long size = 1;
+            while (!sizes.isEmpty() && sizes.get(sizes.size() - 1) == size) {
+                tree = combine(trees.remove(trees.size() - 1), tree);
+                size += sizes.remove(sizes.size() - 1);
+            }
+            trees.add(tree);
+            sizes.add(size);
+        }
+
+        /**
+         * Returns the combination of all the operands added.
+         *
+         * @return The tree, or the neutral constant if no operand was added.
+         */
+        Expression result() {
+            if (trees.isEmpty()) {
+                return new Val(conjunction);
+            }
+            Expression tree = trees.get(trees.size() - 1);
+            for (int i = trees.size() - 2; i >= 0; i--) {
+                tree = combine(trees.get(i), tree);
+            }
+            return tree;
+        }
+
+        /**
+         * Combines two subtrees.
+         *
+         * @param one The first subtree.
+         * @param two The second subtree.
+         * @return Their AND or OR.
+         */
+        private Expression combine(Expression one, Expression two) {
+            return conjunction ? new And(one, two) : new Or(one, two);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+// Nimrod Netzer 322394545
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Writes clauses to a file in DIMACS CNF format as they are produced.
+ * Clauses are encoded straight into a fixed-size buffer that is flushed to a file channel,
+ * so memory use does not depend on the number of clauses. The problem line is written with
+ * fixed-width counts before the first clause and patched in place when the writer is closed.
+ * Comments may be written before the first clause, as DIMACS requires.
+ */
+public class DimacsWriter implements ClauseSink, Closeable {
+    private static final int BUFFER_BYTES = 1 << 16;
+    private static final int MAX_LITERAL_BYTES = 12;
+    private static final int COUNT_WIDTH = 20;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private long headerPosition = -1;
+    private int variableCount;
+    private long clauseCount;
+
+    /**
+     * Opens a file for writing, replacing its contents.
+     *
+     * @param file The destination file.
+     * @throws IOException If the file cannot be opened.
+     */
+    public DimacsWriter(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Writes expressions to a file as the CNF of their conjunction, using the Tseitin transform.
+     * The expression variables are numbered first, from 1, and a comment line "c var N name"
+     * records the name of each of them; the higher variables are gates. The expressions are encoded
+     * through one graph, so nodes they share are encoded once.
+     *
+     * @param expressions The expressions that must all be true.
+     * @param file        The destination file.
+     * @throws IOException If writing fails.
+     */
+    public static void write(List<Expression> expressions, Path file) throws IOException {
+        try (DimacsWriter writer = new DimacsWriter(file)) {
+            TseitinEncoder encoder = new TseitinEncoder(writer);
+            ExpressionGraph graph = ExpressionGraph.of(expressions, null);
+            for (String variable : graph.getVariables()) {
+                writer.comment("var " + encoder.declare(variable) + " " + variable);
+            }
+            try {
+                for (int literal : encoder.encode(graph)) {
+                    writer.addClause(literal);
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+     * Writes a comment line.
+     *
+     * @param text The comment, without line breaks.
+     * @throws IOException If writing fails.
+     */
+    public void comment(String text) throws IOException {
+        if (headerPosition != -1) {
+            throw new IllegalStateException("Comments must precede the clauses");
+        }
+        write("c " + text + "\n");
+    }
+
+    /**
+     * Writes a clause as a line of literals terminated by 0.
+     *
+     * @param literals The literals of the clause.
+     * @throws UncheckedIOException If writing fails.
+     */
+    public void addClause(int... literals) {
+        try {
+            if (headerPosition == -1) {
+                writeHeader();
+            }
+            for (int literal : literals) {
+                if (literal == 0) {
+                    throw new IllegalArgumentException("0 is not a literal");
+                }
+                if (buffer.remaining() < MAX_LITERAL_BYTES) {
+                    flush();
+                }
+                putInt(literal);
+                buffer.put((byte) ' ');
+                variableCount = Math.max(variableCount, Math.abs(literal));
+            }
+            if (buffer.remaining() < 2) {
+                flush();
+            }
+            buffer.put((byte) '0').put((byte) '\n');
+            clauseCount++;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Flushes the remaining clauses, patches the problem line with the final counts and
+     * closes the file.
+     *
+     * @throws IOException If writing fails.
+     */
+    public void close() throws IOException {
+        try {
+            if (headerPosition == -1) {
+                writeHeader();
+            }
+            flush();
+            ByteBuffer header = ByteBuffer.wrap(header().getBytes(StandardCharsets.US_ASCII));
+            long position = headerPosition;
+            while (header.hasRemaining()) {
+                position += channel.write(header, position);
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Returns the highest variable written so far.
+     *
+     * @return The number of variables.
+     */
+    public int variableCount() {
+        return variableCount;
+    }
+
+    /**
+     * Returns the number of clauses written so far.
+     *
+     * @return The number of clauses.
+     */
+    public long clauseCount() {
+        return clauseCount;
+    }
+
+    /**
+     * Writes the problem line with the current counts and remembers where it starts.
+     *
+     * @throws IOException If writing fails.
+     */
+    private void writeHeader() throws IOException {
+        flush();
+        headerPosition = channel.position();
+        write(header());
+    }
+
+    /**
+     * Returns the problem line, with both counts right-aligned in fixed-width fields so it can be
+     * rewritten in place; the line ends with the last digit of the clause count.
+     *
+     * @return The problem line.
+     */
+    private String header() {
+        return String.format("p cnf %" + COUNT_WIDTH + "d %" + COUNT_WIDTH + "d\n", variableCount, clauseCount);
+    }
+
+    /**
+     * Writes text through the buffer, encoded as UTF-8.
+     *
+     * @param text The text.
+     * @throws IOException If writing fails.
+     */
+    private void write(String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        int offset = 0;
+        while (offset < bytes.length) {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            int length = Math.min(buffer.remaining(), bytes.length - offset);
+            buffer.put(bytes, offset, length);
+            offset += length;
+        }
+    }
+
+    /**
+     * Encodes an integer in decimal into the buffer without creating a string.
+     *
+     * @param value The integer.
+     */
+    private void putInt(int value) {
+        long remaining = value;
+        if (remaining < 0) {
+            buffer.put((byte) '-');
+            remaining = -remaining;
+        }
+        long divisor = 1;
+        while (divisor * 10 <= remaining) {
+            divisor *= 10;
+        }
+        while (divisor > 0) {
+            buffer.put((byte) ('0' + remaining / divisor));
+            remaining %= divisor;
+            divisor /= 10;
+        }
+    }
+
+    /**
+     * Writes the buffered bytes to the channel.
+     *
+     * @throws IOException If writing fails.
+     */
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
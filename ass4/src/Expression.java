@@ -1,5 +1,6 @@
 // Nimrod Netzer 322394545
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 
@@ -26,12 +27,19 @@ public interface Expression {
     Boolean evaluate() throws Exception;
 
     /**
-     * Returns a list of variables (names) used in the expression.
+     * Returns a list of variables (names) used in the expression, in sorted order.
      *
      * @return List of variable names used in the expression.
      */
     List<String> getVariables();
 
+    /**
+     * Returns the set of variables used in the expression, computed once per node.
+     *
+     * @return The variable set of the expression.
+     */
+    VariableSet getVariableSet();
+
     /**
      * Returns a string representation of the expression.
      *
@@ -39,6 +47,16 @@ public interface Expression {
      */
     String toString();
 
+    /**
+     * Writes the string representation of the expression to the given destination in a single pass,
+     * without materializing the whole string. Passing a Writer streams the expression to a file
+     * or socket; the output is the same as toString().
+     *
+     * @param out The destination of the string representation.
+     * @throws IOException If writing to the destination fails.
+     */
+    void appendTo(Appendable out) throws IOException;
+
     /**
      * Creates a new expression by replacing occurrences of the specified variable
      * with the provided expression.
@@ -49,6 +67,26 @@ public interface Expression {
      */
     Expression assign(String var, Expression expression);
 
+    /**
+     * Creates a new expression by replacing every variable of a substitution with its expression,
+     * all at once: the replacements are not substituted again. The tree is walked once, and
+     * sub-expressions without substituted variables are returned as they are.
+     *
+     * @param substitution The expressions to replace the variables with, by variable name.
+     * @return The expression with the variables replaced, or this expression if none occurs.
+     */
+    Expression assign(Map<String, Expression> substitution);
+
+    /**
+     * Replaces several variables at once, reusing the substitution of every node found in the
+     * given map, so shared sub-expressions are substituted once and stay shared.
+     *
+     * @param substitution The expressions to replace the variables with, by variable name.
+     * @param assigned     The expressions substituted so far, by node instance (an IdentityHashMap).
+     * @return The expression with the variables replaced.
+     */
+    Expression assign(Map<String, Expression> substitution, Map<Expression, Expression> assigned);
+
     /**
      * Converts the expression to an equivalent expression using only Nand operations.
      *
@@ -56,6 +94,16 @@ public interface Expression {
      */
     Expression nandify();
 
+    /**
+     * Converts the expression to an equivalent expression using only Nand operations, reusing
+     * the conversion of every node found in the given map. Each node instance is converted once,
+     * so shared sub-expressions stay shared and the result is linear in the size of the input DAG.
+     *
+     * @param converted The expressions converted so far, by node instance (an IdentityHashMap).
+     * @return Equivalent expression using only Nand operations.
+     */
+    Expression nandify(Map<Expression, Expression> converted);
+
     /**
      * Converts the expression to an equivalent expression using only Nor operations.
      *
@@ -63,6 +111,15 @@ public interface Expression {
      */
     Expression norify();
 
+    /**
+     * Converts the expression to an equivalent expression using only Nor operations, reusing
+     * the conversion of every node found in the given map.
+     *
+     * @param converted The expressions converted so far, by node instance (an IdentityHashMap).
+     * @return Equivalent expression using only Nor operations.
+     */
+    Expression norify(Map<Expression, Expression> converted);
+
     /**
      * Simplifies the expression to its minimal form.
      *
@@ -70,6 +127,15 @@ public interface Expression {
      */
     Expression simplify();
 
+    /**
+     * Simplifies the expression, reusing the simplification of every node found in the given map,
+     * so shared sub-expressions are simplified once.
+     *
+     * @param simplified The expressions simplified so far, by node instance (an IdentityHashMap).
+     * @return Simplified expression.
+     */
+    Expression simplify(Map<Expression, Expression> simplified);
+
     /**
      * Retrieves the type of the expression.
      *
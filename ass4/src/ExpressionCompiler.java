@@ -0,0 +1,252 @@
+// Nimrod Netzer 322394545
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles expression trees into method handle chains with a primitive
+ * (boolean[])boolean entry point, so repeated evaluation avoids virtual dispatch,
+ * boxing and map lookups. Expressions are compiled from their flattened graph, so shared
+ * sub-expressions are compiled and evaluated once.
+ */
+public final class ExpressionCompiler {
+    private static final int MAX_CHAIN_DEPTH = 64;
+    private static final MethodType EVAL_TYPE = MethodType.methodType(boolean.class, boolean[].class);
+    private static final MethodHandle NOT;
+    private static final MethodHandle XOR;
+    private static final MethodHandle XNOR;
+    private static final MethodHandle RUN_STEPS;
+    private static final MethodHandle SLOT_GETTER = MethodHandles.arrayElementGetter(boolean[].class);
+    private static final MethodHandle TRUE = constant(true);
+    private static final MethodHandle FALSE = constant(false);
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            MethodType unary = MethodType.methodType(boolean.class, boolean.class);
+            MethodType binary = MethodType.methodType(boolean.class, boolean.class, boolean.class);
+            NOT = lookup.findStatic(ExpressionCompiler.class, "not", unary);
+            XOR = lookup.findStatic(ExpressionCompiler.class, "xor", binary);
+            XNOR = lookup.findStatic(ExpressionCompiler.class, "xnor", binary);
+            RUN_STEPS = lookup.findStatic(ExpressionCompiler.class, "runSteps", MethodType.methodType(
+                    boolean[].class, MethodHandle[].class, int[].class, int.class, boolean[].class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Private constructor, this class only has static methods.
+     */
+    private ExpressionCompiler() {
+    }
+
+    /**
+     * Compiles an expression, assigning slots in the order of its variables.
+     *
+     * @param expression The expression to compile.
+     * @return The compiled expression.
+     */
+    public static CompiledExpression compile(Expression expression) {
+        return compile(expression, expression.getVariables());
+    }
+
+    /**
+     * Compiles an expression using a given slot layout.
+     * This allows several expressions to share one slot array.
+     *
+     * @param expression The expression to compile.
+     * @param variables  The variable names, where the index of each name is its slot.
+     *                   Must contain every variable of the expression.
+     * @return The compiled expression.
+     */
+    public static CompiledExpression compile(Expression expression, List<String> variables) {
+        Map<String, Integer> slots = new HashMap<>();
+        for (int i = 0; i < variables.size(); i++) {
+            slots.put(variables.get(i), i);
+        }
+        MethodHandle evaluator = build(ExpressionGraph.of(expression, variables));
+        return new CompiledExpression(evaluator, Collections.unmodifiableList(new ArrayList<>(variables)),
+                Collections.unmodifiableMap(slots));
+    }
+
+    /**
+     * Builds the method handle chain for a flattened expression, building every node once, in
+     * topological order. And and Or keep their short-circuit behaviour through guardWithTest.
+     * A node used more than once, or whose chain grows deeper than {@value #MAX_CHAIN_DEPTH}
+     * handles, is computed once into a scratch slot after the variable slots, and its users read
+     * that slot, so shared nodes are not copied into every user and deep expressions never nest
+     * deep handle chains. Expressions without such nodes compile into a single chain.
+     *
+     * @param graph The graph of the expression.
+     * @return A method handle of type (boolean[])boolean.
+     */
+    private static MethodHandle build(ExpressionGraph graph) {
+        int root = graph.root(0);
+        int[] uses = new int[root + 1];
+        for (int node = 0; node <= root; node++) {
+            if (graph.op(node) > ExpressionGraph.VAR) {
+                uses[graph.left(node)]++;
+                if (graph.right(node) != -1) {
+                    uses[graph.right(node)]++;
+                }
+            }
+        }
+        MethodHandle[] handles = new MethodHandle[root + 1];
+        int[] depths = new int[root + 1];
+        List<MethodHandle> steps = new ArrayList<>();
+        int[] targets = new int[root + 1];
+        int size = graph.getVariables().size();
+        for (int node = 0; node <= root; node++) {
+            int op = graph.op(node);
+            int left = graph.left(node);
+            int right = graph.right(node);
+            if (op == ExpressionGraph.VAL) {
+                handles[node] = left == 1 ? TRUE : FALSE;
+                continue;
+            }
+            if (op == ExpressionGraph.VAR) {
+                handles[node] = slot(left);
+                continue;
+            }
+            if (op == ExpressionGraph.NOT) {
+                handles[node] = MethodHandles.filterReturnValue(handles[left], NOT);
+                depths[node] = depths[left] + 1;
+            } else {
+                handles[node] = binary(op, handles[left], handles[right]);
+                depths[node] = Math.max(depths[left], depths[right]) + 1;
+            }
+            if (node != root && (uses[node] > 1 || depths[node] >= MAX_CHAIN_DEPTH)) {
+                targets[steps.size()] = size;
+                steps.add(handles[node]);
+                handles[node] = slot(size++);
+                depths[node] = 0;
+            }
+        }
+        if (steps.isEmpty()) {
+            return handles[root];
+        }
+        MethodHandle scratch = MethodHandles.insertArguments(RUN_STEPS, 0,
+                steps.toArray(new MethodHandle[0]), Arrays.copyOf(targets, steps.size()), size);
+        return MethodHandles.filterArguments(handles[root], 0, scratch);
+    }
+
+    /**
+     * Builds the handle of a binary operation over the handles of its operands.
+     *
+     * @param op  The binary opcode.
+     * @param one The handle computing the first operand.
+     * @param two The handle computing the second operand.
+     * @return A method handle of type (boolean[])boolean.
+     */
+    private static MethodHandle binary(int op, MethodHandle one, MethodHandle two) {
+        switch (op) {
+            case ExpressionGraph.AND:
+                return MethodHandles.guardWithTest(one, two, FALSE);
+            case ExpressionGraph.OR:
+                return MethodHandles.guardWithTest(one, TRUE, two);
+            case ExpressionGraph.NAND:
+                return MethodHandles.guardWithTest(one, MethodHandles.filterReturnValue(two, NOT), TRUE);
+            case ExpressionGraph.NOR:
+                return MethodHandles.guardWithTest(one, FALSE, MethodHandles.filterReturnValue(two, NOT));
+            case ExpressionGraph.XOR:
+                return combine(XOR, one, two);
+            case ExpressionGraph.XNOR:
+                return combine(XNOR, one, two);
+            default:
+                throw new IllegalArgumentException("Unknown opcode: " + op);
+        }
+    }
+
+    /**
+     * Creates a handle of type (boolean[])boolean reading a slot.
+     *
+     * @param slot The slot index.
+     * @return The slot reader.
+     */
+    private static MethodHandle slot(int slot) {
+        return MethodHandles.insertArguments(SLOT_GETTER, 1, slot);
+    }
+
+    /**
+     * Copies the variable slots into a larger array and runs the steps computing the scratch
+     * slots, in order, each one reading the slots written before it. Used as a method handle target.
+     *
+     * @param steps   The handles of type (boolean[])boolean computing the scratch slots.
+     * @param targets The slot written by every step.
+     * @param size    The number of variable and scratch slots.
+     * @param values  The variable slots.
+     * @return The variable and scratch slots.
+     * @throws Throwable If a step fails.
+     */
+    private static boolean[] runSteps(MethodHandle[] steps, int[] targets, int size, boolean[] values)
+            throws Throwable {
+        boolean[] slots = Arrays.copyOf(values, size);
+        for (int i = 0; i < steps.length; i++) {
+            slots[targets[i]] = (boolean) steps[i].invokeExact(slots);
+        }
+        return slots;
+    }
+
+    /**
+     * Feeds two (boolean[])boolean handles into a (boolean,boolean)boolean operator.
+     *
+     * @param operator The binary operator handle.
+     * @param one      The handle computing the first operand.
+     * @param two      The handle computing the second operand.
+     * @return A method handle of type (boolean[])boolean.
+     */
+    private static MethodHandle combine(MethodHandle operator, MethodHandle one, MethodHandle two) {
+        MethodHandle filtered = MethodHandles.filterArguments(operator, 0, one, two);
+        return MethodHandles.permuteArguments(filtered, EVAL_TYPE, 0, 0);
+    }
+
+    /**
+     * Creates a handle of type (boolean[])boolean returning a constant.
+     *
+     * @param value The constant value.
+     * @return The constant method handle.
+     */
+    private static MethodHandle constant(boolean value) {
+        return MethodHandles.dropArguments(MethodHandles.constant(boolean.class, value), 0, boolean[].class);
+    }
+
+    /**
+     * Logical negation, used as a method handle target.
+     *
+     * @param value The value to negate.
+     * @return The negated value.
+     */
+    private static boolean not(boolean value) {
+        return !value;
+    }
+
+    /**
+     * Exclusive or, used as a method handle target.
+     *
+     * @param one The first operand.
+     * @param two The second operand.
+     * @return The exclusive or of the operands.
+     */
+    private static boolean xor(boolean one, boolean two) {
+        return one ^ two;
+    }
+
+    /**
+     * Exclusive nor, used as a method handle target.
+     *
+     * @param one The first operand.
+     * @param two The second operand.
+     * @return True if the operands are equal.
+     */
+    private static boolean xnor(boolean one, boolean two) {
+        return one == two;
+    }
+}
@@ -0,0 +1,236 @@
+// Nimrod Netzer 322394545
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A thread-safe hash-consing factory for expressions.
+ * Every node is built through a shared unique table, so structurally equal expressions
+ * built by the same factory are the same instance. Since the operands of an interned
+ * node are interned as well, equality checks between interned nodes reduce to comparing
+ * references and cached hash codes.
+ * The table is lock-free for lookups; nodes live as long as the factory does.
+ */
+public class ExpressionFactory {
+    private final ConcurrentMap<Expression, Expression> table = new ConcurrentHashMap<>();
+    private final Expression trueValue = intern(new Val(true));
+    private final Expression falseValue = intern(new Val(false));
+
+    /**
+     * Returns the interned constant with the given value.
+     *
+     * @param value The boolean value.
+     * @return The interned constant.
+     */
+    public Expression val(boolean value) {
+        return value ? trueValue : falseValue;
+    }
+
+    /**
+     * Returns the interned variable with the given name.
+     *
+     * @param name The variable name.
+     * @return The interned variable.
+     */
+    public Expression var(String name) {
+        return unique(new Var(name));
+    }
+
+    /**
+     * Returns the interned negation of an interned expression.
+     *
+     * @param expression The expression to negate.
+     * @return The interned NOT expression.
+     */
+    public Expression not(Expression expression) {
+        return unique(new Not(expression));
+    }
+
+    /**
+     * Returns the interned AND of two interned expressions.
+     *
+     * @param one The first operand.
+     * @param two The second operand.
+     * @return The interned AND expression.
+     */
+    public Expression and(Expression one, Expression two) {
+        return unique(new And(one, two));
+    }
+
+    /**
+     * Returns the interned OR of two interned expressions.
+     *
+     * @param one The first operand.
+     * @param two The second operand.
+     * @return The interned OR expression.
+     */
+    public Expression or(Expression one, Expression two) {
+        return unique(new Or(one, two));
+    }
+
+    /**
+     * Returns the interned XOR of two interned expressions.
+     *
+     * @param one The first operand.
+     * @param two The second operand.
+     * @return The interned XOR expression.
+     */
+    public Expression xor(Expression one, Expression two) {
+        return unique(new Xor(one, two));
+    }
+
+    /**
+     * Returns the interned NAND of two interned expressions.
+     *
+     * @param one The first operand.
+     * @param two The second operand.
+     * @return The interned NAND expression.
+     */
+    public Expression nand(Expression one, Expression two) {
+        return unique(new Nand(one, two));
+    }
+
+    /**
+     * Returns the interned NOR of two interned expressions.
+     *
+     * @param one The first operand.
+     * @param two The second operand.
+     * @return The interned NOR expression.
+     */
+    public Expression nor(Expression one, Expression two) {
+        return unique(new Nor(one, two));
+    }
+
+    /**
+     * Returns the interned XNOR of two interned expressions.
+     *
+     * @param one The first operand.
+     * @param two The second operand.
+     * @return The interned XNOR expression.
+     */
+    public Expression xnor(Expression one, Expression two) {
+        return unique(new Xnor(one, two));
+    }
+
+    /**
+     * Builds a node of the given type over interned operands.
+     *
+     * @param type The type of the node, as returned by getType().
+     * @param one  The first operand.
+     * @param two  The second operand.
+     * @return The interned node.
+     */
+    public Expression binary(String type, Expression one, Expression two) {
+        switch (type) {
+            case "AND":
+                return and(one, two);
+            case "OR":
+                return or(one, two);
+            case "XOR":
+                return xor(one, two);
+            case "NAND":
+                return nand(one, two);
+            case "NOR":
+                return nor(one, two);
+            case "XNOR":
+                return xnor(one, two);
+            default:
+                throw new IllegalArgumentException("Not a binary expression type: " + type);
+        }
+    }
+
+    /**
+     * Builds a node with a binary opcode over interned operands, looking up that node alone.
+     *
+     * @param op  The binary opcode, as defined in {@link ExpressionGraph}.
+     * @param one The first operand.
+     * @param two The second operand.
+     * @return The interned node.
+     */
+    public Expression binary(int op, Expression one, Expression two) {
+        return unique(ExpressionGraph.binary(op, one, two));
+    }
+
+    /**
+     * Interns an arbitrary expression, rebuilding it bottom-up through the unique table.
+     * The nodes are interned after their operands over an explicit stack, and each node instance
+     * is interned once, so shared sub-expressions (such as nandify() results) cost one lookup and
+     * arbitrarily deep expressions are supported. A node is looked up as it is only once its
+     * operands are known to be interned, so the lookup compares operands by reference, and nodes
+     * already owned by this factory are returned as they are.
+     *
+     * @param expression The expression to intern.
+     * @return The interned equivalent of the expression.
+     */
+    public Expression intern(Expression expression) {
+        Map<Expression, Expression> interned = new IdentityHashMap<>();
+        Deque<Expression> stack = new ArrayDeque<>();
+        stack.push(expression);
+        while (!stack.isEmpty()) {
+            Expression node = stack.peek();
+            if (interned.containsKey(node)) {
+                stack.pop();
+                continue;
+            }
+            Expression result;
+            switch (node.getType()) {
+                case "VAL":
+                case "VAR":
+                    result = unique(node);
+                    break;
+                case "NOT":
+                    Expression operand = ((Not) node).getExpression();
+                    Expression internedOperand = interned.get(operand);
+                    if (internedOperand == null) {
+                        stack.push(operand);
+                        continue;
+                    }
+                    result = internedOperand == operand ? unique(node) : not(internedOperand);
+                    break;
+                default:
+                    BinaryExpression binary = (BinaryExpression) node;
+                    Expression one = interned.get(binary.getExpressionOne());
+                    Expression two = interned.get(binary.getExpressionTwo());
+                    if (one == null || two == null) {
+                        if (two == null) {
+                            stack.push(binary.getExpressionTwo());
+                        }
+                        if (one == null) {
+                            stack.push(binary.getExpressionOne());
+                        }
+                        continue;
+                    }
+                    result = one == binary.getExpressionOne() && two == binary.getExpressionTwo() ? unique(node)
+                            : binary(node.getType(), one, two);
+                    break;
+            }
+            stack.pop();
+            interned.put(node, result);
+        }
+        return interned.get(expression);
+    }
+
+    /**
+     * Returns the number of distinct nodes in the unique table.
+     *
+     * @return The number of interned nodes.
+     */
+    public int size() {
+        return table.size();
+    }
+
+    /**
+     * Returns the canonical instance of a node whose operands are already interned.
+     *
+     * @param candidate The node to look up.
+     * @return The interned node equal to the candidate.
+     */
+    private Expression unique(Expression candidate) {
+        Expression existing = table.putIfAbsent(candidate, candidate);
+        return existing == null ? candidate : existing;
+    }
+}
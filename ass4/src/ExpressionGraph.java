@@ -0,0 +1,402 @@
+// Nimrod Netzer 322394545
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A flat, immutable representation of one or more expressions.
+ * Every distinct node instance is stored once, in topological order (operands before the nodes
+ * using them), with integer opcodes and operand indices instead of object references.
+ * Variables are resolved to integer slots.
+ */
+public final class ExpressionGraph {
+    /**
+     * Opcode of a constant; its first operand is 1 for true and 0 for false.
+     */
+    public static final int VAL = 0;
+    /**
+     * Opcode of a variable; its first operand is the variable slot.
+     */
+    public static final int VAR = 1;
+    /**
+     * Opcode of a negation; its first operand is the negated node.
+     */
+    public static final int NOT = 2;
+    /**
+     * Opcode of a logical and.
+     */
+    public static final int AND = 3;
+    /**
+     * Opcode of a logical or.
+     */
+    public static final int OR = 4;
+    /**
+     * Opcode of a logical xor.
+     */
+    public static final int XOR = 5;
+    /**
+     * Opcode of a logical nand.
+     */
+    public static final int NAND = 6;
+    /**
+     * Opcode of a logical nor.
+     */
+    public static final int NOR = 7;
+    /**
+     * Opcode of a logical xnor.
+     */
+    public static final int XNOR = 8;
+
+    private final int[] ops;
+    private final int[] left;
+    private final int[] right;
+    private final int[] roots;
+    private final List<String> variables;
+    private final Map<String, Integer> slots;
+
+    /**
+     * Constructs a graph from its arrays.
+     *
+     * @param ops       The opcode of every node.
+     * @param left      The first operand of every node.
+     * @param right     The second operand of every node, or -1 for nodes with fewer operands.
+     * @param roots     The node index of every root expression.
+     * @param variables The variable names, where the index of each name is its slot.
+     */
+    private ExpressionGraph(int[] ops, int[] left, int[] right, int[] roots, List<String> variables) {
+        this.ops = ops;
+        this.left = left;
+        this.right = right;
+        this.roots = roots;
+        this.variables = Collections.unmodifiableList(new ArrayList<>(variables));
+        this.slots = new HashMap<>();
+        for (int i = 0; i < variables.size(); i++) {
+            slots.put(variables.get(i), i);
+        }
+    }
+
+    /**
+     * Flattens an expression, assigning slots in order of first appearance.
+     *
+     * @param expression The expression to flatten.
+     * @return The graph of the expression.
+     */
+    public static ExpressionGraph of(Expression expression) {
+        return of(List.of(expression), null);
+    }
+
+    /**
+     * Flattens an expression using a given slot layout.
+     *
+     * @param expression The expression to flatten.
+     * @param variables  The variable names, where the index of each name is its slot.
+     * @return The graph of the expression.
+     */
+    public static ExpressionGraph of(Expression expression, List<String> variables) {
+        return of(List.of(expression), variables);
+    }
+
+    /**
+     * Flattens several expressions into one graph, sharing every node instance they have in common.
+     * The traversal uses an explicit stack, so arbitrarily deep expressions are supported.
+     *
+     * @param expressions The root expressions.
+     * @param variables   The variable names, where the index of each name is its slot, or null to
+     *                    assign slots in order of first appearance.
+     * @return The graph of the expressions.
+     */
+    public static ExpressionGraph of(List<Expression> expressions, List<String> variables) {
+        Map<String, Integer> slots = new HashMap<>();
+        List<String> layout = new ArrayList<>();
+        if (variables != null) {
+            for (String variable : variables) {
+                slots.put(variable, layout.size());
+                layout.add(variable);
+            }
+        }
+        Map<Expression, Integer> indices = new IdentityHashMap<>();
+        IntList ops = new IntList();
+        IntList left = new IntList();
+        IntList right = new IntList();
+        int[] roots = new int[expressions.size()];
+        Deque<Expression> stack = new ArrayDeque<>();
+        for (int r = 0; r < roots.length; r++) {
+            stack.push(expressions.get(r));
+            while (!stack.isEmpty()) {
+                Expression node = stack.peek();
+                if (indices.containsKey(node)) {
+                    stack.pop();
+                    continue;
+                }
+                int op = opOf(node);
+                int first;
+                int second = -1;
+                if (op == VAL) {
+                    first = ((Val) node).getValue() ? 1 : 0;
+                } else if (op == VAR) {
+                    String variable = ((Var) node).getVariable();
+                    Integer slot = slots.get(variable);
+                    if (slot == null) {
+                        if (variables != null) {
+                            throw new IllegalArgumentException("Variable '" + variable + "' has no slot");
+                        }
+                        slot = layout.size();
+                        slots.put(variable, slot);
+                        layout.add(variable);
+                    }
+                    first = slot;
+                } else if (op == NOT) {
+                    Expression operand = ((UnaryExpression) node).getExpression();
+                    Integer index = indices.get(operand);
+                    if (index == null) {
+                        stack.push(operand);
+                        continue;
+                    }
+                    first = index;
+                } else {
+                    BinaryExpression binary = (BinaryExpression) node;
+                    Integer one = indices.get(binary.getExpressionOne());
+                    Integer two = indices.get(binary.getExpressionTwo());
+                    if (one == null || two == null) {
+                        if (two == null) {
+                            stack.push(binary.getExpressionTwo());
+                        }
+                        if (one == null) {
+                            stack.push(binary.getExpressionOne());
+                        }
+                        continue;
+                    }
+                    first = one;
+                    second = two;
+                }
+                stack.pop();
+                indices.put(node, ops.size());
+                ops.add(op);
+                left.add(first);
+                right.add(second);
+            }
+            roots[r] = indices.get(expressions.get(r));
+        }
+        return new ExpressionGraph(ops.toArray(), left.toArray(), right.toArray(), roots, layout);
+    }
+
+    /**
+     * Returns the opcode matching the type of an expression. The node classes are recognized
+     * directly, so only other implementations go through their type string.
+     *
+     * @param expression The expression.
+     * @return The opcode of the expression.
+     */
+    public static int opOf(Expression expression) {
+        if (expression instanceof BaseExpression) {
+            return ((BaseExpression) expression).getOpcode();
+        }
+        if (expression instanceof Var) {
+            return VAR;
+        }
+        if (expression instanceof Val) {
+            return VAL;
+        }
+        switch (expression.getType()) {
+            case "VAL":
+                return VAL;
+            case "VAR":
+                return VAR;
+            case "NOT":
+                return NOT;
+            case "AND":
+                return AND;
+            case "OR":
+                return OR;
+            case "XOR":
+                return XOR;
+            case "NAND":
+                return NAND;
+            case "NOR":
+                return NOR;
+            case "XNOR":
+                return XNOR;
+            default:
+                throw new IllegalArgumentException("Unknown expression type: " + expression.getType());
+        }
+    }
+
+    /**
+     * Applies a binary opcode to two truth values.
+     *
+     * @param op  The binary opcode.
+     * @param one The first operand.
+     * @param two The second operand.
+     * @return The result of the operation.
+     */
+    public static boolean apply(int op, boolean one, boolean two) {
+        switch (op) {
+            case AND:
+                return one && two;
+            case OR:
+                return one || two;
+            case XOR:
+                return one ^ two;
+            case NAND:
+                return !(one && two);
+            case NOR:
+                return !(one || two);
+            case XNOR:
+                return one == two;
+            default:
+                throw new IllegalArgumentException("Not a binary opcode: " + op);
+        }
+    }
+
+    /**
+     * Creates the expression node of a binary opcode. Every class that rebuilds expressions from
+     * opcodes goes through this method.
+     *
+     * @param op  The binary opcode.
+     * @param one The first operand.
+     * @param two The second operand.
+     * @return The node.
+     */
+    public static Expression binary(int op, Expression one, Expression two) {
+        switch (op) {
+            case AND:
+                return new And(one, two);
+            case OR:
+                return new Or(one, two);
+            case XOR:
+                return new Xor(one, two);
+            case NAND:
+                return new Nand(one, two);
+            case NOR:
+                return new Nor(one, two);
+            case XNOR:
+                return new Xnor(one, two);
+            default:
+                throw new IllegalArgumentException("Not a binary opcode: " + op);
+        }
+    }
+
+    /**
+     * Returns the number of nodes in the graph.
+     *
+     * @return The number of nodes.
+     */
+    public int size() {
+        return ops.length;
+    }
+
+    /**
+     * Returns the opcode of a node.
+     *
+     * @param node The node index.
+     * @return The opcode.
+     */
+    public int op(int node) {
+        return ops[node];
+    }
+
+    /**
+     * Returns the first operand of a node: a node index, a variable slot or a constant.
+     *
+     * @param node The node index.
+     * @return The first operand.
+     */
+    public int left(int node) {
+        return left[node];
+    }
+
+    /**
+     * Returns the second operand of a node.
+     *
+     * @param node The node index.
+     * @return The second operand, or -1 if the node is not binary.
+     */
+    public int right(int node) {
+        return right[node];
+    }
+
+    /**
+     * Returns the number of root expressions.
+     *
+     * @return The number of roots.
+     */
+    public int rootCount() {
+        return roots.length;
+    }
+
+    /**
+     * Returns the node index of a root expression.
+     *
+     * @param i The index of the root, in the order the expressions were given.
+     * @return The node index of the root.
+     */
+    public int root(int i) {
+        return roots[i];
+    }
+
+    /**
+     * Returns the variable names in slot order.
+     *
+     * @return An unmodifiable list of variable names.
+     */
+    public List<String> getVariables() {
+        return variables;
+    }
+
+    /**
+     * Returns the slot index of a variable.
+     *
+     * @param variable The variable name.
+     * @return The slot index, or -1 if the variable is not part of the graph.
+     */
+    public int slotOf(String variable) {
+        Integer slot = slots.get(variable);
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * A minimal growable list of primitive ints.
+     */
+    private static final class IntList {
+        private static final int INITIAL_CAPACITY = 16;
+        private int[] values = new int[INITIAL_CAPACITY];
+        private int size;
+
+        /**
+         * Appends a value.
+         *
+         * @param value The value to append.
+         */
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        /**
+         * Returns the number of values.
+         *
+         * @return The number of values.
+         */
+        int size() {
+            return size;
+        }
+
+        /**
+         * Copies the values into an array.
+         *
+         * @return An array of the values.
+         */
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,469 @@
+// Nimrod Netzer 322394545
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A parser for the infix syntax produced by toString(), such as "((x & y) ^ ~(z))".
+ * Binary operators are "&" (AND), "|" (OR), "^" (XOR), "#" (XNOR), "A" (NAND) and "V" (NOR),
+ * "~" is negation and "T" and "F" are the constants. Any other run of letters, digits and
+ * underscores is a variable. Parentheses are optional: without them "~" binds tightest,
+ * then AND and NAND, then XOR and XNOR, then OR and NOR, all left associative.
+ * The parser is an operator-precedence parser with explicit stacks, so nesting depth is not
+ * limited by the Java stack. Variables are looked up by their characters in a table kept by
+ * the parser, so each distinct name is allocated only once and repeated occurrences share
+ * one Var instance. A parser is not thread-safe; use one parser per thread.
+ */
+public class ExpressionParser {
+    private static final int LEFT_PAREN = -1;
+    private static final int NOT_PRECEDENCE = 4;
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int MAX_REGION = 1 << 30;
+
+    private final ExpressionFactory factory;
+    private Expression[] operands = new Expression[INITIAL_CAPACITY];
+    private int[] operators = new int[INITIAL_CAPACITY];
+    private int[] positions = new int[INITIAL_CAPACITY];
+    private String[] names = new String[INITIAL_CAPACITY];
+    private Expression[] variables = new Expression[INITIAL_CAPACITY];
+    private char[] chars = new char[INITIAL_CAPACITY];
+    private int variableCount;
+    private Expression trueValue;
+    private Expression falseValue;
+
+    /**
+     * Constructs a parser that builds plain expression trees.
+     */
+    public ExpressionParser() {
+        this(null);
+    }
+
+    /**
+     * Constructs a parser that builds its expressions through a hash-consing factory,
+     * so structurally equal sub-expressions, also across parsed expressions, are shared.
+     *
+     * @param factory The factory to build the nodes with, or null for plain trees.
+     */
+    public ExpressionParser(ExpressionFactory factory) {
+        this.factory = factory;
+        this.trueValue = factory == null ? new Val(true) : factory.val(true);
+        this.falseValue = factory == null ? new Val(false) : factory.val(false);
+    }
+
+    /**
+     * Parses an expression.
+     *
+     * @param text The text of the expression.
+     * @return The parsed expression.
+     * @throws ParseException If the text is not a valid expression; the error offset is the
+     *                        position of the offending character.
+     */
+    public Expression parse(CharSequence text) throws ParseException {
+        return parse(text, 0, text.length());
+    }
+
+    /**
+     * Parses an expression from a range of characters.
+     *
+     * @param text  The text containing the expression.
+     * @param start The index of the first character of the expression.
+     * @param end   The index after the last character of the expression.
+     * @return The parsed expression.
+     * @throws ParseException If the range is not a valid expression; the error offset is the
+     *                        position of the offending character in the text.
+     */
+    public Expression parse(CharSequence text, int start, int end) throws ParseException {
+        int length = end - start;
+        if (chars.length < length) {
+            chars = new char[Math.max(length, chars.length * 2)];
+        }
+        if (text instanceof String) {
+            ((String) text).getChars(start, end, chars, 0);
+        } else {
+            for (int i = 0; i < length; i++) {
+                chars[i] = text.charAt(start + i);
+            }
+        }
+        try {
+            return parse(chars, length);
+        } catch (ParseException e) {
+            throw new ParseException(e.getMessage().replaceFirst("position \\d+",
+                    "position " + (e.getErrorOffset() + start)), e.getErrorOffset() + start);
+        }
+    }
+
+    /**
+     * Parses an expression from the start of a character buffer.
+     *
+     * @param text The buffer containing the expression.
+     * @param end  The number of characters of the expression.
+     * @return The parsed expression.
+     * @throws ParseException If the characters are not a valid expression.
+     */
+    private Expression parse(char[] text, int end) throws ParseException {
+        int operandTop = 0;
+        int operatorTop = 0;
+        boolean expectOperand = true;
+        int i = 0;
+        try {
+            while (true) {
+                while (i < end && isWhitespace(text[i])) {
+                    i++;
+                }
+                if (i == end) {
+                    break;
+                }
+                char c = text[i];
+                if (expectOperand) {
+                    if (c == '(' || c == '~') {
+                        if (operatorTop == operators.length) {
+                            growOperators();
+                        }
+                        operators[operatorTop] = c == '(' ? LEFT_PAREN : ExpressionGraph.NOT;
+                        positions[operatorTop++] = i;
+                        i++;
+                    } else if (isNameChar(c)) {
+                        int nameStart = i;
+                        int hash = 0;
+                        while (i < end && isNameChar(text[i])) {
+                            hash = 31 * hash + text[i];
+                            i++;
+                        }
+                        if (operandTop == operands.length) {
+                            operands = Arrays.copyOf(operands, operandTop * 2);
+                        }
+                        operands[operandTop++] = operand(text, nameStart, i, hash);
+                        expectOperand = false;
+                    } else {
+                        throw new ParseException("Expected a variable, constant, '(' or '~' but found '"
+                                + c + "' at position " + i, i);
+                    }
+                } else if (c == ')') {
+                    while (operatorTop > 0 && operators[operatorTop - 1] != LEFT_PAREN) {
+                        operandTop = reduce(operators[--operatorTop], operandTop);
+                    }
+                    if (operatorTop == 0) {
+                        throw new ParseException("Unmatched ')' at position " + i, i);
+                    }
+                    operatorTop--;
+                    i++;
+                } else {
+                    int op = binaryOperator(c, text, i, end);
+                    if (op == -1) {
+                        throw new ParseException("Expected an operator or ')' but found '"
+                                + c + "' at position " + i, i);
+                    }
+                    int precedence = precedence(op);
+                    while (operatorTop > 0 && operators[operatorTop - 1] != LEFT_PAREN
+                            && precedence(operators[operatorTop - 1]) >= precedence) {
+                        operandTop = reduce(operators[--operatorTop], operandTop);
+                    }
+                    if (operatorTop == operators.length) {
+                        growOperators();
+                    }
+                    operators[operatorTop] = op;
+                    positions[operatorTop++] = i;
+                    expectOperand = true;
+                    i++;
+                }
+            }
+            if (expectOperand) {
+                throw new ParseException("Unexpected end of expression at position " + end, end);
+            }
+            while (operatorTop > 0) {
+                if (operators[--operatorTop] == LEFT_PAREN) {
+                    throw new ParseException("Unclosed '(' at position " + positions[operatorTop],
+                            positions[operatorTop]);
+                }
+                operandTop = reduce(operators[operatorTop], operandTop);
+            }
+            return operands[0];
+        } finally {
+            Arrays.fill(operands, 0, operandTop, null);
+        }
+    }
+
+    /**
+     * Parses a file containing one expression per line, mapping it into memory in large regions
+     * instead of reading it through a character stream. Blank lines are skipped.
+     * The file is read as ASCII, which covers the whole expression syntax.
+     *
+     * @param file The file to parse.
+     * @return The parsed expressions, in file order.
+     * @throws IOException    If reading the file fails.
+     * @throws ParseException If a line is not a valid expression; the message holds the line
+     *                        number and the error offset is the column in that line.
+     */
+    public List<Expression> parseFile(Path file) throws IOException, ParseException {
+        List<Expression> expressions = new ArrayList<>();
+        parseFile(file, expressions::add);
+        return expressions;
+    }
+
+    /**
+     * Parses a file containing one expression per line and passes every expression to a sink
+     * as soon as it is parsed, so the file never has to be held in memory as text.
+     *
+     * @param file The file to parse.
+     * @param sink The consumer receiving the parsed expressions, in file order.
+     * @throws IOException    If reading the file fails.
+     * @throws ParseException If a line is not a valid expression; the message holds the line
+     *                        number and the error offset is the column in that line.
+     */
+    public void parseFile(Path file, Consumer<? super Expression> sink) throws IOException, ParseException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long regionStart = 0;
+            long line = 1;
+            while (regionStart < size) {
+                int length = (int) Math.min(MAX_REGION, size - regionStart);
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, regionStart, length);
+                if (regionStart + length < size) {
+                    while (length > 0 && buffer.get(length - 1) != '\n') {
+                        length--;
+                    }
+                    if (length == 0) {
+                        throw new ParseException("Line " + line + " is longer than " + MAX_REGION + " bytes", 0);
+                    }
+                }
+                int position = 0;
+                while (position < length) {
+                    int lineLength = 0;
+                    byte b;
+                    while (position < length && (b = buffer.get(position++)) != '\n') {
+                        if (lineLength == chars.length) {
+                            chars = Arrays.copyOf(chars, lineLength * 2);
+                        }
+                        chars[lineLength++] = (char) (b & 0xFF);
+                    }
+                    if (!isBlank(chars, lineLength)) {
+                        try {
+                            sink.accept(parse(chars, lineLength));
+                        } catch (ParseException e) {
+                            throw new ParseException("Line " + line + ", column " + e.getErrorOffset() + ": "
+                                    + e.getMessage().replaceFirst(" at position \\d+", ""), e.getErrorOffset());
+                        }
+                    }
+                    line++;
+                }
+                regionStart += length;
+            }
+        }
+    }
+
+    /**
+     * Returns the operand for a name: a constant for "T" and "F", otherwise the variable,
+     * looked up in the table of names seen so far without allocating a string.
+     *
+     * @param text  The text containing the name.
+     * @param start The index of the first character of the name.
+     * @param end   The index after the last character of the name.
+     * @param hash  The string hash code of the name.
+     * @return The operand expression.
+     */
+    private Expression operand(char[] text, int start, int end, int hash) {
+        if (end - start == 1) {
+            char c = text[start];
+            if (c == 'T') {
+                return trueValue;
+            } else if (c == 'F') {
+                return falseValue;
+            }
+        }
+        int mask = names.length - 1;
+        int index = (hash ^ (hash >>> 16)) & mask;
+        while (names[index] != null) {
+            if (matches(names[index], text, start, end)) {
+                return variables[index];
+            }
+            index = (index + 1) & mask;
+        }
+        String name = new String(text, start, end - start);
+        Expression variable = factory == null ? new Var(name) : factory.var(name);
+        names[index] = name;
+        variables[index] = variable;
+        if (++variableCount * 2 > names.length) {
+            growVariables();
+        }
+        return variable;
+    }
+
+    /**
+     * Pops the operands of an operator, applies it and pushes the result.
+     *
+     * @param op         The opcode of the operator.
+     * @param operandTop The size of the operand stack.
+     * @return The new size of the operand stack.
+     */
+    private int reduce(int op, int operandTop) {
+        if (op == ExpressionGraph.NOT) {
+            Expression operand = operands[operandTop - 1];
+            operands[operandTop - 1] = factory == null ? new Not(operand) : factory.not(operand);
+            return operandTop;
+        }
+        Expression two = operands[--operandTop];
+        Expression one = operands[operandTop - 1];
+        operands[operandTop - 1] = build(op, one, two);
+        return operandTop;
+    }
+
+    /**
+     * Builds a binary expression. The operands are already interned when there is a factory, so
+     * only the new node is looked up.
+     *
+     * @param op  The binary opcode.
+     * @param one The first operand.
+     * @param two The second operand.
+     * @return The binary expression.
+     */
+    private Expression build(int op, Expression one, Expression two) {
+        return factory == null ? ExpressionGraph.binary(op, one, two) : factory.binary(op, one, two);
+    }
+
+    /**
+     * Returns the binary opcode at a position, or -1 if there is no binary operator there.
+     * "A" and "V" are operators only when they are not part of a longer name.
+     *
+     * @param c    The character at the position.
+     * @param text The text.
+     * @param i    The position.
+     * @param end  The end of the parsed range.
+     * @return The binary opcode, or -1.
+     */
+    private static int binaryOperator(char c, char[] text, int i, int end) {
+        switch (c) {
+            case '&':
+                return ExpressionGraph.AND;
+            case '|':
+                return ExpressionGraph.OR;
+            case '^':
+                return ExpressionGraph.XOR;
+            case '#':
+                return ExpressionGraph.XNOR;
+            case 'A':
+            case 'V':
+                if (i + 1 < end && isNameChar(text[i + 1])) {
+                    return -1;
+                }
+                return c == 'A' ? ExpressionGraph.NAND : ExpressionGraph.NOR;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Returns the binding strength of an operator.
+     *
+     * @param op The opcode.
+     * @return The precedence, higher binds tighter.
+     */
+    private static int precedence(int op) {
+        switch (op) {
+            case ExpressionGraph.NOT:
+                return NOT_PRECEDENCE;
+            case ExpressionGraph.AND:
+            case ExpressionGraph.NAND:
+                return 3;
+            case ExpressionGraph.XOR:
+            case ExpressionGraph.XNOR:
+                return 2;
+            default:
+                return 1;
+        }
+    }
+
+    /**
+     * Checks if a character can be part of a name.
+     *
+     * @param c The character.
+     * @return true if the character is a letter, digit or underscore.
+     */
+    private static boolean isNameChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    /**
+     * Checks if a character is whitespace between tokens.
+     *
+     * @param c The character.
+     * @return true if the character is a space, tab or line break.
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+    }
+
+    /**
+     * Checks if the start of a character buffer contains only whitespace.
+     *
+     * @param text The buffer.
+     * @param end  The number of characters to check.
+     * @return true if the characters are blank.
+     */
+    private static boolean isBlank(char[] text, int end) {
+        for (int i = 0; i < end; i++) {
+            if (!isWhitespace(text[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if a range of characters spells a name.
+     *
+     * @param name  The name.
+     * @param text  The text.
+     * @param start The start of the range.
+     * @param end   The end of the range.
+     * @return true if the range equals the name.
+     */
+    private static boolean matches(String name, char[] text, int start, int end) {
+        if (name.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != text[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Doubles the operator stack.
+     */
+    private void growOperators() {
+        operators = Arrays.copyOf(operators, operators.length * 2);
+        positions = Arrays.copyOf(positions, positions.length * 2);
+    }
+
+    /**
+     * Doubles the variable table and rehashes the names in it.
+     */
+    private void growVariables() {
+        String[] oldNames = names;
+        Expression[] oldVariables = variables;
+        names = new String[oldNames.length * 2];
+        variables = new Expression[oldNames.length * 2];
+        int mask = names.length - 1;
+        for (int i = 0; i < oldNames.length; i++) {
+            if (oldNames[i] != null) {
+                int hash = oldNames[i].hashCode();
+                int index = (hash ^ (hash >>> 16)) & mask;
+                while (names[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                names[index] = oldNames[i];
+                variables[index] = oldVariables[i];
+            }
+        }
+    }
+}
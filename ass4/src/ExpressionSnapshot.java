@@ -0,0 +1,345 @@
+// Nimrod Netzer 322394545
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A binary snapshot of expression DAGs that is loaded by mapping the file into memory.
+ * The file holds, in big-endian order:
+ * <pre>
+ * int  magic ("EXPR")
+ * int  version
+ * int  variable count, node count, root count
+ * variable dictionary: for every variable, int byte length and UTF-8 name
+ * node table: for every node, byte opcode, int first operand, int second operand
+ * root table: for every root, int node index
+ * </pre>
+ * Nodes use the opcodes and operand layout of {@link ExpressionGraph} and are stored in
+ * topological order, so every node instance shared in the written expressions is stored once
+ * and referenced by index. Opening a snapshot reads only the header and the dictionary; node
+ * records are read straight from the mapped file, and expression objects are built on demand
+ * for the requested node and the nodes below it only. Snapshots are limited to 2 GB.
+ */
+public final class ExpressionSnapshot {
+    /**
+     * The first four bytes of every snapshot, "EXPR" in ASCII.
+     */
+    public static final int MAGIC = 0x45585052;
+    /**
+     * The version of the format written by this class.
+     */
+    public static final int VERSION = 1;
+    private static final int HEADER_BYTES = 20;
+    private static final int NODE_BYTES = 9;
+    private static final int INITIAL_STACK = 16;
+
+    private final ByteBuffer buffer;
+    private final List<String> variables;
+    private final int nodeCount;
+    private final int rootCount;
+    private final int nodeTable;
+    private final int rootTable;
+    private final Expression[] expressions;
+
+    /**
+     * Constructs a snapshot over a mapped file, reading its header and dictionary.
+     *
+     * @param buffer The contents of the snapshot file.
+     * @throws IOException If the contents are not a snapshot of a supported version.
+     */
+    private ExpressionSnapshot(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not an expression snapshot");
+        }
+        int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot version " + version);
+        }
+        int variableCount = buffer.getInt(8);
+        this.nodeCount = buffer.getInt(12);
+        this.rootCount = buffer.getInt(16);
+        if (variableCount < 0 || nodeCount < 0 || rootCount < 0) {
+            throw new IOException("Corrupt snapshot header");
+        }
+        List<String> names = new ArrayList<>(variableCount);
+        int position = HEADER_BYTES;
+        for (int i = 0; i < variableCount; i++) {
+            int length = position + Integer.BYTES <= buffer.limit() ? buffer.getInt(position) : -1;
+            if (length < 0 || position + Integer.BYTES + length > buffer.limit()) {
+                throw new IOException("Corrupt snapshot dictionary");
+            }
+            byte[] bytes = new byte[length];
+            ByteBuffer name = buffer.duplicate();
+            name.position(position + Integer.BYTES);
+            name.get(bytes);
+            names.add(new String(bytes, StandardCharsets.UTF_8));
+            position += Integer.BYTES + length;
+        }
+        this.variables = Collections.unmodifiableList(names);
+        if ((long) position + (long) nodeCount * NODE_BYTES + (long) rootCount * Integer.BYTES != buffer.limit()) {
+            throw new IOException("Snapshot size does not match its header");
+        }
+        this.nodeTable = position;
+        this.rootTable = nodeTable + nodeCount * NODE_BYTES;
+        this.expressions = new Expression[nodeCount];
+    }
+
+    /**
+     * Opens a snapshot file by mapping it into memory.
+     *
+     * @param file The snapshot file.
+     * @return The snapshot.
+     * @throws IOException If the file cannot be read or is not a snapshot of a supported version.
+     */
+    public static ExpressionSnapshot open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot is larger than 2 GB");
+            }
+            return new ExpressionSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Writes a snapshot of expressions to a file.
+     *
+     * @param expressions The root expressions.
+     * @param file        The destination file.
+     * @throws IOException If writing fails.
+     */
+    public static void write(List<Expression> expressions, Path file) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            write(expressions, out);
+        }
+    }
+
+    /**
+     * Writes a snapshot of expressions to a stream.
+     * Node instances shared between or within the expressions are written once; expressions
+     * built through an {@link ExpressionFactory} therefore also share equal sub-expressions.
+     *
+     * @param expressions The root expressions.
+     * @param out         The destination stream, which is flushed but not closed.
+     * @throws IOException If writing fails.
+     */
+    public static void write(List<Expression> expressions, OutputStream out) throws IOException {
+        ExpressionGraph graph = ExpressionGraph.of(expressions, null);
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(graph.getVariables().size());
+        data.writeInt(graph.size());
+        data.writeInt(graph.rootCount());
+        for (String variable : graph.getVariables()) {
+            byte[] bytes = variable.getBytes(StandardCharsets.UTF_8);
+            data.writeInt(bytes.length);
+            data.write(bytes);
+        }
+        for (int node = 0; node < graph.size(); node++) {
+            data.writeByte(graph.op(node));
+            data.writeInt(graph.left(node));
+            data.writeInt(graph.right(node));
+        }
+        for (int i = 0; i < graph.rootCount(); i++) {
+            data.writeInt(graph.root(i));
+        }
+        data.flush();
+    }
+
+    /**
+     * Returns the number of nodes in the snapshot.
+     *
+     * @return The number of nodes.
+     */
+    public int size() {
+        return nodeCount;
+    }
+
+    /**
+     * Returns the opcode of a node, read from the mapped file.
+     *
+     * @param node The node index.
+     * @return The opcode.
+     */
+    public int op(int node) {
+        return buffer.get(record(node));
+    }
+
+    /**
+     * Returns the first operand of a node: a node index, a variable slot or a constant.
+     *
+     * @param node The node index.
+     * @return The first operand.
+     */
+    public int left(int node) {
+        return buffer.getInt(record(node) + 1);
+    }
+
+    /**
+     * Returns the second operand of a node.
+     *
+     * @param node The node index.
+     * @return The second operand, or -1 if the node is not binary.
+     */
+    public int right(int node) {
+        return buffer.getInt(record(node) + 1 + Integer.BYTES);
+    }
+
+    /**
+     * Returns the number of root expressions.
+     *
+     * @return The number of roots.
+     */
+    public int rootCount() {
+        return rootCount;
+    }
+
+    /**
+     * Returns the node index of a root expression.
+     *
+     * @param i The index of the root, in the order the expressions were written.
+     * @return The node index of the root.
+     */
+    public int root(int i) {
+        if (i < 0 || i >= rootCount) {
+            throw new IndexOutOfBoundsException("Root " + i + " of " + rootCount);
+        }
+        return buffer.getInt(rootTable + i * Integer.BYTES);
+    }
+
+    /**
+     * Returns the variable dictionary of the snapshot.
+     *
+     * @return An unmodifiable list of variable names, indexed by slot.
+     */
+    public List<String> getVariables() {
+        return variables;
+    }
+
+    /**
+     * Returns a root expression, building only the nodes it uses.
+     *
+     * @param i The index of the root, in the order the expressions were written.
+     * @return The root expression.
+     */
+    public Expression rootExpression(int i) {
+        return getExpression(root(i));
+    }
+
+    /**
+     * Returns the expression of a node, building it and the nodes below it on first use.
+     * Built nodes are kept, so nodes shared in the snapshot are shared between the returned
+     * expressions as well.
+     *
+     * @param node The node index.
+     * @return The expression of the node.
+     * @throws IllegalStateException If the node table of the snapshot is corrupt.
+     */
+    public synchronized Expression getExpression(int node) {
+        record(node);
+        if (expressions[node] != null) {
+            return expressions[node];
+        }
+        int[] stack = new int[INITIAL_STACK];
+        int top = 0;
+        stack[top++] = node;
+        while (top > 0) {
+            int current = stack[top - 1];
+            if (expressions[current] != null) {
+                top--;
+                continue;
+            }
+            int op = op(current);
+            int first = left(current);
+            int second = right(current);
+            if (op == ExpressionGraph.VAL) {
+                expressions[current] = new Val(first == 1);
+            } else if (op == ExpressionGraph.VAR) {
+                if (first < 0 || first >= variables.size()) {
+                    throw new IllegalStateException("Corrupt snapshot: node " + current + " has no variable");
+                }
+                expressions[current] = new Var(variables.get(first));
+            } else {
+                checkOperand(current, first);
+                if (op != ExpressionGraph.NOT) {
+                    checkOperand(current, second);
+                }
+                if (top + 2 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                boolean ready = true;
+                if (expressions[first] == null) {
+                    stack[top++] = first;
+                    ready = false;
+                }
+                if (op != ExpressionGraph.NOT && expressions[second] == null) {
+                    stack[top++] = second;
+                    ready = false;
+                }
+                if (!ready) {
+                    continue;
+                }
+                expressions[current] = build(op, expressions[first],
+                        op == ExpressionGraph.NOT ? null : expressions[second]);
+            }
+            top--;
+        }
+        return expressions[node];
+    }
+
+    /**
+     * Returns the position of the record of a node in the file.
+     *
+     * @param node The node index.
+     * @return The offset of the record.
+     */
+    private int record(int node) {
+        if (node < 0 || node >= nodeCount) {
+            throw new IndexOutOfBoundsException("Node " + node + " of " + nodeCount);
+        }
+        return nodeTable + node * NODE_BYTES;
+    }
+
+    /**
+     * Checks that an operand refers to an earlier node, as topological order requires.
+     *
+     * @param node    The node index.
+     * @param operand The operand node index.
+     */
+    private static void checkOperand(int node, int operand) {
+        if (operand < 0 || operand >= node) {
+            throw new IllegalStateException("Corrupt snapshot: node " + node + " refers to node " + operand);
+        }
+    }
+
+    /**
+     * Builds the expression of an operation node.
+     *
+     * @param op  The opcode.
+     * @param one The first operand.
+     * @param two The second operand, or null for a negation.
+     * @return The expression.
+     */
+    private static Expression build(int op, Expression one, Expression two) {
+        if (op == ExpressionGraph.NOT) {
+            return new Not(one);
+        }
+        if (op < ExpressionGraph.AND || op > ExpressionGraph.XNOR) {
+            throw new IllegalStateException("Corrupt snapshot: unknown opcode " + op);
+        }
+        return ExpressionGraph.binary(op, one, two);
+    }
+}
@@ -0,0 +1,572 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Benchmark class comparing the evaluation strategies of logical expressions.
+ */
+public class ExpressionsBenchmark {
+    private static final int VARIABLES = 12;
+    private static final int DEPTH = 10;
+    private static final int ITERATIONS = 1_000_000;
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int ASSIGNMENTS = 1024;
+    private static final int OPERATORS = 7;
+    private static final long SEED = 42;
+    private static final double NANOS_PER_MILLI = 1e6;
+    private static final int PARSER_CHARS = 64 << 20;
+    private static final int COLUMNAR_ROWS = 1 << 20;
+    private static final int NETLIST_PASSES = 1000;
+    private static final int LIVE_RULES = 2000;
+    private static final int LIVE_VARIABLES = 1000;
+    private static final int LIVE_DEPTH = 6;
+    private static final int LIVE_FLIPS = 2000;
+
+    /**
+     * The main method to run the benchmarks.
+     *
+     * @param args command line arguments
+     */
+    public static void main(String[] args) {
+        Random random = new Random(SEED);
+        Expression expr = randomExpression(random, DEPTH);
+        System.out.println(BitKernels.isVectorized()
+                ? "Bit kernels: LongVector, " + BitKernels.vectorBits() + " bits per step"
+                : "Bit kernels: scalar, superword up to " + BitKernels.maxSuperWordBits() + " bits");
+        try {
+            benchmarkCompiled(expr, randomAssignments(random, expr.getVariables()));
+            benchmarkTruthTable(expr);
+            benchmarkSharing(expr, randomAssignments(random, expr.getVariables()));
+            benchmarkNetlist(expr, randomAssignments(random, expr.getVariables()));
+            benchmarkColumnar(expr, random);
+            benchmarkPartial(expr, randomAssignments(random, expr.getVariables()));
+            benchmarkMissingVariable(expr, randomAssignments(random, expr.getVariables()));
+            benchmarkLive(random);
+            benchmarkParser(random);
+            benchmarkSimplify(random);
+        } catch (Exception e) {
+            System.out.println("Error evaluating expression: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Compares the interpreted evaluation against the prepared, postfix and compiled evaluations.
+     *
+     * @param expr        The expression to evaluate.
+     * @param assignments The assignments to evaluate the expression with.
+     * @throws Exception If evaluation encounters an error.
+     */
+    private static void benchmarkCompiled(Expression expr, List<Map<String, Boolean>> assignments)
+            throws Exception {
+        CompiledExpression compiled = ExpressionCompiler.compile(expr);
+        PreparedExpression prepared = PreparedExpression.prepare(expr, compiled.getVariables());
+        PostfixProgram postfix = PostfixProgram.compile(expr, compiled.getVariables());
+        boolean[][] slots = new boolean[assignments.size()][];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = compiled.toSlots(assignments.get(i));
+        }
+        for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+            long start = System.nanoTime();
+            int interpreted = 0;
+            for (int i = 0; i < ITERATIONS; i++) {
+                if (expr.evaluate(assignments.get(i % slots.length))) {
+                    interpreted++;
+                }
+            }
+            long middle = System.nanoTime();
+            int compiledCount = 0;
+            for (int i = 0; i < ITERATIONS; i++) {
+                if (compiled.eval(slots[i % slots.length])) {
+                    compiledCount++;
+                }
+            }
+            long end = System.nanoTime();
+            int preparedCount = 0;
+            for (int i = 0; i < ITERATIONS; i++) {
+                if (prepared.evaluate(slots[i % slots.length])) {
+                    preparedCount++;
+                }
+            }
+            long last = System.nanoTime();
+            int postfixCount = 0;
+            for (int i = 0; i < ITERATIONS; i++) {
+                if (postfix.evaluate(slots[i % slots.length])) {
+                    postfixCount++;
+                }
+            }
+            long finish = System.nanoTime();
+            if (round == WARMUP_ROUNDS) {
+                print("interpreted evaluate(Map)", middle - start, interpreted);
+                print("compiled eval(boolean[])", end - middle, compiledCount);
+                print("prepared evaluate(boolean[])", last - end, preparedCount);
+                print("postfix evaluate(boolean[])", finish - last, postfixCount);
+            }
+        }
+    }
+
+    /**
+     * Compares building a truth table row by row against the bit-parallel evaluation.
+     *
+     * @param expr The expression to tabulate.
+     * @throws Exception If evaluation encounters an error.
+     */
+    private static void benchmarkTruthTable(Expression expr) throws Exception {
+        List<String> variables = expr.getVariables();
+        int rows = 1 << variables.size();
+        for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+            long start = System.nanoTime();
+            int rowByRow = 0;
+            Map<String, Boolean> assignment = new HashMap<>();
+            for (int row = 0; row < rows; row++) {
+                for (int i = 0; i < variables.size(); i++) {
+                    assignment.put(variables.get(i), ((row >> i) & 1) == 1);
+                }
+                if (expr.evaluate(assignment)) {
+                    rowByRow++;
+                }
+            }
+            long middle = System.nanoTime();
+            int bitParallel = 0;
+            for (long word : BitParallelEvaluator.truthTable(expr, variables)) {
+                bitParallel += Long.bitCount(word);
+            }
+            long end = System.nanoTime();
+            if (round == WARMUP_ROUNDS) {
+                print("truth table evaluate(Map)", middle - start, rowByRow);
+                print("truth table bit-parallel", end - middle, bitParallel);
+            }
+        }
+    }
+
+    /**
+     * Compares evaluating nandify() output before and after common-subexpression elimination.
+     *
+     * @param expr        The expression to convert.
+     * @param assignments The assignments to evaluate the expression with.
+     */
+    private static void benchmarkSharing(Expression expr, List<Map<String, Boolean>> assignments) {
+        Expression nandified = expr.nandify();
+        CommonSubexpressions.Result shared = CommonSubexpressions.eliminate(nandified);
+        System.out.println("cse nandify(): " + shared);
+        List<String> variables = expr.getVariables();
+        PreparedExpression before = PreparedExpression.prepare(nandified, variables);
+        PreparedExpression after = PreparedExpression.prepare(shared.getExpression(), variables);
+        boolean[][] slots = new boolean[assignments.size()][variables.size()];
+        for (int i = 0; i < slots.length; i++) {
+            for (int v = 0; v < variables.size(); v++) {
+                slots[i][v] = assignments.get(i).get(variables.get(v));
+            }
+        }
+        for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+            long start = System.nanoTime();
+            int unshared = 0;
+            for (int i = 0; i < ITERATIONS / 10; i++) {
+                if (before.evaluate(slots[i % slots.length])) {
+                    unshared++;
+                }
+            }
+            long middle = System.nanoTime();
+            int deduplicated = 0;
+            for (int i = 0; i < ITERATIONS / 10; i++) {
+                if (after.evaluate(slots[i % slots.length])) {
+                    deduplicated++;
+                }
+            }
+            long end = System.nanoTime();
+            if (round == WARMUP_ROUNDS) {
+                print("nandify() prepared", middle - start, unshared);
+                print("nandify() after cse", end - middle, deduplicated);
+            }
+        }
+    }
+
+    /**
+     * Compares evaluating nandify() output through the object tree against simulating its gate
+     * netlist, over the same input vectors, with the simulation time averaged over repeated passes,
+     * and measures single-input flips in the event-driven simulator.
+     *
+     * @param expr        The expression to convert.
+     * @param assignments The assignments to simulate, 64 per word.
+     * @throws Exception If evaluation encounters an error.
+     */
+    private static void benchmarkNetlist(Expression expr, List<Map<String, Boolean>> assignments)
+            throws Exception {
+        Expression nandified = expr.nandify();
+        GateNetlist netlist = GateNetlist.of(nandified);
+        System.out.println("nandify(): " + GateMapper.cost(nandified));
+        System.out.println("nandify() after cse: " + GateMapper.cost(CommonSubexpressions.eliminate(nandified)
+                .getExpression()));
+        System.out.println("mapped, fewest gates: " + GateMapper.nandify(expr, GateMapper.MIN_GATES));
+        System.out.println("mapped, lowest depth: " + GateMapper.nandify(expr, GateMapper.MIN_DEPTH));
+        List<String> variables = netlist.getVariables();
+        int words = (assignments.size() + BitParallelEvaluator.WORD_BITS - 1) >>> BitParallelEvaluator.WORD_SHIFT;
+        Map<String, long[]> columns = new HashMap<>();
+        for (String variable : variables) {
+            long[] column = new long[words];
+            for (int i = 0; i < assignments.size(); i++) {
+                if (assignments.get(i).get(variable)) {
+                    column[i >>> BitParallelEvaluator.WORD_SHIFT] |= 1L << i;
+                }
+            }
+            columns.put(variable, column);
+        }
+        for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+            long start = System.nanoTime();
+            int tree = 0;
+            for (Map<String, Boolean> assignment : assignments) {
+                if (nandified.evaluate(assignment)) {
+                    tree++;
+                }
+            }
+            long middle = System.nanoTime();
+            int simulated = 0;
+            for (int pass = 0; pass < NETLIST_PASSES; pass++) {
+                for (long word : netlist.simulate(columns, words)[0]) {
+                    simulated += Long.bitCount(word);
+                }
+            }
+            long end = System.nanoTime();
+            GateNetlist.Simulator simulator = netlist.simulator();
+            long evaluated = 0;
+            for (int i = 0; i < ITERATIONS / 10; i++) {
+                String variable = variables.get(i % variables.size());
+                evaluated += simulator.set(variable, i / variables.size() % 2 == 0);
+            }
+            long events = System.nanoTime();
+            if (round == WARMUP_ROUNDS) {
+                print("nandify() object tree", middle - start, tree);
+                print("nandify() netlist simulate", (end - middle) / NETLIST_PASSES, simulated / NETLIST_PASSES);
+                System.out.printf("%-30s %10.2f ms (%d of %d gates per flip)%n", "nandify() event-driven",
+                        (events - end) / NANOS_PER_MILLI, evaluated / (ITERATIONS / 10), netlist.gateCount());
+            }
+        }
+    }
+
+    /**
+     * Compares evaluating rows one by one through a map against columnar evaluation.
+     *
+     * @param expr   The expression to evaluate.
+     * @param random The random generator.
+     * @throws Exception If evaluation encounters an error.
+     */
+    private static void benchmarkColumnar(Expression expr, Random random) throws Exception {
+        List<String> variables = expr.getVariables();
+        Map<String, long[]> columns = new HashMap<>();
+        for (String variable : variables) {
+            long[] column = new long[COLUMNAR_ROWS / BitParallelEvaluator.WORD_BITS];
+            for (int w = 0; w < column.length; w++) {
+                column[w] = random.nextLong();
+            }
+            columns.put(variable, column);
+        }
+        ColumnarEvaluator columnar = ColumnarEvaluator.of(expr);
+        for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+            long start = System.nanoTime();
+            int rowByRow = 0;
+            for (int row = 0; row < COLUMNAR_ROWS; row++) {
+                Map<String, Boolean> assignment = new HashMap<>();
+                for (String variable : variables) {
+                    assignment.put(variable, (columns.get(variable)[row >>> 6] >>> row & 1) != 0);
+                }
+                if (expr.evaluate(assignment)) {
+                    rowByRow++;
+                }
+            }
+            long middle = System.nanoTime();
+            int blocked = 0;
+            for (long word : columnar.evaluate(columns, COLUMNAR_ROWS)) {
+                blocked += Long.bitCount(word);
+            }
+            long end = System.nanoTime();
+            if (round == WARMUP_ROUNDS) {
+                print("columns evaluate(Map)", middle - start, rowByRow);
+                print("columns blocked", end - middle, blocked);
+            }
+        }
+    }
+
+    /**
+     * Compares evaluating the whole expression against looking up the residual of a fixed
+     * context, half of the variables, and evaluating the residual.
+     *
+     * @param expr        The expression to evaluate.
+     * @param assignments The assignments to evaluate the expression with.
+     * @throws Exception If evaluation encounters an error.
+     */
+    private static void benchmarkPartial(Expression expr, List<Map<String, Boolean>> assignments)
+            throws Exception {
+        List<String> variables = expr.getVariables();
+        Map<String, Boolean> known = new HashMap<>();
+        for (String variable : variables.subList(0, variables.size() / 2)) {
+            known.put(variable, assignments.get(0).get(variable));
+        }
+        for (Map<String, Boolean> assignment : assignments) {
+            assignment.putAll(known);
+        }
+        PartialEvaluator partial = new PartialEvaluator(expr);
+        for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+            long start = System.nanoTime();
+            int whole = 0;
+            for (int i = 0; i < ITERATIONS; i++) {
+                if (expr.evaluate(assignments.get(i % assignments.size()))) {
+                    whole++;
+                }
+            }
+            long middle = System.nanoTime();
+            int residual = 0;
+            for (int i = 0; i < ITERATIONS; i++) {
+                if (partial.partialEvaluate(known).evaluate(assignments.get(i % assignments.size()))) {
+                    residual++;
+                }
+            }
+            long end = System.nanoTime();
+            if (round == WARMUP_ROUNDS) {
+                print("whole expression", middle - start, whole);
+                print("cached residual", end - middle, residual);
+            }
+        }
+    }
+
+    /**
+     * Compares evaluate(Map), which throws on a missing variable, against the exception-free
+     * evaluation, on assignments that miss the variable evaluated last.
+     *
+     * @param expr        The expression to evaluate.
+     * @param assignments Complete assignments of the expression.
+     */
+    private static void benchmarkMissingVariable(Expression expr, List<Map<String, Boolean>> assignments) {
+        List<String> variables = expr.getVariables();
+        SafeEvaluator.Result result = new SafeEvaluator.Result();
+        for (Map<String, Boolean> assignment : assignments) {
+            assignment.remove(variables.get(variables.size() - 1));
+        }
+        for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+            long start = System.nanoTime();
+            int thrown = 0;
+            for (int i = 0; i < ITERATIONS; i++) {
+                try {
+                    expr.evaluate(assignments.get(i % assignments.size()));
+                } catch (Exception e) {
+                    thrown++;
+                }
+            }
+            long middle = System.nanoTime();
+            int missing = 0;
+            for (int i = 0; i < ITERATIONS; i++) {
+                if (!SafeEvaluator.tryEvaluate(expr, assignments.get(i % assignments.size()), result)) {
+                    missing++;
+                }
+            }
+            long end = System.nanoTime();
+            if (round == WARMUP_ROUNDS) {
+                System.out.printf("%-30s %10.2f ms (%d failed)%n", "missing variable, exception",
+                        (middle - start) / NANOS_PER_MILLI, thrown);
+                System.out.printf("%-30s %10.2f ms (%d failed)%n", "missing variable, tryEvaluate",
+                        (end - middle) / NANOS_PER_MILLI, missing);
+            }
+        }
+    }
+
+    /**
+     * Compares re-evaluating every rule of a rule set after a single variable flips against
+     * updating a live evaluation, counting the flips that changed at least one rule.
+     *
+     * @param random The random generator.
+     * @throws Exception If evaluation encounters an error.
+     */
+    private static void benchmarkLive(Random random) throws Exception {
+        List<Expression> rules = new ArrayList<>();
+        for (int i = 0; i < LIVE_RULES; i++) {
+            rules.add(randomExpression(random, LIVE_DEPTH, LIVE_VARIABLES));
+        }
+        Map<String, Boolean> assignment = new HashMap<>();
+        for (int i = 0; i < LIVE_VARIABLES; i++) {
+            assignment.put("x" + i, random.nextBoolean());
+        }
+        String[] flips = new String[LIVE_FLIPS];
+        for (int i = 0; i < LIVE_FLIPS; i++) {
+            flips[i] = "x" + random.nextInt(LIVE_VARIABLES);
+        }
+        for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+            Map<String, Boolean> values = new HashMap<>(assignment);
+            boolean[] previous = new boolean[LIVE_RULES];
+            for (int r = 0; r < LIVE_RULES; r++) {
+                previous[r] = rules.get(r).evaluate(values);
+            }
+            long start = System.nanoTime();
+            int whole = 0;
+            for (String flip : flips) {
+                values.put(flip, !values.get(flip));
+                boolean changed = false;
+                for (int r = 0; r < LIVE_RULES; r++) {
+                    boolean value = rules.get(r).evaluate(values);
+                    changed |= value != previous[r];
+                    previous[r] = value;
+                }
+                if (changed) {
+                    whole++;
+                }
+            }
+            long middle = System.nanoTime();
+            LiveEvaluator live = new LiveEvaluator(rules, assignment);
+            long built = System.nanoTime();
+            int incremental = 0;
+            long recomputed = 0;
+            for (String flip : flips) {
+                if (live.set(flip, !live.getVariable(flip))) {
+                    incremental++;
+                }
+                recomputed += live.lastRecomputed();
+            }
+            long end = System.nanoTime();
+            if (round == WARMUP_ROUNDS) {
+                System.out.printf("%-30s %10.2f ms (%d changed)%n", "re-evaluate all rules",
+                        (middle - start) / NANOS_PER_MILLI, whole);
+                System.out.printf("%-30s %10.2f ms (%d changed, %d of %d gates per flip, %.2f ms to build)%n",
+                        "live evaluation", (end - built) / NANOS_PER_MILLI, incremental, recomputed / LIVE_FLIPS,
+                        live.size(), (built - middle) / NANOS_PER_MILLI);
+            }
+        }
+    }
+
+    /**
+     * Measures the parsing throughput on the printed form of random expressions.
+     *
+     * @param random The random generator.
+     * @throws Exception If parsing encounters an error.
+     */
+    private static void benchmarkParser(Random random) throws Exception {
+        StringBuilder text = new StringBuilder();
+        while (text.length() < PARSER_CHARS) {
+            randomExpression(random, DEPTH).appendTo(text);
+            text.append('\n');
+        }
+        ExpressionParser parser = new ExpressionParser();
+        for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+            long start = System.nanoTime();
+            int expressions = 0;
+            int lineStart = 0;
+            for (int i = 0; i < text.length(); i++) {
+                if (text.charAt(i) == '\n') {
+                    parser.parse(text, lineStart, i);
+                    expressions++;
+                    lineStart = i + 1;
+                }
+            }
+            long end = System.nanoTime();
+            if (round == WARMUP_ROUNDS) {
+                System.out.printf("%-30s %10.2f ms (%d expressions, %.0f MB/s)%n", "parse CharSequence",
+                        (end - start) / NANOS_PER_MILLI, expressions, text.length() * 1e3 / (end - start));
+            }
+        }
+    }
+
+    /**
+     * Compares simplify() against the rewrite engine and the two-level minimizer on a random
+     * expression with half of its variables assigned constants.
+     *
+     * @param random The random generator.
+     * @throws Exception If simplification encounters an error.
+     */
+    private static void benchmarkSimplify(Random random) throws Exception {
+        Expression expr = randomExpression(random, DEPTH + 2);
+        for (int i = 0; i < VARIABLES / 2; i++) {
+            expr = expr.assign("x" + i, new Val(random.nextBoolean()));
+        }
+        RewriteEngine engine = RewriteEngine.standard();
+        for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+            long start = System.nanoTime();
+            Expression simplified = expr.simplify();
+            long middle = System.nanoTime();
+            Expression rewritten = engine.rewrite(expr);
+            long end = System.nanoTime();
+            Expression minimized = TwoLevelMinimizer.minimize(expr);
+            long last = System.nanoTime();
+            if (round == WARMUP_ROUNDS) {
+                System.out.printf("%-30s %10.2f ms (%d -> %d nodes)%n", "simplify()",
+                        (middle - start) / NANOS_PER_MILLI, WireWriter.countNodes(expr),
+                        WireWriter.countNodes(simplified));
+                System.out.printf("%-30s %10.2f ms (%d -> %d nodes, %d visits, %d rewrites)%n", "rewrite engine",
+                        (end - middle) / NANOS_PER_MILLI, WireWriter.countNodes(expr),
+                        WireWriter.countNodes(rewritten), engine.getVisits(), engine.getRewrites());
+                System.out.printf("%-30s %10.2f ms (%d -> %d nodes)%n", "two-level minimizer",
+                        (last - end) / NANOS_PER_MILLI, WireWriter.countNodes(expr), WireWriter.countNodes(minimized));
+            }
+        }
+    }
+
+    /**
+     * Prints the result of a single benchmark.
+     *
+     * @param name    The name of the benchmark.
+     * @param nanos   The elapsed time in nanoseconds.
+     * @param trueRow The number of evaluations that returned true.
+     */
+    private static void print(String name, long nanos, int trueRow) {
+        System.out.printf("%-30s %10.2f ms (%d true)%n", name, nanos / NANOS_PER_MILLI, trueRow);
+    }
+
+    /**
+     * Builds a random expression tree using all the binary operators.
+     *
+     * @param random The random generator.
+     * @param depth  The depth of the tree.
+     * @return A random expression.
+     */
+    static Expression randomExpression(Random random, int depth) {
+        return randomExpression(random, depth, VARIABLES);
+    }
+
+    /**
+     * Builds a random expression tree over a given number of variables.
+     *
+     * @param random    The random generator.
+     * @param depth     The depth of the tree.
+     * @param variables The number of variables to draw the leaves from.
+     * @return A random expression.
+     */
+    static Expression randomExpression(Random random, int depth, int variables) {
+        if (depth == 0) {
+            return new Var("x" + random.nextInt(variables));
+        }
+        Expression one = randomExpression(random, depth - 1, variables);
+        Expression two = randomExpression(random, depth - 1, variables);
+        switch (random.nextInt(OPERATORS)) {
+            case 0:
+                return new And(one, two);
+            case 1:
+                return new Or(one, two);
+            case 2:
+                return new Xor(one, two);
+            case 3:
+                return new Nand(one, two);
+            case 4:
+                return new Nor(one, two);
+            case 5:
+                return new Xnor(one, two);
+            default:
+                return new Not(one);
+        }
+    }
+
+    /**
+     * Builds a set of random assignments for the given variables.
+     *
+     * @param random    The random generator.
+     * @param variables The variable names.
+     * @return A list of random assignments.
+     */
+    static List<Map<String, Boolean>> randomAssignments(Random random, List<String> variables) {
+        List<Map<String, Boolean>> assignments = new ArrayList<>();
+        for (int i = 0; i < ASSIGNMENTS; i++) {
+            Map<String, Boolean> assignment = new HashMap<>();
+            for (String variable : variables) {
+                assignment.put(variable, random.nextBoolean());
+            }
+            assignments.add(assignment);
+        }
+        return assignments;
+    }
+}
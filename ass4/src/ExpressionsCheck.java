@@ -0,0 +1,1152 @@
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Correctness checks for the engines built on logical expressions.
+ * Every engine runs on random expressions over a few variables, and its results are compared
+ * with evaluate(Map) over the full truth table.
+ */
+public class ExpressionsCheck {
+    private static final int EXPRESSIONS = 300;
+    private static final int MAX_DEPTH = 5;
+    private static final int VARIABLES = 6;
+    private static final int WIDE_VARIABLES = 12;
+    private static final int WIDE_TABLE_VARIABLES = 18;
+    private static final int KERNEL_WORDS = 40;
+    private static final int DEEP_CHAIN = 200000;
+    private static final int NESTED_XOR = 20;
+    private static final long SEED = 7;
+
+    private static int checks;
+    private static int failures;
+
+    /**
+     * The main method to run the checks. Exits with status 1 if any check fails.
+     *
+     * @param args command line arguments
+     */
+    public static void main(String[] args) {
+        Random random = new Random(SEED);
+        try {
+            // 1. SAT models satisfy their expression, and unsatisfiable expressions have no true row
+            checkSat(random);
+
+            // 2. BDDs count models and decide equivalence like the truth table, across collections
+            checkBdd(random);
+
+            // 3. Rewriting and simplifying keep the function of the expression
+            checkRewrite(random);
+
+            // 4. The two-level minimizer produces an equivalent sum of products
+            checkMinimizer(random);
+
+            // 5. The bit kernels and the tables built on them match evaluate(Map)
+            checkBitKernels(random);
+
+            // 6. Bit-parallel evaluation matches evaluate(Map) in every bit
+            checkBitParallel(random);
+
+            // 7. Parallel truth tables match the sequential truth table
+            checkParallelTable(random);
+
+            // 8. Partial evaluation leaves residuals that agree with the whole expression
+            checkPartial(random);
+
+            // 9. Cached variable sets follow substitutions
+            checkVariableSets(random);
+
+            // 10. Substituting into a shared graph keeps it shared
+            checkSharedAssign();
+
+            // 11. Interning gives one instance per structure, on trees, shared graphs and deep chains
+            checkIntern(random);
+
+            // 12. Nodes rebuilt from opcodes keep the expression
+            checkRebuild(random);
+
+            // 13. Live evaluation follows variable changes
+            checkLive(random);
+
+            // 14. Netlists simulate the function of their expressions
+            checkNetlist(random);
+
+            // 15. Gate mapping keeps the function and uses a single gate type
+            checkGateMapper(random);
+
+            // 16. Postfix programs match evaluate(Map), and invalid programs are rejected
+            checkPostfix(random);
+
+            // 17. Compiled expressions match evaluate(Map) on trees, shared graphs and deep chains
+            checkCompiler(random);
+
+            // 18. Prepared expressions match evaluate(Map) on trees, shared graphs and deep chains
+            checkPrepared(random);
+
+            // 19. evaluate(Map) visits shared nodes once and supports deep chains
+            checkSharedEvaluate();
+
+            // 20. Expressions too deep to recurse over print and parse back
+            checkDeepText();
+
+            // 21. DIMACS files read back with the satisfiability of the truth table
+            checkDimacs(random);
+
+            // 22. Columnar evaluation matches evaluate(Map) over long[] and BitSet columns
+            checkColumnar(random);
+
+            // 23. Safe evaluation agrees with evaluate(Map), including the missing variable it reports
+            checkSafe(random);
+        } catch (Exception e) {
+            failures++;
+            System.out.println("Error running checks: " + e.getMessage());
+        }
+        System.out.println(checks + " checks, " + failures + " failed");
+        if (failures != 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Checks SatSolver.findModel against the truth table.
+     *
+     * @param random The random generator.
+     * @throws Exception If evaluation encounters an error.
+     */
+    private static void checkSat(Random random) throws Exception {
+        for (int i = 0; i < EXPRESSIONS; i++) {
+            Expression expr = randomExpression(random);
+            if (i % 3 == 0) {
+                expr = new And(expr, new Not(expr));
+            }
+            Map<String, Boolean> model = SatSolver.findModel(expr);
+            if (model == null) {
+                check("sat: unsatisfiable " + expr, count(truthTable(expr, expr.getVariables())) == 0);
+            } else {
+                check("sat: model of " + expr, expr.evaluate(model));
+            }
+        }
+    }
+
+    /**
+     * Checks BddManager against the truth table: satCount() must count the true rows, and two BDDs
+     * must be equivalent exactly when their expressions have the same function. BDDs kept across a
+     * garbage collection, followed by more conversions that reuse the freed nodes, must keep their
+     * function and stay canonical. A chain too deep to recurse over must convert as well.
+     *
+     * @param random The random generator.
+     * @throws Exception If evaluation encounters an error.
+     */
+    private static void checkBdd(Random random) throws Exception {
+        BddManager manager = new BddManager();
+        List<Expression> kept = new ArrayList<>();
+        List<Bdd> bdds = new ArrayList<>();
+        for (int i = 0; i < EXPRESSIONS; i++) {
+            Expression expr = randomExpression(random);
+            List<String> variables = expr.getVariables();
+            Bdd bdd = manager.fromExpression(expr);
+            check("bdd count " + expr,
+                    bdd.satCount(variables).equals(BigInteger.valueOf(count(truthTable(expr, variables)))));
+            Expression other = i % 2 == 0 ? expr.nandify() : randomExpression(random);
+            check("bdd equivalence " + expr + ", " + other,
+                    bdd.isEquivalent(manager.fromExpression(other)) == equivalent(expr, other));
+            if (i % 10 == 0) {
+                kept.add(expr);
+                bdds.add(bdd);
+            }
+        }
+        int before = manager.size();
+        boolean valid = manager.collect() <= before;
+        for (int i = 0; i < EXPRESSIONS / 10; i++) {
+            manager.fromExpression(randomExpression(random));
+        }
+        for (int i = 0; i < kept.size(); i++) {
+            valid &= sameFunction(kept.get(i), bdds.get(i).toExpression())
+                    && manager.fromExpression(kept.get(i)).isEquivalent(bdds.get(i));
+        }
+        check("bdd garbage collection", valid);
+        Expression chain = deepChain();
+        check("bdd deep chain", manager.fromExpression(chain).satCount(chain.getVariables()).equals(BigInteger.ONE));
+    }
+
+    /**
+     * Checks the standard rewrite engine and simplify() against the truth table, and the rewrite
+     * engine on a chain too deep to recurse over, with and without enough budget.
+     *
+     * @param random The random generator.
+     * @throws Exception If evaluation encounters an error.
+     */
+    private static void checkRewrite(Random random) throws Exception {
+        RewriteEngine engine = RewriteEngine.standard();
+        for (int i = 0; i < EXPRESSIONS; i++) {
+            Expression expr = randomExpression(random);
+            if (i % 4 == 0) {
+                expr = new Or(new Xnor(expr, new Val(i % 8 == 0)), new And(expr, new Not(expr)));
+            }
+            check("rewrite " + expr, sameFunction(expr, engine.rewrite(expr)));
+            check("simplify " + expr, sameFunction(expr, expr.simplify()));
+        }
+        Expression chain = deepChain();
+        Map<String, Boolean> assignment = assignment(chain.getVariables(), (1 << VARIABLES) - 1);
+        Expression rewritten = engine.rewrite(chain);
+        Expression limited = engine.rewrite(chain, VARIABLES);
+        boolean whole = rewritten.evaluate(assignment) && limited.evaluate(assignment);
+        assignment.put("x0", false);
+        check("rewrite deep chain", whole && !rewritten.evaluate(assignment) && !limited.evaluate(assignment));
+    }
+
+    /**
+     * Checks TwoLevelMinimizer against the truth table, on both the exact and the heuristic path.
+     *
+     * @param random The random generator.
+     * @throws Exception If evaluation encounters an error.
+     */
+    private static void checkMinimizer(Random random) throws Exception {
+        for (int i = 0; i < EXPRESSIONS; i++) {
+            Expression expr = randomExpression(random);
+            check("minimize " + expr, sameFunction(expr, TwoLevelMinimizer.minimize(expr)));
+        }
+        for (int i = 0; i < EXPRESSIONS / 10; i++) {
+            Expression expr = ExpressionsBenchmark.randomExpression(random, MAX_DEPTH, WIDE_VARIABLES);
+            check("minimize wide " + expr, sameFunction(expr, TwoLevelMinimizer.minimize(expr)));
+        }
+    }
+
+    /**
+     * Checks the bit kernels of the active backend against single-word operations, on unaligned
+     * ranges that leave a tail after the last full vector, and the bit-parallel truth table against
+     * the truth table.
+     *
+     * @param random The random generator.
+     * @throws Exception If evaluation encounters an error.
+     */
+    private static void checkBitKernels(Random random) throws Exception {
+        int[] ops = {ExpressionGraph.AND, ExpressionGraph.OR, ExpressionGraph.XOR, ExpressionGraph.NAND,
+                ExpressionGraph.NOR, ExpressionGraph.XNOR};
+        for (int length = 0; length < KERNEL_WORDS; length++) {
+            long[] one = new long[length + 1];
+            long[] two = new long[length + 2];
+            for (int i = 0; i < two.length; i++) {
+                two[i] = random.nextLong();
+                one[i % one.length] = random.nextLong();
+            }
+            long[] out = new long[length + 3];
+            BitKernels.not(one, 1, out, 3, length);
+            boolean matches = true;
+            for (int i = 0; i < length; i++) {
+                matches &= out[3 + i] == ~one[1 + i];
+            }
+            check("kernel not, " + length + " words", matches);
+            for (int op : ops) {
+                BitKernels.apply(op, one, 1, two, 2, out, 3, length);
+                matches = true;
+                for (int i = 0; i < length; i++) {
+                    for (int bit = 0; bit < Long.SIZE; bit++) {
+                        matches &= (out[3 + i] >>> bit & 1) == 1 == ExpressionGraph.apply(op,
+                                (one[1 + i] >>> bit & 1) == 1, (two[2 + i] >>> bit & 1) == 1);
+                    }
+                }
+                check("kernel " + op + ", " + length + " words", matches);
+            }
+        }
+        for (int i = 0; i < EXPRESSIONS / 10; i++) {
+            Expression expr = ExpressionsBenchmark.randomExpression(random, MAX_DEPTH, WIDE_VARIABLES);
+            List<String> variables = expr.getVariables();
+            long[] table = BitParallelEvaluator.truthTable(expr, variables);
+            List<Boolean> expected = truthTable(expr, variables);
+            boolean matches = true;
+            for (int row = 0; row < expected.size(); row++) {
+                matches &= (table[row >>> 6] >>> row & 1) == 1 == expected.get(row);
+            }
+            check("bit-parallel truth table " + expr, matches);
+        }
+    }
+
+    /**
+     * Checks both forms of BitParallelEvaluator.evaluate against evaluate(Map) in sampled bits, on
+     * random trees, on their nandify() graphs, on the nandify() graph of a deeply nested Xor and on
+     * a chain too deep to recurse over.
+     *
+     * @param random The random generator.
+     * @throws Exception If evaluation encounters an error.
+     */
+    private static void checkBitParallel(Random random) throws Exception {
+        for (int i = 0; i < EXPRESSIONS; i++) {
+            Expression expr = randomExpression(random);
+            if (i % 2 == 0) {
+                expr = expr.nandify();
+            }
+            check("bit-parallel " + expr, bitParallelMatches(expr, random));
+        }
+        check("bit-parallel nandified xor", bitParallelMatches(nestedXor().nandify(), random));
+        check("bit-parallel deep chain", bitParallelMatches(deepChain(), random));
+    }
+
+    /**
+     * Evaluates an expression over random words with both forms of BitParallelEvaluator.evaluate,
+     * and compares sampled bits with evaluate(Map).
+     *
+     * @param expr   The expression.
+     * @param random The random generator.
+     * @return true if every sampled bit matches.
+     * @throws Exception If evaluation encounters an error.
+     */
+    private static boolean bitParallelMatches(Expression expr, Random random) throws Exception {
+        List<String> variables = expr.getVariables();
+        Map<String, Long> word = new HashMap<>();
+        Map<String, long[]> vector = new HashMap<>();
+        for (String variable : variables) {
+            long[] words = {random.nextLong(), random.nextLong(), random.nextLong()};
+            word.put(variable, words[0]);
+            vector.put(variable, words);
+        }
+        long single = BitParallelEvaluator.evaluate(expr, word);
+        long[] multiple = BitParallelEvaluator.evaluate(expr, vector, 3);
+        boolean matches = multiple[0] == single;
+        for (int bit = 0; bit < 3 * Long.SIZE; bit += 5) {
+            Map<String, Boolean> assignment = new HashMap<>();
+            for (String variable : variables) {
+                assignment.put(variable, (vector.get(variable)[bit >>> 6] >>> bit & 1) == 1);
+            }
+            matches &= (multiple[bit >>> 6] >>> bit & 1) == 1 == expr.evaluate(assignment);
+        }
+        return matches;
+    }
+
+    /**
+     * Checks ParallelTruthTable: satCount(), get() and firstModels() must follow the truth table,
+     * including tables of fewer than six variables, whose single word is masked, and a table large
+     * enough to be split between workers must match the sequential bit-parallel table.
+     *
+     * @param random The random generator.
+     * @throws Exception If evaluation encounters an error.
+     */
+    private static void checkParallelTable(Random random) throws Exception {
+        for (int i = 0; i < EXPRESSIONS; i++) {
+            Expression expr = i % 10 == 0 ? new Val(i % 20 == 0) : randomExpression(random);
+            List<String> variables = expr.getVariables();
+            ParallelTruthTable table = ParallelTruthTable.of(expr, variables, ForkJoinPool.commonPool());
+            List<Boolean> expected = truthTable(expr, variables);
+            List<Map<String, Boolean>> models = new ArrayList<>();
+            boolean matches = table.rows() == expected.size() && table.satCount() == count(expected);
+            for (int row = 0; row < expected.size(); row++) {
+                matches &= table.get(row) == expected.get(row);
+                if (expected.get(row) && models.size() < 3) {
+                    models.add(assignment(variables, row));
+                }
+            }
+            check("parallel table " + expr, matches && table.firstModels(3).equals(models));
+        }
+        Expression expr = ExpressionsBenchmark.randomExpression(random, MAX_DEPTH, WIDE_VARIABLES);
+        List<String> variables = new ArrayList<>();
+        for (int v = 0; v < WIDE_TABLE_VARIABLES; v++) {
+            variables.add("x" + v);
+        }
+        ParallelTruthTable table = ParallelTruthTable.of(expr, variables, ForkJoinPool.commonPool());
+        long[] expected = BitParallelEvaluator.truthTable(expr, variables);
+        long trueRows = 0;
+        for (long word : expected) {
+            trueRows += Long.bitCount(word);
+        }
+        check("parallel wide table " + expr, Arrays.equals(table.toLongArray(), expected)
+                && table.satCount() == trueRows);
+    }
+
+    /**
+     * Checks PartialEvaluator: for random partial assignments, the residual must agree with the
+     * whole expression on every completion, and repeating a context must return the cached residual.
+     *
+     * @param random The random generator.
+     * @throws Exception If evaluation encounters an error.
+     */
+    private static void checkPartial(Random random) throws Exception {
+        for (int i = 0; i < EXPRESSIONS; i++) {
+            Expression expr = randomExpression(random);
+            List<String> variables = expr.getVariables();
+            PartialEvaluator partial = new PartialEvaluator(expr);
+            Map<String, Boolean> known = new HashMap<>();
+            for (String variable : variables) {
+                if (random.nextBoolean()) {
+                    known.put(variable, random.nextBoolean());
+                }
+            }
+            Expression residual = partial.partialEvaluate(known);
+            boolean matches = known.keySet().stream().noneMatch(residual.getVariables()::contains);
+            for (int row = 0; row < 1 << variables.size(); row++) {
+                Map<String, Boolean> assignment = assignment(variables, row);
+                assignment.putAll(known);
+                matches &= expr.evaluate(assignment).equals(residual.evaluate(assignment));
+            }
+            check("partial " + known + " of " + expr, matches);
+            check("partial cache of " + expr, partial.partialEvaluate(new HashMap<>(known)) == residual);
+        }
+    }
+
+    /**
+     * Checks the cached variable sets of substituted expressions against the variables found by
+     * walking the expression, and the variable set of a chain too deep to recurse over.
+     *
+     * @param random The random generator.
+     */
+    private static void checkVariableSets(Random random) {
+        for (int i = 0; i < EXPRESSIONS; i++) {
+            Expression expr = randomExpression(random);
+            expr.getVariables();
+            Expression assigned = expr.assign("x" + random.nextInt(VARIABLES), randomExpression(random));
+            List<String> walked = new ArrayList<>(ExpressionGraph.of(assigned).getVariables());
+            walked.sort(null);
+            check("variables of " + assigned, assigned.getVariables().equals(walked));
+        }
+        List<String> variables = new ArrayList<>();
+        for (int v = 0; v < VARIABLES; v++) {
+            variables.add("x" + v);
+        }
+        check("variables of deep chain", deepChain().getVariables().equals(variables));
+    }
+
+    /**
+     * Checks that assign(String, Expression) on the nandify() graph of a deeply nested Xor, which
+     * shares every operand, substitutes each node once: the result has no more nodes than the input.
+     */
+    private static void checkSharedAssign() {
+        Expression nandified = nestedXor().nandify();
+        Expression assigned = nandified.assign("x3", new Val(true));
+        int nodes = ExpressionGraph.of(nandified).size();
+        check("shared assign", ExpressionGraph.of(assigned).size() <= nodes + 1
+                && !assigned.getVariables().contains("x3"));
+    }
+
+    /**
+     * Checks ExpressionFactory.intern: interning equal expressions built apart must give the same
+     * instance, equal to the input, and interning an interned node must return it. The nandify()
+     * graph of a deeply nested Xor, which takes exponential time to compare as a tree, and chains
+     * too deep to recurse over must intern as well, and such chains built apart must compare equal.
+     *
+     * @param random The random generator.
+     * @throws Exception If parsing fails.
+     */
+    private static void checkIntern(Random random) throws Exception {
+        ExpressionFactory factory = new ExpressionFactory();
+        ExpressionParser parser = new ExpressionParser();
+        for (int i = 0; i < EXPRESSIONS; i++) {
+            Expression expr = randomExpression(random);
+            Expression interned = factory.intern(expr);
+            check("intern " + expr, interned.equals(expr) && factory.intern(interned) == interned
+                    && factory.intern(parser.parse(expr.toString())) == interned);
+        }
+        Expression xor = factory.intern(nestedXor().nandify());
+        check("intern nandified xor", factory.intern(nestedXor().nandify()) == xor
+                && ExpressionGraph.of(xor).size() <= ExpressionGraph.of(nestedXor().nandify()).size());
+        check("intern deep chain", factory.intern(deepChain()) == factory.intern(deepChain()));
+        Expression chain = deepChain();
+        // the same chain over a different first variable
+        Expression different = new Var("x1");
+        for (int i = 1; i < DEEP_CHAIN; i++) {
+            different = new And(different, new Var("x" + i % VARIABLES));
+        }
+        check("equals deep chain", chain.equals(deepChain()) && Set.of(chain).contains(deepChain())
+                && !chain.equals(different) && !different.equals(chain));
+    }
+
+    /**
+     * Checks the classes that rebuild expressions from opcodes: common-subexpression elimination
+     * must keep the function without adding nodes, and parsing or snapshotting must give back an
+     * equal expression.
+     *
+     * @param random The random generator.
+     * @throws Exception If evaluation, parsing or the snapshot file fails.
+     */
+    private static void checkRebuild(Random random) throws Exception {
+        ExpressionParser parser = new ExpressionParser();
+        ExpressionParser interning = new ExpressionParser(new ExpressionFactory());
+        List<Expression> expressions = new ArrayList<>();
+        for (int i = 0; i < EXPRESSIONS; i++) {
+            Expression expr = randomExpression(random);
+            expressions.add(expr);
+            CommonSubexpressions.Result shared = CommonSubexpressions.eliminate(expr);
+            check("cse " + expr, sameFunction(expr, shared.getExpression())
+                    && shared.getOutputNodes() <= shared.getInputNodes());
+            check("parse " + expr, expr.equals(parser.parse(expr.toString())));
+            check("parse interned " + expr, expr.equals(interning.parse(expr.toString())));
+        }
+        Path file = Files.createTempFile("check", ".snapshot");
+        try {
+            ExpressionSnapshot.write(expressions, file);
+            ExpressionSnapshot snapshot = ExpressionSnapshot.open(file);
+            for (int i = 0; i < expressions.size(); i++) {
+                check("snapshot " + expressions.get(i), expressions.get(i).equals(snapshot.rootExpression(i)));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Checks LiveEvaluator: after every random change of a variable, the value of every tracked
+     * expression must match evaluate(Map), and set() must report whether one of them changed.
+     *
+     * @param random The random generator.
+     * @throws Exception If evaluation encounters an error.
+     */
+    private static void checkLive(Random random) throws Exception {
+        for (int i = 0; i < EXPRESSIONS / 10; i++) {
+            Expression shared = randomExpression(random);
+            List<Expression> rules = new ArrayList<>();
+            for (int r = 0; r < 4; r++) {
+                rules.add(new Xor(shared, randomExpression(random)));
+            }
+            rules.add(new Var("x0"));
+            Map<String, Boolean> values = new HashMap<>();
+            for (int v = 0; v < VARIABLES; v++) {
+                values.put("x" + v, random.nextBoolean());
+            }
+            LiveEvaluator live = new LiveEvaluator(rules, values);
+            boolean matches = true;
+            for (int step = 0; step < 50; step++) {
+                String variable = live.getVariables().get(random.nextInt(live.getVariables().size()));
+                values.put(variable, random.nextBoolean());
+                boolean changed = false;
+                boolean[] before = new boolean[rules.size()];
+                for (int r = 0; r < rules.size(); r++) {
+                    before[r] = live.getValue(r);
+                }
+                boolean reported = live.set(variable, values.get(variable));
+                for (int r = 0; r < rules.size(); r++) {
+                    matches &= live.getValue(r) == rules.get(r).evaluate(values);
+                    changed |= live.getValue(r) != before[r];
+                }
+                matches &= reported == changed && live.getVariable(variable) == values.get(variable);
+            }
+            check("live " + rules, matches);
+        }
+    }
+
+    /**
+     * Checks GateNetlist: simulating every row at once must give the truth table of each output,
+     * and the event-driven simulator must match evaluate(Map) in every vector after each change.
+     *
+     * @param random The random generator.
+     * @throws Exception If evaluation encounters an error.
+     */
+    private static void checkNetlist(Random random) throws Exception {
+        for (int i = 0; i < EXPRESSIONS / 10; i++) {
+            Expression expr = randomExpression(random);
+            List<Expression> outputs = List.of(expr, expr.nandify(), new Not(expr).norify());
+            GateNetlist netlist = GateNetlist.of(outputs);
+            List<String> variables = netlist.getVariables();
+            Map<String, long[]> columns = new HashMap<>();
+            for (int v = 0; v < variables.size(); v++) {
+                long column = 0;
+                for (int row = 0; row < 1 << variables.size(); row++) {
+                    column |= (long) (row >> v & 1) << row;
+                }
+                columns.put(variables.get(v), new long[] {column});
+            }
+            long[][] simulated = netlist.simulate(columns, 1);
+            List<Boolean> expected = truthTable(expr, variables);
+            boolean matches = true;
+            for (int row = 0; row < expected.size(); row++) {
+                matches &= (simulated[0][0] >>> row & 1) == 1 == expected.get(row);
+                matches &= (simulated[1][0] >>> row & 1) == 1 == expected.get(row);
+                matches &= (simulated[2][0] >>> row & 1) == 0 == expected.get(row);
+            }
+            check("netlist simulate " + expr, matches);
+            GateNetlist.Simulator simulator = netlist.simulator();
+            long[] words = new long[variables.size()];
+            matches = true;
+            for (int step = 0; step < 20 && !variables.isEmpty(); step++) {
+                int input = random.nextInt(variables.size());
+                words[input] = random.nextLong();
+                simulator.set(variables.get(input), words[input]);
+                for (int bit = 0; bit < Long.SIZE; bit += 7) {
+                    Map<String, Boolean> assignment = new HashMap<>();
+                    for (int v = 0; v < variables.size(); v++) {
+                        assignment.put(variables.get(v), (words[v] >>> bit & 1) == 1);
+                    }
+                    boolean value = expr.evaluate(assignment);
+                    for (int o = 0; o < outputs.size(); o++) {
+                        matches &= (simulator.getOutput(o) >>> bit & 1) == 1 == (value != (o == 2));
+                    }
+                }
+            }
+            check("netlist simulator " + expr, matches);
+        }
+    }
+
+    /**
+     * Checks GateMapper under both objectives, and nandify() and norify(): every circuit must keep
+     * the function of its expression and contain only gates of its primitive.
+     *
+     * @param random The random generator.
+     * @throws Exception If evaluation encounters an error.
+     */
+    private static void checkGateMapper(Random random) throws Exception {
+        int[] objectives = {GateMapper.MIN_GATES, GateMapper.MIN_DEPTH};
+        for (int i = 0; i < EXPRESSIONS; i++) {
+            Expression expr = randomExpression(random);
+            for (int objective : objectives) {
+                GateMapper.Result nand = GateMapper.nandify(expr, objective);
+                check("map nand " + objective + " " + expr, sameFunction(expr, nand.getExpression())
+                        && onlyGates(nand.getExpression(), ExpressionGraph.NAND)
+                        && nand.getGates() == nand.getNetlist().gateCount());
+                GateMapper.Result nor = GateMapper.norify(expr, objective);
+                check("map nor " + objective + " " + expr, sameFunction(expr, nor.getExpression())
+                        && onlyGates(nor.getExpression(), ExpressionGraph.NOR)
+                        && nor.getGates() == nor.getNetlist().gateCount());
+            }
+            Expression nandified = expr.nandify();
+            check("nandify " + expr, sameFunction(expr, nandified) && onlyGates(nandified, ExpressionGraph.NAND));
+            Expression norified = expr.norify();
+            check("norify " + expr, sameFunction(expr, norified) && onlyGates(norified, ExpressionGraph.NOR));
+        }
+    }
+
+    /**
+     * Checks PostfixProgram against the truth table, on random trees, on their nandify() graphs,
+     * whose shared nodes go through TEE and TEMP registers, and on programs reloaded from their
+     * code. The nandify() graph of a deeply nested Xor must compile to code linear in its size, and
+     * a chain too deep to recurse over must compile too. Code with a bad slot, register, opcode or
+     * stack depth must be rejected.
+     *
+     * @param random The random generator.
+     * @throws Exception If evaluation encounters an error.
+     */
+    private static void checkPostfix(Random random) throws Exception {
+        for (int i = 0; i < EXPRESSIONS; i++) {
+            Expression expr = randomExpression(random);
+            if (i % 2 == 0) {
+                expr = expr.nandify();
+            }
+            PostfixProgram program = PostfixProgram.compile(expr);
+            PostfixProgram reloaded = new PostfixProgram(program.getCode(), program.getVariables());
+            List<String> variables = expr.getVariables();
+            List<Boolean> expected = truthTable(expr, variables);
+            boolean matches = true;
+            for (int row = 0; row < expected.size(); row++) {
+                Map<String, Boolean> assignment = assignment(variables, row);
+                matches &= program.evaluate(assignment).equals(expected.get(row))
+                        && reloaded.evaluate(assignment).equals(expected.get(row));
+            }
+            check("postfix " + expr, matches);
+        }
+        Expression xor = nestedXor().nandify();
+        PostfixProgram shared = PostfixProgram.compile(xor);
+        int[] code = shared.getCode();
+        boolean registers = false;
+        for (int instruction : code) {
+            registers |= (instruction & ((1 << PostfixProgram.OP_BITS) - 1)) == PostfixProgram.TEMP;
+        }
+        check("postfix nandified xor", registers && code.length <= 2 * ExpressionGraph.of(xor).size()
+                && postfixMatches(shared, nestedXor(), random));
+        check("postfix deep chain", postfixMatches(PostfixProgram.compile(deepChain()), deepChain(), random));
+        int var = postfix(ExpressionGraph.VAR, 0);
+        int[][] invalid = {
+            {},
+            {var, var},
+            {postfix(ExpressionGraph.AND, 0)},
+            {postfix(ExpressionGraph.VAR, 1)},
+            {postfix(PostfixProgram.TEMP, 0)},
+            {var, postfix(PostfixProgram.TEE, 0), postfix(PostfixProgram.TEMP, 1), postfix(ExpressionGraph.OR, 0)},
+            {var, postfix((1 << PostfixProgram.OP_BITS) - 1, 0)},
+        };
+        for (int[] program : invalid) {
+            boolean rejected = false;
+            try {
+                new PostfixProgram(program, List.of("x0"));
+            } catch (IllegalArgumentException e) {
+                rejected = true;
+            }
+            check("postfix rejects " + Arrays.toString(program), rejected);
+        }
+    }
+
+    /**
+     * Compares a postfix program with evaluate(Map) of an expression on random assignments of the
+     * checked variables.
+     *
+     * @param program The program.
+     * @param expr    The expression, over the same variables.
+     * @param random  The random generator.
+     * @return true if every sampled assignment matches.
+     * @throws Exception If evaluation encounters an error.
+     */
+    private static boolean postfixMatches(PostfixProgram program, Expression expr, Random random) throws Exception {
+        boolean matches = true;
+        for (int sample = 0; sample < 8; sample++) {
+            Map<String, Boolean> assignment = assignment(expr.getVariables(), random.nextInt(1 << VARIABLES));
+            matches &= program.evaluate(assignment).equals(expr.evaluate(assignment));
+        }
+        return matches;
+    }
+
+    /**
+     * Encodes a postfix instruction.
+     *
+     * @param op      The opcode.
+     * @param operand The operand.
+     * @return The instruction.
+     */
+    private static int postfix(int op, int operand) {
+        return operand << PostfixProgram.OP_BITS | op;
+    }
+
+    /**
+     * Checks ExpressionCompiler against the truth table, on random trees, on their nandify() graphs,
+     * on the nandify() graph of a deeply nested Xor and on a chain too deep to recurse over.
+     *
+     * @param random The random generator.
+     * @throws Exception If evaluation encounters an error.
+     */
+    private static void checkCompiler(Random random) throws Exception {
+        for (int i = 0; i < EXPRESSIONS; i++) {
+            Expression expr = randomExpression(random);
+            if (i % 2 == 0) {
+                expr = expr.nandify();
+            }
+            check("compile " + expr, compiledMatches(expr));
+        }
+        check("compile nandified xor", compiledMatches(nestedXor().nandify()));
+        CompiledExpression chain = ExpressionCompiler.compile(deepChain());
+        boolean[] slots = new boolean[VARIABLES];
+        Arrays.fill(slots, true);
+        boolean whole = chain.eval(slots);
+        slots[chain.slotOf("x" + (VARIABLES - 1))] = false;
+        check("compile deep chain", whole && !chain.eval(slots));
+    }
+
+    /**
+     * Checks whether the compiled form of an expression has its truth table.
+     *
+     * @param expr The expression.
+     * @return true if every row matches evaluate(Map).
+     * @throws Exception If evaluation encounters an error.
+     */
+    private static boolean compiledMatches(Expression expr) throws Exception {
+        List<String> variables = expr.getVariables();
+        CompiledExpression compiled = ExpressionCompiler.compile(expr, variables);
+        List<Boolean> expected = truthTable(expr, variables);
+        boolean matches = true;
+        for (int row = 0; row < expected.size(); row++) {
+            matches &= compiled.evaluate(assignment(variables, row)).equals(expected.get(row));
+        }
+        return matches;
+    }
+
+    /**
+     * Checks PreparedExpression over boolean[] and BitSet slots, on random trees, on their
+     * nandify() graphs, which share sub-expressions, and on a chain too deep to recurse over.
+     *
+     * @param random The random generator.
+     * @throws Exception If evaluation encounters an error.
+     */
+    private static void checkPrepared(Random random) throws Exception {
+        for (int i = 0; i < EXPRESSIONS; i++) {
+            Expression expr = randomExpression(random);
+            if (i % 2 == 0) {
+                expr = expr.nandify();
+            }
+            List<String> variables = expr.getVariables();
+            PreparedExpression prepared = PreparedExpression.prepare(expr, variables);
+            List<Boolean> expected = truthTable(expr, variables);
+            boolean matches = true;
+            for (int row = 0; row < expected.size(); row++) {
+                boolean[] slots = new boolean[variables.size()];
+                BitSet bits = new BitSet();
+                for (int slot = 0; slot < slots.length; slot++) {
+                    slots[slot] = (row >> slot & 1) == 1;
+                    bits.set(slot, slots[slot]);
+                }
+                matches &= prepared.evaluate(slots) == expected.get(row)
+                        && prepared.evaluate(bits) == expected.get(row);
+            }
+            check("prepared " + expr, matches);
+        }
+        PreparedExpression chain = PreparedExpression.prepare(deepChain());
+        boolean[] slots = new boolean[VARIABLES];
+        Arrays.fill(slots, true);
+        boolean whole = chain.evaluate(slots);
+        slots[VARIABLES - 1] = false;
+        check("prepared deep chain", whole && !chain.evaluate(slots));
+    }
+
+    /**
+     * Checks evaluate(Map) on the nandify() and norify() graphs of a deeply nested Xor, which take
+     * exponential time when walked as trees, and on a chain too deep to recurse over.
+     *
+     * @throws Exception If evaluation encounters an error.
+     */
+    private static void checkSharedEvaluate() throws Exception {
+        Expression xor = nestedXor();
+        check("evaluate nandified xor", sameFunction(xor, xor.nandify()));
+        check("evaluate norified xor", sameFunction(xor, xor.norify()));
+        Expression chain = deepChain();
+        Map<String, Boolean> assignment = assignment(chain.getVariables(), (1 << VARIABLES) - 1);
+        boolean whole = chain.evaluate(assignment);
+        assignment.put("x" + (VARIABLES - 1), false);
+        check("evaluate deep chain", whole && !chain.evaluate(assignment));
+    }
+
+    /**
+     * Checks that toString() writes a chain too deep to recurse over, with the expected length,
+     * and that parsing the text, with and without a factory, gives back the same text. Parsing with
+     * a factory must intern each node of the chain once.
+     *
+     * @throws Exception If parsing fails.
+     */
+    private static void checkDeepText() throws Exception {
+        String text = deepChain().toString();
+        // every And adds "(", " & ", ")" and a two-character variable
+        check("deep chain text", text.length() == 2 + 7 * (DEEP_CHAIN - 1)
+                && new ExpressionParser().parse(text).toString().equals(text));
+        ExpressionFactory factory = new ExpressionFactory();
+        Expression interned = new ExpressionParser(factory).parse(text);
+        // one And per link of the chain, one Var per variable and the two constants
+        check("deep chain interned text", interned.toString().equals(text)
+                && factory.size() == DEEP_CHAIN - 1 + VARIABLES + 2);
+    }
+
+    /**
+     * Checks a DimacsWriter, DimacsReader and SatSolver round trip: the CNF read back must be
+     * satisfiable exactly when the conjunction of the written expressions has a true row, and its
+     * models must satisfy that conjunction. The problem line must hold right-aligned counts with no
+     * trailing spaces, and a node shared between expressions must be encoded once.
+     *
+     * @param random The random generator.
+     * @throws Exception If evaluation, writing or reading fails.
+     */
+    private static void checkDimacs(Random random) throws Exception {
+        Path file = Files.createTempFile("check", ".cnf");
+        try {
+            for (int i = 0; i < EXPRESSIONS / 10; i++) {
+                Expression expr = randomExpression(random);
+                Expression other = i % 2 == 0 ? new Not(expr) : new Or(expr, randomExpression(random));
+                List<Expression> expressions = List.of(expr, other);
+                Expression conjunction = new And(expr, other);
+                DimacsWriter.write(expressions, file);
+                Map<String, Boolean> model = SatSolver.findModel(DimacsReader.read(file));
+                boolean satisfiable = count(truthTable(conjunction, conjunction.getVariables())) > 0;
+                if (model != null) {
+                    for (String variable : conjunction.getVariables()) {
+                        model.putIfAbsent(variable, false);
+                    }
+                }
+                check("dimacs round trip " + conjunction,
+                        model == null ? !satisfiable : satisfiable && conjunction.evaluate(model));
+                int[] clauses = new int[1];
+                ExpressionGraph graph = ExpressionGraph.of(expressions, null);
+                TseitinEncoder encoder = new TseitinEncoder(literals -> clauses[0]++);
+                for (String variable : graph.getVariables()) {
+                    encoder.declare(variable);
+                }
+                int roots = encoder.encode(graph).length;
+                String header = null;
+                for (String line : Files.readAllLines(file)) {
+                    if (line.startsWith("p")) {
+                        header = line;
+                        break;
+                    }
+                }
+                check("dimacs header " + conjunction, header != null
+                        && header.matches("p cnf +" + encoder.variableCount() + " +" + (clauses[0] + roots)));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Checks both forms of ColumnarEvaluator.evaluate against evaluate(Map) in sampled rows, on
+     * random trees, their nandify() graphs and constant or single-variable roots, with row counts
+     * that are not a multiple of 64, columns longer than needed and more than one block of rows.
+     *
+     * @param random The random generator.
+     * @throws Exception If evaluation encounters an error.
+     */
+    private static void checkColumnar(Random random) throws Exception {
+        long[] rowCounts = {1, 63, 64, 65, 1000, (long) ColumnarEvaluator.BLOCK_WORDS * Long.SIZE + 37};
+        List<Expression> expressions = new ArrayList<>(List.of(new Val(true), new Val(false), new Var("x0"),
+                new Not(new Var("x0"))));
+        for (int i = 0; i < EXPRESSIONS / 10; i++) {
+            Expression expr = randomExpression(random);
+            expressions.add(i % 2 == 0 ? expr : expr.nandify());
+        }
+        for (Expression expr : expressions) {
+            for (long rows : rowCounts) {
+                check("columnar " + rows + " rows " + expr, columnarMatches(expr, rows, random));
+            }
+        }
+    }
+
+    /**
+     * Evaluates an expression over random columns, a few words longer than the rows need, with
+     * both forms of ColumnarEvaluator.evaluate, and compares sampled rows with evaluate(Map).
+     *
+     * @param expr   The expression.
+     * @param rows   The number of rows.
+     * @param random The random generator.
+     * @return true if both forms agree, clear the bits after the last row and match every sampled row.
+     * @throws Exception If evaluation encounters an error.
+     */
+    private static boolean columnarMatches(Expression expr, long rows, Random random) throws Exception {
+        List<String> variables = expr.getVariables();
+        int words = (int) ((rows + Long.SIZE - 1) / Long.SIZE);
+        Map<String, long[]> columns = new HashMap<>();
+        Map<String, BitSet> bitColumns = new HashMap<>();
+        for (String variable : variables) {
+            long[] column = new long[words + 2];
+            for (int w = 0; w < column.length; w++) {
+                column[w] = random.nextLong();
+            }
+            columns.put(variable, column);
+            bitColumns.put(variable, BitSet.valueOf(column));
+        }
+        ColumnarEvaluator evaluator = ColumnarEvaluator.of(expr);
+        long[] result = evaluator.evaluate(columns, rows);
+        BitSet bits = evaluator.evaluate(bitColumns, (int) rows);
+        boolean matches = result.length == words && BitSet.valueOf(result).equals(bits) && bits.length() <= rows;
+        for (long row = 0; row < rows; row += 1 + random.nextInt(100)) {
+            Map<String, Boolean> assignment = new HashMap<>();
+            for (String variable : variables) {
+                assignment.put(variable, (columns.get(variable)[(int) (row >>> 6)] >>> row & 1) == 1);
+            }
+            matches &= bits.get((int) row) == expr.evaluate(assignment);
+        }
+        return matches;
+    }
+
+    /**
+     * Checks SafeEvaluator.tryEvaluate against evaluate(Map), on random trees, their nandify()
+     * graphs, the nandify() graph of a deeply nested Xor and a chain too deep to recurse over: on
+     * every complete assignment it must give the same value, and on assignments with variables
+     * removed it must fail exactly when evaluate(Map) throws, naming the same variable.
+     *
+     * @param random The random generator.
+     * @throws Exception If evaluation encounters an error.
+     */
+    private static void checkSafe(Random random) throws Exception {
+        SafeEvaluator.Result result = new SafeEvaluator.Result();
+        for (int i = 0; i < EXPRESSIONS; i++) {
+            Expression expr = randomExpression(random);
+            if (i % 2 == 0) {
+                expr = expr.nandify();
+            }
+            List<String> variables = expr.getVariables();
+            boolean matches = true;
+            for (int row = 0; row < 1 << variables.size(); row++) {
+                matches &= safeMatches(expr, assignment(variables, row), result) && result.isValid();
+            }
+            check("safe complete " + expr, matches);
+            check("safe incomplete " + expr, safeIncompleteMatches(expr, random, result));
+        }
+        Expression xor = nestedXor().nandify();
+        Map<String, Boolean> assignment = assignment(xor.getVariables(), random.nextInt(1 << VARIABLES));
+        check("safe nandified xor", safeMatches(xor, assignment, result) && result.isValid()
+                && safeIncompleteMatches(xor, random, result));
+        Expression chain = deepChain();
+        assignment = assignment(chain.getVariables(), (1 << VARIABLES) - 1);
+        boolean complete = SafeEvaluator.tryEvaluate(chain, assignment, result) && result.getValue();
+        String last = "x" + (VARIABLES - 1);
+        assignment.remove(last);
+        check("safe deep chain", complete && safeMatches(chain, assignment, result)
+                && last.equals(result.getMissingVariable()));
+    }
+
+    /**
+     * Evaluates an expression with SafeEvaluator.tryEvaluate on random assignments with variables
+     * removed, and compares each outcome with evaluate(Map).
+     *
+     * @param expr   The expression.
+     * @param random The random generator.
+     * @param result The holder to reuse.
+     * @return true if every outcome matches.
+     */
+    private static boolean safeIncompleteMatches(Expression expr, Random random, SafeEvaluator.Result result) {
+        List<String> variables = expr.getVariables();
+        boolean matches = true;
+        for (int trial = 0; trial < 10; trial++) {
+            Map<String, Boolean> assignment = assignment(variables, random.nextInt(1 << variables.size()));
+            for (String variable : variables) {
+                if (random.nextInt(3) == 0) {
+                    assignment.remove(variable);
+                }
+            }
+            matches &= safeMatches(expr, assignment, result);
+        }
+        return matches;
+    }
+
+    /**
+     * Evaluates an expression with SafeEvaluator.tryEvaluate and compares the outcome with
+     * evaluate(Map): the same value, or a failure naming the variable in the exception.
+     *
+     * @param expr       The expression.
+     * @param assignment The assignment, possibly incomplete.
+     * @param result     The holder to reuse.
+     * @return true if the outcomes match.
+     */
+    private static boolean safeMatches(Expression expr, Map<String, Boolean> assignment, SafeEvaluator.Result result) {
+        boolean evaluated = SafeEvaluator.tryEvaluate(expr, assignment, result);
+        try {
+            boolean value = expr.evaluate(assignment);
+            return evaluated && result.isValid() && result.getValue() == value;
+        } catch (Exception e) {
+            return !evaluated && !result.isValid()
+                    && e.getMessage().equals("Variable '" + result.getMissingVariable() + "' is not assigned");
+        }
+    }
+
+    /**
+     * Records the outcome of a single check, printing it if it failed.
+     *
+     * @param name      The description of the check.
+     * @param condition Whether the check passed.
+     */
+    private static void check(String name, boolean condition) {
+        checks++;
+        if (!condition) {
+            failures++;
+            System.out.println("FAILED " + name);
+        }
+    }
+
+    /**
+     * Builds a random expression of random depth over the checked variables.
+     *
+     * @param random The random generator.
+     * @return A random expression.
+     */
+    private static Expression randomExpression(Random random) {
+        return ExpressionsBenchmark.randomExpression(random, 1 + random.nextInt(MAX_DEPTH), VARIABLES);
+    }
+
+    /**
+     * Returns the assignment of a truth-table row, where bit i of the row is the value of variable i.
+     *
+     * @param variables The variable names.
+     * @param row       The row.
+     * @return The assignment.
+     */
+    private static Map<String, Boolean> assignment(List<String> variables, int row) {
+        Map<String, Boolean> assignment = new HashMap<>();
+        for (int i = 0; i < variables.size(); i++) {
+            assignment.put(variables.get(i), (row >> i & 1) == 1);
+        }
+        return assignment;
+    }
+
+    /**
+     * Computes the truth table of an expression through evaluate(Map).
+     *
+     * @param expr      The expression.
+     * @param variables The variables of the table, which must include those of the expression.
+     * @return The value of every row.
+     * @throws Exception If evaluation encounters an error.
+     */
+    private static List<Boolean> truthTable(Expression expr, List<String> variables) throws Exception {
+        List<Boolean> table = new ArrayList<>();
+        for (int row = 0; row < 1 << variables.size(); row++) {
+            table.add(expr.evaluate(assignment(variables, row)));
+        }
+        return table;
+    }
+
+    /**
+     * Checks whether two expressions have the same truth table over the variables of the first.
+     *
+     * @param expected The reference expression.
+     * @param actual   The expression to compare, whose variables must be a subset of the reference's.
+     * @return true if the truth tables are equal.
+     * @throws Exception If evaluation encounters an error.
+     */
+    private static boolean sameFunction(Expression expected, Expression actual) throws Exception {
+        List<String> variables = expected.getVariables();
+        return truthTable(expected, variables).equals(truthTable(actual, variables));
+    }
+
+    /**
+     * Checks whether two expressions have the same truth table over the variables of both.
+     *
+     * @param one The first expression.
+     * @param two The second expression.
+     * @return true if the truth tables are equal.
+     * @throws Exception If evaluation encounters an error.
+     */
+    private static boolean equivalent(Expression one, Expression two) throws Exception {
+        Set<String> union = new TreeSet<>(one.getVariables());
+        union.addAll(two.getVariables());
+        List<String> variables = new ArrayList<>(union);
+        return truthTable(one, variables).equals(truthTable(two, variables));
+    }
+
+    /**
+     * Checks whether every operation node of an expression is a gate of the given type.
+     *
+     * @param circuit The expression.
+     * @param op      The opcode of the gate.
+     * @return true if the expression has no other operations.
+     */
+    private static boolean onlyGates(Expression circuit, int op) {
+        ExpressionGraph graph = ExpressionGraph.of(circuit);
+        for (int node = 0; node < graph.size(); node++) {
+            int type = graph.op(node);
+            if (type != op && type != ExpressionGraph.VAR && type != ExpressionGraph.VAL) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Builds a left-deep chain of And nodes over the checked variables, far deeper than the stack
+     * allows to recurse over. It is true exactly when every variable is true.
+     *
+     * @return The chain.
+     */
+    private static Expression deepChain() {
+        Expression chain = new Var("x0");
+        for (int i = 1; i < DEEP_CHAIN; i++) {
+            chain = new And(chain, new Var("x" + i % VARIABLES));
+        }
+        return chain;
+    }
+
+    /**
+     * Builds a Xor nested {@value #NESTED_XOR} levels deep over the checked variables. Its nandify()
+     * graph uses every operand twice, so walking that graph as a tree takes exponential time.
+     *
+     * @return The nested Xor.
+     */
+    private static Expression nestedXor() {
+        Expression xor = new Var("x0");
+        for (int i = 1; i <= NESTED_XOR; i++) {
+            xor = new Xor(xor, new Var("x" + i % VARIABLES));
+        }
+        return xor;
+    }
+
+    /**
+     * Counts the true rows of a truth table.
+     *
+     * @param table The truth table.
+     * @return The number of true rows.
+     */
+    private static int count(List<Boolean> table) {
+        int count = 0;
+        for (boolean value : table) {
+            if (value) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,422 @@
+// Nimrod Netzer 322394545
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cost-aware translation of expressions into NAND-only or NOR-only circuits.
+ * Unlike nandify() and norify(), which translate every node on its own, the mapper builds one
+ * shared circuit: a gate over the same two inputs is created once, in either input order, a
+ * double inversion cancels, and a constant input is folded away. Operations with several
+ * equivalent gate patterns (XOR and XNOR, and an inverted-input form that reuses existing
+ * inverters) are built every way and the cheapest one is kept, by gate count or by depth. The
+ * choice is made node by node, bottom-up, against the gates already in the circuit.
+ * Costs are measured on the {@link GateNetlist} of the result.
+ */
+public final class GateMapper {
+    /**
+     * Prefer the pattern adding the fewest gates, then the shallowest one.
+     */
+    public static final int MIN_GATES = 0;
+    /**
+     * Prefer the shallowest pattern, then the one adding the fewest gates.
+     */
+    public static final int MIN_DEPTH = 1;
+
+    /**
+     * Private constructor, this class only has static methods.
+     */
+    private GateMapper() {
+    }
+
+    /**
+     * Translates an expression into a shared NAND-only circuit.
+     *
+     * @param expression The expression.
+     * @param objective  MIN_GATES or MIN_DEPTH.
+     * @return The circuit and its cost.
+     */
+    public static Result nandify(Expression expression, int objective) {
+        return map(expression, ExpressionGraph.NAND, objective);
+    }
+
+    /**
+     * Translates an expression into a shared NOR-only circuit.
+     *
+     * @param expression The expression.
+     * @param objective  MIN_GATES or MIN_DEPTH.
+     * @return The circuit and its cost.
+     */
+    public static Result norify(Expression expression, int objective) {
+        return map(expression, ExpressionGraph.NOR, objective);
+    }
+
+    /**
+     * Measures a circuit as it is, such as the output of nandify() or norify().
+     *
+     * @param circuit The circuit.
+     * @return The circuit and its cost.
+     */
+    public static Result cost(Expression circuit) {
+        return new Result(circuit, GateNetlist.of(circuit));
+    }
+
+    /**
+     * Translates an expression into a circuit of a single gate type.
+     *
+     * @param expression The expression.
+     * @param primitive  ExpressionGraph.NAND or ExpressionGraph.NOR.
+     * @param objective  MIN_GATES or MIN_DEPTH.
+     * @return The circuit and its cost.
+     */
+    private static Result map(Expression expression, int primitive, int objective) {
+        if (objective != MIN_GATES && objective != MIN_DEPTH) {
+            throw new IllegalArgumentException("Unknown objective: " + objective);
+        }
+        ExpressionGraph graph = ExpressionGraph.of(expression);
+        Circuit circuit = new Circuit(primitive, graph.getVariables().size());
+        int[] ids = new int[graph.size()];
+        for (int node = 0; node < graph.size(); node++) {
+            int left = graph.left(node);
+            switch (graph.op(node)) {
+                case ExpressionGraph.VAL:
+                    ids[node] = circuit.constant(left == 1);
+                    break;
+                case ExpressionGraph.VAR:
+                    ids[node] = left;
+                    break;
+                case ExpressionGraph.NOT:
+                    ids[node] = circuit.not(ids[left]);
+                    break;
+                default:
+                    ids[node] = circuit.map(graph.op(node), ids[left], ids[graph.right(node)], objective);
+                    break;
+            }
+        }
+        return cost(circuit.toExpression(ids[graph.root(0)], graph.getVariables()));
+    }
+
+    /**
+     * A circuit under construction, in which every gate over a pair of inputs is unique.
+     * Ids below the number of variables are the inputs, the next two are the constants false and
+     * true, and the rest are gates in creation order, so a gate only reads smaller ids.
+     */
+    private static final class Circuit {
+        private static final int INITIAL_CAPACITY = 64;
+        private static final int KEY_SHIFT = 32;
+
+        private final int primitive;
+        private final int conjunction;
+        private final int disjunction;
+        private final int dualPrimitive;
+        private final int equivalence;
+        private final int inverseEquivalence;
+        private final boolean controlling;
+        private final int firstGate;
+        private final Map<Long, Integer> gates = new HashMap<>();
+        private int[] lefts;
+        private int[] rights;
+        private int[] depths;
+        private int size;
+
+        /**
+         * Constructs an empty circuit.
+         * A NAND gate inverts an AND, has the controlling input false and builds XOR with the
+         * four-gate pattern; a NOR gate is the dual, inverting an OR, with the controlling input
+         * true and building XNOR with the same pattern.
+         *
+         * @param primitive The gate type, ExpressionGraph.NAND or ExpressionGraph.NOR.
+         * @param variables The number of inputs.
+         */
+        Circuit(int primitive, int variables) {
+            boolean nand = primitive == ExpressionGraph.NAND;
+            this.primitive = primitive;
+            this.conjunction = nand ? ExpressionGraph.AND : ExpressionGraph.OR;
+            this.disjunction = nand ? ExpressionGraph.OR : ExpressionGraph.AND;
+            this.dualPrimitive = nand ? ExpressionGraph.NOR : ExpressionGraph.NAND;
+            this.equivalence = nand ? ExpressionGraph.XOR : ExpressionGraph.XNOR;
+            this.inverseEquivalence = nand ? ExpressionGraph.XNOR : ExpressionGraph.XOR;
+            this.controlling = !nand;
+            this.firstGate = variables + 2;
+            this.size = firstGate;
+            int capacity = Math.max(INITIAL_CAPACITY, firstGate);
+            this.lefts = new int[capacity];
+            this.rights = new int[capacity];
+            this.depths = new int[capacity];
+        }
+
+        /**
+         * Returns the id of a constant.
+         *
+         * @param value The constant value.
+         * @return The id of the constant.
+         */
+        int constant(boolean value) {
+            return firstGate - (value ? 1 : 2);
+        }
+
+        /**
+         * Builds an operation, choosing the cheapest of its equivalent gate patterns.
+         *
+         * @param op        The binary opcode.
+         * @param one       The first operand.
+         * @param two       The second operand.
+         * @param objective MIN_GATES or MIN_DEPTH.
+         * @return The id of the result.
+         */
+        int map(int op, int one, int two, int objective) {
+            int alternatives = op == equivalence ? 2 : op == inverseEquivalence ? 3 : 1;
+            int best = 0;
+            int bestGates = Integer.MAX_VALUE;
+            int bestDepth = Integer.MAX_VALUE;
+            for (int pattern = 0; alternatives > 1 && pattern < alternatives; pattern++) {
+                int mark = size;
+                int result = build(op, pattern, one, two);
+                int added = size - mark;
+                int depth = depths[result];
+                rollback(mark);
+                boolean better = objective == MIN_GATES
+                        ? added < bestGates || (added == bestGates && depth < bestDepth)
+                        : depth < bestDepth || (depth == bestDepth && added < bestGates);
+                if (better) {
+                    best = pattern;
+                    bestGates = added;
+                    bestDepth = depth;
+                }
+            }
+            return build(op, best, one, two);
+        }
+
+        /**
+         * Builds one gate pattern of an operation.
+         *
+         * @param op      The binary opcode.
+         * @param pattern The index of the pattern.
+         * @param one     The first operand.
+         * @param two     The second operand.
+         * @return The id of the result.
+         */
+        private int build(int op, int pattern, int one, int two) {
+            if (op == primitive) {
+                return gate(one, two);
+            }
+            if (op == conjunction) {
+                return not(gate(one, two));
+            }
+            if (op == disjunction) {
+                return gate(not(one), not(two));
+            }
+            if (op == dualPrimitive) {
+                return not(gate(not(one), not(two)));
+            }
+            if (op == equivalence) {
+                return pattern == 0 ? fourGate(one, two) : gate(gate(one, not(two)), gate(not(one), two));
+            }
+            if (op == inverseEquivalence) {
+                switch (pattern) {
+                    case 0:
+                        return not(fourGate(one, two));
+                    case 1:
+                        return fourGate(not(one), two);
+                    default:
+                        return gate(gate(one, two), gate(not(one), not(two)));
+                }
+            }
+            throw new IllegalArgumentException("Unknown opcode: " + op);
+        }
+
+        /**
+         * Builds the four-gate pattern t = g(a, b), g(g(a, t), g(b, t)), which is XOR for NAND
+         * gates and XNOR for NOR gates.
+         *
+         * @param one The first operand.
+         * @param two The second operand.
+         * @return The id of the result.
+         */
+        private int fourGate(int one, int two) {
+            int shared = gate(one, two);
+            return gate(gate(one, shared), gate(two, shared));
+        }
+
+        /**
+         * Returns the inverse of a signal, reusing the input of an inverter instead of inverting it twice.
+         *
+         * @param id The signal.
+         * @return The id of the inverse.
+         */
+        int not(int id) {
+            if (id == constant(false) || id == constant(true)) {
+                return constant(id == constant(false));
+            }
+            if (id >= firstGate && lefts[id] == rights[id]) {
+                return lefts[id];
+            }
+            return gate(id, id);
+        }
+
+        /**
+         * Returns the gate over two signals, creating it if it does not exist yet.
+         *
+         * @param one The first input.
+         * @param two The second input.
+         * @return The id of the gate, or of a simpler equivalent signal if an input is constant.
+         */
+        private int gate(int one, int two) {
+            if (two == constant(controlling) || one == constant(controlling)) {
+                return constant(!controlling);
+            }
+            if (one == constant(!controlling)) {
+                return not(two);
+            }
+            if (two == constant(!controlling)) {
+                return not(one);
+            }
+            long key = key(one, two);
+            Integer known = gates.get(key);
+            if (known != null) {
+                return known;
+            }
+            if (size == lefts.length) {
+                lefts = Arrays.copyOf(lefts, 2 * size);
+                rights = Arrays.copyOf(rights, 2 * size);
+                depths = Arrays.copyOf(depths, 2 * size);
+            }
+            lefts[size] = one;
+            rights[size] = two;
+            depths[size] = Math.max(depths[one], depths[two]) + 1;
+            gates.put(key, size);
+            return size++;
+        }
+
+        /**
+         * Removes the gates created after a mark.
+         *
+         * @param mark The size of the circuit to return to.
+         */
+        private void rollback(int mark) {
+            while (size > mark) {
+                size--;
+                gates.remove(key(lefts[size], rights[size]));
+            }
+        }
+
+        /**
+         * Returns the key of a gate, the same for both input orders.
+         *
+         * @param one The first input.
+         * @param two The second input.
+         * @return The key.
+         */
+        private static long key(int one, int two) {
+            return (long) Math.min(one, two) << KEY_SHIFT | Math.max(one, two);
+        }
+
+        /**
+         * Builds the expression of a signal from the gates it reaches.
+         *
+         * @param root      The signal.
+         * @param variables The variable names, where the index of each name is its input id.
+         * @return The expression, with one node instance per gate and per input.
+         */
+        Expression toExpression(int root, List<String> variables) {
+            boolean[] used = new boolean[size];
+            used[root] = true;
+            for (int id = size - 1; id >= firstGate; id--) {
+                if (used[id]) {
+                    used[lefts[id]] = true;
+                    used[rights[id]] = true;
+                }
+            }
+            Expression[] built = new Expression[size];
+            for (int id = 0; id < size; id++) {
+                if (!used[id]) {
+                    continue;
+                }
+                if (id < variables.size()) {
+                    built[id] = new Var(variables.get(id));
+                } else if (id < firstGate) {
+                    built[id] = new Val(id == constant(true));
+                } else {
+                    built[id] = ExpressionGraph.binary(primitive, built[lefts[id]], built[rights[id]]);
+                }
+            }
+            return built[root];
+        }
+    }
+
+    /**
+     * A circuit and its cost.
+     */
+    public static final class Result {
+        private final Expression expression;
+        private final GateNetlist netlist;
+
+        /**
+         * Constructs a result.
+         *
+         * @param expression The circuit.
+         * @param netlist    The netlist of the circuit.
+         */
+        private Result(Expression expression, GateNetlist netlist) {
+            this.expression = expression;
+            this.netlist = netlist;
+        }
+
+        /**
+         * Returns the circuit.
+         *
+         * @return The circuit as an expression, sharing the node instance of every gate.
+         */
+        public Expression getExpression() {
+            return expression;
+        }
+
+        /**
+         * Returns the netlist of the circuit, ready for simulation.
+         *
+         * @return The netlist.
+         */
+        public GateNetlist getNetlist() {
+            return netlist;
+        }
+
+        /**
+         * Returns the number of gates.
+         *
+         * @return The number of logic gates, counting every shared gate once.
+         */
+        public int getGates() {
+            return netlist.gateCount();
+        }
+
+        /**
+         * Returns the number of gates on the longest path from an input to the output.
+         *
+         * @return The depth.
+         */
+        public int getDepth() {
+            return netlist.depth();
+        }
+
+        /**
+         * Returns the largest number of gates driven by a single gate or input.
+         *
+         * @return The maximal fan-out.
+         */
+        public int getMaxFanout() {
+            return netlist.maxFanout();
+        }
+
+        /**
+         * Returns a one-line report of the cost.
+         *
+         * @return The gate count, depth and maximal fan-out.
+         */
+        @Override
+        public String toString() {
+            return String.format("%d gates, depth %d, max fan-out %d", getGates(), getDepth(), getMaxFanout());
+        }
+    }
+}
@@ -0,0 +1,559 @@
+// Nimrod Netzer 322394545
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A levelized gate netlist, meant for the gate-only circuits built by nandify() and norify().
+ * Gates are stored in flat arrays of types (the {@link ExpressionGraph} opcodes) and fan-in
+ * indices, sorted by level: the inputs, one per variable in slot order, and the constants come
+ * first at level 0, and every other gate is one level above its deepest fan-in. A gate therefore
+ * only reads gates before it, and the gates of a level form one contiguous range.
+ * The netlist simulates 64 input vectors per pass, one per bit of a word: {@link #simulate} runs
+ * every gate over a column of vectors, and a {@link Simulator} keeps the state of every gate and
+ * propagates input changes level by level, evaluating only the gates reached by a change.
+ * {@link LiveEvaluator} keeps its expressions up to date through a Simulator, using the first vector.
+ * Instances are immutable and safe to share between threads.
+ */
+public final class GateNetlist {
+    private final ExpressionGraph graph;
+    private final int[] types;
+    private final int[] lefts;
+    private final int[] rights;
+    private final int[] levels;
+    private final int[] levelStart;
+    private final int[] outputs;
+    private final boolean[] isOutput;
+    private final int[] fanoutStart;
+    private final int[] fanouts;
+    private final int firstGate;
+
+    /**
+     * Constructs a netlist from its levelized arrays.
+     *
+     * @param graph      The flattened expressions, whose variable slots are the input gates.
+     * @param types      The opcode of every gate.
+     * @param lefts      The first fan-in of every gate, the slot of an input or 1 or 0 for a constant.
+     * @param rights     The second fan-in of every gate, or -1.
+     * @param levels     The level of every gate.
+     * @param levelStart The first gate of every level, followed by the number of gates.
+     * @param outputs    The gate of every output.
+     * @param firstGate  The first gate that is neither an input nor a constant.
+     */
+    private GateNetlist(ExpressionGraph graph, int[] types, int[] lefts, int[] rights, int[] levels,
+                        int[] levelStart, int[] outputs, int firstGate) {
+        this.graph = graph;
+        this.types = types;
+        this.lefts = lefts;
+        this.rights = rights;
+        this.levels = levels;
+        this.levelStart = levelStart;
+        this.outputs = outputs;
+        this.firstGate = firstGate;
+        this.isOutput = new boolean[types.length];
+        for (int output : outputs) {
+            isOutput[output] = true;
+        }
+        this.fanoutStart = new int[types.length + 1];
+        for (int gate = firstGate; gate < types.length; gate++) {
+            fanoutStart[lefts[gate] + 1]++;
+            if (rights[gate] != -1 && rights[gate] != lefts[gate]) {
+                fanoutStart[rights[gate] + 1]++;
+            }
+        }
+        for (int gate = 0; gate < types.length; gate++) {
+            fanoutStart[gate + 1] += fanoutStart[gate];
+        }
+        this.fanouts = new int[fanoutStart[types.length]];
+        int[] fill = fanoutStart.clone();
+        for (int gate = firstGate; gate < types.length; gate++) {
+            fanouts[fill[lefts[gate]]++] = gate;
+            if (rights[gate] != -1 && rights[gate] != lefts[gate]) {
+                fanouts[fill[rights[gate]]++] = gate;
+            }
+        }
+    }
+
+    /**
+     * Builds the netlist of an expression.
+     *
+     * @param expression The expression, usually the result of nandify() or norify().
+     * @return The netlist with a single output.
+     */
+    public static GateNetlist of(Expression expression) {
+        return of(List.of(expression));
+    }
+
+    /**
+     * Builds the netlist of several expressions, sharing every node instance they have in common.
+     * Every occurrence of a variable is connected to the single input gate of the variable.
+     *
+     * @param expressions The expressions, one per output.
+     * @return The netlist.
+     */
+    public static GateNetlist of(List<Expression> expressions) {
+        ExpressionGraph graph = ExpressionGraph.of(expressions, null);
+        int inputs = graph.getVariables().size();
+        int[] constants = {-1, -1};
+        int leaves = inputs;
+        for (int node = 0; node < graph.size(); node++) {
+            if (graph.op(node) == ExpressionGraph.VAL && constants[graph.left(node)] == -1) {
+                constants[graph.left(node)] = leaves++;
+            }
+        }
+        int[] gateOf = new int[graph.size()];
+        int[] nodeLevel = new int[graph.size()];
+        int depth = 0;
+        for (int node = 0; node < graph.size(); node++) {
+            int op = graph.op(node);
+            if (op == ExpressionGraph.VAR || op == ExpressionGraph.VAL) {
+                continue;
+            }
+            nodeLevel[node] = nodeLevel[graph.left(node)] + 1;
+            if (graph.right(node) != -1) {
+                nodeLevel[node] = Math.max(nodeLevel[node], nodeLevel[graph.right(node)] + 1);
+            }
+            depth = Math.max(depth, nodeLevel[node]);
+        }
+        int[] levelStart = new int[depth + 2];
+        levelStart[1] = leaves;
+        for (int node = 0; node < graph.size(); node++) {
+            if (nodeLevel[node] > 0) {
+                levelStart[nodeLevel[node] + 1]++;
+            }
+        }
+        for (int level = 1; level <= depth; level++) {
+            levelStart[level + 1] += levelStart[level];
+        }
+        int size = levelStart[depth + 1];
+        int[] types = new int[size];
+        int[] lefts = new int[size];
+        int[] rights = new int[size];
+        int[] levels = new int[size];
+        for (int slot = 0; slot < inputs; slot++) {
+            types[slot] = ExpressionGraph.VAR;
+            lefts[slot] = slot;
+            rights[slot] = -1;
+        }
+        for (int value = 0; value < constants.length; value++) {
+            if (constants[value] != -1) {
+                types[constants[value]] = ExpressionGraph.VAL;
+                lefts[constants[value]] = value;
+                rights[constants[value]] = -1;
+            }
+        }
+        int[] fill = levelStart.clone();
+        for (int node = 0; node < graph.size(); node++) {
+            int op = graph.op(node);
+            if (op == ExpressionGraph.VAR) {
+                gateOf[node] = graph.left(node);
+            } else if (op == ExpressionGraph.VAL) {
+                gateOf[node] = constants[graph.left(node)];
+            } else {
+                int gate = fill[nodeLevel[node]]++;
+                gateOf[node] = gate;
+                types[gate] = op;
+                lefts[gate] = gateOf[graph.left(node)];
+                rights[gate] = graph.right(node) == -1 ? -1 : gateOf[graph.right(node)];
+                levels[gate] = nodeLevel[node];
+            }
+        }
+        int[] outputs = new int[graph.rootCount()];
+        for (int i = 0; i < outputs.length; i++) {
+            outputs[i] = gateOf[graph.root(i)];
+        }
+        return new GateNetlist(graph, types, lefts, rights, levels, levelStart, outputs, leaves);
+    }
+
+    /**
+     * Simulates the netlist over columns of input vectors, 64 vectors per pass.
+     *
+     * @param columns The input columns, where bit r of the column of a variable is its value in vector r.
+     * @param words   The number of words of every column to simulate.
+     * @return The output columns, one per output.
+     * @throws Exception If a variable of the netlist has no column.
+     */
+    public long[][] simulate(Map<String, long[]> columns, int words) throws Exception {
+        List<String> variables = graph.getVariables();
+        long[][] slots = new long[variables.size()][];
+        for (int slot = 0; slot < slots.length; slot++) {
+            String variable = variables.get(slot);
+            slots[slot] = columns.get(variable);
+            if (slots[slot] == null) {
+                throw new Exception("Variable '" + variable + "' is not assigned");
+            }
+            if (slots[slot].length < words) {
+                throw new IllegalArgumentException("Variable '" + variable + "' has " + slots[slot].length
+                        + " words instead of " + words);
+            }
+        }
+        long[][] result = new long[outputs.length][words];
+        long[] state = new long[types.length];
+        initializeConstants(state);
+        for (int w = 0; w < words; w++) {
+            for (int slot = 0; slot < slots.length; slot++) {
+                state[slot] = slots[slot][w];
+            }
+            for (int gate = firstGate; gate < types.length; gate++) {
+                state[gate] = evaluate(gate, state);
+            }
+            for (int i = 0; i < outputs.length; i++) {
+                result[i][w] = state[outputs[i]];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Creates an event-driven simulator with every input false.
+     *
+     * @return A new simulator.
+     */
+    public Simulator simulator() {
+        return new Simulator(this, new long[graph.getVariables().size()]);
+    }
+
+    /**
+     * Creates an event-driven simulator with the given input words.
+     *
+     * @param inputs The word of every input, by input gate.
+     * @return A new simulator.
+     */
+    Simulator simulator(long[] inputs) {
+        return new Simulator(this, inputs);
+    }
+
+    /**
+     * Returns the input gate of a variable.
+     *
+     * @param variable The variable name.
+     * @return The input gate, or -1 if the variable is not part of the netlist.
+     */
+    public int input(String variable) {
+        return graph.slotOf(variable);
+    }
+
+    /**
+     * Returns the variables of the netlist.
+     *
+     * @return The variable names, where the index of each name is its input gate.
+     */
+    public List<String> getVariables() {
+        return graph.getVariables();
+    }
+
+    /**
+     * Returns the total number of gates, including the inputs and the constants.
+     *
+     * @return The number of gates.
+     */
+    public int size() {
+        return types.length;
+    }
+
+    /**
+     * Returns the number of logic gates, not counting the inputs and the constants.
+     *
+     * @return The number of logic gates.
+     */
+    public int gateCount() {
+        return types.length - firstGate;
+    }
+
+    /**
+     * Returns the number of levels of logic gates on the longest path from an input to an output.
+     *
+     * @return The depth of the netlist.
+     */
+    public int depth() {
+        return levelStart.length - 2;
+    }
+
+    /**
+     * Returns the first gate of a level.
+     *
+     * @param level The level, from 0 to depth() + 1.
+     * @return The first gate of the level, or size() for depth() + 1.
+     */
+    public int levelStart(int level) {
+        return levelStart[level];
+    }
+
+    /**
+     * Returns the level of a gate.
+     *
+     * @param gate The gate.
+     * @return The level of the gate.
+     */
+    public int level(int gate) {
+        return levels[gate];
+    }
+
+    /**
+     * Returns the type of a gate.
+     *
+     * @param gate The gate.
+     * @return The opcode of the gate.
+     */
+    public int type(int gate) {
+        return types[gate];
+    }
+
+    /**
+     * Returns the first fan-in of a gate.
+     *
+     * @param gate The gate.
+     * @return The first fan-in gate, the slot of an input, or 1 or 0 for a constant.
+     */
+    public int left(int gate) {
+        return lefts[gate];
+    }
+
+    /**
+     * Returns the second fan-in of a gate.
+     *
+     * @param gate The gate.
+     * @return The second fan-in gate, or -1 for gates with fewer fan-ins.
+     */
+    public int right(int gate) {
+        return rights[gate];
+    }
+
+    /**
+     * Returns the fan-out of a gate.
+     *
+     * @param gate The gate.
+     * @return The number of logic gates reading the gate.
+     */
+    public int fanout(int gate) {
+        return fanoutStart[gate + 1] - fanoutStart[gate];
+    }
+
+    /**
+     * Returns the largest fan-out of any gate, including the inputs.
+     *
+     * @return The maximal fan-out.
+     */
+    public int maxFanout() {
+        int max = 0;
+        for (int gate = 0; gate < types.length; gate++) {
+            max = Math.max(max, fanout(gate));
+        }
+        return max;
+    }
+
+    /**
+     * Returns the number of outputs.
+     *
+     * @return The number of outputs.
+     */
+    public int outputCount() {
+        return outputs.length;
+    }
+
+    /**
+     * Returns the gate driving an output.
+     *
+     * @param i The index of the output.
+     * @return The gate of the output.
+     */
+    public int output(int i) {
+        return outputs[i];
+    }
+
+    /**
+     * Sets the words of the constant gates.
+     *
+     * @param state The word of every gate.
+     */
+    private void initializeConstants(long[] state) {
+        for (int gate = graph.getVariables().size(); gate < firstGate; gate++) {
+            state[gate] = lefts[gate] == 1 ? -1L : 0L;
+        }
+    }
+
+    /**
+     * Evaluates a logic gate over 64 vectors.
+     *
+     * @param gate  The gate.
+     * @param state The word of every gate.
+     * @return The word of the gate.
+     */
+    private long evaluate(int gate, long[] state) {
+        long one = state[lefts[gate]];
+        switch (types[gate]) {
+            case ExpressionGraph.NAND:
+                return ~(one & state[rights[gate]]);
+            case ExpressionGraph.NOR:
+                return ~(one | state[rights[gate]]);
+            case ExpressionGraph.NOT:
+                return ~one;
+            case ExpressionGraph.AND:
+                return one & state[rights[gate]];
+            case ExpressionGraph.OR:
+                return one | state[rights[gate]];
+            case ExpressionGraph.XOR:
+                return one ^ state[rights[gate]];
+            case ExpressionGraph.XNOR:
+                return ~(one ^ state[rights[gate]]);
+            default:
+                throw new IllegalArgumentException("Unknown opcode: " + types[gate]);
+        }
+    }
+
+    /**
+     * An event-driven simulation of a netlist over 64 input vectors, one per bit of a word.
+     * Changing an input queues its fan-outs; the queued gates are evaluated level by level, and
+     * only the gates whose word changed queue their own fan-outs, so a change stops climbing
+     * wherever a gate keeps its word.
+     * Instances are not thread-safe.
+     */
+    public static final class Simulator {
+        private final GateNetlist netlist;
+        private final long[] state;
+        private final int[] queue;
+        private final int[] queued;
+        private final boolean[] inQueue;
+        private int pending;
+        private boolean outputChanged;
+
+        /**
+         * Constructs a simulator and settles every gate.
+         *
+         * @param netlist The netlist to simulate.
+         * @param inputs  The word of every input, by input gate.
+         */
+        private Simulator(GateNetlist netlist, long[] inputs) {
+            this.netlist = netlist;
+            this.state = new long[netlist.types.length];
+            this.queue = new int[netlist.types.length];
+            this.queued = new int[netlist.levelStart.length];
+            this.inQueue = new boolean[netlist.types.length];
+            System.arraycopy(inputs, 0, state, 0, inputs.length);
+            netlist.initializeConstants(state);
+            for (int gate = netlist.firstGate; gate < state.length; gate++) {
+                state[gate] = netlist.evaluate(gate, state);
+            }
+        }
+
+        /**
+         * Sets an input to the same value in all 64 vectors.
+         *
+         * @param variable The variable name.
+         * @param value    The new value.
+         * @return The number of gates evaluated.
+         */
+        public int set(String variable, boolean value) {
+            return set(variable, value ? -1L : 0L);
+        }
+
+        /**
+         * Sets an input and propagates the change.
+         *
+         * @param variable The variable name.
+         * @param vectors  The new word of the input, bit r being its value in vector r.
+         * @return The number of gates evaluated.
+         */
+        public int set(String variable, long vectors) {
+            int input = netlist.input(variable);
+            if (input == -1) {
+                throw new IllegalArgumentException("Variable '" + variable + "' is not part of the netlist");
+            }
+            return set(input, vectors);
+        }
+
+        /**
+         * Sets an input gate and propagates the change.
+         *
+         * @param input   The input gate, as returned by {@link GateNetlist#input}.
+         * @param vectors The new word of the input, bit r being its value in vector r.
+         * @return The number of gates evaluated.
+         */
+        public int set(int input, long vectors) {
+            if (input < 0 || input >= netlist.graph.getVariables().size()) {
+                throw new IllegalArgumentException("Gate " + input + " is not an input of the netlist");
+            }
+            outputChanged = false;
+            if (state[input] == vectors) {
+                return 0;
+            }
+            state[input] = vectors;
+            outputChanged = netlist.isOutput[input];
+            enqueueFanouts(input);
+            int evaluated = 0;
+            for (int level = 1; pending > 0; level++) {
+                int start = netlist.levelStart[level];
+                for (int i = start; i < start + queued[level]; i++) {
+                    int gate = queue[i];
+                    inQueue[gate] = false;
+                    pending--;
+                    evaluated++;
+                    long word = netlist.evaluate(gate, state);
+                    if (word != state[gate]) {
+                        state[gate] = word;
+                        outputChanged |= netlist.isOutput[gate];
+                        enqueueFanouts(gate);
+                    }
+                }
+                queued[level] = 0;
+            }
+            return evaluated;
+        }
+
+        /**
+         * Returns whether the word of some output changed during the last call to set().
+         *
+         * @return true if an output changed.
+         */
+        public boolean outputChanged() {
+            return outputChanged;
+        }
+
+        /**
+         * Returns the word of an input gate.
+         *
+         * @param input The input gate, as returned by {@link GateNetlist#input}.
+         * @return The input, bit r being its value in vector r.
+         */
+        public long getInput(int input) {
+            return state[input];
+        }
+
+        /**
+         * Returns the word of an output.
+         *
+         * @param i The index of the output.
+         * @return The output, bit r being its value in vector r.
+         */
+        public long getOutput(int i) {
+            return state[netlist.outputs[i]];
+        }
+
+        /**
+         * Returns the value of an output in the first vector.
+         *
+         * @param i The index of the output.
+         * @return The value of the output.
+         */
+        public boolean getValue(int i) {
+            return (state[netlist.outputs[i]] & 1) != 0;
+        }
+
+        /**
+         * Queues the fan-outs of a gate whose word changed.
+         *
+         * @param gate The gate.
+         */
+        private void enqueueFanouts(int gate) {
+            for (int i = netlist.fanoutStart[gate]; i < netlist.fanoutStart[gate + 1]; i++) {
+                int fanout = netlist.fanouts[i];
+                if (!inQueue[fanout]) {
+                    inQueue[fanout] = true;
+                    pending++;
+                    int level = netlist.levels[fanout];
+                    queue[netlist.levelStart[level] + queued[level]++] = fanout;
+                }
+            }
+        }
+    }
+}
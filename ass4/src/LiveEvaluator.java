@@ -0,0 +1,133 @@
+// Nimrod Netzer 322394545
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the value of one or more expressions up to date while variables change.
+ * The expressions are flattened into one {@link GateNetlist}, so sub-expression instances shared
+ * by several rules are tracked once, and a {@link GateNetlist.Simulator} holds the value of every
+ * gate in the first of its 64 vectors. Changing a variable recomputes only the gates above it,
+ * level by level so each is recomputed at most once after all of its changed operands, and stops
+ * climbing wherever a gate keeps its value.
+ * Instances are not thread-safe.
+ */
+public final class LiveEvaluator {
+    private final GateNetlist netlist;
+    private final GateNetlist.Simulator simulator;
+    private int recomputed;
+
+    /**
+     * Evaluates an expression and starts tracking it.
+     *
+     * @param expression The expression.
+     * @param assignment The initial value of every variable.
+     * @throws Exception If a variable of the expression is not assigned.
+     */
+    public LiveEvaluator(Expression expression, Map<String, Boolean> assignment) throws Exception {
+        this(List.of(expression), assignment);
+    }
+
+    /**
+     * Evaluates several expressions and starts tracking them.
+     *
+     * @param expressions The expressions, which may share sub-expressions.
+     * @param assignment  The initial value of every variable.
+     * @throws Exception If a variable of the expressions is not assigned.
+     */
+    public LiveEvaluator(List<Expression> expressions, Map<String, Boolean> assignment) throws Exception {
+        this.netlist = GateNetlist.of(expressions);
+        List<String> variables = netlist.getVariables();
+        long[] inputs = new long[variables.size()];
+        for (int input = 0; input < inputs.length; input++) {
+            Boolean value = assignment.get(variables.get(input));
+            if (value == null) {
+                throw new Exception("Variable '" + variables.get(input) + "' is not assigned");
+            }
+            inputs[input] = value ? -1L : 0L;
+        }
+        this.simulator = netlist.simulator(inputs);
+    }
+
+    /**
+     * Changes the value of a variable and updates the gates that depend on it.
+     *
+     * @param variable The variable name.
+     * @param value    The new value.
+     * @return true if the value of some expression changed.
+     */
+    public boolean set(String variable, boolean value) {
+        recomputed = simulator.set(input(variable), value ? -1L : 0L);
+        return simulator.outputChanged();
+    }
+
+    /**
+     * Returns the current value of the first expression.
+     *
+     * @return The value of the first expression.
+     */
+    public boolean getValue() {
+        return getValue(0);
+    }
+
+    /**
+     * Returns the current value of an expression.
+     *
+     * @param i The index of the expression in the list given to the constructor.
+     * @return The value of the expression.
+     */
+    public boolean getValue(int i) {
+        return simulator.getValue(i);
+    }
+
+    /**
+     * Returns the current value of a variable.
+     *
+     * @param variable The variable name.
+     * @return The value of the variable.
+     */
+    public boolean getVariable(String variable) {
+        return (simulator.getInput(input(variable)) & 1) != 0;
+    }
+
+    /**
+     * Returns the variables of the expressions.
+     *
+     * @return The variable names.
+     */
+    public List<String> getVariables() {
+        return netlist.getVariables();
+    }
+
+    /**
+     * Returns the number of gates recomputed by the last call to set().
+     *
+     * @return The number of recomputed gates.
+     */
+    public int lastRecomputed() {
+        return recomputed;
+    }
+
+    /**
+     * Returns the number of gates being tracked, including one input per variable.
+     *
+     * @return The number of gates.
+     */
+    public int size() {
+        return netlist.size();
+    }
+
+    /**
+     * Returns the input gate of a variable.
+     *
+     * @param variable The variable name.
+     * @return The input gate.
+     */
+    private int input(String variable) {
+        int input = netlist.input(variable);
+        if (input == -1) {
+            throw new IllegalArgumentException("Variable '" + variable + "' is not part of the expressions");
+        }
+        return input;
+    }
+}
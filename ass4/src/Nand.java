@@ -1,9 +1,6 @@
 // Nimrod Netzer 322394545
 
-import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 /**
  * A class to represent the NAND logic expression.
@@ -34,91 +31,114 @@ public class Nand extends BinaryExpression {
     }
 
     /**
-     * Evaluates the NAND expression using the variable values provided in the assignment.
-     * Computes !(expressionOne && expressionTwo).
+     * Returns the opcode of this expression in {@link ExpressionGraph}.
      *
-     * @param assignment A map containing variable names and their boolean values.
-     * @return The result of evaluating the NAND expression with the given assignment.
-     * @throws Exception If the evaluation encounters an error or if variables are not properly assigned.
+     * @return The opcode NAND.
      */
-    public Boolean evaluate(Map<String, Boolean> assignment) throws Exception {
-        try {
-            return !((expressionOne.evaluate(assignment)) && (expressionTwo.evaluate(assignment)));
-        } catch (Exception e) {
-            throw new Exception("Error evaluating expression: " + e.getMessage());
-        }
+    @Override
+    protected int getOpcode() {
+        return ExpressionGraph.NAND;
     }
 
     /**
-     * Returns a list of the variables present in this NAND expression.
+     * Returns the operator written between the operands of the NAND expression.
      *
-     * @return A list of variable names as strings.
+     * @return The string " A ".
      */
-    public List<String> getVariables() {
-        return Stream.of(expressionOne.getVariables(), expressionTwo.getVariables())
-                .flatMap(List::stream)
-                .distinct()
-                .collect(Collectors.toList());
+    protected String getOperator() {
+        return " A ";
     }
 
     /**
-     * Returns a string representation of the NAND expression.
-     * Format: "(expressionOne A expressionTwo)".
+     * Replaces several variables at once in a single pass. Every node instance is visited once,
+     * and sub-expressions without substituted variables are returned as they are.
      *
-     * @return A string representation of the NAND expression.
+     * @param substitution The expressions to replace the variables with, by variable name.
+     * @param assigned     The expressions substituted so far, by node instance.
+     * @return The NAND of the substituted operands, or this expression if neither operand changed.
      */
-    public String toString() {
-        if (expressionOne == null || expressionTwo == null) {
-            return "null exception";
+    public Expression assign(Map<String, Expression> substitution, Map<Expression, Expression> assigned) {
+        Expression cached = assigned.get(this);
+        if (cached != null) {
+            return cached;
         }
-        return "(" + expressionOne.toString() + " A " + expressionTwo.toString() + ")";
+        Expression assignedOne = expressionOne.assign(substitution, assigned);
+        Expression assignedTwo = expressionTwo.assign(substitution, assigned);
+        Expression result = assignedOne == expressionOne && assignedTwo == expressionTwo ? this
+                : new Nand(assignedOne, assignedTwo);
+        assigned.put(this, result);
+        return result;
     }
 
     /**
-     * Creates a new expression in which all occurrences of the variable "var"
-     * are replaced with the provided expression.
+     * Returns the expression tree resulting from converting all operations to
+     * the logical NAND operation. The NAND itself is kept and only its operands are converted,
+     * so this expression is returned as is when its operands already use only NAND.
      *
-     * @param var        The variable name to be replaced.
-     * @param expression The expression to replace the variable with.
-     * @return A new expression with the variable replaced.
+     * @param converted The expressions converted so far, by node instance.
+     * @return A NAND expression equivalent to this NAND expression.
      */
-    public Expression assign(String var, Expression expression) {
-        return new Xnor(expressionOne.assign(var, expression), expressionTwo.assign(var, expression));
+    public Expression nandify(Map<Expression, Expression> converted) {
+        Expression cached = converted.get(this);
+        if (cached != null) {
+            return cached;
+        }
+        Expression nandifyExpOne = expressionOne.nandify(converted);
+        Expression nandifyExpTwo = expressionTwo.nandify(converted);
+        Expression result = this;
+        if (nandifyExpOne != expressionOne || nandifyExpTwo != expressionTwo) {
+            result = new Nand(nandifyExpOne, nandifyExpTwo);
+        }
+        converted.put(this, result);
+        return result;
     }
 
     /**
      * Returns the expression tree resulting from converting all operations to
-     * the logical NAND operation. For NAND, returns itself.
+     * the logical NOR operation.
+     * Every node instance is converted once, so shared sub-expressions stay shared.
      *
-     * @return This NAND expression.
+     * @param converted The expressions converted so far, by node instance.
+     * @return A NOR expression equivalent to this NAND expression.
      */
-    public Expression nandify() {
-        return this;
+    public Expression norify(Map<Expression, Expression> converted) {
+        Expression cached = converted.get(this);
+        if (cached != null) {
+            return cached;
+        }
+        Expression norifyExpOne = expressionOne.norify(converted);
+        Expression norifyExpTwo = expressionTwo.norify(converted);
+        Expression and = new Nor(new Nor(norifyExpOne, norifyExpOne), new Nor(norifyExpTwo, norifyExpTwo));
+        Expression result = new Nor(and, and);
+        converted.put(this, result);
+        return result;
     }
 
     /**
-     * Returns the expression tree resulting from converting all operations to
-     * the logical NOR operation.
+     * Simplifies the NAND expression by applying logical simplification rules.
+     * Every node instance is simplified once, so shared sub-expressions are not simplified twice.
      *
-     * @return A NOR expression equivalent to this NAND expression.
+     * @param simplified The expressions simplified so far, by node instance.
+     * @return A simplified version of the NAND expression.
      */
-    public Expression norify() {
-        Expression norifyExpOne = expressionOne.norify();
-        Expression norifyExpTwo = expressionTwo.norify();
-        return new Nor(
-                new Nor(new Nor(norifyExpOne, norifyExpOne), new Nor(norifyExpTwo, norifyExpTwo)),
-                new Nor(new Nor(norifyExpOne, norifyExpOne), new Nor(norifyExpTwo, norifyExpTwo)));
+    public Expression simplify(Map<Expression, Expression> simplified) {
+        Expression cached = simplified.get(this);
+        if (cached != null) {
+            return cached;
+        }
+        Expression result = simplify(expressionOne.simplify(simplified), expressionTwo.simplify(simplified));
+        simplified.put(this, result);
+        return result;
     }
 
     /**
-     * Returns a simplified version of the NAND expression.
+     * Applies the NAND simplification rules to already simplified operands.
      *
-     * @return A simplified NAND expression.
+     * @param simplifiedOne The simplified first operand.
+     * @param simplifiedTwo The simplified second operand.
+     * @return The simplified expression.
      */
-    public Expression simplify() {
-        Expression simplifiedOne = expressionOne.simplify();
-        Expression simplifiedTwo = expressionTwo.simplify();
-
+    private Expression simplify(Expression simplifiedOne, Expression simplifiedTwo) {
         // Apply simplification rules
         if (isEqual(simplifiedOne, new Val(true))) {
             return new Not(simplifiedTwo); // True A x = ~x
@@ -1,9 +1,6 @@
 // Nimrod Netzer 322394545
 
-import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 /**
  * A class to represent the logical expression NOR.
@@ -34,93 +31,114 @@ public class Nor extends BinaryExpression {
     }
 
     /**
-     * Evaluates the NOR expression using the variable values provided in the assignment.
-     * Computes !(expressionOne || expressionTwo).
+     * Returns the opcode of this expression in {@link ExpressionGraph}.
      *
-     * @param assignment A map containing variable names and their boolean values.
-     * @return The result of evaluating the NOR expression with the given assignment.
-     * @throws Exception If the evaluation encounters an error or if variables are not properly assigned.
+     * @return The opcode NOR.
      */
-    public Boolean evaluate(Map<String, Boolean> assignment) throws Exception {
-        try {
-            return !((expressionOne.evaluate(assignment)) || (expressionTwo.evaluate(assignment)));
-        } catch (Exception e) {
-            throw new Exception("Error evaluating expression: " + e.getMessage());
-        }
+    @Override
+    protected int getOpcode() {
+        return ExpressionGraph.NOR;
     }
 
     /**
-     * Returns a list of the variables present in this NOR expression.
+     * Returns the operator written between the operands of the NOR expression.
      *
-     * @return A list of variable names as strings.
+     * @return The string " V ".
      */
-    public List<String> getVariables() {
-        return Stream.of(expressionOne.getVariables(), expressionTwo.getVariables())
-                .flatMap(List::stream)
-                .distinct()
-                .collect(Collectors.toList());
+    protected String getOperator() {
+        return " V ";
     }
 
     /**
-     * Returns a string representation of the NOR expression.
-     * Format: "(expressionOne V expressionTwo)".
+     * Replaces several variables at once in a single pass. Every node instance is visited once,
+     * and sub-expressions without substituted variables are returned as they are.
      *
-     * @return A string representation of the NOR expression.
+     * @param substitution The expressions to replace the variables with, by variable name.
+     * @param assigned     The expressions substituted so far, by node instance.
+     * @return The NOR of the substituted operands, or this expression if neither operand changed.
      */
-    public String toString() {
-        if (expressionOne == null || expressionTwo == null) {
-            return "null exception";
+    public Expression assign(Map<String, Expression> substitution, Map<Expression, Expression> assigned) {
+        Expression cached = assigned.get(this);
+        if (cached != null) {
+            return cached;
         }
-        return "(" + expressionOne + " V " + expressionTwo + ")";
+        Expression assignedOne = expressionOne.assign(substitution, assigned);
+        Expression assignedTwo = expressionTwo.assign(substitution, assigned);
+        Expression result = assignedOne == expressionOne && assignedTwo == expressionTwo ? this
+                : new Nor(assignedOne, assignedTwo);
+        assigned.put(this, result);
+        return result;
     }
 
     /**
-     * Creates a new expression in which all occurrences of the variable "var"
-     * are replaced with the provided expression.
+     * Returns the expression tree resulting from converting all operations to
+     * the logical NAND operation.
+     * Every node instance is converted once, so shared sub-expressions stay shared.
      *
-     * @param var        The variable name to be replaced.
-     * @param expression The expression to replace the variable with.
-     * @return A new expression with the variable replaced.
+     * @param converted The expressions converted so far, by node instance.
+     * @return A NAND expression equivalent to this NOR expression.
      */
-    public Expression assign(String var, Expression expression) {
-        return new Xnor(expressionOne.assign(var, expression), expressionTwo.assign(var, expression));
+    public Expression nandify(Map<Expression, Expression> converted) {
+        Expression cached = converted.get(this);
+        if (cached != null) {
+            return cached;
+        }
+        Expression nandifyExpOne = expressionOne.nandify(converted);
+        Expression nandifyExpTwo = expressionTwo.nandify(converted);
+        Expression or = new Nand(new Nand(nandifyExpOne, nandifyExpOne), new Nand(nandifyExpTwo, nandifyExpTwo));
+        Expression result = new Nand(or, or);
+        converted.put(this, result);
+        return result;
     }
 
     /**
      * Returns the expression tree resulting from converting all operations to
-     * the logical NAND operation.
+     * the logical NOR operation. The NOR itself is kept and only its operands are converted,
+     * so this expression is returned as is when its operands already use only NOR.
      *
-     * @return A NAND expression equivalent to this NOR expression.
+     * @param converted The expressions converted so far, by node instance.
+     * @return A NOR expression equivalent to this NOR expression.
      */
-    public Expression nandify() {
-        Expression nandifyExpOne = expressionOne.nandify();
-        Expression nandifyExpTwo = expressionTwo.nandify();
-        return new Nand(
-                new Nand((new Nand(nandifyExpOne, nandifyExpOne)), new Nand(nandifyExpTwo, nandifyExpTwo)),
-                new Nand((new Nand(nandifyExpOne, nandifyExpOne)), new Nand(nandifyExpTwo, nandifyExpTwo))
-        );
+    public Expression norify(Map<Expression, Expression> converted) {
+        Expression cached = converted.get(this);
+        if (cached != null) {
+            return cached;
+        }
+        Expression norifyExpOne = expressionOne.norify(converted);
+        Expression norifyExpTwo = expressionTwo.norify(converted);
+        Expression result = this;
+        if (norifyExpOne != expressionOne || norifyExpTwo != expressionTwo) {
+            result = new Nor(norifyExpOne, norifyExpTwo);
+        }
+        converted.put(this, result);
+        return result;
     }
 
     /**
-     * Returns the expression tree resulting from converting all operations to
-     * the logical NOR operation. For NOR, returns itself.
+     * Simplifies the NOR expression by applying logical simplification rules.
+     * Every node instance is simplified once, so shared sub-expressions are not simplified twice.
      *
-     * @return This NOR expression.
+     * @param simplified The expressions simplified so far, by node instance.
+     * @return A simplified version of the NOR expression.
      */
-    public Expression norify() {
-        return this;
+    public Expression simplify(Map<Expression, Expression> simplified) {
+        Expression cached = simplified.get(this);
+        if (cached != null) {
+            return cached;
+        }
+        Expression result = simplify(expressionOne.simplify(simplified), expressionTwo.simplify(simplified));
+        simplified.put(this, result);
+        return result;
     }
 
     /**
-     * Returns a simplified version of the NOR expression.
+     * Applies the NOR simplification rules to already simplified operands.
      *
-     * @return A simplified NOR expression.
+     * @param simplifiedExpOne The simplified first operand.
+     * @param simplifiedExpTwo The simplified second operand.
+     * @return The simplified expression.
      */
-    @Override
-    public Expression simplify() {
-        Expression simplifiedExpOne = expressionOne.simplify();
-        Expression simplifiedExpTwo = expressionTwo.simplify();
-
+    private Expression simplify(Expression simplifiedExpOne, Expression simplifiedExpTwo) {
         if (isEqual(simplifiedExpOne, new Val(true))) {
             return new Val(false); // True V x = false
         } else if (isEqual(simplifiedExpTwo, new Val(true))) {
@@ -1,16 +1,17 @@
 // Nimrod Netzer 322394545
 
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 
 /**
  * A class to represent the unary expression NOT.
+ * The operand is fixed at construction, so the cached hash and variable set never go stale.
  */
 public class Not extends UnaryExpression {
 
-    private Expression expression;
+    private final Expression expression;
+    private final int hash;
 
     /**
      * Constructor to initialize the NOT expression with a given sub-expression.
@@ -19,6 +20,8 @@ public class Not extends UnaryExpression {
      */
     Not(Expression expression) {
         this.expression = expression;
+        this.hash = computeHash();
+        addUse(expression);
     }
 
     /**
@@ -32,12 +35,13 @@ public class Not extends UnaryExpression {
     }
 
     /**
-     * Setter for the expression to negate.
+     * Returns the opcode of this expression in {@link ExpressionGraph}.
      *
-     * @param expression The expression to set.
+     * @return The opcode NOT.
      */
-    public void setExpression(Expression expression) {
-        this.expression = expression;
+    @Override
+    protected int getOpcode() {
+        return ExpressionGraph.NOT;
     }
 
     /**
@@ -50,93 +54,151 @@ public class Not extends UnaryExpression {
     }
 
     /**
-     * Evaluates the NOT expression using the variable values provided in the assignment.
+     * Checks if this NOT expression is structurally equal to another object. The negated
+     * expressions are compared over an explicit stack, so deep expressions are supported.
      *
-     * @param assignment A map containing variable assignments (variable name to boolean value).
-     * @return The result of the negation operation.
-     * @throws Exception If the expression contains a variable not in the assignment.
+     * @param obj The object to compare with.
+     * @return True if the object is a NOT of an equal expression, false otherwise.
      */
-    public Boolean evaluate(Map<String, Boolean> assignment) throws Exception {
-        return !expression.evaluate(assignment);
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        Not other = (Not) obj;
+        return hash == other.hash && equalOperands(this, other);
     }
 
     /**
-     * A convenience method to evaluate the NOT expression with an empty assignment.
+     * Returns the hash code of this NOT expression, computed once from the negated expression.
      *
-     * @return The result of the negation operation with an empty assignment.
-     * @throws Exception If evaluation encounters an error.
+     * @return A hash code value for this NOT expression.
      */
-    public Boolean evaluate() throws Exception {
-        return !expression.evaluate(new HashMap<>());
+    @Override
+    public int hashCode() {
+        return hash;
     }
 
     /**
-     * Returns a list of variables present in the expression.
+     * Computes the structural hash code of this NOT expression.
      *
-     * @return A list of variables in the expression.
+     * @return The structural hash code.
      */
-    public List<String> getVariables() {
-        return expression.getVariables();
+    private int computeHash() {
+        return 31 * getType().hashCode() + Objects.hashCode(expression);
     }
 
     /**
-     * Returns a string representation of the NOT expression.
+     * A convenience method to evaluate the NOT expression with an empty assignment.
      *
-     * @return A string representing the NOT expression in the format "~(expression)".
+     * @return The result of the negation operation with an empty assignment.
+     * @throws Exception If evaluation encounters an error.
      */
-    public String toString() {
-        return "~(" + expression + ")";
+    public Boolean evaluate() throws Exception {
+        return !expression.evaluate(new HashMap<>());
     }
 
     /**
-     * Creates a new expression where occurrences of a variable are replaced with a given expression.
+     * Computes the variables of the expression, which are the variables of the negated expression.
      *
-     * @param var        The variable to replace.
-     * @param expression The expression to replace with.
-     * @return A new expression with the variable replaced.
+     * @return The variable set of the operand.
      */
-    public Expression assign(String var, Expression expression) {
-        return new Not(this.expression.assign(var, expression));
+    protected VariableSet computeVariableSet() {
+        return expression.getVariableSet();
+    }
+
+    /**
+     * Replaces several variables at once in a single pass. Every node instance is visited once,
+     * and sub-expressions without substituted variables are returned as they are.
+     *
+     * @param substitution The expressions to replace the variables with, by variable name.
+     * @param assigned     The expressions substituted so far, by node instance.
+     * @return The negation of the substituted operand, or this expression if it did not change.
+     */
+    public Expression assign(Map<String, Expression> substitution, Map<Expression, Expression> assigned) {
+        Expression cached = assigned.get(this);
+        if (cached != null) {
+            return cached;
+        }
+        Expression operand = expression.assign(substitution, assigned);
+        Expression result = operand == expression ? this : new Not(operand);
+        assigned.put(this, result);
+        return result;
     }
 
     /**
      * Converts the expression tree to an equivalent tree using only NAND operations.
+     * Every node instance is converted once, so shared sub-expressions stay shared.
      *
+     * @param converted The expressions converted so far, by node instance.
      * @return The NAND equivalent expression.
      */
-    public Expression nandify() {
-        Expression nandifyExpression = expression.nandify();
-        return new Nand(nandifyExpression, nandifyExpression);
+    public Expression nandify(Map<Expression, Expression> converted) {
+        Expression cached = converted.get(this);
+        if (cached != null) {
+            return cached;
+        }
+        Expression nandifyExpression = expression.nandify(converted);
+        Expression result = new Nand(nandifyExpression, nandifyExpression);
+        converted.put(this, result);
+        return result;
     }
 
     /**
      * Converts the expression tree to an equivalent tree using only NOR operations.
+     * Every node instance is converted once, so shared sub-expressions stay shared.
      *
+     * @param converted The expressions converted so far, by node instance.
      * @return The NOR equivalent expression.
      */
-    public Expression norify() {
-        Expression norifyExpression = expression.norify();
-        return new Nor(norifyExpression, norifyExpression);
+    public Expression norify(Map<Expression, Expression> converted) {
+        Expression cached = converted.get(this);
+        if (cached != null) {
+            return cached;
+        }
+        Expression norifyExpression = expression.norify(converted);
+        Expression result = new Nor(norifyExpression, norifyExpression);
+        converted.put(this, result);
+        return result;
     }
 
     /**
      * Simplifies the expression to its minimal form.
+     * Every node instance is simplified once, so shared sub-expressions are not simplified twice.
      *
+     * @param simplified The expressions simplified so far, by node instance.
      * @return The simplified expression.
      */
-    public Expression simplify() {
-        Expression simplifiedExpression = expression.simplify();
-
+    public Expression simplify(Map<Expression, Expression> simplified) {
+        Expression cached = simplified.get(this);
+        if (cached != null) {
+            return cached;
+        }
+        Expression simplifiedExpression = expression.simplify(simplified);
         if (simplifiedExpression == null) {
             return null;  // Propagate null simplification
-        } else if (isEqual(simplifiedExpression, new Val(false))) {
+        }
+        Expression result = simplify(simplifiedExpression);
+        simplified.put(this, result);
+        return result;
+    }
+
+    /**
+     * Applies the NOT simplification rules to an already simplified operand.
+     *
+     * @param simplifiedExpression The simplified operand.
+     * @return The simplified expression.
+     */
+    private Expression simplify(Expression simplifiedExpression) {
+        if (isEqual(simplifiedExpression, new Val(false))) {
             return new Val(true);  // ~(false) = true
         } else if (isEqual(simplifiedExpression, new Val(true))) {
             return new Val(false); // ~(true) = false
-        } else if (isEqual(simplifiedExpression, new Not(new Not(expression)))) {
-            return expression.simplify();  // Simplify double negation to the original expression
         } else if (Objects.equals(simplifiedExpression.getType(), "NOT")) {
-            return ((Not) simplifiedExpression).getExpression().simplify(); // ~(~x) = x
+            return ((Not) simplifiedExpression).getExpression(); // ~(~x) = x, x is already simplified
         }
 
         return new Not(simplifiedExpression); // Default case: return simplified Not expression
@@ -1,9 +1,6 @@
 // Nimrod Netzer 322394545
 
-import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 /**
  * A class to represent the logical OR expression.
@@ -34,18 +31,22 @@ public class Or extends BinaryExpression {
     }
 
     /**
-     * Evaluates the OR expression using the variable values provided in the assignment.
+     * Returns the opcode of this expression in {@link ExpressionGraph}.
      *
-     * @param assignment A map containing variable assignments (variable name to boolean value).
-     * @return The result of the OR operation.
-     * @throws Exception If the expression contains a variable not in the assignment.
+     * @return The opcode OR.
      */
-    public Boolean evaluate(Map<String, Boolean> assignment) throws Exception {
-        try {
-            return expressionOne.evaluate(assignment) || expressionTwo.evaluate(assignment);
-        } catch (Exception e) {
-            throw new Exception("Error evaluating expression: " + e.getMessage());
-        }
+    @Override
+    protected int getOpcode() {
+        return ExpressionGraph.OR;
+    }
+
+    /**
+     * Returns the operator written between the operands of the OR expression.
+     *
+     * @return The string " | ".
+     */
+    protected String getOperator() {
+        return " | ";
     }
 
     /**
@@ -63,74 +64,93 @@ public class Or extends BinaryExpression {
     }
 
     /**
-     * Returns a list of variables present in the expression.
-     *
-     * @return A list of variables in the expression.
-     */
-    public List<String> getVariables() {
-        return Stream.of(expressionOne.getVariables(), expressionTwo.getVariables())
-                .flatMap(List::stream)
-                .distinct()
-                .collect(Collectors.toList());
-    }
-
-    /**
-     * Returns a string representation of the OR expression.
-     *
-     * @return A string representing the OR expression in the format "(expressionOne | expressionTwo)".
-     */
-    public String toString() {
-        return "(" + expressionOne.toString() + " | " + expressionTwo.toString() + ")";
-    }
-
-    /**
-     * Creates a new expression where occurrences of a variable are replaced with a given expression.
+     * Replaces several variables at once in a single pass. Every node instance is visited once,
+     * and sub-expressions without substituted variables are returned as they are.
      *
-     * @param var        The variable to replace.
-     * @param expression The expression to replace with.
-     * @return A new expression with the variable replaced.
+     * @param substitution The expressions to replace the variables with, by variable name.
+     * @param assigned     The expressions substituted so far, by node instance.
+     * @return The OR of the substituted operands, or this expression if neither operand changed.
      */
-    public Expression assign(String var, Expression expression) {
-        return new Or(expressionOne.assign(var, expression), expressionTwo.assign(var, expression));
+    public Expression assign(Map<String, Expression> substitution, Map<Expression, Expression> assigned) {
+        Expression cached = assigned.get(this);
+        if (cached != null) {
+            return cached;
+        }
+        Expression assignedOne = expressionOne.assign(substitution, assigned);
+        Expression assignedTwo = expressionTwo.assign(substitution, assigned);
+        Expression result = assignedOne == expressionOne && assignedTwo == expressionTwo ? this
+                : new Or(assignedOne, assignedTwo);
+        assigned.put(this, result);
+        return result;
     }
 
     /**
      * Converts the expression tree to an equivalent tree using only NAND operations.
+     * Every node instance is converted once, so shared sub-expressions stay shared.
      *
+     * @param converted The expressions converted so far, by node instance.
      * @return The NAND equivalent expression.
      */
-    public Expression nandify() {
-        Expression nandifyExpOne = expressionOne.nandify();
-        Expression nandifyExpTwo = expressionTwo.nandify();
-        return new Nand(
+    public Expression nandify(Map<Expression, Expression> converted) {
+        Expression cached = converted.get(this);
+        if (cached != null) {
+            return cached;
+        }
+        Expression nandifyExpOne = expressionOne.nandify(converted);
+        Expression nandifyExpTwo = expressionTwo.nandify(converted);
+        Expression result = new Nand(
                 new Nand(nandifyExpOne, nandifyExpOne),
                 new Nand(nandifyExpTwo, nandifyExpTwo)
         );
+        converted.put(this, result);
+        return result;
     }
 
     /**
      * Converts the expression tree to an equivalent tree using only NOR operations.
+     * Every node instance is converted once, so shared sub-expressions stay shared.
      *
+     * @param converted The expressions converted so far, by node instance.
      * @return The NOR equivalent expression.
      */
-    public Expression norify() {
-        Expression norifyExpOne = expressionOne.norify();
-        Expression norifyExpTwo = expressionTwo.norify();
-        return new Nor(
-                new Nor(norifyExpOne, norifyExpTwo),
-                new Nor(norifyExpOne, norifyExpTwo)
-        );
+    public Expression norify(Map<Expression, Expression> converted) {
+        Expression cached = converted.get(this);
+        if (cached != null) {
+            return cached;
+        }
+        Expression norifyExpOne = expressionOne.norify(converted);
+        Expression norifyExpTwo = expressionTwo.norify(converted);
+        Expression nor = new Nor(norifyExpOne, norifyExpTwo);
+        Expression result = new Nor(nor, nor);
+        converted.put(this, result);
+        return result;
     }
 
     /**
-     * Simplifies the expression to its minimal form.
+     * Simplifies the OR expression by applying logical simplification rules.
+     * Every node instance is simplified once, so shared sub-expressions are not simplified twice.
      *
-     * @return The simplified expression.
+     * @param simplified The expressions simplified so far, by node instance.
+     * @return A simplified version of the OR expression.
      */
-    public Expression simplify() {
-        Expression simplifiedOne = expressionOne.simplify();
-        Expression simplifiedTwo = expressionTwo.simplify();
+    public Expression simplify(Map<Expression, Expression> simplified) {
+        Expression cached = simplified.get(this);
+        if (cached != null) {
+            return cached;
+        }
+        Expression result = simplify(expressionOne.simplify(simplified), expressionTwo.simplify(simplified));
+        simplified.put(this, result);
+        return result;
+    }
 
+    /**
+     * Applies the OR simplification rules to already simplified operands.
+     *
+     * @param simplifiedOne The simplified first operand.
+     * @param simplifiedTwo The simplified second operand.
+     * @return The simplified expression.
+     */
+    private Expression simplify(Expression simplifiedOne, Expression simplifiedTwo) {
         // Apply simplification rules
         if (isEqual(simplifiedOne, new Val(true))) {
             return new Val(true); // true | x = true
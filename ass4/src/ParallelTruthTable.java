@@ -0,0 +1,225 @@
+// Nimrod Netzer 322394545
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The truth table of an expression, computed on a fork/join pool.
+ * The assignment space is split into blocks of 64K rows that are evaluated bit-parallel on
+ * separate workers, each writing its own range of the table. The expression is prepared once into
+ * a {@link ColumnarEvaluator}, which every worker shares.
+ * Rows follow the layout of {@link BitParallelEvaluator#truthTable(Expression, List)}: row r
+ * assigns bit i of r to the i-th variable, and its result is bit (r % 64) of word (r / 64).
+ */
+public final class ParallelTruthTable {
+    private final long[] table;
+    private final List<String> variables;
+    private final long satCount;
+
+    /**
+     * Constructs a truth table from its computed words.
+     *
+     * @param table     The table words.
+     * @param variables The variable order of the table.
+     * @param satCount  The number of true rows.
+     */
+    private ParallelTruthTable(long[] table, List<String> variables, long satCount) {
+        this.table = table;
+        this.variables = variables;
+        this.satCount = satCount;
+    }
+
+    /**
+     * Computes the truth table of an expression over its variables on the common pool.
+     *
+     * @param expression The expression to tabulate.
+     * @return The truth table.
+     * @throws Exception If evaluation encounters an error.
+     */
+    public static ParallelTruthTable of(Expression expression) throws Exception {
+        return of(expression, expression.getVariables(), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Computes the truth table of an expression over the given variable order.
+     *
+     * @param expression The expression to tabulate.
+     * @param variables  The variables, where the i-th variable is bit i of the row number.
+     * @param pool       The pool to evaluate the blocks on.
+     * @return The truth table.
+     * @throws Exception If the expression contains a variable not in the list.
+     */
+    public static ParallelTruthTable of(Expression expression, List<String> variables, ForkJoinPool pool)
+            throws Exception {
+        for (String variable : expression.getVariables()) {
+            if (!variables.contains(variable)) {
+                throw new Exception("Variable '" + variable + "' is not assigned");
+            }
+        }
+        List<String> order = Collections.unmodifiableList(new ArrayList<>(variables));
+        long[] table = new long[BitParallelEvaluator.tableWords(order.size())];
+        ColumnarEvaluator evaluator = ColumnarEvaluator.of(expression);
+        long count = pool.invoke(new Block(evaluator, order, table, 0, table.length));
+        if (order.size() < BitParallelEvaluator.WORD_SHIFT) {
+            long mask = (1L << (1 << order.size())) - 1;
+            count -= Long.bitCount(table[0] & ~mask);
+            table[0] &= mask;
+        }
+        return new ParallelTruthTable(table, order, count);
+    }
+
+    /**
+     * Returns the number of rows in the table.
+     *
+     * @return 2^n for n variables.
+     */
+    public long rows() {
+        return 1L << variables.size();
+    }
+
+    /**
+     * Returns the result of a row.
+     *
+     * @param row The row number.
+     * @return The value of the expression in that row.
+     */
+    public boolean get(long row) {
+        if (row < 0 || row >= rows()) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + rows());
+        }
+        return (table[(int) (row >>> BitParallelEvaluator.WORD_SHIFT)] >>> row & 1) != 0;
+    }
+
+    /**
+     * Returns the number of satisfying assignments, counted while the table was built.
+     *
+     * @return The number of true rows.
+     */
+    public long satCount() {
+        return satCount;
+    }
+
+    /**
+     * Returns the first satisfying assignments in row order.
+     *
+     * @param k The maximal number of assignments to return.
+     * @return Up to k satisfying assignments.
+     */
+    public List<Map<String, Boolean>> firstModels(int k) {
+        List<Map<String, Boolean>> models = new ArrayList<>();
+        for (int w = 0; w < table.length && models.size() < k; w++) {
+            long word = table[w];
+            while (word != 0 && models.size() < k) {
+                long row = (long) w * BitParallelEvaluator.WORD_BITS + Long.numberOfTrailingZeros(word);
+                models.add(model(row));
+                word &= word - 1;
+            }
+        }
+        return models;
+    }
+
+    /**
+     * Returns the assignment of a row.
+     *
+     * @param row The row number.
+     * @return A map from every variable to its value in the row.
+     */
+    public Map<String, Boolean> model(long row) {
+        Map<String, Boolean> model = new HashMap<>();
+        for (int i = 0; i < variables.size(); i++) {
+            model.put(variables.get(i), ((row >>> i) & 1) == 1);
+        }
+        return model;
+    }
+
+    /**
+     * Returns a copy of the table words.
+     *
+     * @return The truth table as a bit-vector.
+     */
+    public long[] toLongArray() {
+        return table.clone();
+    }
+
+    /**
+     * Returns the table as a bit set, with bit r set when row r is true.
+     *
+     * @return The truth table as a bit set.
+     */
+    public BitSet toBitSet() {
+        return BitSet.valueOf(table);
+    }
+
+    /**
+     * Returns the variable order of the table.
+     *
+     * @return An unmodifiable list of the variables, where the i-th variable is bit i of the row number.
+     */
+    public List<String> getVariables() {
+        return variables;
+    }
+
+    /**
+     * A range of table words, split in half until it fits in a single evaluation block.
+     */
+    private static final class Block extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+        private final transient ColumnarEvaluator evaluator;
+        private final List<String> variables;
+        private final long[] table;
+        private final int first;
+        private final int words;
+
+        /**
+         * Constructs the task of a range of table words.
+         *
+         * @param evaluator The evaluator of the expression to tabulate.
+         * @param variables The variable order.
+         * @param table     The table to write into.
+         * @param first     The first word of the range.
+         * @param words     The number of words in the range.
+         */
+        Block(ColumnarEvaluator evaluator, List<String> variables, long[] table, int first, int words) {
+            this.evaluator = evaluator;
+            this.variables = variables;
+            this.table = table;
+            this.first = first;
+            this.words = words;
+        }
+
+        /**
+         * Evaluates the range and returns its number of true rows.
+         *
+         * @return The number of set bits written to the range.
+         */
+        @Override
+        protected Long compute() {
+            if (words > BitParallelEvaluator.TABLE_BLOCK_WORDS) {
+                int half = words / 2;
+                Block left = new Block(evaluator, variables, table, first, half);
+                left.fork();
+                long right = new Block(evaluator, variables, table, first + half, words - half).compute();
+                return left.join() + right;
+            }
+            long[] block;
+            try {
+                block = evaluator.evaluate(BitParallelEvaluator.tableColumns(variables, first, words),
+                        (long) words * BitParallelEvaluator.WORD_BITS);
+            } catch (Exception e) {
+                throw new IllegalStateException("Error evaluating expression: " + e.getMessage(), e);
+            }
+            System.arraycopy(block, 0, table, first, words);
+            long count = 0;
+            for (long word : block) {
+                count += Long.bitCount(word);
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+// Nimrod Netzer 322394545
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Specializes an expression to a partial assignment.
+ * The known variables are substituted, constant sub-expressions are folded, and the result is
+ * reduced by the standard rules of the {@link RewriteEngine}, leaving a residual expression over
+ * the remaining variables. Residuals are cached by the set of known variables and their values,
+ * so repeating a context costs one lookup; the least recently used residuals are dropped when the
+ * cache is full. A cached residual is returned by reference to every caller with the same
+ * context, which is safe because expressions are immutable. Instances are safe to share between
+ * threads.
+ */
+public final class PartialEvaluator {
+    /**
+     * The number of residuals kept by the single-argument constructor.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 1024;
+    private static final List<RewriteRule> RULES = RewriteEngine.standardRules();
+
+    private final ExpressionGraph graph;
+    private final Map<Context, Expression> residuals;
+
+    /**
+     * Constructs a partial evaluator with the default cache size.
+     *
+     * @param expression The expression to specialize.
+     */
+    public PartialEvaluator(Expression expression) {
+        this(expression, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Constructs a partial evaluator.
+     *
+     * @param expression The expression to specialize.
+     * @param cacheSize  The maximal number of cached residuals.
+     */
+    public PartialEvaluator(Expression expression, int cacheSize) {
+        this.graph = ExpressionGraph.of(expression);
+        this.residuals = new LinkedHashMap<>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Context, Expression> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the residual of the expression under a partial assignment.
+     *
+     * @param known The values of the known variables; other variables, and variables mapped to
+     *              null, stay free.
+     * @return The simplified expression over the unknown variables, or a Val if the known
+     *         variables decide the result. The instance is shared with later calls for the same
+     *         context.
+     */
+    public Expression partialEvaluate(Map<String, Boolean> known) {
+        Context context = new Context(graph.getVariables(), known);
+        synchronized (residuals) {
+            Expression residual = residuals.get(context);
+            if (residual != null) {
+                return residual;
+            }
+        }
+        Expression residual = new RewriteEngine(RULES).rewrite(substitute(context));
+        synchronized (residuals) {
+            residuals.put(context, residual);
+        }
+        return residual;
+    }
+
+    /**
+     * Returns the variables of the expression.
+     *
+     * @return The variable names.
+     */
+    public List<String> getVariables() {
+        return graph.getVariables();
+    }
+
+    /**
+     * Returns the number of residuals in the cache.
+     *
+     * @return The number of cached residuals.
+     */
+    public int cachedResiduals() {
+        synchronized (residuals) {
+            return residuals.size();
+        }
+    }
+
+    /**
+     * Rebuilds the expression with the known variables replaced by their values, folding every
+     * node whose operands are all constant.
+     *
+     * @param context The known variables.
+     * @return The substituted expression.
+     */
+    private Expression substitute(Context context) {
+        int root = graph.root(0);
+        Expression[] nodes = new Expression[root + 1];
+        for (int node = 0; node <= root; node++) {
+            int op = graph.op(node);
+            int left = graph.left(node);
+            int right = graph.right(node);
+            switch (op) {
+                case ExpressionGraph.VAL:
+                    nodes[node] = new Val(left == 1);
+                    break;
+                case ExpressionGraph.VAR:
+                    nodes[node] = context.isKnown(left) ? new Val(context.valueOf(left))
+                            : new Var(graph.getVariables().get(left));
+                    break;
+                case ExpressionGraph.NOT:
+                    nodes[node] = nodes[left] instanceof Val ? new Val(!((Val) nodes[left]).getValue())
+                            : new Not(nodes[left]);
+                    break;
+                default:
+                    if (nodes[left] instanceof Val && nodes[right] instanceof Val) {
+                        nodes[node] = new Val(ExpressionGraph.apply(op, ((Val) nodes[left]).getValue(),
+                                ((Val) nodes[right]).getValue()));
+                    } else {
+                        nodes[node] = ExpressionGraph.binary(op, nodes[left], nodes[right]);
+                    }
+                    break;
+            }
+        }
+        return nodes[root];
+    }
+
+    /**
+     * The known variables of a partial assignment, as a bitmask over the variable slots followed
+     * by the values of the known variables.
+     */
+    private static final class Context {
+        private final long[] bits;
+        private final int words;
+        private final int hash;
+
+        /**
+         * Builds the context of a partial assignment.
+         *
+         * @param variables The variables, where the index of each name is its slot.
+         * @param known     The values of the known variables.
+         */
+        Context(List<String> variables, Map<String, Boolean> known) {
+            this.words = (variables.size() + BitParallelEvaluator.WORD_BITS - 1) >>> BitParallelEvaluator.WORD_SHIFT;
+            this.bits = new long[2 * words];
+            for (int slot = 0; slot < variables.size(); slot++) {
+                Boolean value = known.get(variables.get(slot));
+                if (value != null) {
+                    bits[slot >>> BitParallelEvaluator.WORD_SHIFT] |= 1L << slot;
+                    if (value) {
+                        bits[words + (slot >>> BitParallelEvaluator.WORD_SHIFT)] |= 1L << slot;
+                    }
+                }
+            }
+            this.hash = Arrays.hashCode(bits);
+        }
+
+        /**
+         * Checks whether a variable is known.
+         *
+         * @param slot The slot of the variable.
+         * @return true if the variable has a value.
+         */
+        boolean isKnown(int slot) {
+            return (bits[slot >>> BitParallelEvaluator.WORD_SHIFT] >>> slot & 1) != 0;
+        }
+
+        /**
+         * Returns the value of a known variable.
+         *
+         * @param slot The slot of the variable.
+         * @return The value of the variable.
+         */
+        boolean valueOf(int slot) {
+            return (bits[words + (slot >>> BitParallelEvaluator.WORD_SHIFT)] >>> slot & 1) != 0;
+        }
+
+        /**
+         * Checks whether two contexts know the same variables with the same values.
+         *
+         * @param obj The object to compare with.
+         * @return true if obj is a context with the same known and value bits.
+         */
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Context && Arrays.equals(bits, ((Context) obj).bits);
+        }
+
+        /**
+         * Returns the hash code of the bits, computed once at construction.
+         *
+         * @return A hash code value for this context.
+         */
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,277 @@
+// Nimrod Netzer 322394545
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An expression compiled to a compact postfix program for a stack machine.
+ * Each instruction is one int: the opcode in the low 4 bits and an operand in the remaining bits.
+ * The opcodes VAL, VAR, NOT and the binary operations are those of {@link ExpressionGraph};
+ * VAL pushes its operand as a constant, VAR pushes the variable slot given by its operand.
+ * Sub-expressions shared in the source are computed once: TEE stores the top of the stack in a
+ * temporary register without popping it, and TEMP pushes a temporary register.
+ * Compilation and evaluation are both iterative, so arbitrarily deep expressions are supported,
+ * and the code array can be cached and reloaded with {@link #PostfixProgram(int[], List)}.
+ * Programs are immutable and safe to share between threads.
+ */
+public final class PostfixProgram {
+    /**
+     * Opcode storing the top of the stack in the temporary register given by the operand.
+     */
+    public static final int TEE = 9;
+    /**
+     * Opcode pushing the temporary register given by the operand.
+     */
+    public static final int TEMP = 10;
+    /**
+     * The number of low bits holding the opcode of an instruction.
+     */
+    public static final int OP_BITS = 4;
+    private static final int OP_MASK = (1 << OP_BITS) - 1;
+
+    private final int[] code;
+    private final List<String> variables;
+    private final int maxStack;
+    private final int temps;
+
+    /**
+     * Loads a program from its code, for example one cached by an earlier run.
+     * The code is validated and its stack depth and register count are computed.
+     *
+     * @param code      The instructions of the program.
+     * @param variables The variable names, where the index of each name is its slot.
+     */
+    public PostfixProgram(int[] code, List<String> variables) {
+        this.code = code.clone();
+        this.variables = Collections.unmodifiableList(new ArrayList<>(variables));
+        int depth = 0;
+        int max = 0;
+        int registers = 0;
+        for (int instruction : this.code) {
+            int op = instruction & OP_MASK;
+            int operand = instruction >>> OP_BITS;
+            if (op == ExpressionGraph.VAL || op == ExpressionGraph.VAR || op == TEMP) {
+                if (op == ExpressionGraph.VAR && operand >= variables.size()) {
+                    throw new IllegalArgumentException("Slot " + operand + " has no variable");
+                }
+                if (op == TEMP && operand >= registers) {
+                    throw new IllegalArgumentException("Register " + operand + " is read before it is set");
+                }
+                depth++;
+            } else if (op == TEE) {
+                registers = Math.max(registers, operand + 1);
+            } else if (op > ExpressionGraph.NOT && op <= ExpressionGraph.XNOR) {
+                depth--;
+            } else if (op != ExpressionGraph.NOT) {
+                throw new IllegalArgumentException("Unknown opcode: " + op);
+            }
+            if (depth < 1) {
+                throw new IllegalArgumentException("Stack underflow in program");
+            }
+            max = Math.max(max, depth);
+        }
+        if (depth != 1) {
+            throw new IllegalArgumentException("Program leaves " + depth + " values on the stack");
+        }
+        this.maxStack = max;
+        this.temps = registers;
+    }
+
+    /**
+     * Compiles an expression to a postfix program, assigning slots in order of first appearance.
+     *
+     * @param expression The expression to compile.
+     * @return The postfix program.
+     */
+    public static PostfixProgram compile(Expression expression) {
+        return compile(ExpressionGraph.of(expression));
+    }
+
+    /**
+     * Compiles an expression to a postfix program using a given slot layout.
+     *
+     * @param expression The expression to compile.
+     * @param variables  The variable names, where the index of each name is its slot.
+     * @return The postfix program.
+     */
+    public static PostfixProgram compile(Expression expression, List<String> variables) {
+        return compile(ExpressionGraph.of(expression, variables));
+    }
+
+    /**
+     * Emits the postfix code of the first root of a graph with an explicit stack.
+     *
+     * @param graph The graph to compile.
+     * @return The postfix program.
+     */
+    private static PostfixProgram compile(ExpressionGraph graph) {
+        int root = graph.root(0);
+        int[] fanOut = new int[root + 1];
+        for (int node = 0; node <= root; node++) {
+            int op = graph.op(node);
+            if (op > ExpressionGraph.VAR) {
+                fanOut[graph.left(node)]++;
+                if (op != ExpressionGraph.NOT) {
+                    fanOut[graph.right(node)]++;
+                }
+            }
+        }
+        int[] register = new int[root + 1];
+        Arrays.fill(register, -1);
+        int registers = 0;
+        int[] out = new int[root + 1];
+        int size = 0;
+        int[] stack = new int[root + 1];
+        boolean[] expanded = new boolean[root + 1];
+        int top = 0;
+        stack[top++] = root;
+        while (top > 0) {
+            int node = stack[top - 1];
+            int op = graph.op(node);
+            if (size + 2 > out.length) {
+                out = Arrays.copyOf(out, out.length * 2);
+            }
+            if (register[node] != -1) {
+                top--;
+                out[size++] = instruction(TEMP, register[node]);
+            } else if (op == ExpressionGraph.VAL || op == ExpressionGraph.VAR) {
+                top--;
+                out[size++] = instruction(op, graph.left(node));
+            } else if (!expanded[node]) {
+                expanded[node] = true;
+                if (top + 2 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                if (op != ExpressionGraph.NOT) {
+                    stack[top++] = graph.right(node);
+                }
+                stack[top++] = graph.left(node);
+            } else {
+                top--;
+                out[size++] = instruction(op, 0);
+                if (fanOut[node] > 1) {
+                    register[node] = registers++;
+                    out[size++] = instruction(TEE, register[node]);
+                }
+            }
+        }
+        return new PostfixProgram(Arrays.copyOf(out, size), graph.getVariables());
+    }
+
+    /**
+     * Evaluates the program over slot values.
+     *
+     * @param values The value of every variable, indexed by its slot.
+     * @return The result of the expression.
+     */
+    public boolean evaluate(boolean[] values) {
+        boolean[] stack = new boolean[maxStack];
+        boolean[] registers = new boolean[temps];
+        int top = 0;
+        for (int instruction : code) {
+            int operand = instruction >>> OP_BITS;
+            switch (instruction & OP_MASK) {
+                case ExpressionGraph.VAL:
+                    stack[top++] = operand == 1;
+                    break;
+                case ExpressionGraph.VAR:
+                    stack[top++] = values[operand];
+                    break;
+                case TEMP:
+                    stack[top++] = registers[operand];
+                    break;
+                case TEE:
+                    registers[operand] = stack[top - 1];
+                    break;
+                case ExpressionGraph.NOT:
+                    stack[top - 1] = !stack[top - 1];
+                    break;
+                case ExpressionGraph.AND:
+                    top--;
+                    stack[top - 1] = stack[top - 1] & stack[top];
+                    break;
+                case ExpressionGraph.OR:
+                    top--;
+                    stack[top - 1] = stack[top - 1] | stack[top];
+                    break;
+                case ExpressionGraph.XOR:
+                    top--;
+                    stack[top - 1] = stack[top - 1] ^ stack[top];
+                    break;
+                case ExpressionGraph.NAND:
+                    top--;
+                    stack[top - 1] = !(stack[top - 1] & stack[top]);
+                    break;
+                case ExpressionGraph.NOR:
+                    top--;
+                    stack[top - 1] = !(stack[top - 1] | stack[top]);
+                    break;
+                default:
+                    top--;
+                    stack[top - 1] = stack[top - 1] == stack[top];
+                    break;
+            }
+        }
+        return stack[0];
+    }
+
+    /**
+     * Evaluates the program using a map of variable assignments.
+     *
+     * @param assignment A map containing variable names and their boolean values.
+     * @return The result of the expression.
+     * @throws Exception If a variable of the program is not in the assignment.
+     */
+    public Boolean evaluate(Map<String, Boolean> assignment) throws Exception {
+        boolean[] values = new boolean[variables.size()];
+        for (int i = 0; i < values.length; i++) {
+            Boolean value = assignment.get(variables.get(i));
+            if (value == null) {
+                throw new Exception("Variable '" + variables.get(i) + "' is not assigned");
+            }
+            values[i] = value;
+        }
+        return evaluate(values);
+    }
+
+    /**
+     * Returns a copy of the instructions of the program.
+     *
+     * @return The code array.
+     */
+    public int[] getCode() {
+        return code.clone();
+    }
+
+    /**
+     * Returns the variable names in slot order.
+     *
+     * @return An unmodifiable list of variable names.
+     */
+    public List<String> getVariables() {
+        return variables;
+    }
+
+    /**
+     * Returns the maximal depth of the value stack during evaluation.
+     *
+     * @return The maximal stack depth.
+     */
+    public int getMaxStack() {
+        return maxStack;
+    }
+
+    /**
+     * Encodes an instruction.
+     *
+     * @param op      The opcode.
+     * @param operand The operand.
+     * @return The encoded instruction.
+     */
+    private static int instruction(int op, int operand) {
+        return (operand << OP_BITS) | op;
+    }
+}
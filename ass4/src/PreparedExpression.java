@@ -0,0 +1,231 @@
+// Nimrod Netzer 322394545
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An expression whose variables were resolved to integer slots once, ahead of evaluation.
+ * Evaluation takes a primitive boolean[] or BitSet assignment and returns a primitive boolean,
+ * with no hashing, boxing or exceptions on the way.
+ * Instances are immutable and safe to share between threads.
+ * Expressions that share sub-expressions (such as nandify() results) are evaluated node by node
+ * in topological order, so every shared node is evaluated once. So are expressions too deep to
+ * evaluate recursively, such as long chains of one operator.
+ */
+public final class PreparedExpression {
+    private static final int MAX_RECURSION_DEPTH = 1000;
+    private final ExpressionGraph graph;
+    private final int[] ops;
+    private final int[] lefts;
+    private final int[] rights;
+    private final int root;
+    private final boolean topological;
+
+    /**
+     * Constructs a prepared expression over a flattened graph.
+     *
+     * @param graph The graph of the expression.
+     */
+    private PreparedExpression(ExpressionGraph graph) {
+        this.graph = graph;
+        this.ops = new int[graph.size()];
+        this.lefts = new int[graph.size()];
+        this.rights = new int[graph.size()];
+        for (int node = 0; node < ops.length; node++) {
+            ops[node] = graph.op(node);
+            lefts[node] = graph.left(node);
+            rights[node] = graph.right(node);
+        }
+        this.root = graph.root(0);
+        int references = 0;
+        int[] depths = new int[root + 1];
+        int depth = 0;
+        for (int node = 0; node <= root; node++) {
+            if (ops[node] > ExpressionGraph.VAR) {
+                depths[node] = depths[lefts[node]] + 1;
+                references++;
+                if (rights[node] != -1) {
+                    depths[node] = Math.max(depths[node], depths[rights[node]] + 1);
+                    references++;
+                }
+                depth = Math.max(depth, depths[node]);
+            }
+        }
+        this.topological = references > root || depth > MAX_RECURSION_DEPTH;
+    }
+
+    /**
+     * Prepares an expression, assigning slots in order of first appearance.
+     *
+     * @param expression The expression to prepare.
+     * @return The prepared expression.
+     */
+    public static PreparedExpression prepare(Expression expression) {
+        return new PreparedExpression(ExpressionGraph.of(expression));
+    }
+
+    /**
+     * Prepares an expression using a given slot layout, so several expressions can share one assignment.
+     *
+     * @param expression The expression to prepare.
+     * @param variables  The variable names, where the index of each name is its slot.
+     *                   Must contain every variable of the expression.
+     * @return The prepared expression.
+     */
+    public static PreparedExpression prepare(Expression expression, List<String> variables) {
+        return new PreparedExpression(ExpressionGraph.of(expression, variables));
+    }
+
+    /**
+     * Evaluates the expression over slot values.
+     *
+     * @param values The value of every variable, indexed by its slot.
+     * @return The result of the expression.
+     */
+    public boolean evaluate(boolean[] values) {
+        return topological ? evaluateTopological(values) : evaluate(root, values);
+    }
+
+    /**
+     * Evaluates the expression over slot values held in a bit set.
+     *
+     * @param values A bit set where bit i is the value of the variable in slot i.
+     * @return The result of the expression.
+     */
+    public boolean evaluate(BitSet values) {
+        if (topological) {
+            boolean[] slots = new boolean[graph.getVariables().size()];
+            for (int slot = 0; slot < slots.length; slot++) {
+                slots[slot] = values.get(slot);
+            }
+            return evaluateTopological(slots);
+        }
+        return evaluate(root, values);
+    }
+
+    /**
+     * Evaluates every node once, in topological order.
+     *
+     * @param values The value of every variable, indexed by its slot.
+     * @return The result of the expression.
+     */
+    private boolean evaluateTopological(boolean[] values) {
+        boolean[] results = new boolean[root + 1];
+        for (int node = 0; node <= root; node++) {
+            int op = ops[node];
+            int left = lefts[node];
+            if (op == ExpressionGraph.VAL) {
+                results[node] = left == 1;
+            } else if (op == ExpressionGraph.VAR) {
+                results[node] = values[left];
+            } else if (op == ExpressionGraph.NOT) {
+                results[node] = !results[left];
+            } else {
+                results[node] = ExpressionGraph.apply(op, results[left], results[rights[node]]);
+            }
+        }
+        return results[root];
+    }
+
+    /**
+     * Recursively evaluates a node, short-circuiting the and/or family like the expression classes do.
+     *
+     * @param node   The node index.
+     * @param values The value of every variable, indexed by its slot.
+     * @return The value of the node.
+     */
+    private boolean evaluate(int node, boolean[] values) {
+        int left = lefts[node];
+        switch (ops[node]) {
+            case ExpressionGraph.VAL:
+                return left == 1;
+            case ExpressionGraph.VAR:
+                return values[left];
+            case ExpressionGraph.NOT:
+                return !evaluate(left, values);
+            case ExpressionGraph.AND:
+                return evaluate(left, values) && evaluate(rights[node], values);
+            case ExpressionGraph.OR:
+                return evaluate(left, values) || evaluate(rights[node], values);
+            case ExpressionGraph.XOR:
+                return evaluate(left, values) ^ evaluate(rights[node], values);
+            case ExpressionGraph.NAND:
+                return !(evaluate(left, values) && evaluate(rights[node], values));
+            case ExpressionGraph.NOR:
+                return !(evaluate(left, values) || evaluate(rights[node], values));
+            default:
+                return evaluate(left, values) == evaluate(rights[node], values);
+        }
+    }
+
+    /**
+     * Recursively evaluates a node over slot values held in a bit set.
+     *
+     * @param node   The node index.
+     * @param values A bit set where bit i is the value of the variable in slot i.
+     * @return The value of the node.
+     */
+    private boolean evaluate(int node, BitSet values) {
+        int left = lefts[node];
+        switch (ops[node]) {
+            case ExpressionGraph.VAL:
+                return left == 1;
+            case ExpressionGraph.VAR:
+                return values.get(left);
+            case ExpressionGraph.NOT:
+                return !evaluate(left, values);
+            case ExpressionGraph.AND:
+                return evaluate(left, values) && evaluate(rights[node], values);
+            case ExpressionGraph.OR:
+                return evaluate(left, values) || evaluate(rights[node], values);
+            case ExpressionGraph.XOR:
+                return evaluate(left, values) ^ evaluate(rights[node], values);
+            case ExpressionGraph.NAND:
+                return !(evaluate(left, values) && evaluate(rights[node], values));
+            case ExpressionGraph.NOR:
+                return !(evaluate(left, values) || evaluate(rights[node], values));
+            default:
+                return evaluate(left, values) == evaluate(rights[node], values);
+        }
+    }
+
+    /**
+     * Converts a map of variable assignments to slot values.
+     *
+     * @param assignment A map containing variable names and their boolean values.
+     * @return The slot values for this prepared expression.
+     * @throws Exception If a variable of the expression is not in the assignment.
+     */
+    public boolean[] toSlots(Map<String, Boolean> assignment) throws Exception {
+        List<String> variables = graph.getVariables();
+        boolean[] values = new boolean[variables.size()];
+        for (int i = 0; i < values.length; i++) {
+            Boolean value = assignment.get(variables.get(i));
+            if (value == null) {
+                throw new Exception("Variable '" + variables.get(i) + "' is not assigned");
+            }
+            values[i] = value;
+        }
+        return values;
+    }
+
+    /**
+     * Returns the slot index of a variable.
+     *
+     * @param variable The variable name.
+     * @return The slot index, or -1 if the variable has no slot.
+     */
+    public int slotOf(String variable) {
+        return graph.slotOf(variable);
+    }
+
+    /**
+     * Returns the variable names in slot order.
+     *
+     * @return An unmodifiable list of variable names.
+     */
+    public List<String> getVariables() {
+        return graph.getVariables();
+    }
+}
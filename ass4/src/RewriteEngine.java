@@ -0,0 +1,438 @@
+// Nimrod Netzer 322394545
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+/**
+ * Simplifies expressions by applying rewrite rules until none of them applies.
+ * Nodes are normalized bottom-up and rebuilt through a hash-consing factory, so equal
+ * sub-expressions are identical and rules compare operands in constant time. Every node
+ * instance is normalized once: the result is memoized, so shared sub-expressions are not
+ * visited again, and the result of a rewrite is normalized in turn, so rules that only match
+ * after another rule fired are applied as well. The number of rewrites is bounded by a budget.
+ * An engine is not thread-safe.
+ */
+public class RewriteEngine {
+    /**
+     * The number of rewrites allowed by rewrite(Expression).
+     */
+    public static final int DEFAULT_BUDGET = 1_000_000;
+
+    private final Map<String, List<RewriteRule>> anyOperand = new HashMap<>();
+    private final Map<String, Map<String, List<RewriteRule>>> byOperand = new HashMap<>();
+    private ExpressionFactory factory;
+    private Map<Expression, Expression> normalized;
+    private int budget;
+    private int visits;
+    private int rewrites;
+
+    /**
+     * Constructs an engine with a set of rules, tried in the given order.
+     *
+     * @param rules The rewrite rules.
+     */
+    public RewriteEngine(List<RewriteRule> rules) {
+        for (RewriteRule rule : rules) {
+            if (rule.getOperandType() == null) {
+                anyOperand.computeIfAbsent(rule.getType(), t -> new ArrayList<>()).add(rule);
+            } else {
+                byOperand.computeIfAbsent(rule.getType(), t -> new HashMap<>())
+                        .computeIfAbsent(rule.getOperandType(), t -> new ArrayList<>()).add(rule);
+            }
+        }
+    }
+
+    /**
+     * Constructs an engine with the standard rules.
+     *
+     * @return The engine.
+     */
+    public static RewriteEngine standard() {
+        return new RewriteEngine(standardRules());
+    }
+
+    /**
+     * Rewrites an expression to normal form with the default budget.
+     *
+     * @param expression The expression to simplify.
+     * @return The simplified expression.
+     */
+    public Expression rewrite(Expression expression) {
+        return rewrite(expression, DEFAULT_BUDGET);
+    }
+
+    /**
+     * Rewrites an expression, applying at most a given number of rewrites.
+     * When the budget runs out the remaining nodes are only rebuilt, not rewritten.
+     *
+     * @param expression The expression to simplify.
+     * @param maxRewrites The maximal number of rule applications.
+     * @return The simplified expression.
+     */
+    public Expression rewrite(Expression expression, int maxRewrites) {
+        factory = new ExpressionFactory();
+        normalized = new IdentityHashMap<>();
+        budget = maxRewrites;
+        visits = 0;
+        rewrites = 0;
+        try {
+            return normalize(expression);
+        } finally {
+            factory = null;
+            normalized = null;
+        }
+    }
+
+    /**
+     * Returns the number of nodes normalized by the last call to rewrite().
+     *
+     * @return The number of node visits.
+     */
+    public int getVisits() {
+        return visits;
+    }
+
+    /**
+     * Returns the number of rules applied by the last call to rewrite().
+     *
+     * @return The number of rewrites.
+     */
+    public int getRewrites() {
+        return rewrites;
+    }
+
+    /**
+     * Returns the normal form of a node: its operands are normalized, and the first matching
+     * rule is applied and its result normalized in turn.
+     * The nodes are normalized in post-order over an explicit stack, so arbitrarily deep
+     * expressions are supported. A rewritten node waits on the stack below its rewrite, and takes
+     * the normal form of the rewrite once that is done.
+     *
+     * @param expression The node.
+     * @return The normal form of the node.
+     */
+    private Expression normalize(Expression expression) {
+        Map<Expression, Expression> rewrittenTo = new IdentityHashMap<>();
+        Deque<Expression> stack = new ArrayDeque<>();
+        stack.push(expression);
+        while (!stack.isEmpty()) {
+            Expression node = stack.peek();
+            if (normalized.get(node) != null) {
+                stack.pop();
+                continue;
+            }
+            Expression rewritten = rewrittenTo.remove(node);
+            if (rewritten != null) {
+                stack.pop();
+                finish(node, normalized.get(rewritten));
+                continue;
+            }
+            Expression result = rebuild(node, stack);
+            if (result == null) {
+                continue;
+            }
+            visits++;
+            if (budget > 0) {
+                rewritten = applyRules(result);
+                if (rewritten != null) {
+                    budget--;
+                    rewrites++;
+                    rewrittenTo.put(node, rewritten);
+                    stack.push(rewritten);
+                    continue;
+                }
+            }
+            stack.pop();
+            finish(node, result);
+        }
+        return normalized.get(expression);
+    }
+
+    /**
+     * Records the normal form of a node, which is its own normal form as well.
+     *
+     * @param node   The node.
+     * @param result The normal form of the node.
+     */
+    private void finish(Expression node, Expression result) {
+        normalized.put(node, result);
+        normalized.put(result, result);
+    }
+
+    /**
+     * Rebuilds a node through the factory over the normal forms of its operands, or pushes the
+     * operands still to normalize, the first one on top.
+     *
+     * @param node  The node.
+     * @param stack The nodes waiting to be normalized.
+     * @return The interned node, or null if an operand was pushed.
+     */
+    private Expression rebuild(Expression node, Deque<Expression> stack) {
+        switch (node.getType()) {
+            case "VAL":
+                return factory.val(((Val) node).getValue());
+            case "VAR":
+                return factory.var(((Var) node).getVariable());
+            case "NOT":
+                Expression operand = normalized.get(((Not) node).getExpression());
+                if (operand == null) {
+                    stack.push(((Not) node).getExpression());
+                    return null;
+                }
+                return factory.not(operand);
+            default:
+                BinaryExpression binary = (BinaryExpression) node;
+                Expression one = normalized.get(binary.getExpressionOne());
+                Expression two = normalized.get(binary.getExpressionTwo());
+                if (one == null || two == null) {
+                    if (two == null) {
+                        stack.push(binary.getExpressionTwo());
+                    }
+                    if (one == null) {
+                        stack.push(binary.getExpressionOne());
+                    }
+                    return null;
+                }
+                return factory.binary(node.getType(), one, two);
+        }
+    }
+
+    /**
+     * Applies the first rule indexed under the shape of a node that rewrites it.
+     *
+     * @param node The node, with normalized operands.
+     * @return The rewritten expression, or null if no rule applies.
+     */
+    private Expression applyRules(Expression node) {
+        String type = node.getType();
+        Map<String, List<RewriteRule>> shaped = byOperand.get(type);
+        if (shaped != null) {
+            if ("NOT".equals(type)) {
+                Expression result = applyRules(shaped.get(((Not) node).getExpression().getType()), node);
+                if (result != null) {
+                    return result;
+                }
+            } else if (node instanceof BinaryExpression) {
+                String typeOne = ((BinaryExpression) node).getExpressionOne().getType();
+                String typeTwo = ((BinaryExpression) node).getExpressionTwo().getType();
+                Expression result = applyRules(shaped.get(typeOne), node);
+                if (result == null && !typeOne.equals(typeTwo)) {
+                    result = applyRules(shaped.get(typeTwo), node);
+                }
+                if (result != null) {
+                    return result;
+                }
+            }
+        }
+        return applyRules(anyOperand.get(type), node);
+    }
+
+    /**
+     * Applies the first rule of a list that rewrites a node.
+     *
+     * @param rules The candidate rules, or null if there are none.
+     * @param node  The node.
+     * @return The rewritten expression, or null if no rule applies.
+     */
+    private Expression applyRules(List<RewriteRule> rules, Expression node) {
+        if (rules == null) {
+            return null;
+        }
+        for (RewriteRule rule : rules) {
+            Expression result = rule.rewrite(node, factory);
+            if (result != null && result != node) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the standard rules: constant folding, idempotence, complements (x &amp; ~x),
+     * absorption (x &amp; (x | y)), double negation, De Morgan over negated operands, and
+     * merging a negation into the operation below it (~(x &amp; y) = x A y).
+     * Every rule makes the expression smaller.
+     *
+     * @return An unmodifiable list of the standard rules.
+     */
+    public static List<RewriteRule> standardRules() {
+        List<RewriteRule> rules = new ArrayList<>();
+        // Constants
+        rules.add(rule("AND", "VAL", (e, f) -> constant(e, f, true, false)));
+        rules.add(rule("OR", "VAL", (e, f) -> constant(e, f, false, true)));
+        rules.add(rule("XOR", "VAL", (e, f) -> constant(e, f, false, null)));
+        rules.add(rule("XNOR", "VAL", (e, f) -> constant(e, f, true, null)));
+        rules.add(rule("NAND", "VAL", (e, f) -> negate(constant(e, f, true, false), f)));
+        rules.add(rule("NOR", "VAL", (e, f) -> negate(constant(e, f, false, true), f)));
+        rules.add(rule("NOT", "VAL", (e, f) -> f.val(!((Val) ((Not) e).getExpression()).getValue())));
+        // Equal operands: x & x = x, x ^ x = F, x A x = ~x
+        rules.add(rule("AND", null, (e, f) -> one(e).equals(two(e)) ? one(e) : null));
+        rules.add(rule("OR", null, (e, f) -> one(e).equals(two(e)) ? one(e) : null));
+        rules.add(rule("XOR", null, (e, f) -> one(e).equals(two(e)) ? f.val(false) : null));
+        rules.add(rule("XNOR", null, (e, f) -> one(e).equals(two(e)) ? f.val(true) : null));
+        rules.add(rule("NAND", null, (e, f) -> one(e).equals(two(e)) ? f.not(one(e)) : null));
+        rules.add(rule("NOR", null, (e, f) -> one(e).equals(two(e)) ? f.not(one(e)) : null));
+        // Complements: x & ~x = F, and De Morgan: ~x & ~y = x V y
+        rules.add(rule("AND", "NOT", (e, f) -> complement(e, f, false, "NOR")));
+        rules.add(rule("OR", "NOT", (e, f) -> complement(e, f, true, "NAND")));
+        rules.add(rule("XOR", "NOT", (e, f) -> complement(e, f, true, "XOR")));
+        rules.add(rule("XNOR", "NOT", (e, f) -> complement(e, f, false, "XNOR")));
+        rules.add(rule("NAND", "NOT", (e, f) -> complement(e, f, true, "OR")));
+        rules.add(rule("NOR", "NOT", (e, f) -> complement(e, f, false, "AND")));
+        // Absorption: x & (x | y) = x, x | (x & y) = x
+        rules.add(rule("AND", "OR", RewriteEngine::absorb));
+        rules.add(rule("OR", "AND", RewriteEngine::absorb));
+        // Negations: ~~x = x, ~(x & y) = x A y
+        rules.add(rule("NOT", "NOT", (e, f) -> ((Not) ((Not) e).getExpression()).getExpression()));
+        String[][] negated = {{"AND", "NAND"}, {"OR", "NOR"}, {"XOR", "XNOR"}};
+        for (String[] pair : negated) {
+            rules.add(rule("NOT", pair[0], (e, f) -> f.binary(pair[1], one(inner(e)), two(inner(e)))));
+            rules.add(rule("NOT", pair[1], (e, f) -> f.binary(pair[0], one(inner(e)), two(inner(e)))));
+        }
+        return Collections.unmodifiableList(rules);
+    }
+
+    /**
+     * Folds a binary node with a constant operand.
+     *
+     * @param e        The node.
+     * @param f        The factory.
+     * @param identity The constant that leaves the other operand unchanged; the other constant
+     *                 negates it unless it is dominant.
+     * @param dominant The constant that is the result whatever the other operand is, or null.
+     * @return The folded expression, or null if no operand is a constant.
+     */
+    private static Expression constant(Expression e, ExpressionFactory f, boolean identity, Boolean dominant) {
+        Expression value = one(e);
+        Expression other = two(e);
+        if (!"VAL".equals(value.getType())) {
+            value = two(e);
+            other = one(e);
+            if (!"VAL".equals(value.getType())) {
+                return null;
+            }
+        }
+        boolean constant = ((Val) value).getValue();
+        if (dominant != null && constant == dominant) {
+            return f.val(dominant);
+        }
+        return constant == identity ? other : f.not(other);
+    }
+
+    /**
+     * Negates a folded result.
+     *
+     * @param e The folded result, or null.
+     * @param f The factory.
+     * @return The negation, or null if nothing was folded.
+     */
+    private static Expression negate(Expression e, ExpressionFactory f) {
+        return e == null ? null : f.not(e);
+    }
+
+    /**
+     * Rewrites a binary node with a negated operand: complementary operands give a constant,
+     * and two negated operands are replaced by the dual operation of the inner operands.
+     *
+     * @param e          The node.
+     * @param f          The factory.
+     * @param complement The value of the node for complementary operands.
+     * @param dual       The type of the operation over the inner operands of two negations.
+     * @return The rewritten expression, or null if neither applies.
+     */
+    private static Expression complement(Expression e, ExpressionFactory f, boolean complement, String dual) {
+        Expression a = one(e);
+        Expression b = two(e);
+        boolean notA = "NOT".equals(a.getType());
+        boolean notB = "NOT".equals(b.getType());
+        if ((notA && inner(a).equals(b)) || (notB && inner(b).equals(a))) {
+            return f.val(complement);
+        }
+        if (notA && notB) {
+            return f.binary(dual, inner(a), inner(b));
+        }
+        return null;
+    }
+
+    /**
+     * Applies absorption: x &amp; (x | y) = x and x | (x &amp; y) = x, on either side.
+     *
+     * @param e The node.
+     * @param f The factory.
+     * @return The absorbing operand, or null if absorption does not apply.
+     */
+    private static Expression absorb(Expression e, ExpressionFactory f) {
+        String dual = "AND".equals(e.getType()) ? "OR" : "AND";
+        Expression a = one(e);
+        Expression b = two(e);
+        if (dual.equals(b.getType()) && (one(b).equals(a) || two(b).equals(a))) {
+            return a;
+        }
+        if (dual.equals(a.getType()) && (one(a).equals(b) || two(a).equals(b))) {
+            return b;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the first operand of a binary node.
+     *
+     * @param e The node.
+     * @return The first operand.
+     */
+    private static Expression one(Expression e) {
+        return ((BinaryExpression) e).getExpressionOne();
+    }
+
+    /**
+     * Returns the second operand of a binary node.
+     *
+     * @param e The node.
+     * @return The second operand.
+     */
+    private static Expression two(Expression e) {
+        return ((BinaryExpression) e).getExpressionTwo();
+    }
+
+    /**
+     * Returns the operand of a NOT node.
+     *
+     * @param e The node.
+     * @return The negated expression.
+     */
+    private static Expression inner(Expression e) {
+        return ((Not) e).getExpression();
+    }
+
+    /**
+     * Creates a rule from a rewrite function.
+     *
+     * @param type        The root node type.
+     * @param operandType The operand type, or null for any.
+     * @param rewrite     The rewrite function, returning null when the rule does not apply.
+     * @return The rule.
+     */
+    private static RewriteRule rule(String type, String operandType,
+                                    BiFunction<Expression, ExpressionFactory, Expression> rewrite) {
+        return new RewriteRule() {
+            public String getType() {
+                return type;
+            }
+
+            public String getOperandType() {
+                return operandType;
+            }
+
+            public Expression rewrite(Expression expression, ExpressionFactory factory) {
+                return rewrite.apply(expression, factory);
+            }
+        };
+    }
+}
@@ -0,0 +1,34 @@
+// Nimrod Netzer 322394545
+
+/**
+ * A rewrite rule for the {@link RewriteEngine}.
+ * A rule is tried only on nodes of its root type, and when it names an operand type, only on
+ * nodes with at least one operand of that type, so the engine can index rules by node shape.
+ */
+public interface RewriteRule {
+
+    /**
+     * Returns the type of the nodes this rule applies to, as returned by getType().
+     *
+     * @return The root node type.
+     */
+    String getType();
+
+    /**
+     * Returns the type that at least one operand must have for the rule to apply.
+     *
+     * @return The operand type, or null if the rule applies to any operands.
+     */
+    String getOperandType();
+
+    /**
+     * Rewrites a node whose operands are already in normal form.
+     * New nodes should be built through the factory, so equal sub-expressions stay identical.
+     * To guarantee termination, rules should make the expression smaller.
+     *
+     * @param expression The node to rewrite.
+     * @param factory    The factory of the nodes being rewritten.
+     * @return The rewritten expression, or null if the rule does not apply.
+     */
+    Expression rewrite(Expression expression, ExpressionFactory factory);
+}
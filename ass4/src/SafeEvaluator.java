@@ -0,0 +1,206 @@
+// Nimrod Netzer 322394545
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Evaluates expressions without exceptions.
+ * A missing variable is reported through a caller-owned {@link Result} holding a reference to
+ * the variable name, so a bad assignment costs no more than a good one: no exception, stack
+ * trace, message string or boxed result is created. Like evaluate(Map), AND, OR, NAND and NOR
+ * skip their second operand when the first one decides the result, so both report the same
+ * assignments as incomplete.
+ */
+public final class SafeEvaluator {
+    private static final int FALSE = 0;
+    private static final int TRUE = 1;
+    private static final int MISSING = -1;
+    private static final int PENDING = -2;
+    private static final int INITIAL_DEPTH = 16;
+
+    /**
+     * Private constructor, this class only has static methods.
+     */
+    private SafeEvaluator() {
+    }
+
+    /**
+     * Evaluates an expression into a result holder.
+     *
+     * @param expression The expression to evaluate.
+     * @param assignment A map containing variable names and their boolean values.
+     * @param result     The holder to store the value or the missing variable in.
+     * @return true if the expression was evaluated, false if a variable is not assigned.
+     */
+    public static boolean tryEvaluate(Expression expression, Map<String, Boolean> assignment, Result result) {
+        result.missingVariable = null;
+        int value = evaluate(expression, assignment, result);
+        result.value = value == TRUE;
+        return value != MISSING;
+    }
+
+    /**
+     * Evaluates an expression over an explicit stack of the operations waiting for an operand,
+     * operands left to right, so arbitrarily deep expressions are supported. The value of every
+     * shared operation node is kept for the rest of the call, so it is evaluated once, while the
+     * nodes of a plain tree cost no lookup. The first unassigned variable reached stops the whole
+     * evaluation.
+     *
+     * @param expression The expression.
+     * @param assignment The variable values.
+     * @param result     The holder to store a missing variable in.
+     * @return TRUE, FALSE or MISSING.
+     */
+    private static int evaluate(Expression expression, Map<String, Boolean> assignment, Result result) {
+        Map<Expression, Integer> known = null;
+        Expression[] nodes = new Expression[INITIAL_DEPTH];
+        int[] ops = new int[INITIAL_DEPTH];
+        int[] firsts = new int[INITIAL_DEPTH];
+        int top = -1;
+        Expression node = expression;
+        while (true) {
+            int value;
+            int op = ExpressionGraph.opOf(node);
+            Integer cached = known != null && op > ExpressionGraph.VAR && ((BaseExpression) node).isShared()
+                    ? known.get(node) : null;
+            if (cached != null) {
+                value = cached;
+            } else if (op == ExpressionGraph.VAL) {
+                value = ((Val) node).getValue() ? TRUE : FALSE;
+            } else if (op == ExpressionGraph.VAR) {
+                String variable = ((Var) node).getVariable();
+                Boolean assigned = assignment.get(variable);
+                if (assigned == null) {
+                    result.missingVariable = variable;
+                    return MISSING;
+                }
+                value = assigned ? TRUE : FALSE;
+            } else {
+                if (++top == nodes.length) {
+                    nodes = Arrays.copyOf(nodes, 2 * top);
+                    ops = Arrays.copyOf(ops, 2 * top);
+                    firsts = Arrays.copyOf(firsts, 2 * top);
+                }
+                nodes[top] = node;
+                ops[top] = op;
+                firsts[top] = PENDING;
+                node = op == ExpressionGraph.NOT ? ((Not) node).getExpression()
+                        : ((BinaryExpression) node).getExpressionOne();
+                continue;
+            }
+            // hand the value up until an operation needs its second operand
+            while (true) {
+                if (top < 0) {
+                    return value;
+                }
+                op = ops[top];
+                if (op != ExpressionGraph.NOT && firsts[top] == PENDING) {
+                    int decided = decidedBy(op, value);
+                    if (decided == PENDING) {
+                        firsts[top] = value;
+                        node = ((BinaryExpression) nodes[top]).getExpressionTwo();
+                        break;
+                    }
+                    value = decided;
+                } else {
+                    value = apply(op, firsts[top], value);
+                }
+                if (((BaseExpression) nodes[top]).isShared()) {
+                    if (known == null) {
+                        known = new IdentityHashMap<>();
+                    }
+                    known.put(nodes[top], value);
+                }
+                nodes[top--] = null;
+            }
+        }
+    }
+
+    /**
+     * Returns the result of a binary operation that its first operand decides alone.
+     *
+     * @param op  The binary opcode.
+     * @param one The value of the first operand.
+     * @return TRUE or FALSE, or PENDING if the second operand is needed.
+     */
+    private static int decidedBy(int op, int one) {
+        switch (op) {
+            case ExpressionGraph.AND:
+                return one == FALSE ? FALSE : PENDING;
+            case ExpressionGraph.OR:
+                return one == TRUE ? TRUE : PENDING;
+            case ExpressionGraph.NAND:
+                return one == FALSE ? TRUE : PENDING;
+            case ExpressionGraph.NOR:
+                return one == TRUE ? FALSE : PENDING;
+            default:
+                return PENDING;
+        }
+    }
+
+    /**
+     * Applies an operation to the values of its operands.
+     *
+     * @param op  The opcode; a negation ignores its first operand.
+     * @param one The value of the first operand.
+     * @param two The value of the second operand.
+     * @return TRUE or FALSE.
+     */
+    private static int apply(int op, int one, int two) {
+        switch (op) {
+            case ExpressionGraph.NOT:
+                return TRUE - two;
+            case ExpressionGraph.AND:
+                return one & two;
+            case ExpressionGraph.OR:
+                return one | two;
+            case ExpressionGraph.XOR:
+                return one ^ two;
+            case ExpressionGraph.NAND:
+                return TRUE - (one & two);
+            case ExpressionGraph.NOR:
+                return TRUE - (one | two);
+            case ExpressionGraph.XNOR:
+                return TRUE - (one ^ two);
+            default:
+                throw new IllegalArgumentException("Unknown opcode: " + op);
+        }
+    }
+
+    /**
+     * The outcome of an evaluation: a value, or the variable that was not assigned.
+     * A holder can be reused for any number of evaluations.
+     */
+    public static final class Result {
+        private boolean value;
+        private String missingVariable;
+
+        /**
+         * Checks whether the last evaluation produced a value.
+         *
+         * @return true if every variable was assigned.
+         */
+        public boolean isValid() {
+            return missingVariable == null;
+        }
+
+        /**
+         * Returns the value of the last evaluation.
+         *
+         * @return The value, or false if the evaluation failed.
+         */
+        public boolean getValue() {
+            return value;
+        }
+
+        /**
+         * Returns the variable that stopped the last evaluation.
+         *
+         * @return The name of the first unassigned variable found, or null if the evaluation succeeded.
+         */
+        public String getMissingVariable() {
+            return missingVariable;
+        }
+    }
+}
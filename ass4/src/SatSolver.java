@@ -0,0 +1,736 @@
+// Nimrod Netzer 322394545
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A conflict-driven clause-learning SAT solver.
+ * Clauses are added through the {@link ClauseSink} interface, usually by a {@link TseitinEncoder}.
+ * The solver uses two watched literals per clause with blocking literals for unit propagation,
+ * first-UIP conflict analysis with learned clause minimization, VSIDS branching with phase saving,
+ * restarts on the Luby sequence and periodic deletion of the less active half of the learned clauses.
+ * Clauses may be added between calls to solve(), so a solver can be used incrementally.
+ */
+public class SatSolver implements ClauseSink {
+    private static final byte TRUE = 1;
+    private static final byte FALSE = -1;
+    private static final byte UNDEFINED = 0;
+    private static final int RESTART_BASE = 100;
+    private static final int MIN_LEARNTS = 1000;
+    private static final double LEARNTS_GROWTH = 1.1;
+    private static final double VARIABLE_DECAY = 0.95;
+    private static final double CLAUSE_DECAY = 0.999;
+    private static final double RESCALE_LIMIT = 1e100;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int variableCount;
+    private byte[] assigns = new byte[INITIAL_CAPACITY];
+    private int[] level = new int[INITIAL_CAPACITY];
+    private Clause[] reason = new Clause[INITIAL_CAPACITY];
+    private boolean[] phase = new boolean[INITIAL_CAPACITY];
+    private boolean[] seen = new boolean[INITIAL_CAPACITY];
+    private double[] activity = new double[INITIAL_CAPACITY];
+    private Clause[][] watches = new Clause[2 * INITIAL_CAPACITY][];
+    private int[][] blockers = new int[2 * INITIAL_CAPACITY][];
+    private int[] watchCount = new int[2 * INITIAL_CAPACITY];
+    private int[] trail = new int[INITIAL_CAPACITY];
+    private int trailSize;
+    private int propagated;
+    private int[] trailLimits = new int[INITIAL_CAPACITY];
+    private int decisionLevel;
+    private final List<Clause> clauses = new ArrayList<>();
+    private final List<Clause> learnts = new ArrayList<>();
+    private final VariableOrder order = new VariableOrder();
+    private double variableIncrement = 1;
+    private double clauseIncrement = 1;
+    private double maxLearnts;
+    private boolean unsatisfiable;
+    private boolean[] model;
+    private long conflicts;
+
+    /**
+     * Checks whether an expression has a satisfying assignment.
+     *
+     * @param expression The expression to check.
+     * @return true if some assignment makes the expression true.
+     */
+    public static boolean isSatisfiable(Expression expression) {
+        return findModel(expression) != null;
+    }
+
+    /**
+     * Finds an assignment that makes an expression true.
+     *
+     * @param expression The expression to satisfy.
+     * @return An assignment of every variable of the expression that evaluate() accepts,
+     * or null if the expression is unsatisfiable.
+     */
+    public static Map<String, Boolean> findModel(Expression expression) {
+        SatSolver solver = new SatSolver();
+        TseitinEncoder encoder = new TseitinEncoder(solver);
+        encoder.assertTrue(expression);
+        if (!solver.solve()) {
+            return null;
+        }
+        Map<String, Boolean> assignment = new HashMap<>();
+        for (Map.Entry<String, Integer> variable : encoder.getVariables().entrySet()) {
+            assignment.put(variable.getKey(), solver.modelValue(variable.getValue()));
+        }
+        return assignment;
+    }
+
+    /**
+     * Adds a clause. Tautologies and clauses already satisfied at the top level are dropped,
+     * and literals already false at the top level are removed.
+     *
+     * @param literals The literals of the clause.
+     */
+    public void addClause(int... literals) {
+        cancelUntil(0);
+        if (unsatisfiable) {
+            return;
+        }
+        int[] sorted = new int[literals.length];
+        for (int i = 0; i < literals.length; i++) {
+            sorted[i] = Math.abs(literals[i]) << 1 | (literals[i] < 0 ? 1 : 0);
+        }
+        Arrays.sort(sorted); // by variable, then positive before negative, so complements are adjacent
+        int size = 0;
+        int previous = 0;
+        for (int key : sorted) {
+            int literal = (key & 1) == 0 ? key >>> 1 : -(key >>> 1);
+            if (literal == 0) {
+                throw new IllegalArgumentException("0 is not a literal");
+            }
+            ensureVariable(Math.abs(literal));
+            if (literal == -previous || value(literal) == TRUE) {
+                return;
+            }
+            if (literal != previous && value(literal) != FALSE) {
+                sorted[size++] = literal;
+            }
+            previous = literal;
+        }
+        if (size == 0) {
+            unsatisfiable = true;
+        } else if (size == 1) {
+            enqueue(sorted[0], null);
+            unsatisfiable = propagate() != null;
+        } else {
+            Clause clause = new Clause(Arrays.copyOf(sorted, size), false);
+            clauses.add(clause);
+            attach(clause);
+        }
+    }
+
+    /**
+     * Searches for an assignment satisfying all the clauses added so far.
+     *
+     * @return true if the clauses are satisfiable, false otherwise.
+     */
+    public boolean solve() {
+        model = null;
+        if (unsatisfiable) {
+            return false;
+        }
+        maxLearnts = Math.max(clauses.size() / 3.0, MIN_LEARNTS);
+        for (int restart = 0; ; restart++) {
+            Boolean result = search(luby(restart) * RESTART_BASE);
+            if (result != null) {
+                cancelUntil(0);
+                return result;
+            }
+            maxLearnts *= LEARNTS_GROWTH;
+        }
+    }
+
+    /**
+     * Returns the value of a variable in the model found by the last successful solve().
+     *
+     * @param variable The variable.
+     * @return The value of the variable.
+     */
+    public boolean modelValue(int variable) {
+        if (model == null) {
+            throw new IllegalStateException("No model, the last solve() did not succeed");
+        }
+        return variable <= variableCount && model[variable];
+    }
+
+    /**
+     * Returns the number of variables seen so far.
+     *
+     * @return The highest variable.
+     */
+    public int variableCount() {
+        return variableCount;
+    }
+
+    /**
+     * Returns the number of conflicts analyzed so far.
+     *
+     * @return The number of conflicts.
+     */
+    public long conflicts() {
+        return conflicts;
+    }
+
+    /**
+     * Runs the search until it finds an answer or reaches a number of conflicts.
+     *
+     * @param conflictLimit The number of conflicts after which the search restarts.
+     * @return true if satisfiable, false if unsatisfiable, or null if the search should restart.
+     */
+    private Boolean search(int conflictLimit) {
+        int localConflicts = 0;
+        while (true) {
+            Clause conflict = propagate();
+            if (conflict != null) {
+                conflicts++;
+                localConflicts++;
+                if (decisionLevel == 0) {
+                    unsatisfiable = true;
+                    return false;
+                }
+                learn(conflict);
+                variableIncrement /= VARIABLE_DECAY;
+                clauseIncrement /= CLAUSE_DECAY;
+            } else {
+                if (localConflicts >= conflictLimit) {
+                    cancelUntil(0);
+                    return null;
+                }
+                if (learnts.size() - trailSize >= maxLearnts) {
+                    reduceLearnts();
+                }
+                int variable = nextDecision();
+                if (variable == 0) {
+                    model = new boolean[variableCount + 1];
+                    for (int v = 1; v <= variableCount; v++) {
+                        model[v] = assigns[v] == TRUE;
+                    }
+                    return true;
+                }
+                if (decisionLevel == trailLimits.length) {
+                    trailLimits = Arrays.copyOf(trailLimits, decisionLevel * 2);
+                }
+                trailLimits[decisionLevel++] = trailSize;
+                enqueue(phase[variable] ? variable : -variable, null);
+            }
+        }
+    }
+
+    /**
+     * Propagates the assignments on the trail through the watched literals.
+     *
+     * @return A clause whose literals are all false, or null if there is no conflict.
+     */
+    private Clause propagate() {
+        while (propagated < trailSize) {
+            int falseLiteral = -trail[propagated++];
+            int index = index(falseLiteral);
+            Clause[] list = watches[index];
+            int[] blocking = blockers[index];
+            int count = watchCount[index];
+            int kept = 0;
+            int i = 0;
+            while (i < count) {
+                int blocker = blocking[i];
+                if (value(blocker) == TRUE) {
+                    list[kept] = list[i];
+                    blocking[kept++] = blocking[i++];
+                    continue;
+                }
+                Clause clause = list[i++];
+                int[] literals = clause.literals;
+                if (literals[0] == falseLiteral) {
+                    literals[0] = literals[1];
+                    literals[1] = falseLiteral;
+                }
+                if (value(literals[0]) == TRUE) {
+                    list[kept] = clause;
+                    blocking[kept++] = literals[0];
+                    continue;
+                }
+                boolean moved = false;
+                for (int k = 2; k < literals.length; k++) {
+                    if (value(literals[k]) != FALSE) {
+                        literals[1] = literals[k];
+                        literals[k] = falseLiteral;
+                        watch(literals[1], clause);
+                        moved = true;
+                        break;
+                    }
+                }
+                if (moved) {
+                    continue;
+                }
+                list[kept] = clause;
+                blocking[kept++] = literals[0];
+                if (value(literals[0]) == FALSE) {
+                    while (i < count) {
+                        list[kept] = list[i];
+                        blocking[kept++] = blocking[i++];
+                    }
+                    watchCount[index] = kept;
+                    propagated = trailSize;
+                    return clause;
+                }
+                enqueue(literals[0], clause);
+            }
+            watchCount[index] = kept;
+        }
+        return null;
+    }
+
+    /**
+     * Learns the first-UIP clause of a conflict, backjumps and asserts the learned clause.
+     *
+     * @param conflict The conflicting clause.
+     */
+    private void learn(Clause conflict) {
+        int[] learnt = new int[INITIAL_CAPACITY];
+        int size = 1;
+        int pathCount = 0;
+        int literal = 0;
+        int index = trailSize - 1;
+        Clause clause = conflict;
+        do {
+            if (clause.learnt) {
+                bumpClause(clause);
+            }
+            for (int j = literal == 0 ? 0 : 1; j < clause.literals.length; j++) {
+                int q = clause.literals[j];
+                int v = Math.abs(q);
+                if (!seen[v] && level[v] > 0) {
+                    bumpVariable(v);
+                    seen[v] = true;
+                    if (level[v] >= decisionLevel) {
+                        pathCount++;
+                    } else {
+                        if (size == learnt.length) {
+                            learnt = Arrays.copyOf(learnt, size * 2);
+                        }
+                        learnt[size++] = q;
+                    }
+                }
+            }
+            while (!seen[Math.abs(trail[index])]) {
+                index--;
+            }
+            literal = trail[index--];
+            clause = reason[Math.abs(literal)];
+            seen[Math.abs(literal)] = false;
+            pathCount--;
+        } while (pathCount > 0);
+        learnt[0] = -literal;
+        int[] minimized = new int[size];
+        minimized[0] = learnt[0];
+        int kept = 1;
+        for (int j = 1; j < size; j++) {
+            if (!isRedundant(learnt[j])) {
+                minimized[kept++] = learnt[j];
+            }
+        }
+        for (int j = 1; j < size; j++) {
+            seen[Math.abs(learnt[j])] = false;
+        }
+        learnt = minimized;
+        size = kept;
+        int backjump = 0;
+        if (size > 1) {
+            int max = 1;
+            for (int j = 2; j < size; j++) {
+                if (level[Math.abs(learnt[j])] > level[Math.abs(learnt[max])]) {
+                    max = j;
+                }
+            }
+            int swap = learnt[1];
+            learnt[1] = learnt[max];
+            learnt[max] = swap;
+            backjump = level[Math.abs(learnt[1])];
+        }
+        cancelUntil(backjump);
+        if (size == 1) {
+            enqueue(learnt[0], null);
+        } else {
+            Clause learned = new Clause(Arrays.copyOf(learnt, size), true);
+            bumpClause(learned);
+            learnts.add(learned);
+            attach(learned);
+            enqueue(learnt[0], learned);
+        }
+    }
+
+    /**
+     * Checks if a literal of a learned clause is implied by the other literals, because every
+     * other literal of its reason is already in the clause or fixed at the top level.
+     *
+     * @param literal The literal.
+     * @return true if the literal can be removed.
+     */
+    private boolean isRedundant(int literal) {
+        Clause clause = reason[Math.abs(literal)];
+        if (clause == null) {
+            return false;
+        }
+        for (int j = 1; j < clause.literals.length; j++) {
+            int v = Math.abs(clause.literals[j]);
+            if (!seen[v] && level[v] > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Deletes the less active half of the learned clauses that are not reasons of assignments.
+     * Binary clauses are kept.
+     */
+    private void reduceLearnts() {
+        learnts.sort((a, b) -> Double.compare(a.activity, b.activity));
+        double limit = clauseIncrement / learnts.size();
+        int half = learnts.size() / 2;
+        List<Clause> kept = new ArrayList<>();
+        for (int i = 0; i < learnts.size(); i++) {
+            Clause clause = learnts.get(i);
+            boolean locked = reason[Math.abs(clause.literals[0])] == clause && value(clause.literals[0]) == TRUE;
+            if (clause.literals.length > 2 && !locked && (i < half || clause.activity < limit)) {
+                clause.deleted = true;
+            } else {
+                kept.add(clause);
+            }
+        }
+        learnts.clear();
+        learnts.addAll(kept);
+        for (int index = 0; index < watches.length; index++) {
+            Clause[] list = watches[index];
+            if (list == null) {
+                continue;
+            }
+            int[] blocking = blockers[index];
+            int count = 0;
+            for (int i = 0; i < watchCount[index]; i++) {
+                if (!list[i].deleted) {
+                    blocking[count] = blocking[i];
+                    list[count++] = list[i];
+                }
+            }
+            Arrays.fill(list, count, watchCount[index], null);
+            watchCount[index] = count;
+        }
+    }
+
+    /**
+     * Picks the unassigned variable with the highest activity.
+     *
+     * @return The variable, or 0 if all variables are assigned.
+     */
+    private int nextDecision() {
+        while (!order.isEmpty()) {
+            int variable = order.removeMax();
+            if (assigns[variable] == UNDEFINED) {
+                return variable;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Undoes the assignments above a decision level, saving their phases.
+     *
+     * @param target The decision level to return to.
+     */
+    private void cancelUntil(int target) {
+        if (decisionLevel <= target) {
+            return;
+        }
+        for (int i = trailSize - 1; i >= trailLimits[target]; i--) {
+            int v = Math.abs(trail[i]);
+            phase[v] = trail[i] > 0;
+            assigns[v] = UNDEFINED;
+            reason[v] = null;
+            order.insert(v);
+        }
+        trailSize = trailLimits[target];
+        propagated = trailSize;
+        decisionLevel = target;
+    }
+
+    /**
+     * Assigns a literal true at the current decision level.
+     *
+     * @param literal The literal.
+     * @param cause   The clause implying the literal, or null for a decision or top-level fact.
+     */
+    private void enqueue(int literal, Clause cause) {
+        int v = Math.abs(literal);
+        assigns[v] = literal > 0 ? TRUE : FALSE;
+        level[v] = decisionLevel;
+        reason[v] = cause;
+        trail[trailSize++] = literal;
+    }
+
+    /**
+     * Returns the value of a literal under the current assignment.
+     *
+     * @param literal The literal.
+     * @return TRUE, FALSE or UNDEFINED.
+     */
+    private byte value(int literal) {
+        byte value = assigns[Math.abs(literal)];
+        return literal > 0 ? value : (byte) -value;
+    }
+
+    /**
+     * Watches the first two literals of a clause.
+     *
+     * @param clause The clause.
+     */
+    private void attach(Clause clause) {
+        watch(clause.literals[0], clause);
+        watch(clause.literals[1], clause);
+    }
+
+    /**
+     * Adds a clause to the watch list of a literal, with the other watched literal as the
+     * blocker: while the blocker is true the clause is skipped without being read.
+     *
+     * @param literal The watched literal.
+     * @param clause  The clause.
+     */
+    private void watch(int literal, Clause clause) {
+        int index = index(literal);
+        Clause[] list = watches[index];
+        if (list == null) {
+            list = new Clause[INITIAL_CAPACITY / 4];
+            watches[index] = list;
+            blockers[index] = new int[list.length];
+        } else if (watchCount[index] == list.length) {
+            list = Arrays.copyOf(list, list.length * 2);
+            watches[index] = list;
+            blockers[index] = Arrays.copyOf(blockers[index], list.length);
+        }
+        blockers[index][watchCount[index]] = clause.literals[0] == literal ? clause.literals[1] : clause.literals[0];
+        list[watchCount[index]++] = clause;
+    }
+
+    /**
+     * Returns the watch list index of a literal.
+     *
+     * @param literal The literal.
+     * @return 2v for a positive and 2v + 1 for a negative literal of variable v.
+     */
+    private static int index(int literal) {
+        return literal > 0 ? 2 * literal : -2 * literal + 1;
+    }
+
+    /**
+     * Increases the activity of a variable, rescaling all activities when they grow too large.
+     *
+     * @param variable The variable.
+     */
+    private void bumpVariable(int variable) {
+        activity[variable] += variableIncrement;
+        if (activity[variable] > RESCALE_LIMIT) {
+            for (int v = 1; v <= variableCount; v++) {
+                activity[v] /= RESCALE_LIMIT;
+            }
+            variableIncrement /= RESCALE_LIMIT;
+        }
+        order.update(variable);
+    }
+
+    /**
+     * Increases the activity of a learned clause, rescaling all activities when they grow too large.
+     *
+     * @param clause The clause.
+     */
+    private void bumpClause(Clause clause) {
+        clause.activity += clauseIncrement;
+        if (clause.activity > RESCALE_LIMIT) {
+            for (Clause learnt : learnts) {
+                learnt.activity /= RESCALE_LIMIT;
+            }
+            clauseIncrement /= RESCALE_LIMIT;
+        }
+    }
+
+    /**
+     * Grows the per-variable arrays to hold a variable and adds new variables to the order.
+     *
+     * @param variable The variable.
+     */
+    private void ensureVariable(int variable) {
+        if (variable <= variableCount) {
+            return;
+        }
+        if (variable >= assigns.length) {
+            int capacity = Math.max(variable + 1, assigns.length * 2);
+            assigns = Arrays.copyOf(assigns, capacity);
+            level = Arrays.copyOf(level, capacity);
+            reason = Arrays.copyOf(reason, capacity);
+            phase = Arrays.copyOf(phase, capacity);
+            seen = Arrays.copyOf(seen, capacity);
+            activity = Arrays.copyOf(activity, capacity);
+            trail = Arrays.copyOf(trail, capacity);
+            watches = Arrays.copyOf(watches, 2 * capacity);
+            blockers = Arrays.copyOf(blockers, 2 * capacity);
+            watchCount = Arrays.copyOf(watchCount, 2 * capacity);
+        }
+        for (int v = variableCount + 1; v <= variable; v++) {
+            order.insert(v);
+        }
+        variableCount = variable;
+    }
+
+    /**
+     * Returns an element of the Luby sequence 1, 1, 2, 1, 1, 2, 4, 1, ...
+     *
+     * @param i The zero-based index in the sequence.
+     * @return The element.
+     */
+    private static int luby(int i) {
+        int size = 1;
+        int sequence = 0;
+        while (size < i + 1) {
+            sequence++;
+            size = 2 * size + 1;
+        }
+        int x = i;
+        while (size - 1 != x) {
+            size = (size - 1) >> 1;
+            sequence--;
+            x = x % size;
+        }
+        return 1 << sequence;
+    }
+
+    /**
+     * A clause, whose first two literals are the watched ones.
+     */
+    private static final class Clause {
+        private final int[] literals;
+        private final boolean learnt;
+        private double activity;
+        private boolean deleted;
+
+        /**
+         * Constructs a clause.
+         *
+         * @param literals The literals of the clause.
+         * @param learnt   Whether the clause was learned from a conflict.
+         */
+        Clause(int[] literals, boolean learnt) {
+            this.literals = literals;
+            this.learnt = learnt;
+        }
+    }
+
+    /**
+     * A binary max-heap of the unassigned variables ordered by activity.
+     */
+    private final class VariableOrder {
+        private int[] heap = new int[INITIAL_CAPACITY];
+        private int[] position = new int[INITIAL_CAPACITY];
+        private int size;
+
+        /**
+         * Checks if the heap is empty.
+         *
+         * @return true if no variable is in the heap.
+         */
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        /**
+         * Adds a variable to the heap if it is not already in it.
+         *
+         * @param variable The variable.
+         */
+        void insert(int variable) {
+            if (variable >= position.length) {
+                position = Arrays.copyOf(position, Math.max(variable + 1, position.length * 2));
+            }
+            if (position[variable] != 0) {
+                return;
+            }
+            if (size + 1 >= heap.length) {
+                heap = Arrays.copyOf(heap, heap.length * 2);
+            }
+            heap[++size] = variable;
+            position[variable] = size;
+            up(size);
+        }
+
+        /**
+         * Removes the variable with the highest activity.
+         *
+         * @return The variable.
+         */
+        int removeMax() {
+            int top = heap[1];
+            position[top] = 0;
+            heap[1] = heap[size--];
+            if (size > 0) {
+                position[heap[1]] = 1;
+                down(1);
+            }
+            return top;
+        }
+
+        /**
+         * Restores the heap order after the activity of a variable increased.
+         *
+         * @param variable The variable.
+         */
+        void update(int variable) {
+            if (variable < position.length && position[variable] != 0) {
+                up(position[variable]);
+            }
+        }
+
+        /**
+         * Moves an entry towards the root while it is more active than its parent.
+         *
+         * @param i The heap position.
+         */
+        private void up(int i) {
+            int variable = heap[i];
+            while (i > 1 && activity[heap[i >> 1]] < activity[variable]) {
+                heap[i] = heap[i >> 1];
+                position[heap[i]] = i;
+                i >>= 1;
+            }
+            heap[i] = variable;
+            position[variable] = i;
+        }
+
+        /**
+         * Moves an entry towards the leaves while a child is more active.
+         *
+         * @param i The heap position.
+         */
+        private void down(int i) {
+            int variable = heap[i];
+            while (2 * i <= size) {
+                int child = 2 * i;
+                if (child + 1 <= size && activity[heap[child + 1]] > activity[heap[child]]) {
+                    child++;
+                }
+                if (activity[heap[child]] <= activity[variable]) {
+                    break;
+                }
+                heap[i] = heap[child];
+                position[heap[i]] = i;
+                i = child;
+            }
+            heap[i] = variable;
+            position[variable] = i;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+// Nimrod Netzer 322394545
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Encodes expressions into equisatisfiable clauses with the Tseitin transformation.
+ * Every expression variable gets a CNF variable, numbered in order of first appearance, and every
+ * binary operation gets a fresh gate variable constrained to equal the operation of its operands.
+ * NAND, NOR and XNOR reuse the gates of AND, OR and XOR with a negated output, and negations
+ * only flip literals, so they cost no variables or clauses. Shared node instances are encoded once.
+ * The clauses are passed to a {@link ClauseSink} as they are produced.
+ */
+public class TseitinEncoder {
+    private final ClauseSink sink;
+    private final Map<String, Integer> variables = new LinkedHashMap<>();
+    private int variableCount;
+    private int trueLiteral;
+
+    /**
+     * Constructs an encoder writing its clauses to a sink.
+     *
+     * @param sink The destination of the clauses.
+     */
+    public TseitinEncoder(ClauseSink sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * Encodes an expression and returns the literal that is true exactly when the expression is.
+     * Variables with the same name share their CNF variable across calls.
+     *
+     * @param expression The expression to encode.
+     * @return The literal of the expression.
+     */
+    public int encode(Expression expression) {
+        return encode(ExpressionGraph.of(expression))[0];
+    }
+
+    /**
+     * Encodes every root of a graph and returns their literals. Nodes shared between the roots
+     * are encoded once.
+     *
+     * @param graph The graph of the expressions.
+     * @return The literal of every root, in the order of the roots.
+     */
+    public int[] encode(ExpressionGraph graph) {
+        int[] literals = new int[graph.size()];
+        for (int node = 0; node < graph.size(); node++) {
+            int op = graph.op(node);
+            switch (op) {
+                case ExpressionGraph.VAL:
+                    literals[node] = graph.left(node) == 1 ? trueLiteral() : -trueLiteral();
+                    break;
+                case ExpressionGraph.VAR:
+                    literals[node] = declare(graph.getVariables().get(graph.left(node)));
+                    break;
+                case ExpressionGraph.NOT:
+                    literals[node] = -literals[graph.left(node)];
+                    break;
+                default:
+                    literals[node] = gate(op, literals[graph.left(node)], literals[graph.right(node)]);
+                    break;
+            }
+        }
+        int[] roots = new int[graph.rootCount()];
+        for (int r = 0; r < roots.length; r++) {
+            roots[r] = literals[graph.root(r)];
+        }
+        return roots;
+    }
+
+    /**
+     * Encodes an expression and adds a unit clause requiring it to be true.
+     *
+     * @param expression The expression to assert.
+     */
+    public void assertTrue(Expression expression) {
+        sink.addClause(encode(expression));
+    }
+
+    /**
+     * Returns the CNF variables of the expression variables encoded so far.
+     *
+     * @return An unmodifiable map from variable name to CNF variable, in order of first appearance.
+     */
+    public Map<String, Integer> getVariables() {
+        return Collections.unmodifiableMap(variables);
+    }
+
+    /**
+     * Returns the number of CNF variables used so far, including gate variables.
+     *
+     * @return The highest CNF variable.
+     */
+    public int variableCount() {
+        return variableCount;
+    }
+
+    /**
+     * Returns the CNF variable of an expression variable, allocating it on first use.
+     * Declaring all variables before encoding numbers them before any gate variable.
+     *
+     * @param name The variable name.
+     * @return The CNF variable.
+     */
+    public int declare(String name) {
+        Integer existing = variables.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        variables.put(name, ++variableCount);
+        return variableCount;
+    }
+
+    /**
+     * Returns a literal that is always true, allocating it with a unit clause on first use.
+     *
+     * @return The true literal.
+     */
+    private int trueLiteral() {
+        if (trueLiteral == 0) {
+            trueLiteral = ++variableCount;
+            sink.addClause(trueLiteral);
+        }
+        return trueLiteral;
+    }
+
+    /**
+     * Allocates a gate variable for a binary operation and emits its defining clauses.
+     *
+     * @param op  The binary opcode.
+     * @param one The literal of the first operand.
+     * @param two The literal of the second operand.
+     * @return The literal of the operation.
+     */
+    private int gate(int op, int one, int two) {
+        int g = ++variableCount;
+        switch (op) {
+            case ExpressionGraph.AND:
+            case ExpressionGraph.NAND:
+                sink.addClause(-g, one);
+                sink.addClause(-g, two);
+                sink.addClause(g, -one, -two);
+                return op == ExpressionGraph.AND ? g : -g;
+            case ExpressionGraph.OR:
+            case ExpressionGraph.NOR:
+                sink.addClause(g, -one);
+                sink.addClause(g, -two);
+                sink.addClause(-g, one, two);
+                return op == ExpressionGraph.OR ? g : -g;
+            case ExpressionGraph.XOR:
+            case ExpressionGraph.XNOR:
+                sink.addClause(-g, one, two);
+                sink.addClause(-g, -one, -two);
+                sink.addClause(g, -one, two);
+                sink.addClause(g, one, -two);
+                return op == ExpressionGraph.XOR ? g : -g;
+            default:
+                throw new IllegalArgumentException("Not a binary opcode: " + op);
+        }
+    }
+}
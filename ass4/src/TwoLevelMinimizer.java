@@ -0,0 +1,492 @@
+// Nimrod Netzer 322394545
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Minimizes expressions to a sum of products: an OR of ANDs of variables and negated variables.
+ * The on-set of the expression is computed as a bit-parallel truth table and covered by cubes,
+ * each stored in a single long as a mask of the variables it constrains (the high 32 bits)
+ * and their values (the low 32 bits). Up to {@value #EXACT_VARIABLES} variables all the prime
+ * implicants are generated by Quine-McCluskey merging and covered by the essential primes and
+ * then greedily; above that an Espresso-style loop expands, reduces and removes redundant cubes
+ * until the cover stops shrinking. Either way the result is a cover of prime, irredundant
+ * cubes, which is minimal or close to it. Functions like parity have no small sum of products.
+ */
+public final class TwoLevelMinimizer {
+    /**
+     * The maximal number of variables an expression may have to be minimized.
+     */
+    public static final int MAX_VARIABLES = 22;
+    private static final int EXACT_VARIABLES = 10;
+    private static final int MAX_PASSES = 8;
+    private static final int CARE_SHIFT = 32;
+    private static final long VALUE_MASK = 0xFFFFFFFFL;
+    private static final int INITIAL_COVER = 16;
+
+    private final long[] table;
+    private final int variables;
+    private final int full;
+    private final int[] count;
+    private long[] cover = new long[INITIAL_COVER];
+    private int size;
+
+    /**
+     * Constructs a minimizer of a truth table.
+     *
+     * @param table     The truth table, where bit r is the value of row r.
+     * @param variables The number of variables, where bit i of a row is the value of variable i.
+     */
+    private TwoLevelMinimizer(long[] table, int variables) {
+        this.table = table;
+        this.variables = variables;
+        this.full = (1 << variables) - 1;
+        this.count = new int[1 << variables];
+    }
+
+    /**
+     * Minimizes an expression over its variables.
+     *
+     * @param expression The expression to minimize.
+     * @return An equivalent OR of ANDs of literals, or a constant.
+     * @throws Exception If the expression has more than {@value #MAX_VARIABLES} variables or
+     *                   evaluation encounters an error.
+     */
+    public static Expression minimize(Expression expression) throws Exception {
+        List<String> variables = expression.getVariables();
+        if (variables.size() > MAX_VARIABLES) {
+            throw new Exception("Cannot minimize an expression with " + variables.size()
+                    + " variables, the maximum is " + MAX_VARIABLES);
+        }
+        return toExpression(cover(BitParallelEvaluator.truthTable(expression, variables), variables.size()),
+                variables);
+    }
+
+    /**
+     * Computes a minimal or near-minimal cover of the true rows of a truth table.
+     *
+     * @param table     The truth table, where bit r is the value of row r.
+     * @param variables The number of variables, at most {@value #MAX_VARIABLES}.
+     * @return The cubes of the cover, with the mask of constrained variables in the high 32 bits
+     *         and their values in the low 32 bits.
+     */
+    public static long[] cover(long[] table, int variables) {
+        if (variables < 0 || variables > MAX_VARIABLES) {
+            throw new IllegalArgumentException("Variable count out of range: " + variables);
+        }
+        TwoLevelMinimizer minimizer = new TwoLevelMinimizer(table, variables);
+        return variables <= EXACT_VARIABLES ? minimizer.quineMcCluskey() : minimizer.espresso();
+    }
+
+    /**
+     * Builds the expression of a cover: a balanced OR of balanced ANDs of literals.
+     *
+     * @param cubes     The cubes, as returned by cover().
+     * @param variables The variables, where bit i of a cube is the i-th variable.
+     * @return The expression, F for an empty cover and T for a cube without literals.
+     */
+    public static Expression toExpression(long[] cubes, List<String> variables) {
+        List<Expression> terms = new ArrayList<>();
+        for (long cube : cubes) {
+            int care = care(cube);
+            int value = value(cube);
+            if (care == 0) {
+                return new Val(true);
+            }
+            List<Expression> literals = new ArrayList<>();
+            for (int i = 0; i < variables.size(); i++) {
+                if ((care >>> i & 1) != 0) {
+                    Var variable = new Var(variables.get(i));
+                    literals.add((value >>> i & 1) != 0 ? variable : new Not(variable));
+                }
+            }
+            terms.add(balance(literals, 0, literals.size(), true));
+        }
+        return terms.isEmpty() ? new Val(false) : balance(terms, 0, terms.size(), false);
+    }
+
+    /**
+     * Generates all the prime implicants by merging cubes that differ in a single variable,
+     * selects the essential primes, and covers the remaining rows greedily.
+     *
+     * @return The cover.
+     */
+    private long[] quineMcCluskey() {
+        Set<Long> level = new HashSet<>();
+        for (int row = 0; row <= full; row++) {
+            if (on(row)) {
+                level.add(cube(full, row));
+            }
+        }
+        List<Long> primes = new ArrayList<>();
+        while (!level.isEmpty()) {
+            Set<Long> next = new HashSet<>();
+            Set<Long> merged = new HashSet<>();
+            for (long cube : level) {
+                int care = care(cube);
+                int value = value(cube);
+                for (int rest = care & ~value; rest != 0; rest &= rest - 1) {
+                    int bit = rest & -rest;
+                    long partner = cube(care, value | bit);
+                    if (level.contains(partner)) {
+                        next.add(cube(care & ~bit, value));
+                        merged.add(cube);
+                        merged.add(partner);
+                    }
+                }
+            }
+            for (long cube : level) {
+                if (!merged.contains(cube)) {
+                    primes.add(cube);
+                }
+            }
+            level = next;
+        }
+        for (long prime : primes) {
+            add(prime);
+        }
+        int[] covering = count.clone();
+        Arrays.fill(count, 0);
+        size = 0;
+        boolean[] chosen = new boolean[primes.size()];
+        for (int p = 0; p < primes.size(); p++) {
+            if (hasRowCoveredOnce(primes.get(p), covering)) {
+                chosen[p] = true;
+                add(primes.get(p));
+            }
+        }
+        while (true) {
+            int best = -1;
+            long bestScore = 0;
+            for (int p = 0; p < primes.size(); p++) {
+                if (!chosen[p]) {
+                    long cube = primes.get(p);
+                    long score = ((long) uncovered(cube) << CARE_SHIFT) - Integer.bitCount(care(cube));
+                    if (uncovered(cube) > 0 && (best == -1 || score > bestScore)) {
+                        best = p;
+                        bestScore = score;
+                    }
+                }
+            }
+            if (best == -1) {
+                break;
+            }
+            chosen[best] = true;
+            add(primes.get(best));
+        }
+        irredundant();
+        return Arrays.copyOf(cover, size);
+    }
+
+    /**
+     * Covers the true rows by expanding every uncovered row into a prime, then repeatedly
+     * removes redundant cubes, reduces every cube to the rows only it covers and expands it
+     * again, keeping the cheapest cover found.
+     *
+     * @return The cover.
+     */
+    private long[] espresso() {
+        for (int row = 0; row <= full; row++) {
+            if (on(row) && count[row] == 0) {
+                add(expand(cube(full, row)));
+            }
+        }
+        irredundant();
+        long[] best = Arrays.copyOf(cover, size);
+        long bestCost = cost();
+        for (int pass = 0; pass < MAX_PASSES; pass++) {
+            reduce();
+            for (int i = 0; i < size; i++) {
+                long expanded = expand(cover[i]);
+                countRows(cover[i], -1);
+                countRows(expanded, 1);
+                cover[i] = expanded;
+            }
+            irredundant();
+            long cost = cost();
+            if (cost >= bestCost) {
+                break;
+            }
+            best = Arrays.copyOf(cover, size);
+            bestCost = cost;
+        }
+        return best;
+    }
+
+    /**
+     * Raises the literals of a cube one at a time while it stays inside the on-set, each time
+     * choosing the literal whose new half covers the most uncovered rows, and then the most
+     * rows covered by a single other cube, which may become redundant.
+     *
+     * @param cube The implicant to expand.
+     * @return A prime implicant containing the cube.
+     */
+    private long expand(long cube) {
+        int care = care(cube);
+        int value = value(cube);
+        while (true) {
+            int bestBit = 0;
+            long bestScore = -1;
+            for (int rest = care; rest != 0; rest &= rest - 1) {
+                int bit = rest & -rest;
+                long score = score(care, value ^ bit);
+                if (score > bestScore) {
+                    bestBit = bit;
+                    bestScore = score;
+                }
+            }
+            if (bestBit == 0) {
+                return cube(care, value);
+            }
+            care &= ~bestBit;
+            value &= ~bestBit;
+        }
+    }
+
+    /**
+     * Scores a half cube that would be added to a cube by raising a literal.
+     *
+     * @param care  The constrained variables of the half.
+     * @param value The values of the constrained variables.
+     * @return -1 if the half has a false row, else the uncovered rows in the high half of the
+     *         result and the rows covered once in the low half.
+     */
+    private long score(int care, int value) {
+        int free = full & ~care;
+        long uncovered = 0;
+        long once = 0;
+        int sub = 0;
+        do {
+            int row = value | sub;
+            if (!on(row)) {
+                return -1;
+            }
+            if (count[row] == 0) {
+                uncovered++;
+            } else if (count[row] == 1) {
+                once++;
+            }
+            sub = (sub - free) & free;
+        } while (sub != 0);
+        return uncovered << CARE_SHIFT | once;
+    }
+
+    /**
+     * Shrinks every cube, largest first, to the smallest cube containing the rows no other cube
+     * covers, and drops the cubes that have no such rows.
+     */
+    private void reduce() {
+        sortBySize();
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            long cube = cover[i];
+            remove(cube);
+            int free = full & ~care(cube);
+            int ones = full;
+            int zeros = full;
+            boolean unique = false;
+            int sub = 0;
+            do {
+                int row = value(cube) | sub;
+                if (count[row] == 0) {
+                    ones &= row;
+                    zeros &= ~row;
+                    unique = true;
+                }
+                sub = (sub - free) & free;
+            } while (sub != 0);
+            if (unique) {
+                long reduced = cube(ones | zeros, ones);
+                countRows(reduced, 1);
+                cover[kept++] = reduced;
+            }
+        }
+        size = kept;
+    }
+
+    /**
+     * Removes cubes whose rows are all covered by other cubes, trying the smallest cubes first.
+     */
+    private void irredundant() {
+        sortBySize();
+        boolean[] redundant = new boolean[size];
+        for (int i = size - 1; i >= 0; i--) {
+            if (!hasRowCoveredOnce(cover[i], count)) {
+                remove(cover[i]);
+                redundant[i] = true;
+            }
+        }
+        int kept = 0;
+        for (int i = 0; i < redundant.length; i++) {
+            if (!redundant[i]) {
+                cover[kept++] = cover[i];
+            }
+        }
+        size = kept;
+    }
+
+    /**
+     * Sorts the cover so that cubes with fewer literals, which cover more rows, come first.
+     */
+    private void sortBySize() {
+        Long[] cubes = new Long[size];
+        for (int i = 0; i < size; i++) {
+            cubes[i] = cover[i];
+        }
+        Arrays.sort(cubes, (a, b) -> Integer.compare(Integer.bitCount(care(a)), Integer.bitCount(care(b))));
+        for (int i = 0; i < size; i++) {
+            cover[i] = cubes[i];
+        }
+    }
+
+    /**
+     * Returns the cost of the cover: the number of cubes, then the number of literals.
+     *
+     * @return The cost, where lower is cheaper.
+     */
+    private long cost() {
+        long literals = 0;
+        for (int i = 0; i < size; i++) {
+            literals += Integer.bitCount(care(cover[i]));
+        }
+        return (long) size << CARE_SHIFT | literals;
+    }
+
+    /**
+     * Adds a cube to the cover and counts its rows.
+     *
+     * @param cube The cube.
+     */
+    private void add(long cube) {
+        if (size == cover.length) {
+            cover = Arrays.copyOf(cover, size * 2);
+        }
+        cover[size++] = cube;
+        countRows(cube, 1);
+    }
+
+    /**
+     * Uncounts the rows of a cube; the caller removes it from the cover.
+     *
+     * @param cube The cube.
+     */
+    private void remove(long cube) {
+        countRows(cube, -1);
+    }
+
+    /**
+     * Adds a delta to the cover count of every row of a cube.
+     *
+     * @param cube  The cube.
+     * @param delta The change of the counts.
+     */
+    private void countRows(long cube, int delta) {
+        int free = full & ~care(cube);
+        int sub = 0;
+        do {
+            count[value(cube) | sub] += delta;
+            sub = (sub - free) & free;
+        } while (sub != 0);
+    }
+
+    /**
+     * Returns the number of rows of a cube the cover does not cover.
+     *
+     * @param cube The cube.
+     * @return The number of uncovered rows.
+     */
+    private int uncovered(long cube) {
+        int free = full & ~care(cube);
+        int uncovered = 0;
+        int sub = 0;
+        do {
+            if (count[value(cube) | sub] == 0) {
+                uncovered++;
+            }
+            sub = (sub - free) & free;
+        } while (sub != 0);
+        return uncovered;
+    }
+
+    /**
+     * Checks whether a cube has a row whose count is at most one.
+     *
+     * @param cube   The cube.
+     * @param counts The count of every row.
+     * @return true if some row of the cube is counted once or less.
+     */
+    private boolean hasRowCoveredOnce(long cube, int[] counts) {
+        int free = full & ~care(cube);
+        int sub = 0;
+        do {
+            if (counts[value(cube) | sub] <= 1) {
+                return true;
+            }
+            sub = (sub - free) & free;
+        } while (sub != 0);
+        return false;
+    }
+
+    /**
+     * Checks whether a row is true.
+     *
+     * @param row The row.
+     * @return The value of the row in the table.
+     */
+    private boolean on(int row) {
+        return (table[row >>> BitParallelEvaluator.WORD_SHIFT] >>> row & 1) != 0;
+    }
+
+    /**
+     * Encodes a cube.
+     *
+     * @param care  The mask of the constrained variables.
+     * @param value The values of the constrained variables.
+     * @return The cube.
+     */
+    private static long cube(int care, int value) {
+        return (long) care << CARE_SHIFT | (value & care & VALUE_MASK);
+    }
+
+    /**
+     * Returns the mask of the variables a cube constrains.
+     *
+     * @param cube The cube.
+     * @return The care mask.
+     */
+    private static int care(long cube) {
+        return (int) (cube >>> CARE_SHIFT);
+    }
+
+    /**
+     * Returns the values of the variables a cube constrains.
+     *
+     * @param cube The cube.
+     * @return The value bits.
+     */
+    private static int value(long cube) {
+        return (int) cube;
+    }
+
+    /**
+     * Combines a range of operands into a balanced AND or OR tree.
+     *
+     * @param operands    The operands.
+     * @param from        The first operand of the range.
+     * @param to          The end of the range, exclusive.
+     * @param conjunction true to combine with AND, false to combine with OR.
+     * @return The tree.
+     */
+    private static Expression balance(List<Expression> operands, int from, int to, boolean conjunction) {
+        if (to - from == 1) {
+            return operands.get(from);
+        }
+        int middle = (from + to) >>> 1;
+        Expression one = balance(operands, from, middle, conjunction);
+        Expression two = balance(operands, middle, to, conjunction);
+        return conjunction ? new And(one, two) : new Or(one, two);
+    }
+}
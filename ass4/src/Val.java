@@ -1,5 +1,6 @@
 // Nimrod Netzer 322394545
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 
@@ -8,7 +9,7 @@ import java.util.Map;
  */
 public class Val implements Expression {
 
-    private Boolean value;
+    private final Boolean value;
 
     /**
      * Constructs a Val object with the given boolean value.
@@ -86,6 +87,15 @@ public class Val implements Expression {
         return List.of();
     }
 
+    /**
+     * Returns the empty set, as Val does not contain any variables.
+     *
+     * @return The empty variable set.
+     */
+    public VariableSet getVariableSet() {
+        return VariableSet.EMPTY;
+    }
+
     /**
      * Returns a string representation of the Val object.
      *
@@ -102,14 +112,45 @@ public class Val implements Expression {
     }
 
     /**
-     * Returns a new Val object with the same value as this Val (immutable assignment).
+     * Writes the string representation of the Val object.
+     *
+     * @param out The destination of the string representation.
+     * @throws IOException If writing to the destination fails.
+     */
+    public void appendTo(Appendable out) throws IOException {
+        out.append(toString());
+    }
+
+    /**
+     * Returns this Val, as a constant has no variables to replace.
      *
      * @param var        The variable name to be replaced (not used in Val).
      * @param expression The expression to replace with (not used in Val).
-     * @return A new Val object with the same boolean value.
+     * @return This Val object.
      */
     public Expression assign(String var, Expression expression) {
-        return new Val(value);
+        return this;
+    }
+
+    /**
+     * Returns this Val, as a constant has no variables to replace.
+     *
+     * @param substitution The expressions to replace the variables with (not used in Val).
+     * @return This Val object.
+     */
+    public Expression assign(Map<String, Expression> substitution) {
+        return this;
+    }
+
+    /**
+     * Returns this Val, as a constant has no variables to replace.
+     *
+     * @param substitution The expressions to replace the variables with (not used in Val).
+     * @param assigned     The expressions substituted so far (not used in Val).
+     * @return This Val object.
+     */
+    public Expression assign(Map<String, Expression> substitution, Map<Expression, Expression> assigned) {
+        return this;
     }
 
     /**
@@ -122,29 +163,40 @@ public class Val implements Expression {
     }
 
     /**
-     * Sets a new boolean value for this Val.
+     * Returns the expression tree resulting from converting all operations to the logical Nand operation.
      *
-     * @param value The new boolean value to be set.
+     * @return This Val object, as logical Nand operation doesn't change Val.
      */
-    public void setValue(Boolean value) {
-        this.value = value;
+    public Expression nandify() {
+        return this;
+    }
+
+    /**
+     * Returns the expression tree resulting from converting all operations to the logical Nor operation.
+     *
+     * @return This Val object, as logical Nor operation doesn't change Val.
+     */
+    public Expression norify() {
+        return this;
     }
 
     /**
      * Returns the expression tree resulting from converting all operations to the logical Nand operation.
      *
+     * @param converted The expressions converted so far (not used in Val).
      * @return This Val object, as logical Nand operation doesn't change Val.
      */
-    public Expression nandify() {
+    public Expression nandify(Map<Expression, Expression> converted) {
         return this;
     }
 
     /**
      * Returns the expression tree resulting from converting all operations to the logical Nor operation.
      *
+     * @param converted The expressions converted so far (not used in Val).
      * @return This Val object, as logical Nor operation doesn't change Val.
      */
-    public Expression norify() {
+    public Expression norify(Map<Expression, Expression> converted) {
         return this;
     }
 
@@ -160,4 +212,14 @@ public class Val implements Expression {
         // Base case: if the value is valid (true or false) then return the expression
         return new Val(value);
     }
+
+    /**
+     * Simplifies the Val expression.
+     *
+     * @param simplified The expressions simplified so far (not used in Val).
+     * @return The simplified expression, as returned by simplify().
+     */
+    public Expression simplify(Map<Expression, Expression> simplified) {
+        return simplify();
+    }
 }
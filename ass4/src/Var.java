@@ -1,5 +1,6 @@
 // Nimrod Netzer 322394545
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 
@@ -8,7 +9,8 @@ import java.util.Map;
  */
 public class Var implements Expression {
 
-    private String variable;
+    private final String variable;
+    private VariableSet variableSet;
 
     /**
      * Constructs a Var object with the given variable name.
@@ -65,15 +67,6 @@ public class Var implements Expression {
         return variable;
     }
 
-    /**
-     * Sets a new name for the variable.
-     *
-     * @param variable The new variable name.
-     */
-    public void setVariable(String variable) {
-        this.variable = variable;
-    }
-
     /**
      * Evaluates the expression using the provided variable assignments.
      *
@@ -82,11 +75,11 @@ public class Var implements Expression {
      * @throws Exception If the variable is not assigned in the provided map.
      */
     public Boolean evaluate(Map<String, Boolean> assignment) throws Exception {
-        try {
-            return assignment.get(variable);
-        } catch (Exception e) {
+        Boolean value = assignment.get(variable);
+        if (value == null) {
             throw new Exception("Variable '" + variable + "' is not assigned");
         }
+        return value;
     }
 
     /**
@@ -105,7 +98,21 @@ public class Var implements Expression {
      * @return A list containing the variable name as a single element.
      */
     public List<String> getVariables() {
-        return List.of(variable); // just one variable in this case
+        return getVariableSet().getNames();
+    }
+
+    /**
+     * Returns the set holding this variable, created on the first call.
+     *
+     * @return The variable set of this variable.
+     */
+    public VariableSet getVariableSet() {
+        VariableSet set = variableSet;
+        if (set == null) {
+            set = VariableSet.of(variable);
+            variableSet = set;
+        }
+        return set;
     }
 
     /**
@@ -117,22 +124,54 @@ public class Var implements Expression {
         return variable; // just the variable name itself as a string expression
     }
 
+    /**
+     * Writes the string representation of the Var object.
+     *
+     * @param out The destination of the string representation.
+     * @throws IOException If writing to the destination fails.
+     */
+    public void appendTo(Appendable out) throws IOException {
+        out.append(toString());
+    }
+
     /**
      * Returns a new expression in which all occurrences of the current variable
      * are replaced with the provided expression (if the variable matches).
      *
      * @param var        The variable name to be replaced.
      * @param expression The expression to replace with.
-     * @return The new expression after substitution, or the original variable if no match.
+     * @return The new expression after substitution, or this variable if no match.
      */
     public Expression assign(String var, Expression expression) {
         if (variable.equals(var)) {
             return expression;
         } else {
-            return new Var(variable);
+            return this;
         }
     }
 
+    /**
+     * Returns the substitution of this variable.
+     *
+     * @param substitution The expressions to replace the variables with, by variable name.
+     * @return The expression mapped to this variable, or this variable if it is not substituted.
+     */
+    public Expression assign(Map<String, Expression> substitution) {
+        Expression expression = substitution.get(variable);
+        return expression == null ? this : expression;
+    }
+
+    /**
+     * Returns the substitution of this variable.
+     *
+     * @param substitution The expressions to replace the variables with, by variable name.
+     * @param assigned     The expressions substituted so far (not used in Var).
+     * @return The expression mapped to this variable, or this variable if it is not substituted.
+     */
+    public Expression assign(Map<String, Expression> substitution, Map<Expression, Expression> assigned) {
+        return assign(substitution);
+    }
+
     /**
      * Returns the expression tree resulting from converting all operations to the logical Nand operation.
      *
@@ -151,6 +190,26 @@ public class Var implements Expression {
         return this;
     }
 
+    /**
+     * Returns the expression tree resulting from converting all operations to the logical Nand operation.
+     *
+     * @param converted The expressions converted so far (not used in Var).
+     * @return This Var object, as logical Nand operation doesn't change Var.
+     */
+    public Expression nandify(Map<Expression, Expression> converted) {
+        return this;
+    }
+
+    /**
+     * Returns the expression tree resulting from converting all operations to the logical Nor operation.
+     *
+     * @param converted The expressions converted so far (not used in Var).
+     * @return This Var object, as logical Nor operation doesn't change Var.
+     */
+    public Expression norify(Map<Expression, Expression> converted) {
+        return this;
+    }
+
     /**
      * Simplifies the variable expression.
      *
@@ -163,4 +222,14 @@ public class Var implements Expression {
         }
         return new Var(variable);
     }
+
+    /**
+     * Simplifies the Var expression.
+     *
+     * @param simplified The expressions simplified so far (not used in Var).
+     * @return The simplified expression, as returned by simplify().
+     */
+    public Expression simplify(Map<Expression, Expression> simplified) {
+        return simplify();
+    }
 }
@@ -0,0 +1,220 @@
+// Nimrod Netzer 322394545
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An immutable set of variable names, stored as a bitmask over a global dictionary that gives
+ * every variable name a number the first time it is seen.
+ * Membership is a single dictionary lookup and bit test, and containment and intersection of
+ * two sets compare their masks word by word. The sorted list of names is built once, on first
+ * use, from the canonical name instances of the dictionary. A union equal to one of its operands
+ * returns that operand, so nested expressions with the same variables share one set.
+ */
+public final class VariableSet {
+    /**
+     * The set without variables.
+     */
+    public static final VariableSet EMPTY = new VariableSet(new long[0]);
+
+    private static final Map<String, Integer> IDS = new ConcurrentHashMap<>();
+    private static final List<String> NAMES = new ArrayList<>();
+
+    private final long[] mask;
+    private final int hash;
+    private volatile List<String> names;
+
+    /**
+     * Constructs a set from its mask.
+     *
+     * @param mask The mask, where bit i is set for the variable numbered i, without trailing zero words.
+     */
+    private VariableSet(long[] mask) {
+        this.mask = mask;
+        this.hash = Arrays.hashCode(mask);
+    }
+
+    /**
+     * Returns the set of a single variable.
+     *
+     * @param name The variable name.
+     * @return The set holding only the variable.
+     */
+    public static VariableSet of(String name) {
+        int id = idOf(name);
+        long[] mask = new long[(id >>> BitParallelEvaluator.WORD_SHIFT) + 1];
+        mask[id >>> BitParallelEvaluator.WORD_SHIFT] = 1L << id;
+        return new VariableSet(mask);
+    }
+
+    /**
+     * Returns the union of two sets.
+     *
+     * @param one The first set.
+     * @param two The second set.
+     * @return The union, which is one of the operands if it contains the other.
+     */
+    public static VariableSet union(VariableSet one, VariableSet two) {
+        if (one.containsAll(two)) {
+            return one;
+        }
+        if (two.containsAll(one)) {
+            return two;
+        }
+        long[] longer = one.mask.length >= two.mask.length ? one.mask : two.mask;
+        long[] shorter = longer == one.mask ? two.mask : one.mask;
+        long[] mask = longer.clone();
+        for (int i = 0; i < shorter.length; i++) {
+            mask[i] |= shorter[i];
+        }
+        return new VariableSet(mask);
+    }
+
+    /**
+     * Checks whether a variable is in the set.
+     *
+     * @param name The variable name.
+     * @return true if the set holds the variable.
+     */
+    public boolean contains(String name) {
+        Integer id = IDS.get(name);
+        if (id == null) {
+            return false;
+        }
+        int word = id >>> BitParallelEvaluator.WORD_SHIFT;
+        return word < mask.length && (mask[word] >>> id & 1) != 0;
+    }
+
+    /**
+     * Checks whether every variable of another set is in this set.
+     *
+     * @param other The other set.
+     * @return true if this set is a superset of the other.
+     */
+    public boolean containsAll(VariableSet other) {
+        if (other.mask.length > mask.length) {
+            return false;
+        }
+        for (int i = 0; i < other.mask.length; i++) {
+            if ((other.mask[i] & ~mask[i]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether two sets have a variable in common.
+     *
+     * @param other The other set.
+     * @return true if some variable is in both sets.
+     */
+    public boolean intersects(VariableSet other) {
+        int words = Math.min(mask.length, other.mask.length);
+        for (int i = 0; i < words; i++) {
+            if ((mask[i] & other.mask[i]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of variables in the set.
+     *
+     * @return The number of variables.
+     */
+    public int size() {
+        int size = 0;
+        for (long word : mask) {
+            size += Long.bitCount(word);
+        }
+        return size;
+    }
+
+    /**
+     * Checks whether the set has no variables.
+     *
+     * @return true if the set is empty.
+     */
+    public boolean isEmpty() {
+        return mask.length == 0;
+    }
+
+    /**
+     * Returns the variable names in sorted order.
+     *
+     * @return An unmodifiable sorted list of the names.
+     */
+    public List<String> getNames() {
+        List<String> result = names;
+        if (result == null) {
+            List<String> sorted = new ArrayList<>(size());
+            synchronized (NAMES) {
+                for (int w = 0; w < mask.length; w++) {
+                    for (long word = mask[w]; word != 0; word &= word - 1) {
+                        sorted.add(NAMES.get((w << BitParallelEvaluator.WORD_SHIFT) + Long.numberOfTrailingZeros(word)));
+                    }
+                }
+            }
+            Collections.sort(sorted);
+            result = Collections.unmodifiableList(sorted);
+            names = result;
+        }
+        return result;
+    }
+
+    /**
+     * Checks whether two sets hold the same variables.
+     *
+     * @param obj The object to compare with.
+     * @return true if obj is a set with the same variables.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        return this == obj || (obj instanceof VariableSet && Arrays.equals(mask, ((VariableSet) obj).mask));
+    }
+
+    /**
+     * Returns the hash code of the mask.
+     *
+     * @return A hash code value for this set.
+     */
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * Returns the sorted names of the set.
+     *
+     * @return A string representation of the names.
+     */
+    @Override
+    public String toString() {
+        return getNames().toString();
+    }
+
+    /**
+     * Returns the number of a variable in the dictionary, numbering it if it is new.
+     *
+     * @param name The variable name.
+     * @return The number of the variable.
+     */
+    private static int idOf(String name) {
+        Integer id = IDS.get(name);
+        if (id != null) {
+            return id;
+        }
+        synchronized (NAMES) {
+            return IDS.computeIfAbsent(name, n -> {
+                NAMES.add(n);
+                return NAMES.size() - 1;
+            });
+        }
+    }
+}
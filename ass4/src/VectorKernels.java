@@ -0,0 +1,116 @@
+// Nimrod Netzer 322394545
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The {@link BitKernels} backend on the incubating Vector API: every kernel processes a whole
+ * LongVector of the preferred species (256 bits on AVX2, 512 on AVX-512) per step, and hands the
+ * words left over after the last full vector to the scalar loops.
+ * The class is compiled only with --add-modules jdk.incubator.vector, in a javac step of its own
+ * in the compile target of build.xml, and BitKernels looks it up by name after it found the
+ * module, so building or running without the module never touches it.
+ */
+final class VectorKernels {
+    private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+
+    /**
+     * Private constructor, this class only has static methods.
+     */
+    private VectorKernels() {
+    }
+
+    /**
+     * Returns the number of bits processed per step.
+     *
+     * @return The bit size of the preferred species.
+     */
+    static int vectorBits() {
+        return SPECIES.vectorBitSize();
+    }
+
+    /**
+     * Negates a range of words.
+     *
+     * @param in        The operand.
+     * @param inOffset  The first word of the operand.
+     * @param out       The destination, which may be the operand.
+     * @param outOffset The first word of the destination.
+     * @param length    The number of words.
+     */
+    static void not(long[] in, int inOffset, long[] out, int outOffset, int length) {
+        int bound = SPECIES.loopBound(length);
+        for (int i = 0; i < bound; i += SPECIES.length()) {
+            load(in, inOffset + i).not().intoArray(out, outOffset + i);
+        }
+        BitKernels.scalarNot(in, inOffset + bound, out, outOffset + bound, length - bound);
+    }
+
+    /**
+     * Applies a binary operation to a range of words.
+     *
+     * @param op        The opcode of the operation, one of the binary {@link ExpressionGraph} opcodes.
+     * @param one       The first operand.
+     * @param oneOffset The first word of the first operand.
+     * @param two       The second operand.
+     * @param twoOffset The first word of the second operand.
+     * @param out       The destination, which may be one of the operands at the same offset.
+     * @param outOffset The first word of the destination.
+     * @param length    The number of words.
+     */
+    static void apply(int op, long[] one, int oneOffset, long[] two, int twoOffset, long[] out, int outOffset,
+                      int length) {
+        int bound = SPECIES.loopBound(length);
+        int step = SPECIES.length();
+        switch (op) {
+            case ExpressionGraph.AND:
+                for (int i = 0; i < bound; i += step) {
+                    load(one, oneOffset + i).and(load(two, twoOffset + i)).intoArray(out, outOffset + i);
+                }
+                break;
+            case ExpressionGraph.OR:
+                for (int i = 0; i < bound; i += step) {
+                    load(one, oneOffset + i).or(load(two, twoOffset + i)).intoArray(out, outOffset + i);
+                }
+                break;
+            case ExpressionGraph.XOR:
+                for (int i = 0; i < bound; i += step) {
+                    load(one, oneOffset + i).lanewise(VectorOperators.XOR, load(two, twoOffset + i))
+                            .intoArray(out, outOffset + i);
+                }
+                break;
+            case ExpressionGraph.NAND:
+                for (int i = 0; i < bound; i += step) {
+                    load(one, oneOffset + i).and(load(two, twoOffset + i)).not().intoArray(out, outOffset + i);
+                }
+                break;
+            case ExpressionGraph.NOR:
+                for (int i = 0; i < bound; i += step) {
+                    load(one, oneOffset + i).or(load(two, twoOffset + i)).not().intoArray(out, outOffset + i);
+                }
+                break;
+            case ExpressionGraph.XNOR:
+                for (int i = 0; i < bound; i += step) {
+                    load(one, oneOffset + i).lanewise(VectorOperators.XOR, load(two, twoOffset + i)).not()
+                            .intoArray(out, outOffset + i);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown opcode: " + op);
+        }
+        BitKernels.scalarApply(op, one, oneOffset + bound, two, twoOffset + bound, out, outOffset + bound,
+                length - bound);
+    }
+
+    /**
+     * Loads a vector of words.
+     *
+     * @param array  The array.
+     * @param offset The first word of the vector.
+     * @return The vector.
+     */
+    private static LongVector load(long[] array, int offset) {
+        return LongVector.fromArray(SPECIES, array, offset);
+    }
+}
@@ -0,0 +1,127 @@
+// Nimrod Netzer 322394545
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Writes expressions as a list of named intermediate wires instead of a single infix string.
+ * Every distinct node instance gets one line, so the output is linear in the size of the
+ * expression DAG even when the infix form would be exponential (as with nested nandify() results).
+ * Wires are named "$" followed by the node index, and the last line names the result:
+ * <pre>
+ * $2 = (x A y)
+ * $3 = ($2 A x)
+ * out = $3
+ * </pre>
+ */
+public final class WireWriter {
+
+    /**
+     * Private constructor, this class only has static methods.
+     */
+    private WireWriter() {
+    }
+
+    /**
+     * Returns the wire list of an expression as a string.
+     *
+     * @param expression The expression to write.
+     * @return The wire list, one wire per line.
+     */
+    public static String toString(Expression expression) {
+        StringBuilder builder = new StringBuilder();
+        try {
+            write(expression, builder);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Writes the wire list of an expression.
+     *
+     * @param expression The expression to write.
+     * @param out        The destination of the wire list.
+     * @throws IOException If writing to the destination fails.
+     */
+    public static void write(Expression expression, Appendable out) throws IOException {
+        ExpressionGraph graph = ExpressionGraph.of(expression);
+        for (int node = 0; node < graph.size(); node++) {
+            int op = graph.op(node);
+            if (op == ExpressionGraph.VAL || op == ExpressionGraph.VAR) {
+                continue;
+            }
+            out.append('$').append(Integer.toString(node)).append(" = ");
+            if (op == ExpressionGraph.NOT) {
+                out.append("~(");
+                operand(graph, graph.left(node), out);
+                out.append(')');
+            } else {
+                out.append('(');
+                operand(graph, graph.left(node), out);
+                out.append(' ').append(symbol(op)).append(' ');
+                operand(graph, graph.right(node), out);
+                out.append(')');
+            }
+            out.append(System.lineSeparator());
+        }
+        out.append("out = ");
+        operand(graph, graph.root(0), out);
+        out.append(System.lineSeparator());
+    }
+
+    /**
+     * Returns the number of distinct node instances in an expression, which is the size of its DAG.
+     *
+     * @param expression The expression.
+     * @return The number of distinct nodes.
+     */
+    public static int countNodes(Expression expression) {
+        return ExpressionGraph.of(expression).size();
+    }
+
+    /**
+     * Writes a reference to a node: leaves are written inline and other nodes by their wire name.
+     *
+     * @param graph The graph of the expression.
+     * @param node  The node index.
+     * @param out   The destination.
+     * @throws IOException If writing to the destination fails.
+     */
+    private static void operand(ExpressionGraph graph, int node, Appendable out) throws IOException {
+        int op = graph.op(node);
+        if (op == ExpressionGraph.VAL) {
+            out.append(graph.left(node) == 1 ? 'T' : 'F');
+        } else if (op == ExpressionGraph.VAR) {
+            out.append(graph.getVariables().get(graph.left(node)));
+        } else {
+            out.append('$').append(Integer.toString(node));
+        }
+    }
+
+    /**
+     * Returns the infix symbol of a binary opcode, as used by toString().
+     *
+     * @param op The binary opcode.
+     * @return The operator symbol.
+     */
+    static String symbol(int op) {
+        switch (op) {
+            case ExpressionGraph.AND:
+                return "&";
+            case ExpressionGraph.OR:
+                return "|";
+            case ExpressionGraph.XOR:
+                return "^";
+            case ExpressionGraph.NAND:
+                return "A";
+            case ExpressionGraph.NOR:
+                return "V";
+            case ExpressionGraph.XNOR:
+                return "#";
+            default:
+                throw new IllegalArgumentException("Not a binary opcode: " + op);
+        }
+    }
+}
@@ -1,9 +1,6 @@
 // Nimrod Netzer 322394545
 
-import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 /**
  * Represents a logical expression XNOR (exclusive NOR).
@@ -34,88 +31,112 @@ public class Xnor extends BinaryExpression {
     }
 
     /**
-     * Evaluates the XNOR expression using the variable values provided in the assignment.
+     * Returns the opcode of this expression in {@link ExpressionGraph}.
      *
-     * @param assignment A map of variable names to their boolean values.
-     * @return The evaluated boolean result of the XNOR operation.
-     * @throws Exception If an error occurs during evaluation.
+     * @return The opcode XNOR.
      */
-    public Boolean evaluate(Map<String, Boolean> assignment) throws Exception {
-        try {
-            return ((expressionOne.evaluate(assignment)) == (expressionTwo.evaluate(assignment)));
-        } catch (Exception e) {
-            throw new Exception("Error evaluating expression: " + e.getMessage());
-        }
+    @Override
+    protected int getOpcode() {
+        return ExpressionGraph.XNOR;
     }
 
     /**
-     * Returns a list of variables present in the XNOR expression.
+     * Returns the operator written between the operands of the XNOR expression.
      *
-     * @return A list of variable names.
+     * @return The string " # ".
      */
-    public List<String> getVariables() {
-        return Stream.of(expressionOne.getVariables(), expressionTwo.getVariables())
-                .flatMap(List::stream)
-                .distinct()
-                .collect(Collectors.toList());
+    protected String getOperator() {
+        return " # ";
     }
 
     /**
-     * Returns a string representation of the XNOR expression.
+     * Replaces several variables at once in a single pass. Every node instance is visited once,
+     * and sub-expressions without substituted variables are returned as they are.
      *
-     * @return A string representing the XNOR expression.
+     * @param substitution The expressions to replace the variables with, by variable name.
+     * @param assigned     The expressions substituted so far, by node instance.
+     * @return The XNOR of the substituted operands, or this expression if neither operand changed.
      */
-    public String toString() {
-        return "(" + expressionOne.toString() + " # " + expressionTwo.toString() + ")";
-    }
-
-    /**
-     * Returns a new expression where occurrences of a specific variable are replaced with the provided expression.
-     *
-     * @param var        The variable name to replace.
-     * @param expression The expression to replace with.
-     * @return A new XNOR expression with substitutions.
-     */
-    public Expression assign(String var, Expression expression) {
-        return new Xnor(expressionOne.assign(var, expression), expressionTwo.assign(var, expression));
+    public Expression assign(Map<String, Expression> substitution, Map<Expression, Expression> assigned) {
+        Expression cached = assigned.get(this);
+        if (cached != null) {
+            return cached;
+        }
+        Expression assignedOne = expressionOne.assign(substitution, assigned);
+        Expression assignedTwo = expressionTwo.assign(substitution, assigned);
+        Expression result = assignedOne == expressionOne && assignedTwo == expressionTwo ? this
+                : new Xnor(assignedOne, assignedTwo);
+        assigned.put(this, result);
+        return result;
     }
 
     /**
      * Converts the XNOR expression to an equivalent expression using only NAND operations.
+     * Every node instance is converted once, so shared sub-expressions stay shared.
      *
+     * @param converted The expressions converted so far, by node instance.
      * @return An equivalent expression using only NAND operations.
      */
-    public Expression nandify() {
-        Expression nandifyExpOne = expressionOne.nandify();
-        Expression nandifyExpTwo = expressionTwo.nandify();
-        return new Nand(
+    public Expression nandify(Map<Expression, Expression> converted) {
+        Expression cached = converted.get(this);
+        if (cached != null) {
+            return cached;
+        }
+        Expression nandifyExpOne = expressionOne.nandify(converted);
+        Expression nandifyExpTwo = expressionTwo.nandify(converted);
+        Expression result = new Nand(
                 new Nand(new Nand(nandifyExpOne, nandifyExpOne), new Nand(nandifyExpTwo, nandifyExpTwo)),
                 new Nand(nandifyExpOne, nandifyExpTwo)
         );
+        converted.put(this, result);
+        return result;
     }
 
     /**
      * Converts the XNOR expression to an equivalent expression using only NOR operations.
+     * Every node instance is converted once, so shared sub-expressions stay shared.
      *
+     * @param converted The expressions converted so far, by node instance.
      * @return An equivalent expression using only NOR operations.
      */
-    public Expression norify() {
-        Expression norifyExpOne = expressionOne.norify();
-        Expression norifyExpTwo = expressionTwo.norify();
-        return new Nor(
-                new Nor(norifyExpOne, new Nor(norifyExpOne, norifyExpTwo)),
-                new Nor(norifyExpTwo, new Nor(norifyExpOne, norifyExpTwo)));
+    public Expression norify(Map<Expression, Expression> converted) {
+        Expression cached = converted.get(this);
+        if (cached != null) {
+            return cached;
+        }
+        Expression norifyExpOne = expressionOne.norify(converted);
+        Expression norifyExpTwo = expressionTwo.norify(converted);
+        Expression nor = new Nor(norifyExpOne, norifyExpTwo);
+        Expression result = new Nor(new Nor(norifyExpOne, nor), new Nor(norifyExpTwo, nor));
+        converted.put(this, result);
+        return result;
     }
 
     /**
-     * Simplifies the XNOR expression.
+     * Simplifies the XNOR expression by applying logical simplification rules.
+     * Every node instance is simplified once, so shared sub-expressions are not simplified twice.
      *
-     * @return A simplified version of the current XNOR expression.
+     * @param simplified The expressions simplified so far, by node instance.
+     * @return A simplified version of the XNOR expression.
      */
-    public Expression simplify() {
-        Expression simplifiedOne = expressionOne.simplify();
-        Expression simplifiedTwo = expressionTwo.simplify();
+    public Expression simplify(Map<Expression, Expression> simplified) {
+        Expression cached = simplified.get(this);
+        if (cached != null) {
+            return cached;
+        }
+        Expression result = simplify(expressionOne.simplify(simplified), expressionTwo.simplify(simplified));
+        simplified.put(this, result);
+        return result;
+    }
 
+    /**
+     * Applies the XNOR simplification rules to already simplified operands.
+     *
+     * @param simplifiedOne The simplified first operand.
+     * @param simplifiedTwo The simplified second operand.
+     * @return The simplified expression.
+     */
+    private Expression simplify(Expression simplifiedOne, Expression simplifiedTwo) {
         // Simplification rules for XNOR
         if (simplifiedOne.equals(simplifiedTwo)) {
             return new Val(true); // If both sides are identical, XNOR simplifies to true
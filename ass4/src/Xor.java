@@ -1,9 +1,6 @@
 // Nimrod Netzer 322394545
 
-import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 /**
  * Represents a logical expression XOR (exclusive OR).
@@ -34,89 +31,111 @@ public class Xor extends BinaryExpression {
     }
 
     /**
-     * Evaluates the XOR expression using the variable values provided in the assignment.
+     * Returns the opcode of this expression in {@link ExpressionGraph}.
      *
-     * @param assignment A map of variable names to their boolean values.
-     * @return The evaluated boolean result of the XOR operation.
-     * @throws Exception If an error occurs during evaluation.
+     * @return The opcode XOR.
      */
-    public Boolean evaluate(Map<String, Boolean> assignment) throws Exception {
-        try {
-            return expressionOne.evaluate(assignment) ^ expressionTwo.evaluate(assignment);
-        } catch (Exception e) {
-            throw new Exception("Error evaluating expression: " + e.getMessage());
-        }
-    }
-
-    /**
-     * Returns a list of variables present in the XOR expression.
-     *
-     * @return A list of variable names.
-     */
-    public List<String> getVariables() {
-        return Stream.of(expressionOne.getVariables(), expressionTwo.getVariables())
-                .flatMap(List::stream)
-                .distinct()
-                .collect(Collectors.toList());
+    @Override
+    protected int getOpcode() {
+        return ExpressionGraph.XOR;
     }
 
     /**
-     * Returns a string representation of the XOR expression.
+     * Returns the operator written between the operands of the XOR expression.
      *
-     * @return A string representing the XOR expression.
+     * @return The string " ^ ".
      */
-    public String toString() {
-        return "(" + expressionOne.toString() + " ^ " + expressionTwo.toString() + ")";
+    protected String getOperator() {
+        return " ^ ";
     }
 
     /**
-     * Returns a new expression where occurrences of a specific variable are replaced with the provided expression.
+     * Replaces several variables at once in a single pass. Every node instance is visited once,
+     * and sub-expressions without substituted variables are returned as they are.
      *
-     * @param var        The variable name to replace.
-     * @param expression The expression to replace with.
-     * @return A new XOR expression with substitutions.
+     * @param substitution The expressions to replace the variables with, by variable name.
+     * @param assigned     The expressions substituted so far, by node instance.
+     * @return The XOR of the substituted operands, or this expression if neither operand changed.
      */
-    public Expression assign(String var, Expression expression) {
-        return new Xor(expressionOne.assign(var, expression), expressionTwo.assign(var, expression));
+    public Expression assign(Map<String, Expression> substitution, Map<Expression, Expression> assigned) {
+        Expression cached = assigned.get(this);
+        if (cached != null) {
+            return cached;
+        }
+        Expression assignedOne = expressionOne.assign(substitution, assigned);
+        Expression assignedTwo = expressionTwo.assign(substitution, assigned);
+        Expression result = assignedOne == expressionOne && assignedTwo == expressionTwo ? this
+                : new Xor(assignedOne, assignedTwo);
+        assigned.put(this, result);
+        return result;
     }
 
     /**
      * Converts the XOR expression to an equivalent expression using only NAND operations.
+     * Every node instance is converted once, so shared sub-expressions stay shared.
      *
+     * @param converted The expressions converted so far, by node instance.
      * @return An equivalent expression using only NAND operations.
      */
-    public Expression nandify() {
-        Expression nandifyExpOne = expressionOne.nandify();
-        Expression nandifyExpTwo = expressionTwo.nandify();
-        return new Nand(
-                new Nand(nandifyExpOne, new Nand(nandifyExpOne, nandifyExpTwo)),
-                new Nand(nandifyExpTwo, new Nand(nandifyExpOne, nandifyExpTwo))
-        );
+    public Expression nandify(Map<Expression, Expression> converted) {
+        Expression cached = converted.get(this);
+        if (cached != null) {
+            return cached;
+        }
+        Expression nandifyExpOne = expressionOne.nandify(converted);
+        Expression nandifyExpTwo = expressionTwo.nandify(converted);
+        Expression nand = new Nand(nandifyExpOne, nandifyExpTwo);
+        Expression result = new Nand(new Nand(nandifyExpOne, nand), new Nand(nandifyExpTwo, nand));
+        converted.put(this, result);
+        return result;
     }
 
     /**
      * Converts the XOR expression to an equivalent expression using only NOR operations.
+     * Every node instance is converted once, so shared sub-expressions stay shared.
      *
+     * @param converted The expressions converted so far, by node instance.
      * @return An equivalent expression using only NOR operations.
      */
-    public Expression norify() {
-        Expression norifyExpOne = expressionOne.norify();
-        Expression norifyExpTwo = expressionTwo.norify();
-        return new Nor(
+    public Expression norify(Map<Expression, Expression> converted) {
+        Expression cached = converted.get(this);
+        if (cached != null) {
+            return cached;
+        }
+        Expression norifyExpOne = expressionOne.norify(converted);
+        Expression norifyExpTwo = expressionTwo.norify(converted);
+        Expression result = new Nor(
                 new Nor(new Nor(norifyExpOne, norifyExpOne), new Nor(norifyExpTwo, norifyExpTwo)),
                 new Nor(norifyExpOne, norifyExpTwo));
+        converted.put(this, result);
+        return result;
     }
 
     /**
-     * Simplifies the XOR expression.
+     * Simplifies the XOR expression by applying logical simplification rules.
+     * Every node instance is simplified once, so shared sub-expressions are not simplified twice.
      *
-     * @return A simplified version of the current XOR expression.
+     * @param simplified The expressions simplified so far, by node instance.
+     * @return A simplified version of the XOR expression.
      */
-    @Override
-    public Expression simplify() {
-        Expression simplifiedExpOne = expressionOne.simplify();
-        Expression simplifiedExpTwo = expressionTwo.simplify();
+    public Expression simplify(Map<Expression, Expression> simplified) {
+        Expression cached = simplified.get(this);
+        if (cached != null) {
+            return cached;
+        }
+        Expression result = simplify(expressionOne.simplify(simplified), expressionTwo.simplify(simplified));
+        simplified.put(this, result);
+        return result;
+    }
 
+    /**
+     * Applies the XOR simplification rules to already simplified operands.
+     *
+     * @param simplifiedExpOne The simplified first operand.
+     * @param simplifiedExpTwo The simplified second operand.
+     * @return The simplified expression.
+     */
+    private Expression simplify(Expression simplifiedExpOne, Expression simplifiedExpTwo) {
         // Apply simplification rules
         if (isEqual(simplifiedExpOne, new Val(true))) {
             return new Not(simplifiedExpTwo); // True ^ x = ~x